@@ -0,0 +1,213 @@
+/*
+ * VectorLaneArithmetic.java
+ */
+
+
+
+
+package de.rub.nds.ec.math;
+
+
+
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+
+
+
+/**
+ * This class implements the Montgomery multiplication of
+ * {@link LaneArithmetic} with the Vector API of the incubating module
+ * <tt>jdk.incubator.vector</tt>. Every vector holds one word of as many
+ * lanes as the preferred species of the hardware has, e.g. eight with
+ * AVX-512, so every word operation processes that many operand pairs with
+ * one instruction.
+ * <p />
+ * The loops are the same as the ones of the scalar engine, every row
+ * operation runs over all lanes, one vector at a time. HotSpot vectorizes
+ * the scalar loops of this shape by itself on many platforms, so this
+ * engine is not necessarily faster, but it does not depend on the
+ * heuristics of the JIT compiler.
+ * <p />
+ * The module has to be enabled by
+ * <code>--add-modules jdk.incubator.vector</code> for compiling this
+ * class and for running it. {@link LaneArithmetic#forPrime} falls back to
+ * the scalar engine otherwise.
+ *
+ * @see FiniteField#multiplyAll
+ */
+final class VectorLaneArithmetic extends LaneArithmetic {
+
+    /**
+     * This bit mask is needed for the conversion of a signed integer
+     * to an unsigned long.
+     */
+    private final static long INT2LONG = 0xFFFFFFFFL;
+
+    /**
+     * The vector shape preferred by the hardware.
+     */
+    private final static VectorSpecies<Long> SPECIES =
+            LongVector.SPECIES_PREFERRED;
+
+
+
+
+    /**
+     * Construct a new engine for the given prime.
+     *
+     * @param   p magnitude of an odd prime without leading zero words.
+     *
+     * @throws  UnsupportedOperationException the hardware has no vectors
+     *          of more than one <tt>long</tt>.
+     */
+    VectorLaneArithmetic( int[] p ) throws UnsupportedOperationException {
+
+        super( p );
+
+        // the number of lanes of a batch has to be a multiple of the
+        // vector length, which is a power of two
+        if( SPECIES.length( ) < 2 || LANES % SPECIES.length( ) != 0 )
+            throw new UnsupportedOperationException
+            ( "VectorLaneArithmetic.<init>: No SIMD support" );
+
+    }
+
+
+
+
+    /**
+     * Montgomery multiplication on all lanes, see
+     * {@link LaneArithmetic#multiply}. The lanes after <tt>lanes</tt> up
+     * to the next multiple of the vector length are computed as well, but
+     * their results are meaningless.
+     *
+     * @param   x first factors, word j of lane l in <code>x[j][l]</code>,
+     *          less than p.
+     * @param   y second factors, less than p.
+     * @param   t result rows allocated by {@link #newResult}, on return
+     *          the first k rows hold <code>x * y * R^-1 mod p</code> with
+     *          <code>R = 2^(32 k)</code>.
+     * @param   lanes number of used lanes.
+     */
+    void multiply( long[][] x, long[][] y, long[][] t, int lanes ) {
+
+        int step = SPECIES.length( );
+        long[] carry = t[k + 2], u = t[k + 3];
+        long[] high = t[k], higher = t[k + 1];
+
+        for( int j = 0; j < k + 2; j++ )
+            for( int l = 0; l < lanes; l += step )
+                LongVector.zero( SPECIES ).intoArray( t[j], l );
+
+        for( int i = 0; i < k; i++ ) {
+
+            // t = t + x_i * y
+            long[] x_i = x[i];
+            for( int l = 0; l < lanes; l += step )
+                LongVector.zero( SPECIES ).intoArray( carry, l );
+
+            for( int j = 0; j < k; j++ ) {
+                long[] y_j = y[j], t_j = t[j];
+                for( int l = 0; l < lanes; l += step ) {
+                    LongVector value = LongVector.fromArray( SPECIES, x_i, l ).
+                            mul( LongVector.fromArray( SPECIES, y_j, l ) ).
+                            add( LongVector.fromArray( SPECIES, carry, l ) ).
+                            add( LongVector.fromArray( SPECIES, t_j, l ) );
+                    value.and( INT2LONG ).intoArray( t_j, l );
+                    value.lanewise( VectorOperators.LSHR, 32 ).
+                            intoArray( carry, l );
+                }
+            }
+            for( int l = 0; l < lanes; l += step ) {
+                LongVector value = LongVector.fromArray( SPECIES, high, l ).
+                        add( LongVector.fromArray( SPECIES, carry, l ) );
+                value.and( INT2LONG ).intoArray( high, l );
+                value.lanewise( VectorOperators.LSHR, 32 ).
+                        intoArray( higher, l );
+            }
+
+            // t = (t + u * p) / 2^32, the lowest word becomes zero
+            long[] t_0 = t[0];
+            for( int l = 0; l < lanes; l += step ) {
+                LongVector t_0l = LongVector.fromArray( SPECIES, t_0, l );
+                LongVector u_l = t_0l.mul( inverse ).and( INT2LONG );
+                u_l.intoArray( u, l );
+                u_l.mul( m[0] ).add( t_0l ).
+                        lanewise( VectorOperators.LSHR, 32 ).
+                        intoArray( carry, l );
+            }
+
+            for( int j = 1; j < k; j++ ) {
+                long[] t_j = t[j], t_previous = t[j - 1];
+                long m_j = m[j];
+                for( int l = 0; l < lanes; l += step ) {
+                    LongVector value = LongVector.fromArray( SPECIES, u, l ).
+                            mul( m_j ).
+                            add( LongVector.fromArray( SPECIES, carry, l ) ).
+                            add( LongVector.fromArray( SPECIES, t_j, l ) );
+                    value.and( INT2LONG ).intoArray( t_previous, l );
+                    value.lanewise( VectorOperators.LSHR, 32 ).
+                            intoArray( carry, l );
+                }
+            }
+
+            long[] t_last = t[k - 1];
+            for( int l = 0; l < lanes; l += step ) {
+                LongVector value = LongVector.fromArray( SPECIES, high, l ).
+                        add( LongVector.fromArray( SPECIES, carry, l ) );
+                value.and( INT2LONG ).intoArray( t_last, l );
+                LongVector.fromArray( SPECIES, higher, l ).
+                        add( value.lanewise( VectorOperators.LSHR, 32 ) ).
+                        intoArray( high, l );
+            }
+        }
+
+        // the results are less than 2p, the borrow of t - p on all lanes
+        // decides where p is subtracted
+        long[] borrow = carry;
+        for( int l = 0; l < lanes; l += step )
+            LongVector.zero( SPECIES ).intoArray( borrow, l );
+
+        for( int j = 0; j < k; j++ ) {
+            long[] t_j = t[j];
+            long m_j = m[j];
+            for( int l = 0; l < lanes; l += step )
+                LongVector.fromArray( SPECIES, t_j, l ).sub( m_j ).
+                        add( LongVector.fromArray( SPECIES, borrow, l ) ).
+                        lanewise( VectorOperators.ASHR, 32 ).
+                        intoArray( borrow, l );
+        }
+
+        // mask is -1 where t is kept, i.e. t < p
+        long[] mask = u;
+        for( int l = 0; l < lanes; l += step ) {
+            LongVector.fromArray( SPECIES, high, l ).sub( 1 ).
+                    lanewise( VectorOperators.ASHR, 63 ).
+                    and( LongVector.fromArray( SPECIES, borrow, l ) ).
+                    intoArray( mask, l );
+            LongVector.zero( SPECIES ).intoArray( borrow, l );
+        }
+
+        for( int j = 0; j < k; j++ ) {
+            long[] t_j = t[j];
+            long m_j = m[j];
+            for( int l = 0; l < lanes; l += step ) {
+                LongVector t_jl = LongVector.fromArray( SPECIES, t_j, l );
+                LongVector mask_l = LongVector.fromArray( SPECIES, mask, l );
+                LongVector value = t_jl.sub( m_j ).
+                        add( LongVector.fromArray( SPECIES, borrow, l ) );
+                value.lanewise( VectorOperators.ASHR, 32 ).
+                        intoArray( borrow, l );
+                t_jl.and( mask_l ).
+                        or( value.and( INT2LONG ).
+                            and( mask_l.lanewise( VectorOperators.NOT ) ) ).
+                        intoArray( t_j, l );
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * BatchResult.java
+ */
+
+
+
+
+package de.rub.nds.ec;
+
+
+
+
+/**
+ * The results of a batch operation like {@link ECDSA#signAll} or
+ * {@link ECDSA#verifyAll}, in the order of the input. Every item either
+ * has a result or the exception which made it fail, so a single failing
+ * item does not abort the whole batch.
+ *
+ * @param <T> the type of the result of a single item.
+ */
+public final class BatchResult<T> {
+
+    /**
+     * The result of every item, <tt>null</tt> for the failed ones.
+     */
+    private final Object[] results;
+
+    /**
+     * The exception of every failed item, <tt>null</tt> for the others.
+     */
+    private final RuntimeException[] failures;
+
+
+
+
+    /**
+     * Create the results of a batch, which are set by {@link #set} and
+     * {@link #fail}.
+     *
+     * @param   size number of items.
+     */
+    BatchResult( int size ) {
+
+        results = new Object[size];
+        failures = new RuntimeException[size];
+
+    }
+
+
+
+
+    /**
+     * Returns the number of items.
+     *
+     * @return  the size of the batch.
+     */
+    public int size( ) {
+
+        return results.length;
+
+    }
+
+    /**
+     * Determines wether an item succeeded.
+     *
+     * @param   index the index of the item.
+     * @return  <tt>true</tt> if and only if the item has a result.
+     */
+    public boolean isSuccess( int index ) {
+
+        return failures[index] == null;
+
+    }
+
+    /**
+     * Returns the result of an item.
+     *
+     * @param   index the index of the item.
+     * @return  the result.
+     *
+     * @throws  IllegalStateException the item failed, the exception is
+     *          attached as cause.
+     */
+    @SuppressWarnings( "unchecked" )
+    public T get( int index ) throws IllegalStateException {
+
+        if( failures[index] != null )
+            throw new IllegalStateException
+            ( "BatchResult.get: Item " + index + " failed",
+              failures[index] );
+
+        return (T)results[index];
+
+    }
+
+    /**
+     * Returns the exception which made an item fail.
+     *
+     * @param   index the index of the item.
+     * @return  the exception or <tt>null</tt> if the item succeeded.
+     */
+    public RuntimeException getFailure( int index ) {
+
+        return failures[index];
+
+    }
+
+    /**
+     * Returns the number of failed items.
+     *
+     * @return  number of items without a result.
+     */
+    public int getFailureCount( ) {
+
+        int count = 0;
+        for( RuntimeException failure : failures )
+            if( failure != null )
+                count++;
+
+        return count;
+
+    }
+
+
+
+
+    /**
+     * Set the result of an item.
+     */
+    void set( int index, T result ) {
+
+        results[index] = result;
+
+    }
+
+    /**
+     * Set the exception of a failed item.
+     */
+    void fail( int index, RuntimeException failure ) {
+
+        failures[index] = failure;
+
+    }
+
+}
@@ -13,6 +13,15 @@ package de.rub.nds.ec;
 
 import de.rub.nds.ec.math.EllipticCurve;
 import de.rub.nds.ec.math.FiniteField;
+import de.rub.nds.ec.math.FixedBaseComb;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 
 
@@ -60,8 +69,27 @@ public class ECDSA {
     private EllipticCurve.Point P;
     
     /**
-     * Precomputed points which are used for point
-     * multiplication.
+     * Memory budget in KiB for the precomputed multiples of P, unless
+     * given to the constructor.
+     */
+    public final static int DEFAULT_COMB_BUDGET = 64;
+    
+    /**
+     * Least number of items per task of {@link #signAll} and
+     * {@link #verifyAll}. A single item takes much longer than scheduling
+     * a task, so small chunks suffice to amortize the overhead.
+     */
+    private final static int BATCH_CHUNK_SIZE = 8;
+    
+    /**
+     * Precomputed points which are used for multiplications
+     * of P.
+     */
+    private FixedBaseComb comb;
+    
+    /**
+     * Precomputed NAF points of P, which are used for the
+     * multiplications in the verification.
      */
     private EllipticCurve.Point[] nafPoints;
     
@@ -73,12 +101,39 @@ public class ECDSA {
      * @param P The domain parameter P
      */
     public ECDSA( FiniteField F, EllipticCurve E, EllipticCurve.Point P ) {
+        this( F, E, P, DEFAULT_COMB_BUDGET );
+    }
+    
+    /**
+     * Initialize the ECDSA Signer with the field, the elliptic curve,
+     * the point P and the memory for the precomputed multiples of P.
+     * @param F The field
+     * @param E The elliptic curve
+     * @param P The domain parameter P
+     * @param combBudget The memory budget in KiB for the
+     *        {@link FixedBaseComb} of P
+     */
+    public ECDSA( FiniteField F, EllipticCurve E, EllipticCurve.Point P,
+                  int combBudget ) {
         this.F = F;
         this.E = E;
         this.P = P;
+        this.comb = FixedBaseComb.forBudget( P, combBudget );
         this.nafPoints = P.precomputeNAFPoints( (byte)6 );
     }
     
+    /**
+     * Compute the public key belonging to a private key.
+     *
+     * @param   privateKey a <tt>FieldElement</tt> holding the private key.
+     * @return  the public key <code>Q = privateKey * P</code>.
+     */
+    public EllipticCurve.Point generatePublicKey( FiniteField.FieldElement privateKey ) {
+        
+        return comb.multiply( privateKey );
+        
+    }
+    
     /**
      * Generate a signature for a given message, using the given private
      * key.
@@ -99,7 +154,7 @@ public class ECDSA {
             k = F.new FieldElement( );
             
             do {
-                R = P.multiply( k, nafPoints, (byte)6 );
+                R = comb.multiply( k );
                 r = R.getX( );
             } while( r.compareTo( F.ZERO ) == FiniteField.EQ );
 
@@ -127,7 +182,8 @@ public class ECDSA {
         FiniteField.FieldElement u1 = message.multiply( w );
         FiniteField.FieldElement u2 = signature.getR().multiply( w );
         
-        EllipticCurve.Point X = P.multiply( u1, nafPoints, (byte)6 ).add( Q.multiply( u2 ) );
+        // u1 * P + u2 * Q with a single chain of doublings
+        EllipticCurve.Point X = E.multiplyAdd( u1, nafPoints, (byte)6, Q, u2 );
 
         if( X.isInfinity() )
             return false;
@@ -138,4 +194,292 @@ public class ECDSA {
         return false;
         
     }    
+    
+    /**
+     * Generate signatures for many messages on the threads of the common
+     * <tt>ForkJoinPool</tt>, see {@link #signAll(FiniteField.FieldElement[],
+     * FiniteField.FieldElement[],ExecutorService)}.
+     *
+     * @param   messages the hashes of the messages to sign.
+     * @param   privateKeys the private key of every message, or a single
+     *          key for all messages.
+     * @return  the signatures in the order of the messages.
+     *
+     * @throws  IllegalArgumentException the arrays differ in length.
+     * @throws  CancellationException the calling thread was interrupted.
+     */
+    public BatchResult<Signature> signAll(
+            FiniteField.FieldElement[] messages,
+            FiniteField.FieldElement[] privateKeys )
+           throws IllegalArgumentException, CancellationException {
+        
+        return signAll( messages, privateKeys, ForkJoinPool.commonPool( ) );
+        
+    }
+    
+    /**
+     * Generate signatures for many messages, spread over the threads of
+     * an executor. The messages are split into chunks of at least
+     * {@link #BATCH_CHUNK_SIZE} items, about four per thread, which run
+     * as separate tasks. A batch of a single chunk is signed by the
+     * calling thread.
+     * <p />
+     * The signatures are the same as those of {@link #generateSignature},
+     * but every chunk shares its inversions: the x-coordinates of all
+     * points <code>k P</code> need a single inversion and all nonces k
+     * are inverted together, so a chunk needs two inversions instead of
+     * two per message.
+     * <p />
+     * An exception while signing a message is recorded in the result of
+     * that message, the other messages are signed nevertheless. The
+     * calling thread waits for all tasks, so it must not be a thread of a
+     * bounded <tt>executor</tt>.
+     *
+     * @param   messages the hashes of the messages to sign.
+     * @param   privateKeys the private key of every message, or a single
+     *          key for all messages.
+     * @param   executor the executor which runs the tasks.
+     * @return  the signatures in the order of the messages.
+     *
+     * @throws  IllegalArgumentException the arrays differ in length.
+     * @throws  CancellationException the calling thread was interrupted.
+     */
+    public BatchResult<Signature> signAll(
+            final FiniteField.FieldElement[] messages,
+            final FiniteField.FieldElement[] privateKeys,
+            ExecutorService executor )
+           throws IllegalArgumentException, CancellationException {
+        
+        if( privateKeys.length != messages.length && privateKeys.length != 1 )
+            throw new IllegalArgumentException
+            ( "ECDSA.signAll: Arrays differ in length" );
+        
+        return runAll( messages.length, executor, new Chunk<Signature>( ) {
+            public void run( BatchResult<Signature> result, int from, int to ) {
+                signChunk( messages, privateKeys, result, from, to );
+            }
+        } );
+        
+    }
+    
+    /**
+     * Verify many signatures on the threads of the common
+     * <tt>ForkJoinPool</tt>, see {@link #verifyAll(EllipticCurve.Point[],
+     * FiniteField.FieldElement[],Signature[],ExecutorService)}.
+     *
+     * @param   publicKeys the public key of every message, or a single key
+     *          for all messages.
+     * @param   messages the messages.
+     * @param   signatures the signature of every message.
+     * @return  the results of {@link #verifySignature} in the order of the
+     *          messages.
+     *
+     * @throws  IllegalArgumentException the arrays differ in length.
+     * @throws  CancellationException the calling thread was interrupted.
+     */
+    public BatchResult<Boolean> verifyAll( EllipticCurve.Point[] publicKeys,
+                                           FiniteField.FieldElement[] messages,
+                                           Signature[] signatures )
+           throws IllegalArgumentException, CancellationException {
+        
+        return verifyAll( publicKeys, messages, signatures,
+                          ForkJoinPool.commonPool( ) );
+        
+    }
+    
+    /**
+     * Verify many signatures by {@link #verifySignature}, spread over the
+     * threads of an executor in chunks like {@link #signAll(
+     * FiniteField.FieldElement[],FiniteField.FieldElement[],
+     * ExecutorService)}. An exception while verifying a signature, e.g.
+     * for a zero s, is recorded in the result of that signature.
+     *
+     * @param   publicKeys the public key of every message, or a single key
+     *          for all messages.
+     * @param   messages the messages.
+     * @param   signatures the signature of every message.
+     * @param   executor the executor which runs the tasks.
+     * @return  the results of {@link #verifySignature} in the order of the
+     *          messages.
+     *
+     * @throws  IllegalArgumentException the arrays differ in length.
+     * @throws  CancellationException the calling thread was interrupted.
+     */
+    public BatchResult<Boolean> verifyAll(
+            final EllipticCurve.Point[] publicKeys,
+            final FiniteField.FieldElement[] messages,
+            final Signature[] signatures,
+            ExecutorService executor )
+           throws IllegalArgumentException, CancellationException {
+        
+        if( signatures.length != messages.length ||
+            ( publicKeys.length != messages.length && publicKeys.length != 1 ) )
+            throw new IllegalArgumentException
+            ( "ECDSA.verifyAll: Arrays differ in length" );
+        
+        return runAll( messages.length, executor, new Chunk<Boolean>( ) {
+            public void run( BatchResult<Boolean> result, int from, int to ) {
+                for( int i = from; i < to; i++ ) {
+                    try {
+                        result.set( i, verifySignature(
+                                publicKeys.length == 1 ?
+                                publicKeys[0] : publicKeys[i],
+                                messages[i], signatures[i] ) );
+                    }
+                    catch( RuntimeException e ) {
+                        result.fail( i, e );
+                    }
+                }
+            }
+        } );
+        
+    }
+    
+    /**
+     * Sign a range of messages of a batch. The nonces k are drawn at
+     * once, the points <code>R = k P</code> are normalized by a single
+     * simultaneous inversion and the nonces are inverted together by
+     * Montgomery's trick, see {@link EllipticCurve#normalizeAll} and
+     * {@link FiniteField#invertAll}. So the range needs two inversions
+     * instead of two per message. A message whose k, r or s is zero is
+     * signed again by {@link #generateSignature}.
+     *
+     * @param   messages the hashes of the messages to sign.
+     * @param   privateKeys the private key of every message, or a single
+     *          key for all messages.
+     * @param   result the results of the batch.
+     * @param   from index of the first message of the range.
+     * @param   to index after the range.
+     */
+    private void signChunk( FiniteField.FieldElement[] messages,
+                            FiniteField.FieldElement[] privateKeys,
+                            BatchResult<Signature> result,
+                            int from, int to ) {
+        
+        int n = to - from;
+        
+        FiniteField.FieldElement[] k = F.randomElements( n );
+        EllipticCurve.Point[] R = new EllipticCurve.Point[n];
+        for( int i = 0; i < n; i++ )
+            R[i] = comb.multiply( k[i] );
+        
+        R = E.normalizeAll( R );
+        FiniteField.FieldElement[] kInverse = new FiniteField.FieldElement[n];
+        F.invertAll( k, kInverse );
+        
+        for( int i = 0; i < n; i++ ) {
+            
+            int j = from + i;
+            
+            try {
+                FiniteField.FieldElement privateKey =
+                        ( privateKeys.length == 1 ? privateKeys[0] :
+                          privateKeys[j] );
+                Signature signature = null;
+                
+                if( ! R[i].isInfinity( ) ) {
+                    FiniteField.FieldElement r = R[i].getX( );
+                    FiniteField.FieldElement s = kInverse[i].multiply(
+                            messages[j].add( privateKey.multiply( r ) ) );
+                    if( ! r.equals( F.ZERO ) && ! s.equals( F.ZERO ) )
+                        signature = new Signature( r, s, k[i] );
+                }
+                
+                if( signature == null )
+                    signature = generateSignature( messages[j], privateKey );
+                
+                result.set( j, signature );
+            }
+            catch( RuntimeException e ) {
+                result.fail( j, e );
+            }
+        }
+        
+    }
+    
+    /**
+     * The operation on a range of items of a batch.
+     */
+    private interface Chunk<T> {
+        
+        /**
+         * Process the items of a range and record their results or
+         * failures.
+         *
+         * @param   result the results of the batch.
+         * @param   from index of the first item.
+         * @param   to index after the range.
+         */
+        void run( BatchResult<T> result, int from, int to );
+        
+    }
+    
+    /**
+     * Process all items of a batch in chunks on an executor.
+     *
+     * @param   size number of items.
+     * @param   executor the executor which runs the chunks.
+     * @param   chunk the operation for a range of items.
+     * @return  the results of all items.
+     *
+     * @throws  CancellationException the calling thread was interrupted.
+     * @throws  RuntimeException a chunk failed as a whole, e.g. since
+     *          the shared steps of {@link #signChunk} failed.
+     */
+    private <T> BatchResult<T> runAll( int size, ExecutorService executor,
+                                       final Chunk<T> chunk )
+            throws CancellationException {
+        
+        final BatchResult<T> result = new BatchResult<T>( size );
+        
+        int parallelism = ( executor instanceof ForkJoinPool ?
+                            ((ForkJoinPool)executor).getParallelism( ) :
+                            Runtime.getRuntime( ).availableProcessors( ) );
+        int chunks = Math.min( ( size + BATCH_CHUNK_SIZE - 1 ) /
+                               BATCH_CHUNK_SIZE, 4 * parallelism );
+        
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>( );
+        
+        for( int c = 0; c < chunks; c++ ) {
+            
+            final int from = (int)( (long)size * c / chunks );
+            final int to = (int)( (long)size * (c + 1) / chunks );
+            
+            tasks.add( new Callable<Void>( ) {
+                public Void call( ) {
+                    chunk.run( result, from, to );
+                    return null;
+                }
+            } );
+        }
+        
+        if( chunks == 1 ) {
+            chunk.run( result, 0, size );
+            return result;
+        }
+        
+        try {
+            for( Future<Void> future : executor.invokeAll( tasks ) )
+                future.get( );
+        }
+        catch( InterruptedException e ) {
+            Thread.currentThread( ).interrupt( );
+            throw new CancellationException( "ECDSA.runAll: Interrupted" );
+        }
+        catch( ExecutionException e ) {
+            // failures of single items are caught, but a chunk can still
+            // fail as a whole, e.g. while drawing its nonces, which is
+            // rethrown like in the sequential case
+            Throwable cause = e.getCause( );
+            if( cause instanceof RuntimeException )
+                throw (RuntimeException)cause;
+            if( cause instanceof Error )
+                throw (Error)cause;
+            throw new IllegalStateException( "ECDSA.runAll: Chunk failed",
+                                             cause );
+        }
+        
+        return result;
+        
+    }
 }
@@ -14,7 +14,10 @@ import org.bouncycastle.crypto.generators.ECKeyPairGenerator;
 import org.bouncycastle.math.ec.ECFieldElement;
 import org.bouncycastle.math.ec.ECPoint;
 
+import org.bouncycastle.util.BigIntegers;
+
 import java.math.BigInteger;
+import java.nio.ByteOrder;
 import java.security.SecureRandom;
 
 public class Example {
@@ -49,7 +52,7 @@ public class Example {
         System.out.format("BC: PrivateKey: %s\n", bcPrivateKey.getD().toString(16));
         System.out.format("BC: PublicKey: (%s, %s)\n", bcPublicKey.getQ().getAffineXCoord(), bcPublicKey.getQ().getAffineYCoord());
 
-        FiniteField.FieldElement sbPrivateKey = sbField.new FieldElement(bcPrivateKey.getD().toString(16));
+        FiniteField.FieldElement sbPrivateKey = sbField.new FieldElement(BigIntegers.asUnsignedByteArray(sbField.getEncodedLength(), bcPrivateKey.getD()), ByteOrder.BIG_ENDIAN);
         EllipticCurve.Point sbPublicKey = G.multiply(sbPrivateKey);
         System.out.format("SB: PrivateKey: %s\n", sbPrivateKey.toString());
         System.out.format("SB: PublicKey: %s\n", sbPublicKey.toString());
@@ -63,8 +66,8 @@ public class Example {
 
         BigInteger[] bcSignature = new BigInteger[2];
         org.bouncycastle.math.field.FiniteField bcField = org.bouncycastle.math.field.FiniteFields.getPrimeField(new BigInteger("00fffffffdffffffffffffffffffffffff", 16));
-        ECFieldElement bcMessage = bcCurve.fromBigInteger(new BigInteger(sbMessage.toString(), 16));
-        ECFieldElement bcK = bcCurve.fromBigInteger(new BigInteger(sbSignature.k.toString(), 16));
+        ECFieldElement bcMessage = bcCurve.fromBigInteger(new BigInteger(1, sbMessage.toByteArray(ByteOrder.BIG_ENDIAN)));
+        ECFieldElement bcK = bcCurve.fromBigInteger(new BigInteger(1, sbSignature.k.toByteArray(ByteOrder.BIG_ENDIAN)));
         ECPoint bcR = bcParameters.getG().multiply(bcK.toBigInteger()).normalize();
         bcSignature[0] = bcR.getAffineXCoord().toBigInteger();
         ECFieldElement bcTmp = bcCurve.fromBigInteger(bcPrivateKey.getD()).multiply(bcCurve.fromBigInteger(bcSignature[0]));
@@ -1,5 +1,11 @@
 package de.rub.nds.ec.math;
 
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * This class represents an elliptic curve over a finite field. It stores
  * the values {@link #a} and {@link #b}, by which the curve is represented.
@@ -25,12 +31,86 @@ public class EllipticCurve {
     public final FiniteField.FieldElement b;
 
     /**
-     * This value has to be calculated once while the curve is initialized.
-     * It is needed to accelerate point operations.
+     * Point engine which computes with {@link Point}s in
+     * Jacobian-projective coordinates. This is the default.
+     *
+     * @see #getEngine
+     */
+    public final static byte JACOBIAN = 0;
+
+    /**
+     * Point engine which does the loop of {@link Point#multiply(
+     * FiniteField.FieldElement,EllipticCurve.Point[],byte)} in
+     * homogeneous projective coordinates with the complete formulas of
+     * J. Renes, C. Costello and L. Batina, "Complete addition formulas for
+     * prime order elliptic curves", EUROCRYPT 2016. On curves of odd
+     * order they hold for all inputs including the point at infinity and
+     * equal points, so the additions and doublings do not branch on the
+     * coordinates. On curves of even order they fail for some pairs of
+     * points, so the constructor rejects such curves for this engine.
      *
-     * @see Point#add
+     * @see #getEngine
+     */
+    public final static byte COMPLETE = 1;
+
+    /**
+     * The point engine, {@link #JACOBIAN} or {@link #COMPLETE}.
+     */
+    private final byte engine;
+
+    /**
+     * The value <code>3 b</code>, needed by the complete formulas.
+     */
+    private final FiniteField.FieldElement b3;
+
+    /**
+     * The cache of precomputed NAF points.
+     */
+    private final PrecomputationCache cache;
+
+    /**
+     * Doubling formula for arbitrary a in modified Jacobian coordinates,
+     * see {@link Point#twice}.
      */
-    private final FiniteField.FieldElement inverseOfTwo;
+    private final static byte GENERAL_A = 0;
+
+    /**
+     * Doubling formula for <code>a = -3</code>, which is the case for the
+     * NIST curves, see {@link Point#twice}.
+     */
+    private final static byte A_MINUS_THREE = 1;
+
+    /**
+     * Doubling formula for <code>a = 0</code>, which is the case for
+     * e.g. secp256k1, see {@link Point#twice}.
+     */
+    private final static byte A_ZERO = 2;
+
+    /**
+     * The doubling formula chosen for a, one of {@link #GENERAL_A},
+     * {@link #A_MINUS_THREE} and {@link #A_ZERO}.
+     */
+    private final byte doubling;
+
+    /**
+     * Tag of the SEC 1 encoding of the point at infinity.
+     */
+    private final static byte SEC1_INFINITY = 0;
+
+    /**
+     * Tag of the compressed SEC 1 encoding of a point with even y.
+     */
+    private final static byte SEC1_EVEN = 2;
+
+    /**
+     * Tag of the compressed SEC 1 encoding of a point with odd y.
+     */
+    private final static byte SEC1_ODD = 3;
+
+    /**
+     * Tag of the uncompressed SEC 1 encoding.
+     */
+    private final static byte SEC1_UNCOMPRESSED = 4;
 
 
 
@@ -41,13 +121,44 @@ public class EllipticCurve {
      * @throws  IllegalArgumentException Parameters do not represent an elliptic curve.
      */
     public EllipticCurve(FiniteField field, FiniteField.FieldElement a, FiniteField.FieldElement b) throws IllegalArgumentException {
+        this( field, a, b, JACOBIAN );
+    }
+
+    /**
+     * Construct a new elliptic curve, given the field, the values a and b
+     * and the point engine.
+     *
+     * @param   engine {@link #JACOBIAN} or {@link #COMPLETE}.
+     *
+     * @throws  IllegalArgumentException Parameters do not represent an elliptic curve.
+     * @throws  IllegalArgumentException Unknown engine.
+     * @throws  IllegalArgumentException {@link #COMPLETE} is requested for a
+     *          curve of even order.
+     */
+    public EllipticCurve( FiniteField field, FiniteField.FieldElement a,
+                          FiniteField.FieldElement b, byte engine )
+           throws IllegalArgumentException {
         this.field = field;
         this.a = a;
         this.b = b;
-        inverseOfTwo = field.new FieldElement("2").invert();
+        this.b3 = b.multiplyByWord( 3 );
+
+        if( engine != JACOBIAN && engine != COMPLETE )
+            throw new IllegalArgumentException( "FiniteField.EllipticCurve.<init>: Unknown engine." );
+        this.engine = engine;
+        this.cache = new PrecomputationCache( this );
+
+        if( a.equals( field.ZERO ) )
+            doubling = A_ZERO;
+        else if( a.add( field.ONE.multiplyByWord( 3 ) ).equals( field.ZERO ) )
+            doubling = A_MINUS_THREE;
+        else
+            doubling = GENERAL_A;
 
         if(! this.valid())
             throw new IllegalArgumentException( "FiniteField.EllipticCurve.<init>: Not a valid curve." );
+        if( engine == COMPLETE && hasPointOfOrderTwo( ) )
+            throw new IllegalArgumentException( "FiniteField.EllipticCurve.<init>: Complete formulas need a curve of odd order." );
     }
 
 
@@ -64,10 +175,10 @@ public class EllipticCurve {
         FiniteField.FieldElement aRes = field.new FieldElement(a.toString());
         FiniteField.FieldElement bRes = field.new FieldElement(b.toString());
 
-        aRes = aRes.multiply( a ).multiply( a );
+        aRes = aRes.square( ).multiply( a );
         aRes = aRes.multiplyByWord( 4 );
 
-        bRes = bRes.multiply( b );
+        bRes = bRes.square( );
         bRes = bRes.multiplyByWord( 27 );
 
         aRes = aRes.add( bRes );
@@ -75,6 +186,130 @@ public class EllipticCurve {
         return ( ! aRes.equals( field.ZERO ) );
     }
 
+    /**
+     * Test if this curve has a point of order two, which is the case if
+     * and only if its order is even. The points of order two are the
+     * points <code>(x, 0)</code> for the roots x of
+     * <code>f = x^3 + a x + b</code>, and f has a root in the field if and
+     * only if it has a common factor with <code>x^p - x</code>.
+     *
+     * @return  <tt>true</tt> if and only if f has a root.
+     */
+    private boolean hasPointOfOrderTwo( ) {
+
+        // x^p mod f by square and multiply, coefficients in ascending
+        // order of the powers of x
+        FiniteField.FieldElement[] x = { field.ZERO, field.ONE, field.ZERO };
+        FiniteField.FieldElement[] r = x;
+        for( int i = field.p.numBits( ) - 2; i >= 0; i-- ) {
+            r = multiplyModCubic( r, r );
+            if( field.p.testBit( i ) )
+                r = multiplyModCubic( r, x );
+        }
+
+        // gcd( f, x^p - x ) by the Euclidean algorithm
+        FiniteField.FieldElement[] u = { b, a, field.ZERO, field.ONE };
+        FiniteField.FieldElement[] v = { r[0], r[1].subtract( field.ONE ),
+                                         r[2] };
+        while( degree( v ) >= 0 ) {
+            FiniteField.FieldElement[] w = remainder( u, v );
+            u = v;
+            v = w;
+        }
+
+        return degree( u ) > 0;
+    }
+
+    /**
+     * Multiply two polynomials of degree at most two modulo
+     * <code>x^3 + a x + b</code>.
+     *
+     * @param   u first factor, coefficients in ascending order.
+     * @param   v second factor, coefficients in ascending order.
+     * @return  the product reduced to degree at most two.
+     */
+    private FiniteField.FieldElement[] multiplyModCubic(
+            FiniteField.FieldElement[] u, FiniteField.FieldElement[] v ) {
+
+        FiniteField.FieldElement[] c = new FiniteField.FieldElement[5];
+        for( int i = 0; i < 5; i++ )
+            c[i] = field.ZERO;
+        for( int i = 0; i < 3; i++ )
+            for( int j = 0; j < 3; j++ )
+                c[i + j] = c[i + j].add( u[i].multiply( v[j] ) );
+
+        // x^4 = -a x^2 - b x and x^3 = -a x - b
+        for( int i = 4; i >= 3; i-- ) {
+            c[i - 2] = c[i - 2].subtract( a.multiply( c[i] ) );
+            c[i - 3] = c[i - 3].subtract( b.multiply( c[i] ) );
+        }
+
+        return new FiniteField.FieldElement[]{ c[0], c[1], c[2] };
+    }
+
+    /**
+     * Returns the degree of a polynomial.
+     *
+     * @param   u coefficients in ascending order.
+     * @return  the degree, or <code>-1</code> for the zero polynomial.
+     */
+    private int degree( FiniteField.FieldElement[] u ) {
+
+        int i = u.length - 1;
+        while( i >= 0 && u[i].equals( field.ZERO ) )
+            i--;
+
+        return i;
+    }
+
+    /**
+     * Divide two polynomials.
+     *
+     * @param   u the dividend, coefficients in ascending order.
+     * @param   v the divisor, coefficients in ascending order, not zero.
+     * @return  the remainder of <code>u / v</code>.
+     */
+    private FiniteField.FieldElement[] remainder(
+            FiniteField.FieldElement[] u, FiniteField.FieldElement[] v ) {
+
+        FiniteField.FieldElement[] r = u.clone( );
+        int n = degree( v );
+        FiniteField.FieldElement lead = v[n].invert( );
+
+        for( int i = degree( r ); i >= n; i-- ) {
+            FiniteField.FieldElement q = r[i].multiply( lead );
+            for( int j = 0; j <= n; j++ )
+                r[i - n + j] = r[i - n + j].subtract( q.multiply( v[j] ) );
+        }
+
+        return r;
+    }
+
+    /**
+     * Returns the point engine used by {@link Point#multiply}.
+     *
+     * @return  {@link #JACOBIAN} or {@link #COMPLETE}.
+     */
+    public byte getEngine( ) {
+
+        return engine;
+
+    }
+
+    /**
+     * Returns the cache of precomputed NAF points of this curve, which
+     * is used by {@link Point#multiply(FiniteField.FieldElement)} and
+     * {@link #multiplyAdd}. Its capacity and counters can be accessed
+     * through the returned object.
+     *
+     * @return  the cache.
+     */
+    public PrecomputationCache getPrecomputationCache( ) {
+
+        return cache;
+
+    }
+
     /**
      * Get a string representation of this elliptic curve.
      *
@@ -86,6 +321,583 @@ public class EllipticCurve {
 
     }
 
+    /**
+     * Compute <code>u1 * P + u2 * Q</code> with a single chain of
+     * doublings. This is the interleaving method of <b>GECC</b>, p. 111:
+     * the width-w NAFs of both factors are processed together, so the
+     * doublings are shared and only the additions of both factors remain.
+     * This needs about half the doublings of two separate
+     * multiplications. The precomputed points are taken from the
+     * {@link #getPrecomputationCache cache}, as in
+     * {@link Point#multiply(FiniteField.FieldElement)}.
+     *
+     * @param   P the first point.
+     * @param   u1 the factor of <tt>P</tt>.
+     * @param   Q the second point.
+     * @param   u2 the factor of <tt>Q</tt>.
+     * @return  <code>u1 * P + u2 * Q</code>
+     *
+     * @see     Point#multiply(FiniteField.FieldElement,EllipticCurve.Point[],
+     *          byte)
+     */
+    public Point multiplyAdd( Point P, FiniteField.FieldElement u1,
+                              Point Q, FiniteField.FieldElement u2 ) {
+
+        PrecomputationCache.Table table =
+                cache.get( P, windowWidth( u1.numBits( ) ) );
+
+        return multiplyAdd( u1, table.points, table.width, Q, u2 );
+
+    }
+
+    /**
+     * Compute <code>u1 * P + u2 * Q</code> with a single chain of
+     * doublings, where the NAF points of P are already precomputed. This
+     * suits a fixed point P like the generator in ECDSA verification. The
+     * points of Q are taken from the {@link #getPrecomputationCache
+     * cache}.
+     *
+     * @param   u1 the factor of P.
+     * @param   precomputed the points precomputed by
+     *          {@link Point#precomputeNAFPoints} for P.
+     * @param   width the window width of <tt>precomputed</tt>.
+     * @param   Q the second point.
+     * @param   u2 the factor of <tt>Q</tt>.
+     * @return  <code>u1 * P + u2 * Q</code>
+     *
+     * @see     #multiplyAdd(EllipticCurve.Point,FiniteField.FieldElement,
+     *          EllipticCurve.Point,FiniteField.FieldElement)
+     */
+    public Point multiplyAdd( FiniteField.FieldElement u1,
+                              Point[] precomputed, byte width,
+                              Point Q, FiniteField.FieldElement u2 ) {
+
+        PrecomputationCache.Table tableQ =
+                cache.get( Q, windowWidth( u2.numBits( ) ) );
+        byte[][] naf = { u1.toNAF( width ), u2.toNAF( tableQ.width ) };
+        Point[][] table = { precomputed, tableQ.points };
+
+        int length = Math.max( naf[0].length, naf[1].length );
+
+        if( engine == COMPLETE ) {
+            ProjectivePoint[][] projective = new ProjectivePoint[2][];
+            for( int j = 0; j < 2; j++ ) {
+                projective[j] = new ProjectivePoint[table[j].length];
+                for( int i = 0; i < table[j].length; i++ )
+                    projective[j][i] = table[j][i].toProjective( );
+            }
+
+            ProjectivePoint result = new ProjectivePoint( );
+
+            for( int i = length - 1; i >= 0; i-- ) {
+                result = result.twice( );
+                for( int j = 0; j < 2; j++ ) {
+                    int digit = ( i < naf[j].length ? naf[j][i] : 0 );
+                    if( digit > 0 )
+                        result = result.add(
+                                projective[j][ (digit - 1) >> 1 ] );
+                    else if( digit < 0 )
+                        result = result.add(
+                                projective[j][ (-digit - 1) >> 1 ].negate( ) );
+                }
+            }
+
+            return result.toPoint( );
+        }
+
+        Point result = new Point( );
+
+        for( int i = length - 1; i >= 0; i-- ) {
+            result = result.twice( );
+            for( int j = 0; j < 2; j++ ) {
+                int digit = ( i < naf[j].length ? naf[j][i] : 0 );
+                if( digit > 0 )
+                    result = result.add( table[j][ (digit - 1) >> 1 ] );
+                else if( digit < 0 )
+                    result = result.subtract( table[j][ (-digit - 1) >> 1 ] );
+            }
+        }
+
+        return result;
+
+    }
+
+    /**
+     * Compute the sum of multiples <code>k_1 P_1 + ... + k_n P_n</code>.
+     * Depending on n and the length of the factors Straus' method or
+     * Pippenger's bucket method is used, whose window width grows with n.
+     * This is much faster than n multiplications by
+     * {@link Point#multiply(FiniteField.FieldElement)}, see
+     * {@link MultiScalarMultiplication} for the details.
+     * <p />
+     * The time depends on the factors and the point engine is ignored,
+     * so this is meant for public factors, e.g. in batch verification.
+     *
+     * @param   points the points, which are not modified.
+     * @param   factors the factors of the points.
+     * @return  <code>factors[0] * points[0] + ... +
+     *          factors[n-1] * points[n-1]</code>, the point at infinity
+     *          for no points.
+     *
+     * @throws  IllegalArgumentException the arrays differ in length.
+     */
+    public Point multiScalarMultiply( Point[] points,
+                                      FiniteField.FieldElement[] factors )
+           throws IllegalArgumentException {
+
+        return multiScalarMultiply( points, factors, null );
+
+    }
+
+    /**
+     * Compute the sum of multiples like {@link #multiScalarMultiply(
+     * EllipticCurve.Point[],FiniteField.FieldElement[])}, but split the
+     * work of the bucket method across the threads of a
+     * <tt>ForkJoinPool</tt>. The windows are computed by separate tasks,
+     * and if there are fewer windows than threads the points are split
+     * into chunks as well. This pays off for large batches, about
+     * <code>10^4</code> points and more.
+     *
+     * @param   points the points, which are not modified.
+     * @param   factors the factors of the points.
+     * @param   pool the pool which runs the tasks, <tt>null</tt> for the
+     *          calling thread only.
+     * @return  <code>factors[0] * points[0] + ... +
+     *          factors[n-1] * points[n-1]</code>, the point at infinity
+     *          for no points.
+     *
+     * @throws  IllegalArgumentException the arrays differ in length.
+     */
+    public Point multiScalarMultiply( Point[] points,
+                                      FiniteField.FieldElement[] factors,
+                                      ForkJoinPool pool )
+           throws IllegalArgumentException {
+
+        if( points.length != factors.length )
+            throw new IllegalArgumentException
+            ( "FiniteField.EllipticCurve.multiScalarMultiply: Arrays " +
+              "differ in length." );
+
+        return new MultiScalarMultiplication( this, points, factors ).
+                compute( pool );
+
+    }
+
+    /**
+     * Estimates the memory of an affine point in a table of precomputed
+     * points, assuming compressed object pointers: the point, its
+     * reference in the table and two field elements with their
+     * magnitudes. The z-coordinate is shared by all affine points.
+     *
+     * @return  the size in bytes.
+     */
+    long estimatePointSize( ) {
+
+        int words = ( field.p.numBits( ) + 31 ) >>> 5;
+        long fieldElement = 24 + 16 + 4 * words;
+
+        return 2 * fieldElement + 40 + 4;
+
+    }
+
+    /**
+     * Calculate the window width for a NAF multiplication. This
+     * depends on the bitsize of the factor (see GECC, p. 100).
+     *
+     * @param   bitSize bitsize of the factor.
+     * @return  the window width between 2 and 6.
+     */
+    private byte windowWidth( int bitSize ) {
+
+        byte width = 2;
+        int additions = ( ( 1 << (width - 2) ) - 1 )
+                + ( bitSize / (width + 1) );
+
+        while( width < 6 ) {
+
+            width ++;
+            int additions2 = ( 1 << (width - 2) ) - 1;
+            additions2 += bitSize / (width + 1);
+
+            if( additions2 > additions ) {
+                width --;
+                break;
+            }
+
+            additions = ( 1 << (width - 2) ) - 1;
+            additions += bitSize / (width + 1);
+        }
+
+        return width;
+
+    }
+
+    /**
+     * Normalize points to affine coordinates, i.e. to Jacobian coordinates
+     * with <code>z = 1</code>. All z-coordinates are inverted at once by
+     * {@link FiniteField#invertAll}, so the conversion needs a single
+     * inversion for all points. Points which are already affine or have
+     * been normalized before are not inverted again.
+     * <p />
+     * Every point remembers its affine equivalent, so later calls of
+     * {@link Point#getX}, {@link Point#getY} or {@link Point#normalize}
+     * need no further inversion.
+     *
+     * @param   points the points to normalize.
+     * @return  the affine equivalents of the points, points at infinity
+     *          are returned unchanged.
+     *
+     * @see     Point#normalize
+     */
+    public Point[] normalizeAll( Point[] points ) {
+
+        Point[] result = new Point[points.length];
+        FiniteField.FieldElement[] inverses =
+                new FiniteField.FieldElement[points.length];
+
+        for( int i = 0; i < points.length; i++ ) {
+            Point point = points[i];
+            if( point.infinity || point.isAffine( ) )
+                result[i] = point;
+            else
+                result[i] = point.affine;
+            inverses[i] = ( result[i] == null ? point.z : field.ZERO );
+        }
+
+        field.invertAll( inverses, inverses );
+
+        for( int i = 0; i < points.length; i++ ) {
+            if( result[i] != null )
+                continue;
+
+            Point point = points[i];
+            FiniteField.FieldElement zInvPow2 = inverses[i].square( );
+            FiniteField.FieldElement zInvPow3 = zInvPow2.
+                    multiply( inverses[i] );
+            result[i] = new Point( point.x.multiply( zInvPow2 ),
+                                   point.y.multiply( zInvPow3 ),
+                                   field.ONE, a );
+            point.affine = result[i];
+        }
+
+        return result;
+
+    }
+
+    /**
+     * Convert points to affine coordinates in place.
+     *
+     * @param   points the points, which are replaced by their affine
+     *          equivalents.
+     *
+     * @see     #normalizeAll
+     */
+    void toAffine( Point[] points ) {
+
+        Point[] affine = normalizeAll( points );
+        System.arraycopy( affine, 0, points, 0, points.length );
+
+    }
+
+    /**
+     * Returns the length of the SEC 1 encoding of a point other than the
+     * point at infinity, which is encoded by a single zero byte.
+     *
+     * @param   compressed <tt>true</tt> for the compressed encoding.
+     * @return  number of bytes per point.
+     *
+     * @see     Point#encode(boolean)
+     */
+    public int getEncodedLength( boolean compressed ) {
+
+        return 1 + ( compressed ? 1 : 2 ) * field.getEncodedLength( );
+
+    }
+
+    /**
+     * Encode many points in SEC 1 format into a buffer at its current
+     * position. The points are normalized together by
+     * {@link #normalizeAll}, so the whole batch needs a single inversion.
+     *
+     * @param   points the points to encode.
+     * @param   dst the buffer.
+     * @param   compressed <tt>true</tt> for the compressed encoding.
+     *
+     * @throws  BufferOverflowException <tt>dst</tt> has not enough bytes
+     *          remaining, nothing is written.
+     *
+     * @see     #decodeAll(ByteBuffer,int)
+     */
+    public void encodeAll( Point[] points, ByteBuffer dst,
+                           boolean compressed )
+           throws BufferOverflowException {
+
+        Point[] affine = normalizeAll( points );
+
+        int length = 0;
+        for( Point point : affine )
+            length += ( point.infinity ? 1 : getEncodedLength( compressed ) );
+        if( dst.remaining( ) < length )
+            throw new BufferOverflowException( );
+
+        for( Point point : affine )
+            dst.put( point.encode( compressed ) );
+
+    }
+
+    /**
+     * Decode a point from its SEC 1 encoding, see {@link #decodeAll(
+     * ByteBuffer,EllipticCurve.Point[],int,int)}.
+     *
+     * @param   src the encoding.
+     * @return  the point in affine coordinates.
+     *
+     * @throws  IllegalArgumentException <tt>src</tt> is no valid encoding
+     *          of a point on this curve.
+     * @throws  NumberFormatException a coordinate is not less than p.
+     */
+    public Point decodePoint( byte[] src )
+           throws IllegalArgumentException, NumberFormatException {
+
+        ByteBuffer buffer = ByteBuffer.wrap( src );
+        Point result;
+
+        try {
+            result = decodePoint( buffer );
+        }
+        catch( BufferUnderflowException e ) {
+            throw new IllegalArgumentException
+            ( "FiniteField.EllipticCurve.decodePoint: Encoding too short." );
+        }
+
+        if( buffer.hasRemaining( ) )
+            throw new IllegalArgumentException
+            ( "FiniteField.EllipticCurve.decodePoint: Encoding too long." );
+
+        return result;
+
+    }
+
+    /**
+     * Decode a point from its SEC 1 encoding at the current position of a
+     * buffer, see {@link #decodeAll(ByteBuffer,EllipticCurve.Point[],int,
+     * int)}.
+     *
+     * @param   src the buffer.
+     * @return  the point in affine coordinates.
+     *
+     * @throws  BufferUnderflowException <tt>src</tt> ends within the
+     *          encoding, nothing is read.
+     * @throws  IllegalArgumentException the encoding is invalid or the
+     *          point is not on this curve, nothing is read.
+     * @throws  NumberFormatException a coordinate is not less than p,
+     *          nothing is read.
+     */
+    public Point decodePoint( ByteBuffer src )
+           throws BufferUnderflowException, IllegalArgumentException,
+                  NumberFormatException {
+
+        Point[] result = new Point[1];
+        decodeAll( src, result, 0, 1 );
+
+        return result[0];
+
+    }
+
+    /**
+     * Decode <tt>count</tt> points from consecutive SEC 1 encodings at the
+     * current position of a buffer, see {@link #decodeAll(ByteBuffer,
+     * EllipticCurve.Point[],int,int)}.
+     *
+     * @param   src the buffer.
+     * @param   count number of points.
+     * @return  the points in affine coordinates.
+     *
+     * @throws  BufferUnderflowException <tt>src</tt> ends within the
+     *          encodings, nothing is read.
+     * @throws  IllegalArgumentException an encoding is invalid or a point
+     *          is not on this curve, nothing is read.
+     * @throws  NumberFormatException a coordinate is not less than p,
+     *          nothing is read.
+     */
+    public Point[] decodeAll( ByteBuffer src, int count )
+           throws BufferUnderflowException, IllegalArgumentException,
+                  NumberFormatException {
+
+        Point[] result = new Point[count];
+        decodeAll( src, result, 0, count );
+
+        return result;
+
+    }
+
+    /**
+     * Decode <tt>count</tt> points from consecutive SEC 1 encodings at the
+     * current position of a buffer into an array. Every encoding may be
+     * compressed, uncompressed or the point at infinity, see <b>SEC 1</b>,
+     * sections 2.3.3 and 2.3.4. The position is advanced by the number of
+     * bytes read.
+     * <p />
+     * The points are decoded as a batch: the right sides
+     * <code>x^3 + a x + b</code> are computed by
+     * {@link FiniteField#multiplyAll}, the compressed points are
+     * decompressed by {@link FiniteField#sqrtAll}, whose validation of the
+     * roots is the check that they lie on the curve, and the uncompressed
+     * points are checked against the same right sides. So no point needs
+     * the check of the constructor {@link Point#Point(
+     * FiniteField.FieldElement,FiniteField.FieldElement)}.
+     *
+     * @param   src the buffer.
+     * @param   dst array receiving the points in affine coordinates.
+     * @param   offset index of the first point in <tt>dst</tt>.
+     * @param   count number of points.
+     *
+     * @throws  IndexOutOfBoundsException the range does not fit into
+     *          <tt>dst</tt>.
+     * @throws  BufferUnderflowException <tt>src</tt> ends within the
+     *          encodings, nothing is read.
+     * @throws  IllegalArgumentException an encoding is invalid or a point
+     *          is not on this curve, nothing is read.
+     * @throws  NumberFormatException a coordinate is not less than p,
+     *          nothing is read.
+     */
+    public void decodeAll( ByteBuffer src, Point[] dst, int offset,
+                           int count )
+           throws IndexOutOfBoundsException, BufferUnderflowException,
+                  IllegalArgumentException, NumberFormatException {
+
+        if( offset < 0 || count < 0 || offset > dst.length - count )
+            throw new IndexOutOfBoundsException( );
+
+        ByteBuffer in = src.duplicate( );
+        int length = field.getEncodedLength( );
+
+        // split the encodings into the tags and the coordinates of the
+        // compressed and the uncompressed points
+        byte[] tags = new byte[count];
+        int[] index = new int[count];
+        int compressed = 0, uncompressed = 0;
+
+        for( int i = 0; i < count; i++ ) {
+
+            int skip = 0;
+
+            tags[i] = in.get( );
+            if( tags[i] == SEC1_EVEN || tags[i] == SEC1_ODD ) {
+                index[i] = compressed++;
+                skip = length;
+            }
+            else if( tags[i] == SEC1_UNCOMPRESSED ) {
+                index[i] = uncompressed++;
+                skip = 2 * length;
+            }
+            else if( tags[i] != SEC1_INFINITY )
+                throw new IllegalArgumentException
+                ( "FiniteField.EllipticCurve.decodeAll: Invalid encoding." );
+
+            if( in.remaining( ) < skip )
+                throw new BufferUnderflowException( );
+            in.position( in.position( ) + skip );
+        }
+
+        byte[] xCompressed = new byte[compressed * length];
+        byte[] xUncompressed = new byte[uncompressed * length];
+        byte[] yUncompressed = new byte[uncompressed * length];
+
+        in = src.duplicate( );
+        for( int i = 0; i < count; i++ ) {
+            in.get( );
+            if( tags[i] == SEC1_UNCOMPRESSED ) {
+                in.get( xUncompressed, index[i] * length, length );
+                in.get( yUncompressed, index[i] * length, length );
+            }
+            else if( tags[i] != SEC1_INFINITY )
+                in.get( xCompressed, index[i] * length, length );
+        }
+
+        FiniteField.FieldElement[] x1 =
+                field.decodeAll( xCompressed, ByteOrder.BIG_ENDIAN );
+        FiniteField.FieldElement[] x2 =
+                field.decodeAll( xUncompressed, ByteOrder.BIG_ENDIAN );
+        FiniteField.FieldElement[] y2 =
+                field.decodeAll( yUncompressed, ByteOrder.BIG_ENDIAN );
+
+        FiniteField.FieldElement[] y1 = rightSide( x1 );
+        field.sqrtAll( y1, y1 );
+
+        FiniteField.FieldElement[] right = rightSide( x2 );
+        FiniteField.FieldElement[] left =
+                new FiniteField.FieldElement[uncompressed];
+        field.multiplyAll( y2, y2, left );
+
+        Point[] result = new Point[count];
+
+        for( int i = 0; i < count; i++ ) {
+
+            int j = index[i];
+
+            if( tags[i] == SEC1_INFINITY ) {
+                result[i] = new Point( );
+                continue;
+            }
+
+            FiniteField.FieldElement x, y;
+
+            if( tags[i] == SEC1_UNCOMPRESSED ) {
+                x = x2[j];
+                y = ( left[j].equals( right[j] ) ? y2[j] : null );
+            }
+            else {
+                // choose the root with the parity of the tag, a zero root
+                // has no odd counterpart, negate( ) may return p for it
+                boolean odd = tags[i] == SEC1_ODD;
+                x = x1[j];
+                y = y1[j];
+                if( y != null && y.equals( field.ZERO ) ) {
+                    if( odd )
+                        y = null;
+                }
+                else if( y != null && y.testBit( 0 ) != odd )
+                    y = y.negate( );
+            }
+
+            if( y == null )
+                throw new IllegalArgumentException
+                ( "FiniteField.EllipticCurve.decodeAll: Point not on " +
+                  "curve." );
+
+            result[i] = new Point( x, y, field.ONE, a );
+        }
+
+        System.arraycopy( result, 0, dst, offset, count );
+        src.position( in.position( ) );
+
+    }
+
+    /**
+     * Computes the right side of the curve equation for many
+     * x-coordinates.
+     *
+     * @param   x the x-coordinates.
+     * @return  <code>x^3 + a x + b</code> for every x.
+     */
+    private FiniteField.FieldElement[] rightSide(
+            FiniteField.FieldElement[] x ) {
+
+        FiniteField.FieldElement[] result =
+                new FiniteField.FieldElement[x.length];
+
+        field.multiplyAll( x, x, result );
+        for( int i = 0; i < x.length; i++ )
+            result[i] = result[i].add( a );
+        field.multiplyAll( result, x, result );
+        for( int i = 0; i < x.length; i++ )
+            result[i] = result[i].add( b );
+
+        return result;
+
+    }
+
 
 
 
@@ -117,90 +929,260 @@ public class EllipticCurve {
          */
         private FiniteField.FieldElement z;
 
+        /**
+         * The value <code>a z^4</code> of modified Jacobian coordinates,
+         * see <b>CAi</b>, p. 40, or <tt>null</tt> if it is not known. It
+         * is only used for curves with arbitrary a, where {@link #twice}
+         * passes it on to the doubled point.
+         */
+        private FiniteField.FieldElement aZPow4;
+
         /**
          * Is this point the point at infinity?
          */
-        private boolean infinity = false;
+        private boolean infinity = false;
+
+        /**
+         * The affine equivalent of this point once it has been computed by
+         * {@link #normalize} or {@link EllipticCurve#normalizeAll},
+         * <tt>null</tt> before.
+         */
+        private volatile Point affine;
+
+
+
+
+        /**
+         * Creates a new point without initializing the coordinates,
+         * i.e. create a point at infinity.
+         */
+        public Point( ) {
+
+            this.infinity = true;
+            this.x = null;
+            this.y = null;
+            this.z = null;
+
+        }
+
+        /**
+         * Create a new point on the elliptic curve, given the
+         * coordinates in affine description in a string representation.
+         *
+         * @throws  IllegalArgumentException Parameters do not represent a
+         *          point on the given elliptic curve.
+         */
+        public Point( FiniteField.FieldElement x, FiniteField.FieldElement y ) throws IllegalArgumentException {
+            this.x = x;
+            this.y = y;
+            this.z = field.new FieldElement("1");
+            this.aZPow4 = a;
+
+            if( ! this.onCurve() )
+                throw new IllegalArgumentException("FiniteField.EllipticCurve.Point.<init>: Point not on curve." );
+        }
+
+        /**
+         * Create a new point on the elliptic curve, given the
+         * coordinates in Jacobian-projective description in a string
+         * representation.
+         */
+        private Point( FiniteField.FieldElement x, FiniteField.FieldElement y, FiniteField.FieldElement z ) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        /**
+         * Create a new point on the elliptic curve, given the
+         * coordinates in modified Jacobian description.
+         */
+        private Point( FiniteField.FieldElement x, FiniteField.FieldElement y,
+                       FiniteField.FieldElement z,
+                       FiniteField.FieldElement aZPow4 ) {
+            this( x, y, z );
+            this.aZPow4 = aZPow4;
+        }
+
+
+        /**
+         * Create a new point, given a point. This is used to create return
+         * values for methods like {@link #add}.
+         */
+        private Point( Point P ) {
+            // field elements are immutable and can be shared
+            this.x = P.x;
+            this.y = P.y;
+            this.z = P.z;
+            this.aZPow4 = P.aZPow4;
+            this.infinity = P.infinity;
+            this.affine = P.affine;
+        }
+
+
+
+
+        /**
+         * Returns the x-coordinate of point <tt>this</tt>
+         * in affine representation
+         *
+         * @return x-coordinate of this
+         *
+         * @throws  ArithmeticException <tt>this</tt> is the point at
+         *          infinity.
+         *
+         * @see     #normalize
+         */
+        public FiniteField.FieldElement getX( ) throws ArithmeticException {
+
+            if( infinity )
+                throw new ArithmeticException
+                ( "FiniteField.EllipticCurve.Point.getX: Point at infinity." );
+
+            return normalize( ).x;
+
+        }
+
+        /**
+         * Returns the y-coordinate of point <tt>this</tt>
+         * in affine representation
+         *
+         * @return y-coordinate of this
+         *
+         * @throws  ArithmeticException <tt>this</tt> is the point at
+         *          infinity.
+         *
+         * @see     #normalize
+         */
+        public FiniteField.FieldElement getY( ) throws ArithmeticException {
 
+            if( infinity )
+                throw new ArithmeticException
+                ( "FiniteField.EllipticCurve.Point.getY: Point at infinity." );
 
+            return normalize( ).y;
 
+        }
 
         /**
-         * Creates a new point without initializing the coordinates,
-         * i.e. create a point at infinity.
+         * Returns the affine equivalent of <tt>this</tt>, i.e. the same
+         * point with <code>z = 1</code>. The inversion of z is done only
+         * once, the result is kept and returned by later calls. To
+         * normalize many points at once use
+         * {@link EllipticCurve#normalizeAll}.
+         *
+         * @return  the point in affine coordinates, <tt>this</tt> if it is
+         *          already affine or the point at infinity.
          */
-        public Point( ) {
+        public Point normalize( ) {
 
-            this.infinity = true;
-            this.x = null;
-            this.y = null;
-            this.z = null;
+            if( infinity || isAffine( ) )
+                return this;
+
+            Point result = affine;
+
+            if( result == null ) {
+                FiniteField.FieldElement zInv = z.invert( );
+                FiniteField.FieldElement zInvPow2 = zInv.square( );
+                result = new Point( x.multiply( zInvPow2 ),
+                                    y.multiply( zInvPow2.multiply( zInv ) ),
+                                    field.ONE, a );
+                affine = result;
+            }
+
+            return result;
 
         }
 
         /**
-         * Create a new point on the elliptic curve, given the
-         * coordinates in affine description in a string representation.
+         * Encode <tt>this</tt> in SEC 1 format, see <b>SEC 1</b>, section
+         * 2.3.3. The compressed encoding holds x and the parity of y, the
+         * uncompressed one both coordinates, each in big endian order with
+         * {@link FiniteField#getEncodedLength} bytes. The point at infinity
+         * is encoded by a single zero byte.
          *
-         * @throws  IllegalArgumentException Parameters do not represent a
-         *          point on the given elliptic curve.
+         * @param   compressed <tt>true</tt> for the compressed encoding.
+         * @return  the encoding.
+         *
+         * @see     EllipticCurve#decodePoint(byte[])
          */
-        public Point( FiniteField.FieldElement x, FiniteField.FieldElement y ) throws IllegalArgumentException {
-            this.x = x;
-            this.y = y;
-            this.z = field.new FieldElement("1");
+        public byte[] encode( boolean compressed ) {
+
+            if( infinity )
+                return new byte[]{ SEC1_INFINITY };
+
+            Point point = normalize( );
+            byte[] coordinates = field.encodeAll( compressed ?
+                    new FiniteField.FieldElement[]{ point.x } :
+                    new FiniteField.FieldElement[]{ point.x, point.y },
+                    ByteOrder.BIG_ENDIAN );
+
+            byte[] result = new byte[1 + coordinates.length];
+            if( ! compressed )
+                result[0] = SEC1_UNCOMPRESSED;
+            else
+                result[0] = ( point.y.testBit( 0 ) ? SEC1_ODD : SEC1_EVEN );
+            System.arraycopy( coordinates, 0, result, 1,
+                              coordinates.length );
+
+            return result;
 
-            if( ! this.onCurve() )
-                throw new IllegalArgumentException("FiniteField.EllipticCurve.Point.<init>: Point not on curve." );
         }
 
         /**
-         * Create a new point on the elliptic curve, given the
-         * coordinates in Jacobian-projective description in a string
-         * representation.
+         * Encode <tt>this</tt> in SEC 1 format into a buffer at its current
+         * position, see {@link #encode(boolean)}. The byte order of the
+         * buffer is ignored.
+         *
+         * @param   dst the buffer.
+         * @param   compressed <tt>true</tt> for the compressed encoding.
+         *
+         * @throws  BufferOverflowException <tt>dst</tt> has not enough
+         *          bytes remaining, nothing is written.
+         *
+         * @see     EllipticCurve#decodePoint(ByteBuffer)
          */
-        private Point( FiniteField.FieldElement x, FiniteField.FieldElement y, FiniteField.FieldElement z ) {
-            this.x = x;
-            this.y = y;
-            this.z = z;
-        }
+        public void encode( ByteBuffer dst, boolean compressed )
+               throws BufferOverflowException {
 
+            dst.put( encode( compressed ) );
 
-        /**
-         * Create a new point, given a point. This is used to create return
-         * values for methods like {@link #add}.
-         */
-        private Point( Point P ) {
-            this.x = field.new FieldElement(P.x.toString());
-            this.y = field.new FieldElement(P.y.toString());
-            this.z = field.new FieldElement(P.z.toString());
-            this.infinity = P.infinity;
         }
 
+        /**
+         * Returns the coordinates of <tt>this</tt> as stored.
+         *
+         * @return  <code>{x, y, z}</code>, not for the point at infinity.
+         */
+        FiniteField.FieldElement[] coordinates( ) {
 
+            return new FiniteField.FieldElement[]{ x, y, z };
 
+        }
 
         /**
-         * Returns the x-coordinate of point <tt>this</tt>
-         * in affine representation
+         * Returns the curve of <tt>this</tt>.
          *
-         * @return x-coordinate of this
+         * @return  the curve the point lies on.
          */
-        public FiniteField.FieldElement getX( ) {
+        EllipticCurve curve( ) {
 
-            return x.divide( z.multiply( z ) );
+            return EllipticCurve.this;
 
         }
 
         /**
-         * Returns the y-coordinate of point <tt>this</tt>
-         * in affine representation
+         * Determines wether <tt>this</tt> is stored in affine coordinates,
+         * i.e. with <code>z = 1</code>.
          *
-         * @return y-coordinate of this
+         * @return  <tt>true</tt> if and only if this is not the point at
+         *          infinity and its z-coordinate is one.
+         *
+         * @see     #addAffine
          */
-        public FiniteField.FieldElement getY( ) {
+        private boolean isAffine( ) {
 
-            return y.divide( z.multiply( z ).multiply( z ) );
+            return ! infinity && z.equals( field.ONE );
 
         }
 
@@ -227,12 +1209,12 @@ public class EllipticCurve {
             if( infinity )
                 return true;
 
-            FiniteField.FieldElement zPow2 = z.multiply( z );
-            FiniteField.FieldElement zPow4 = zPow2.multiply( zPow2 );
+            FiniteField.FieldElement zPow2 = z.square( );
+            FiniteField.FieldElement zPow4 = zPow2.square( );
             FiniteField.FieldElement zPow6 = zPow4.multiply( zPow2 );
 
-            FiniteField.FieldElement left  = y.multiply( y );
-            FiniteField.FieldElement right = x.multiply( x.multiply( x ) );
+            FiniteField.FieldElement left  = y.square( );
+            FiniteField.FieldElement right = x.multiply( x.square( ) );
             right = right.add( a.multiply( x.multiply( zPow4 ) ) );
             right = right.add( b.multiply( zPow6 ) );
 
@@ -265,11 +1247,24 @@ public class EllipticCurve {
             if( operand.infinity )
                 return new Point( this );
 
+            if( operand.isAffine( ) )
+                return this.addAffine( operand );
+            if( this.isAffine( ) )
+                return operand.addAffine( this );
+
+            // a known affine equivalent allows a mixed addition as well
+            Point affine = operand.affine;
+            if( affine != null )
+                return this.addAffine( affine );
+            affine = this.affine;
+            if( affine != null )
+                return operand.addAffine( affine );
+
             if( this.equals( operand ) )
                 return this.twice();
 
-            FiniteField.FieldElement z1Pow2 = this.z.multiply( this.z );
-            FiniteField.FieldElement z2Pow2 = operand.z.multiply( operand.z );
+            FiniteField.FieldElement z1Pow2 = this.z.square( );
+            FiniteField.FieldElement z2Pow2 = operand.z.square( );
 
             FiniteField.FieldElement lambda1 = this.x.multiply( z2Pow2 );
             FiniteField.FieldElement lambda2 = operand.x.multiply( z1Pow2 );
@@ -283,7 +1278,7 @@ public class EllipticCurve {
             FiniteField.FieldElement lambda6 = lambda4.subtract( lambda5 );
             FiniteField.FieldElement lambda8 = lambda4.add( lambda5 );
 
-            FiniteField.FieldElement lambda3Pow2 = lambda3.multiply( lambda3 );
+            FiniteField.FieldElement lambda3Pow2 = lambda3.square( );
 
             FiniteField.FieldElement z3 = this.z.multiply( operand.z ).
                     multiply( lambda3 );
@@ -292,16 +1287,65 @@ public class EllipticCurve {
             if( z3.equals( field.ZERO ) )
                 return new Point( );
 
-            FiniteField.FieldElement x3 = lambda6.multiply( lambda6 );
-            x3 = x3.subtract( lambda7.multiply( lambda3Pow2 ) );
+            FiniteField.FieldElement lambda7Lambda3Pow2 =
+                    lambda7.multiply( lambda3Pow2 );
+            FiniteField.FieldElement x3 = lambda6.square( );
+            x3 = x3.subtract( lambda7Lambda3Pow2 );
 
-            FiniteField.FieldElement lambda9 = lambda7.multiply( lambda3Pow2 );
-            lambda9 = lambda9.subtract( x3.add( x3 ) );
+            FiniteField.FieldElement lambda9 = lambda7Lambda3Pow2.
+                    subtract( x3.add( x3 ) );
 
             FiniteField.FieldElement y3 = lambda9.multiply( lambda6 ).
                     subtract( lambda8.
                             multiply( lambda3Pow2.multiply(lambda3) ) );
-            y3 = y3.multiply( inverseOfTwo );
+            y3 = y3.halve( );
+
+            return new Point( x3, y3, z3 );
+
+        }
+
+        /**
+         * Add a point in affine coordinates, i.e. with <code>z = 1</code>,
+         * to <tt>this</tt>. This is the mixed addition of <b>GECC</b>,
+         * p. 91, which needs 8 multiplications and 3 squarings instead of
+         * the 12 multiplications and 4 squarings of {@link #add}, since
+         * all powers of the second z-coordinate vanish.
+         * <p />
+         * Unlike {@link #add}, which compares the coordinates, this method
+         * detects <code>this == operand</code> from the intermediate
+         * values, so it also works if <tt>this</tt> has a different z.
+         *
+         * @param   operand the point to add, neither at infinity nor
+         *          <tt>this</tt> at infinity.
+         * @return  <code>this + operand</code>
+         */
+        private Point addAffine( Point operand ) {
+
+            FiniteField.FieldElement z1Pow2 = this.z.square( );
+
+            FiniteField.FieldElement lambda1 = operand.x.multiply( z1Pow2 ).
+                    subtract( this.x );
+            FiniteField.FieldElement lambda2 = operand.y.multiply(
+                    z1Pow2.multiply( this.z ) ).subtract( this.y );
+
+            if( lambda1.equals( field.ZERO ) ) {
+                // same x-coordinate, the points are equal or negated
+                if( lambda2.equals( field.ZERO ) )
+                    return this.twice( );
+                return new Point( );
+            }
+
+            FiniteField.FieldElement lambda1Pow2 = lambda1.square( );
+            FiniteField.FieldElement lambda1Pow3 = lambda1Pow2.
+                    multiply( lambda1 );
+            FiniteField.FieldElement lambda3 = this.x.multiply( lambda1Pow2 );
+
+            FiniteField.FieldElement x3 = lambda2.square( ).subtract(
+                    lambda1Pow3.add( lambda3.add( lambda3 ) ) );
+            FiniteField.FieldElement y3 = lambda2.multiply(
+                    lambda3.subtract( x3 ) ).subtract(
+                    this.y.multiply( lambda1Pow3 ) );
+            FiniteField.FieldElement z3 = this.z.multiply( lambda1 );
 
             return new Point( x3, y3, z3 );
 
@@ -329,6 +1373,21 @@ public class EllipticCurve {
         /**
          * Double a point. The algorithm for doing that can be found in
          * <b>CAi</b>, p. 39.
+         * <p />
+         * Only <code>lambda1 = 3 x^2 + a z^4</code> depends on a, and the
+         * curve chooses the cheapest way to compute it:
+         * <ul>
+         * <li> for <code>a = -3</code> it is
+         *      <code>3 (x - z^2)(x + z^2)</code>,
+         *      i.e. 4 multiplications and 4 squarings in total,
+         * <li> for <code>a = 0</code> it is <code>3 x^2</code>,
+         *      i.e. 3 multiplications and 4 squarings in total,
+         * <li> otherwise the point carries <code>a z^4</code> in modified
+         *      Jacobian coordinates, see <b>CAi</b>, p. 40. The value for
+         *      the result is <code>2 lambda3 a z^4</code>, so a run of
+         *      doublings needs 4 multiplications and 4 squarings each,
+         *      instead of 4 multiplications and 6 squarings.
+         * </ul>
          *
          * @return  <code>2 * this</code>
          */
@@ -339,23 +1398,46 @@ public class EllipticCurve {
             if( y.equals( field.ZERO ) )
                 return new Point( );
 
-            FiniteField.FieldElement yPow2 = y.multiply( y );
-            FiniteField.FieldElement zPow2 = z.multiply( z );
+            FiniteField.FieldElement yPow2 = y.square( );
+
+            // the small multiples and their sums stay unreduced in the
+            // bits above p and are reduced once before they are used
+            FiniteField.FieldElement lambda1;
+            FiniteField.FieldElement aZPow4 = null;
+
+            if( doubling == A_MINUS_THREE ) {
+                FiniteField.FieldElement zPow2 = z.square( );
+                lambda1 = x.subtract( zPow2 ).multiply( x.add( zPow2 ) ).
+                        multiplyByWordLazy( 3 ).reduceLazy( );
+            }
+            else if( doubling == A_ZERO )
+                lambda1 = x.square( ).multiplyByWordLazy( 3 ).reduceLazy( );
+            else {
+                aZPow4 = this.aZPow4;
+                if( aZPow4 == null )
+                    aZPow4 = a.multiply( z.square( ).square( ) );
+                lambda1 = x.square( ).multiplyByWordLazy( 3 ).
+                        addLazy( aZPow4 ).reduceLazy( );
+            }
 
-            FiniteField.FieldElement lambda1 = x.multiply(x).multiplyByWord( 3 ).
-                    add( a.multiply( zPow2.multiply(zPow2) ) );
-            FiniteField.FieldElement lambda2 = x.multiply( yPow2 ).multiplyByWord( 4 );
-            FiniteField.FieldElement lambda3 = yPow2.multiply( yPow2 ).
-                    multiplyByWord( 8 );
+            FiniteField.FieldElement lambda2 = x.multiply( yPow2 ).
+                    multiplyByWordLazy( 4 ).reduceLazy( );
+            FiniteField.FieldElement lambda3 = yPow2.square( ).
+                    multiplyByWordLazy( 8 ).reduceLazy( );
 
             FiniteField.FieldElement z3 = y.multiply( z );
             z3 = z3.add( z3 );
-            FiniteField.FieldElement x3 = lambda1.multiply( lambda1 ).
+            FiniteField.FieldElement x3 = lambda1.square( ).
                     subtract( lambda2.add( lambda2 ) );
             FiniteField.FieldElement y3 = lambda1.multiply( lambda2.subtract(x3) ).
                     subtract( lambda3 );
 
-            return new Point( x3, y3, z3 );
+            if( aZPow4 != null ) {
+                aZPow4 = lambda3.multiply( aZPow4 );
+                aZPow4 = aZPow4.add( aZPow4 );
+            }
+
+            return new Point( x3, y3, z3, aZPow4 );
 
         }
 
@@ -365,6 +1447,11 @@ public class EllipticCurve {
          * <b>GECC</b>, p. 100. The optimal window width for the current
          * bitsize is determined before calling the actual multiplication
          * algorithm.
+         * <p />
+         * The precomputed points are taken from the
+         * {@link EllipticCurve#getPrecomputationCache cache} of the curve,
+         * so repeated multiplications of the same point compute them only
+         * once.
          *
          * @param   factor the <tt>FieldElement</tt> by which to multiply
          *          <tt>this</tt>.
@@ -375,32 +1462,10 @@ public class EllipticCurve {
          */
         public Point multiply( FiniteField.FieldElement factor ) {
 
-            // bitsize of the factor
-            int bitSize = factor.numBits();
-
-            // calculate the window width we want to use for the
-            // multiplication. this depends on the bitsize of the
-            // factor (see GECC, p. 100)
-            byte width = 2;
-            int additions = ( ( 1 << (width - 2) ) - 1 )
-                    + ( bitSize / (width + 1) );
-
-            while( width < 6 ) {
-
-                width ++;
-                int additions2 = ( 1 << (width - 2) ) - 1;
-                additions2 += bitSize / (width + 1);
-
-                if( additions2 > additions ) {
-                    width --;
-                    break;
-                }
-
-                additions = ( 1 << (width - 2) ) - 1;
-                additions += bitSize / (width + 1);
-            }
+            PrecomputationCache.Table table =
+                    cache.get( this, windowWidth( factor.numBits( ) ) );
 
-            return multiply( factor, width );
+            return multiply( factor, table.points, table.width );
 
         }
 
@@ -447,6 +1512,9 @@ public class EllipticCurve {
                                Point[] precomputed,
                                byte width ) {
 
+            if( engine == COMPLETE )
+                return multiplyComplete( factor, precomputed, width );
+
             byte[] naf = factor.toNAF( width );
             Point result = new Point( );
 
@@ -470,6 +1538,216 @@ public class EllipticCurve {
 
         }
 
+        /**
+         * Multiply a point by a scalar with the Montgomery ladder in co-Z
+         * coordinates, see M. Rivain, "Fast and Regular Algorithms for
+         * Scalar Multiplication over Elliptic Curves", IACR ePrint
+         * 2011/338.
+         * <p />
+         * The ladder keeps two points R0 and R1 with
+         * <code>R1 - R0 = this</code> and the same z-coordinate. Every bit
+         * of the factor costs one conjugate co-Z addition and one co-Z
+         * addition, i.e. 11 multiplications and 5 squarings, no matter
+         * whether the bit is set. Unlike {@link #multiply} it needs no
+         * precomputed points and only the two points of the ladder, so it
+         * suits multiplications of points which are used only once, like
+         * in a key exchange.
+         * <p />
+         * The sequence of operations does not depend on the factor: the
+         * ladder runs over <code>k + 2^n</code> with n the larger bit
+         * length of p and of the modulus of the factor, which may exceed p
+         * like the order of secp160r1, so it takes n steps for every
+         * factor k, and
+         * <code>2^n * this</code> is subtracted at the end, which costs n
+         * further doublings. R0 and R1 are swapped by
+         * {@link FiniteField.FieldElement#select} instead of being indexed
+         * by the bits.
+         * <p />
+         * The formulas need two points with different x-coordinates. This
+         * fails only if the ladder meets a multiple of the order of
+         * <tt>this</tt>, which is negligible for points of large order.
+         * The z-coordinate then becomes zero, which is detected at the end,
+         * and the product is computed by {@link #multiply} instead.
+         *
+         * @param   factor the <tt>FieldElement</tt> by which to multiply
+         *          <tt>this</tt>.
+         * @return  <code>this * factor</code>
+         *
+         * @see     #multiply(FiniteField.FieldElement)
+         */
+        public Point multiplyLadder( FiniteField.FieldElement factor ) {
+
+            if( infinity || y.equals( field.ZERO ) )
+                return multiply( factor );
+
+            int bitSize = Math.max( field.p.numBits( ),
+                                    factor.getField( ).p.numBits( ) );
+
+            // the encoding of the factor is padded to n bits, it is
+            // shorter if the factor is from a smaller field
+            byte[] k = new byte[( bitSize + 7 ) >>> 3];
+            byte[] encoding = factor.toByteArray( ByteOrder.LITTLE_ENDIAN );
+            System.arraycopy( encoding, 0, k, 0, encoding.length );
+
+            // R1 = 2 * this and R0 = this with the same z-coordinate
+            // 2 y z, i.e. scaled by t = 2 y, for the leading bit 2^n
+            Point r1 = this.twice( );
+            FiniteField.FieldElement t = y.add( y );
+            FiniteField.FieldElement tPow2 = t.square( );
+            Point r0 = new Point( x.multiply( tPow2 ),
+                                  y.multiply( tPow2.multiply( t ) ), r1.z );
+
+            // r0 and r1 hold R[bit] and R[1 - bit] of the previous bit
+            int previous = 0;
+
+            for( int i = bitSize - 1; i >= 0; i-- ) {
+
+                int bit = ( k[i >>> 3] >>> (i & 7) ) & 1;
+
+                Point[] swapped = r0.swapCoZ( r1, bit ^ previous );
+                previous = bit;
+
+                // R[bit] + R[1 - bit] and R[bit] - R[1 - bit], then their
+                // sum 2 R[bit]
+                Point[] sum = swapped[0].addCoZ( swapped[1], true );
+                sum = sum[0].addCoZ( sum[1], false );
+                r0 = sum[0];
+                r1 = sum[1];
+            }
+
+            r0 = r0.swapCoZ( r1, previous )[0];
+
+            if( r0.z.equals( field.ZERO ) )
+                return multiply( factor );
+
+            Point offset = this;
+            for( int i = 0; i < bitSize; i++ )
+                offset = offset.twice( );
+
+            // in affine coordinates the addition recognizes equal points,
+            // which the ladder may meet for points of small order
+            Point[] affine = normalizeAll( new Point[]{ r0, offset } );
+
+            return affine[0].subtract( affine[1] );
+
+        }
+
+        /**
+         * Swap two points with the same z-coordinate without branching on
+         * the choice, see {@link FiniteField.FieldElement#select}.
+         *
+         * @param   operand point with the same z-coordinate as
+         *          <tt>this</tt>.
+         * @param   swap <code>1</code> to swap, <code>0</code> otherwise.
+         * @return  <code>{this, operand}</code> or
+         *          <code>{operand, this}</code>
+         */
+        private Point[] swapCoZ( Point operand, int swap ) {
+
+            return new Point[]{
+                new Point( this.x.select( operand.x, swap ),
+                           this.y.select( operand.y, swap ), this.z ),
+                new Point( operand.x.select( this.x, swap ),
+                           operand.y.select( this.y, swap ), this.z ) };
+
+        }
+
+        /**
+         * Add two points with the same z-coordinate by the co-Z formulas
+         * used in {@link #multiplyLadder}. Both results again share their
+         * z-coordinate.
+         *
+         * @param   operand point with the same z-coordinate as
+         *          <tt>this</tt>.
+         * @param   conjugate compute <code>this - operand</code> as second
+         *          result, otherwise <tt>this</tt> with the new
+         *          z-coordinate.
+         * @return  <code>{this + operand, this - operand}</code> or
+         *          <code>{this + operand, this}</code>
+         */
+        private Point[] addCoZ( Point operand, boolean conjugate ) {
+
+            FiniteField.FieldElement lambda1 = this.x.subtract( operand.x );
+            FiniteField.FieldElement lambda1Pow2 = lambda1.square( );
+
+            FiniteField.FieldElement w1 = this.x.multiply( lambda1Pow2 );
+            FiniteField.FieldElement w2 = operand.x.multiply( lambda1Pow2 );
+            FiniteField.FieldElement a1 = this.y.multiply( w1.subtract( w2 ) );
+            FiniteField.FieldElement w1PlusW2 = w1.add( w2 );
+            FiniteField.FieldElement z3 = this.z.multiply( lambda1 );
+
+            FiniteField.FieldElement lambda2 = this.y.subtract( operand.y );
+            FiniteField.FieldElement x3 = lambda2.square( ).
+                    subtract( w1PlusW2 );
+            FiniteField.FieldElement y3 = lambda2.multiply(
+                    w1.subtract( x3 ) ).subtract( a1 );
+
+            if( ! conjugate )
+                return new Point[]{ new Point( x3, y3, z3 ),
+                                    new Point( w1, a1, z3 ) };
+
+            FiniteField.FieldElement lambda3 = this.y.add( operand.y );
+            FiniteField.FieldElement x4 = lambda3.square( ).
+                    subtract( w1PlusW2 );
+            FiniteField.FieldElement y4 = lambda3.multiply(
+                    w1.subtract( x4 ) ).subtract( a1 );
+
+            return new Point[]{ new Point( x3, y3, z3 ),
+                                new Point( x4, y4, z3 ) };
+
+        }
+
+        /**
+         * The loop of {@link #multiply(FiniteField.FieldElement,
+         * EllipticCurve.Point[],byte)} in homogeneous projective
+         * coordinates with complete formulas.
+         *
+         * @see     EllipticCurve#COMPLETE
+         */
+        private Point multiplyComplete( FiniteField.FieldElement factor,
+                                        Point[] precomputed,
+                                        byte width ) {
+
+            byte[] naf = factor.toNAF( width );
+            ProjectivePoint[] table = new ProjectivePoint[precomputed.length];
+            for( int i = 0; i < table.length; i++ )
+                table[i] = precomputed[i].toProjective( );
+
+            ProjectivePoint result = new ProjectivePoint( );
+
+            for( int i = naf.length - 1; i >= 0; i-- ) {
+
+                result = result.twice( );
+
+                if( naf[i] > 0 )
+                    result = result.add( table[ (naf[i] - 1) >> 1 ] );
+                else if( naf[i] < 0 )
+                    result = result.
+                            add( table[ ((-naf[i]) - 1) >> 1 ].negate( ) );
+            }
+
+            return result.toPoint( );
+
+        }
+
+        /**
+         * Convert <tt>this</tt> to homogeneous projective coordinates,
+         * <code>(x z, y, z^3)</code>. An affine point is taken as it is.
+         *
+         * @return  the same point as {@link ProjectivePoint}.
+         */
+        ProjectivePoint toProjective( ) {
+
+            if( infinity )
+                return new ProjectivePoint( );
+            if( isAffine( ) )
+                return new ProjectivePoint( x, y, z );
+
+            return new ProjectivePoint( x.multiply( z ), y,
+                                        z.square( ).multiply( z ) );
+
+        }
+
         /**
          * Precompute NAF points. These are needed for {@link #multiply(
          * FiniteField.FieldElement,EllipticCurve.Point[],byte)
@@ -482,6 +1760,10 @@ public class EllipticCurve {
          * FiniteField.FieldElement,
          * EllipticCurve.Point[],byte)}.
          * This is significantly faster than using {@link #multiply}.
+         * <p />
+         * The points are converted to affine coordinates with a single
+         * inversion, so every addition of a precomputed point is a mixed
+         * addition.
          *
          * @param   width window width to use.
          * @return  array of precomputed points.
@@ -501,6 +1783,8 @@ public class EllipticCurve {
             for( int i = 1; i < length; i++ )
                 result[i] = result[i - 1].add( tmp );
 
+            toAffine( result );
+
             return result;
 
         }
@@ -515,7 +1799,7 @@ public class EllipticCurve {
          */
         public Point negate( ) {
 
-            return new Point( this.x, this.y.negate(), this.z );
+            return new Point( this.x, this.y.negate(), this.z, this.aZPow4 );
 
         }
 
@@ -549,14 +1833,254 @@ public class EllipticCurve {
             if( infinity )
                 return "INF";
 
-            FiniteField.FieldElement zPow2 = z.multiply( z );
-            FiniteField.FieldElement zPow3 = zPow2.multiply( z );
+            Point point = normalize( );
+
+            return "(" + point.x.toString() + ", " +
+                    point.y.toString() + ")";
+
+        }
+
+    }
+
+
+
+    /**
+     * This class represents a point in homogeneous projective coordinates,
+     * where <code>(X : Y : Z)</code> stands for the affine point
+     * <code>(X / Z, Y / Z)</code> and <code>(0 : 1 : 0)</code> is the
+     * point at infinity. It is the point engine {@link #COMPLETE}.
+     * <p />
+     * The addition and doubling formulas are those of J. Renes,
+     * C. Costello and L. Batina, "Complete addition formulas for prime
+     * order elliptic curves", EUROCRYPT 2016, algorithms 1 to 9. They are
+     * complete on curves of odd order, i.e. they hold for all inputs and
+     * contain no branch on the coordinates. The curve only chooses the
+     * variant for its coefficient a once:
+     * <ul>
+     * <li> arbitrary a: addition with 12 multiplications, 3 by a and
+     *      2 by 3b, doubling with 8 multiplications, 3 squarings, 3 by a
+     *      and 2 by 3b,
+     * <li> <code>a = -3</code>: addition with 12 multiplications and 2 by
+     *      b, doubling with 8 multiplications, 3 squarings and 2 by b,
+     * <li> <code>a = 0</code>: addition with 12 multiplications and 2 by
+     *      3b, doubling with 6 multiplications, 2 squarings and 1 by 3b.
+     * </ul>
+     * These are more operations than the formulas of {@link Point}, which
+     * in exchange need the case distinctions of {@link Point#add}.
+     * <p />
+     * Instances are immutable.
+     */
+    class ProjectivePoint {
+
+        /**
+         * Coordinate X in homogeneous projective coordinates.
+         */
+        private final FiniteField.FieldElement x;
+
+        /**
+         * Coordinate Y in homogeneous projective coordinates.
+         */
+        private final FiniteField.FieldElement y;
+
+        /**
+         * Coordinate Z in homogeneous projective coordinates.
+         */
+        private final FiniteField.FieldElement z;
+
+
+
+
+        /**
+         * Creates the point at infinity <code>(0 : 1 : 0)</code>.
+         */
+        private ProjectivePoint( ) {
+
+            this( field.ZERO, field.ONE, field.ZERO );
+
+        }
+
+        /**
+         * Create a new point given its coordinates.
+         */
+        private ProjectivePoint( FiniteField.FieldElement x,
+                                 FiniteField.FieldElement y,
+                                 FiniteField.FieldElement z ) {
+
+            this.x = x;
+            this.y = y;
+            this.z = z;
+
+        }
+
+
+
+
+        /**
+         * Add two points, algorithms 1, 4 and 7.
+         *
+         * @param   operand the point to add to <tt>this</tt>.
+         * @return  <code>this + operand</code>
+         */
+        ProjectivePoint add( ProjectivePoint operand ) {
+
+            FiniteField.FieldElement t0 = x.multiply( operand.x );
+            FiniteField.FieldElement t1 = y.multiply( operand.y );
+            FiniteField.FieldElement t2 = z.multiply( operand.z );
+
+            // t3 = X1 Y2 + X2 Y1, t4 = Y1 Z2 + Y2 Z1, t5 = X1 Z2 + X2 Z1
+            FiniteField.FieldElement t3 = x.add( y ).
+                    multiply( operand.x.add( operand.y ) ).
+                    subtract( t0.add( t1 ) );
+            FiniteField.FieldElement t4 = y.add( z ).
+                    multiply( operand.y.add( operand.z ) ).
+                    subtract( t1.add( t2 ) );
+            FiniteField.FieldElement t5 = x.add( z ).
+                    multiply( operand.x.add( operand.z ) ).
+                    subtract( t0.add( t2 ) );
+
+            FiniteField.FieldElement x3, y3, z3;
+
+            if( doubling == A_MINUS_THREE ) {
+                z3 = b.multiply( t2 );
+                x3 = t5.subtract( z3 );
+                x3 = x3.add( x3.add( x3 ) );
+                z3 = t1.subtract( x3 );
+                x3 = t1.add( x3 );
+                y3 = b.multiply( t5 );
+                t1 = t2.add( t2 );
+                t2 = t1.add( t2 );
+                y3 = y3.subtract( t2 ).subtract( t0 );
+                y3 = y3.add( y3.add( y3 ) );
+                t0 = t0.add( t0.add( t0 ) ).subtract( t2 );
+                t1 = t4.multiply( y3 );
+                t2 = t0.multiply( y3 );
+                y3 = x3.multiply( z3 ).add( t2 );
+                x3 = t3.multiply( x3 ).subtract( t1 );
+                z3 = t4.multiply( z3 ).add( t3.multiply( t0 ) );
+            }
+            else if( doubling == A_ZERO ) {
+                x3 = t0.add( t0 );
+                t0 = x3.add( t0 );
+                t2 = b3.multiply( t2 );
+                z3 = t1.add( t2 );
+                t1 = t1.subtract( t2 );
+                y3 = b3.multiply( t5 );
+                x3 = t3.multiply( t1 ).subtract( t4.multiply( y3 ) );
+                y3 = t1.multiply( z3 ).add( y3.multiply( t0 ) );
+                z3 = z3.multiply( t4 ).add( t0.multiply( t3 ) );
+            }
+            else {
+                z3 = a.multiply( t5 ).add( b3.multiply( t2 ) );
+                x3 = t1.subtract( z3 );
+                z3 = t1.add( z3 );
+                y3 = x3.multiply( z3 );
+                t1 = t0.add( t0.add( t0 ) );
+                t2 = a.multiply( t2 );
+                t5 = b3.multiply( t5 );
+                t1 = t1.add( t2 );
+                t2 = a.multiply( t0.subtract( t2 ) );
+                t5 = t5.add( t2 );
+                y3 = y3.add( t1.multiply( t5 ) );
+                x3 = t3.multiply( x3 ).subtract( t4.multiply( t5 ) );
+                z3 = t4.multiply( z3 ).add( t3.multiply( t1 ) );
+            }
+
+            return new ProjectivePoint( x3, y3, z3 );
+
+        }
+
+        /**
+         * Double a point, algorithms 3, 6 and 9.
+         *
+         * @return  <code>2 * this</code>
+         */
+        ProjectivePoint twice( ) {
+
+            FiniteField.FieldElement t0, t1, t2, t3, x3, y3, z3;
+
+            if( doubling == A_ZERO ) {
+                t0 = y.square( );
+                z3 = t0.multiplyByWordLazy( 8 ).reduceLazy( );
+                t1 = y.multiply( z );
+                t2 = b3.multiply( z.square( ) );
+                x3 = t2.multiply( z3 );
+                y3 = t0.add( t2 );
+                z3 = t1.multiply( z3 );
+                t2 = t2.multiplyByWordLazy( 3 ).reduceLazy( );
+                t0 = t0.subtract( t2 );
+                y3 = x3.add( t0.multiply( y3 ) );
+                x3 = t0.multiply( x.multiply( y ) );
+                x3 = x3.add( x3 );
+
+                return new ProjectivePoint( x3, y3, z3 );
+            }
+
+            t0 = x.square( );
+            t1 = y.square( );
+            t2 = z.square( );
+            t3 = x.multiply( y );
+            t3 = t3.add( t3 );
+            z3 = x.multiply( z );
+            z3 = z3.add( z3 );
+
+            if( doubling == A_MINUS_THREE ) {
+                y3 = b.multiply( t2 ).subtract( z3 );
+                y3 = y3.multiplyByWordLazy( 3 ).reduceLazy( );
+                x3 = t1.subtract( y3 );
+                y3 = x3.multiply( t1.add( y3 ) );
+                x3 = x3.multiply( t3 );
+                t2 = t2.multiplyByWordLazy( 3 ).reduceLazy( );
+                z3 = b.multiply( z3 ).subtract( t2 ).subtract( t0 );
+                z3 = z3.multiplyByWordLazy( 3 ).reduceLazy( );
+                t0 = t0.multiplyByWordLazy( 3 ).reduceLazy( ).subtract( t2 );
+                y3 = y3.add( t0.multiply( z3 ) );
+            }
+            else {
+                x3 = a.multiply( z3 );
+                y3 = x3.add( b3.multiply( t2 ) );
+                x3 = t1.subtract( y3 );
+                y3 = x3.multiply( t1.add( y3 ) );
+                x3 = t3.multiply( x3 );
+                z3 = b3.multiply( z3 );
+                t2 = a.multiply( t2 );
+                t3 = a.multiply( t0.subtract( t2 ) ).add( z3 );
+                t0 = t0.multiplyByWordLazy( 3 ).addLazy( t2 ).reduceLazy( );
+                y3 = y3.add( t0.multiply( t3 ) );
+                z3 = t3;
+            }
+
+            t2 = y.multiply( z );
+            t2 = t2.add( t2 );
+            x3 = x3.subtract( t2.multiply( z3 ) );
+            z3 = t2.multiply( t1 ).multiplyByWordLazy( 4 ).reduceLazy( );
 
-            FiniteField.FieldElement xAffine = x.divide( zPow2 );
-            FiniteField.FieldElement yAffine = y.divide( zPow3 );
+            return new ProjectivePoint( x3, y3, z3 );
+
+        }
+
+        /**
+         * Negate a point.
+         *
+         * @return  <code>(X : -Y : Z)</code>
+         */
+        private ProjectivePoint negate( ) {
+
+            return new ProjectivePoint( x, y.negate( ), z );
+
+        }
+
+        /**
+         * Convert <tt>this</tt> to Jacobian-projective coordinates,
+         * <code>(X Z, Y Z^2, Z)</code>.
+         *
+         * @return  the same point as {@link Point}.
+         */
+        Point toPoint( ) {
+
+            if( z.equals( field.ZERO ) )
+                return new Point( );
 
-            return "(" + xAffine.toString() + ", " +
-                    yAffine.toString() + ")";
+            return new Point( x.multiply( z ), y.multiply( z.square( ) ), z );
 
         }
 
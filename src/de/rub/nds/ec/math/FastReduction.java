@@ -0,0 +1,528 @@
+/*
+ * FastReduction.java
+ */
+
+
+
+
+package de.rub.nds.ec.math;
+
+
+
+
+/**
+ * This class implements modular reduction for primes of a special form,
+ * which does not need any multi-precision multiplications. It is installed
+ * by {@link FiniteField} if the prime passed to its constructor is
+ * recognized by {@link #forPrime}, otherwise the field falls back to
+ * Barrett reduction.
+ * <p />
+ * Two kinds of primes are recognized:
+ * <ul>
+ * <li><b>Pseudo-Mersenne primes</b> <code>p = 2^n - c</code> with a small
+ *     c of at most two words, e.g. secp160k1, secp256k1 or
+ *     <code>2^521 - 1</code>. A value <code>x = H 2^n + L</code> is
+ *     reduced by repeatedly folding it to <code>L + H c</code>, see
+ *     <b>GECC</b>, p. 45.</li>
+ * <li><b>Generalized Mersenne (Solinas) primes</b> like secp128r1 or the
+ *     NIST primes P-192 to P-384. For these, <code>2^(32 j) mod p</code>
+ *     can be written with small signed coefficients for every word
+ *     position j of a double length product. The upper words are then
+ *     folded into the lower ones by a few additions of small multiples,
+ *     which generalizes the algorithms in <b>GECC</b>, p. 45 ff.</li>
+ * </ul>
+ * All methods work on magnitudes as used by
+ * {@link FiniteField.FieldElement}, i.e. the least significant word first.
+ * Instances are immutable and can be shared between threads, all scratch
+ * space is passed in by the caller.
+ *
+ * @see FiniteField
+ */
+abstract class FastReduction {
+
+    /**
+     * This bit mask is needed for the conversion of a signed integer
+     * to an unsigned long.
+     */
+    final static long INT2LONG = 0xFFFFFFFFL;
+
+    /**
+     * The magnitude of the prime, exactly k words long.
+     */
+    final int[] p;
+
+    /**
+     * Number of words of the prime.
+     */
+    final int k;
+
+    /**
+     * Number of bits of the prime.
+     */
+    final int n;
+
+
+
+
+    /**
+     * Initialise the fields common to all reductions.
+     */
+    private FastReduction( int[] p, int n ) {
+
+        this.p = p;
+        this.k = p.length;
+        this.n = n;
+
+    }
+
+    /**
+     * Find a fast reduction for the given prime.
+     *
+     * @param   p magnitude of the prime without leading zero words.
+     * @param   n number of bits of the prime.
+     * @param   powers <code>powers[j - k]</code> holds the magnitude of
+     *          <code>2^(32 j) mod p</code> for all
+     *          <code>k &lt;= j &lt;= 2k</code>.
+     * @return  a reduction for <tt>p</tt> or <tt>null</tt> if <tt>p</tt>
+     *          has no special form and Barrett reduction should be used.
+     */
+    static FastReduction forPrime( int[] p, int n, int[][] powers ) {
+
+        FastReduction result = PseudoMersenne.forPrime( p, n );
+
+        if( result == null )
+            result = Solinas.forPrime( p, n, powers );
+
+        return result;
+
+    }
+
+
+
+
+    /**
+     * Reduce a value modulo p.
+     *
+     * @param   x magnitude of at most 2k words. It is not modified.
+     * @param   result array of k words receiving <code>x mod p</code>.
+     * @param   scratch array of at least {@link #scratchLength} words.
+     */
+    abstract void reduce( int[] x, int[] result, int[] scratch );
+
+    /**
+     * Returns the number of scratch words {@link #reduce} needs.
+     *
+     * @return  length of the scratch array.
+     */
+    abstract int scratchLength( );
+
+    /**
+     * Subtract p from the lower k words of <tt>value</tt> as long as
+     * these are not less than p and copy the result.
+     *
+     * @param   value the value to reduce, its words above k must be zero.
+     * @param   result array of k words receiving the result.
+     */
+    final void finalSubtraction( int[] value, int[] result ) {
+
+        while( compare( value ) >= FiniteField.EQ ) {
+            long diff = 0;
+            for( int i = 0; i < k; i++ ) {
+                diff += (value[i] & INT2LONG) - (p[i] & INT2LONG);
+                value[i] = (int)diff;
+                diff >>= 32;
+            }
+        }
+
+        if( value != result )
+            System.arraycopy( value, 0, result, 0, k );
+
+    }
+
+    /**
+     * Compare the lower k words of <tt>value</tt> to p.
+     */
+    private byte compare( int[] value ) {
+
+        for( int i = k - 1; i >= 0; i-- )
+            if( value[i] != p[i] )
+                return ( (value[i] & INT2LONG) > (p[i] & INT2LONG) ?
+                         FiniteField.GT : FiniteField.LT );
+
+        return FiniteField.EQ;
+
+    }
+
+
+
+
+    /**
+     * Reduction for primes <code>p = 2^n - c</code> with small c.
+     */
+    private final static class PseudoMersenne extends FastReduction {
+
+        /**
+         * The magnitude of <code>c = 2^n - p</code>, one or two words.
+         */
+        private final int[] c;
+
+        /**
+         * Word index of bit n.
+         */
+        private final int shiftWords;
+
+        /**
+         * Position of bit n inside its word.
+         */
+        private final int shiftBits;
+
+
+
+        private PseudoMersenne( int[] p, int n, int[] c ) {
+
+            super( p, n );
+            this.c = c;
+            this.shiftWords = n >>> 5;
+            this.shiftBits = n & 0x1F;
+
+        }
+
+        /**
+         * Compute <code>c = 2^n - p</code> and check that it has at most
+         * two words and at most half the bits of p.
+         */
+        static FastReduction forPrime( int[] p, int n ) {
+
+            int k = p.length;
+            int[] c = new int[k];
+            long diff = 0;
+
+            // 2^n - p, the bit n itself is not part of p
+            for( int i = 0; i < k; i++ ) {
+                diff -= p[i] & INT2LONG;
+                c[i] = (int)diff;
+                diff >>= 32;
+            }
+            if( (n & 0x1F) != 0 )
+                c[k - 1] &= (1 << (n & 0x1F)) - 1;
+
+            int length = k;
+            while( length > 1 && c[length - 1] == 0 )
+                length--;
+
+            int bits = (length - 1) * 32
+                     + 32 - Integer.numberOfLeadingZeros( c[length - 1] );
+
+            if( length > 2 || bits > n / 2 )
+                return null;
+
+            int[] small = new int[length];
+            System.arraycopy( c, 0, small, 0, length );
+
+            return new PseudoMersenne( p, n, small );
+
+        }
+
+        int scratchLength( ) {
+
+            return (k << 1) + 8;
+
+        }
+
+        /**
+         * Fold <code>x = H 2^n + L</code> to <code>L + H c</code> until
+         * the value is less than <code>2^n</code>. The value is kept in
+         * the lower k+4 words of the scratch, H is extracted above it.
+         */
+        void reduce( int[] x, int[] result, int[] scratch ) {
+
+            int valueLength = k + 4;
+            int[] source = x;
+            int sourceLength = x.length;
+
+            while( true ) {
+
+                // extract H = source >> n
+                int hLength = sourceLength - shiftWords;
+                boolean zero = true;
+                for( int i = 0; i < hLength; i++ ) {
+                    int index = shiftWords + i;
+                    int h = source[index] >>> shiftBits;
+                    if( shiftBits != 0 && index + 1 < sourceLength )
+                        h |= source[index + 1] << (32 - shiftBits);
+                    scratch[valueLength + i] = h;
+                    zero &= ( h == 0 );
+                }
+
+                // keep L = source mod 2^n
+                if( source != scratch )
+                    for( int i = 0; i < shiftWords && i < sourceLength; i++ )
+                        scratch[i] = source[i];
+
+                int top = ( shiftWords < sourceLength ?
+                            source[shiftWords] : 0 );
+                for( int i = shiftWords; i < valueLength; i++ )
+                    scratch[i] = 0;
+                if( shiftBits != 0 )
+                    scratch[shiftWords] = top & ((1 << shiftBits) - 1);
+                for( int i = sourceLength; i < shiftWords; i++ )
+                    scratch[i] = 0;
+
+                if( zero ) {
+                    if( source == scratch )
+                        break;
+                }
+                else {
+                    // add H * c
+                    for( int j = 0; j < c.length; j++ ) {
+
+                        long c_j = c[j] & INT2LONG;
+                        long value = 0;
+                        int i = 0;
+
+                        for( ; i < hLength; i++ ) {
+                            int index = i + j;
+                            value += c_j * (scratch[valueLength + i] & INT2LONG)
+                                   + (scratch[index] & INT2LONG);
+                            scratch[index] = (int)value;
+                            value >>>= 32;
+                        }
+                        for( i += j; value != 0 && i < valueLength; i++ ) {
+                            value += scratch[i] & INT2LONG;
+                            scratch[i] = (int)value;
+                            value >>>= 32;
+                        }
+                    }
+                }
+
+                source = scratch;
+                sourceLength = valueLength;
+            }
+
+            // the value is less than 2^n < 2p now
+            finalSubtraction( scratch, result );
+
+        }
+
+    }
+
+
+
+
+    /**
+     * Reduction for generalized Mersenne primes, for which the powers
+     * <code>2^(32 j) mod p</code> have small signed word coefficients.
+     */
+    private final static class Solinas extends FastReduction {
+
+        /**
+         * <code>sources[i]</code> lists the word positions j &gt;= k of
+         * the input which contribute to word i of the result.
+         */
+        private final int[][] sources;
+
+        /**
+         * <code>coefficients[i][l]</code> is the signed factor of word
+         * <code>sources[i][l]</code> in word i of the result.
+         */
+        private final int[][] coefficients;
+
+        /**
+         * The signed words of <code>2^(32 k) mod p</code>, used to fold the
+         * final carry.
+         */
+        private final int[] carryRow;
+
+
+
+        private Solinas( int[] p, int n, int[][] sources,
+                         int[][] coefficients, int[] carryRow ) {
+
+            super( p, n );
+            this.sources = sources;
+            this.coefficients = coefficients;
+            this.carryRow = carryRow;
+
+        }
+
+        /**
+         * Build the coefficient table and check that all coefficients are
+         * small enough that no column sum overflows a <tt>long</tt>.
+         */
+        static FastReduction forPrime( int[] p, int n, int[][] powers ) {
+
+            int k = p.length;
+
+            // the final subtractions have to be bounded
+            if( (k << 5) - n > 1 )
+                return null;
+
+            int[][] rows = new int[k][];
+            int maxCoefficient = 0;
+
+            for( int j = 0; j < k; j++ ) {
+
+                int[] row = balanced( powers[j], k );
+                int[] negative = balanced( subtract( powers[j], p ), k );
+
+                // for the carry row the positive representation is needed
+                if( j > 0 && max( negative ) < max( row ) )
+                    row = negative;
+                if( row == null )
+                    return null;
+
+                rows[j] = row;
+                maxCoefficient = Math.max( maxCoefficient, max( row ) );
+            }
+
+            int bits = 32 - Integer.numberOfLeadingZeros( maxCoefficient );
+            int termBits = 32 - Integer.numberOfLeadingZeros( k + 1 );
+            if( bits + termBits > 29 )
+                return null;
+
+            // transpose the rows into sparse columns
+            int[][] sources = new int[k][];
+            int[][] coefficients = new int[k][];
+
+            for( int i = 0; i < k; i++ ) {
+
+                int count = 0;
+                for( int j = 0; j < k; j++ )
+                    if( rows[j][i] != 0 )
+                        count++;
+
+                sources[i] = new int[count];
+                coefficients[i] = new int[count];
+
+                count = 0;
+                for( int j = 0; j < k; j++ )
+                    if( rows[j][i] != 0 ) {
+                        sources[i][count] = k + j;
+                        coefficients[i][count++] = rows[j][i];
+                    }
+            }
+
+            return new Solinas( p, n, sources, coefficients, rows[0] );
+
+        }
+
+        /**
+         * Write a value as k signed words in the range
+         * <code>[-2^31, 2^31)</code>.
+         *
+         * @param   value magnitude of the value, negative values are given
+         *          as two's complement of k+1 words.
+         * @return  the signed words or <tt>null</tt> if k words are not
+         *          enough.
+         */
+        private static int[] balanced( int[] value, int k ) {
+
+            if( value == null )
+                return null;
+
+            int[] result = new int[k];
+            long carry = 0;
+
+            for( int i = 0; i < k; i++ ) {
+                long word = ( i < value.length ? value[i] & INT2LONG : 0 )
+                          + carry;
+                result[i] = (int)word;
+                carry = ( (word - result[i]) >> 32 );
+            }
+
+            long rest = ( k < value.length ? value[k] : 0 ) + carry;
+
+            return ( rest == 0 ? result : null );
+
+        }
+
+        /**
+         * Compute <code>value - p</code> as two's complement of k+1 words.
+         */
+        private static int[] subtract( int[] value, int[] p ) {
+
+            int k = p.length;
+            int[] result = new int[k + 1];
+            long diff = 0;
+
+            for( int i = 0; i < k; i++ ) {
+                diff += ( i < value.length ? value[i] & INT2LONG : 0 )
+                      - (p[i] & INT2LONG);
+                result[i] = (int)diff;
+                diff >>= 32;
+            }
+            result[k] = (int)diff;
+
+            return result;
+
+        }
+
+        /**
+         * Returns the largest absolute value of the given words.
+         */
+        private static int max( int[] row ) {
+
+            if( row == null )
+                return Integer.MAX_VALUE;
+
+            int result = 0;
+            for( int i = 0; i < row.length; i++ )
+                result = Math.max( result, Math.abs( row[i] ) );
+
+            return result;
+
+        }
+
+        int scratchLength( ) {
+
+            return 0;
+
+        }
+
+        /**
+         * Compute all words of the result as signed column sums, then
+         * fold the remaining carry with <code>2^(32 k) mod p</code> until
+         * it vanishes.
+         */
+        void reduce( int[] x, int[] result, int[] scratch ) {
+
+            int length = x.length;
+            long carry = 0;
+
+            for( int i = 0; i < k; i++ ) {
+
+                long sum = carry + ( i < length ? x[i] & INT2LONG : 0 );
+                int[] source = sources[i];
+                int[] coefficient = coefficients[i];
+
+                for( int l = 0; l < source.length; l++ ) {
+                    int j = source[l];
+                    if( j < length )
+                        sum += coefficient[l] * (x[j] & INT2LONG);
+                }
+
+                result[i] = (int)sum;
+                carry = sum >> 32;
+            }
+
+            // the value is result + carry * 2^(32 k), the carry is small
+            while( carry != 0 ) {
+
+                long h = carry;
+                carry = 0;
+
+                for( int i = 0; i < k; i++ ) {
+                    long sum = carry + (result[i] & INT2LONG)
+                             + h * carryRow[i];
+                    result[i] = (int)sum;
+                    carry = sum >> 32;
+                }
+            }
+
+            finalSubtraction( result, result );
+
+        }
+
+    }
+
+}
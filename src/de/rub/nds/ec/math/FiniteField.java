@@ -10,7 +10,14 @@ package de.rub.nds.ec.math;
 
 
 
-import java.util.Random;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
 
 
 
@@ -36,6 +43,17 @@ import java.util.Random;
  * <br />
  * </code>
  * <p />
+ * The elements of a field can either be stored as plain residues and be
+ * reduced by Barrett reduction (the default) or be kept in Montgomery
+ * representation. The representation is chosen once per field:<br />
+ * <code>
+ * FiniteField F = new FiniteField( String prime, FiniteField.MONTGOMERY );
+ * <br />
+ * </code>
+ * The representation {@link #MONTGOMERY64} keeps the Montgomery form, but
+ * the mutable elements of {@link FiniteField.Workspace} are stored as 64
+ * bit limbs.
+ * <p />
  * List of abbreviations used throughout this javadoc:
  * <ul>
  * <li><b>HAC:</b> Handbook of Applied Cryptography. A. Menezes, P. van
@@ -44,6 +62,9 @@ import java.util.Random;
  *                  A. Menezes, S. Vanstone. Springer, New York, 2004.</li>
  * <li><b>CAi:</b> Cryptography: An introduction. Nigel Smart.
  *                 McGraw-Hill Education, Berkshire, 2003.</li>
+ * <li><b>KAK:</b> Analyzing and Comparing Montgomery Multiplication
+ *                 Algorithms. C. Koc, T. Acar, B. Kaliski. IEEE Micro,
+ *                 16(3), 1996.</li>
  * </ul>
  * @author Simon Bernard, mail@s-m-n.org, Ruhr-University Bochums
  * @see FiniteField.FieldElement
@@ -68,6 +89,215 @@ public class FiniteField {
      */
     private final FieldElement barrettConstant;
     
+    /**
+     * The reduction for primes of special form or <tt>null</tt>, if
+     * Barrett reduction has to be used. It is chosen once when the field
+     * is constructed.
+     *
+     * @see FastReduction#forPrime
+     * @see FiniteField.FieldElement#mod
+     */
+    private final FastReduction fastReduction;
+    
+    /**
+     * The unrolled kernels for the length of p or <tt>null</tt>, if the
+     * general code for arrays of variable length has to be used.
+     *
+     * @see FixedWidth#forPrime
+     */
+    private final FixedWidth fixedWidth;
+    
+    /**
+     * The engine for division and inversion.
+     *
+     * @see FiniteField.FieldElement#divide
+     */
+    private final Inversion inversion;
+    
+    /**
+     * The engine for 64 bit limbs or <tt>null</tt>, if the representation
+     * is not {@link #MONTGOMERY64}.
+     *
+     * @see FiniteField.Workspace
+     */
+    private final Montgomery64 montgomery64;
+    
+    /**
+     * The representation of the elements of this field, either
+     * {@link #BARRETT}, {@link #MONTGOMERY} or {@link #MONTGOMERY64}.
+     * <p />
+     * This field is assigned last in the constructor. Until then it reads
+     * as {@link #BARRETT}, which allows the constructor to use the plain
+     * arithmetic for computing the Montgomery constants.
+     */
+    private final byte representation;
+    
+    /**
+     * The constant <code>-p^-1 mod 2^32</code> needed for Montgomery
+     * multiplication.
+     *
+     * @see #montgomeryMultiply
+     */
+    private final int montgomeryInverse;
+    
+    /**
+     * The constant <code>R^2 mod p</code> with <code>R = 2^(32 k)</code>,
+     * or <code>R = 2^(64 ceil(k/2))</code> for {@link #MONTGOMERY64},
+     * which converts a value into Montgomery representation.
+     *
+     * @see #montgomeryMultiply
+     */
+    private final int[] montgomerySquare;
+    
+    /**
+     * The engine for batch multiplication or <tt>null</tt>, if p is even.
+     *
+     * @see #multiplyAll
+     */
+    private final LaneArithmetic laneArithmetic;
+    
+    /**
+     * The constant which turns the Montgomery product of the
+     * {@link LaneArithmetic} engine into a product in the representation of
+     * this field, or <tt>null</tt>, if no correction is needed. It is
+     * <code>2^(64 k) mod p</code> for {@link #BARRETT} and
+     * <code>2^(32 (k - 1)) mod p</code> for {@link #MONTGOMERY64} if k is
+     * odd.
+     *
+     * @see #multiplyAll
+     */
+    private final int[] laneCorrection;
+    
+    /**
+     * The random source of the current thread.
+     *
+     * @see #setRandomSource
+     */
+    private volatile ThreadLocal<RandomSource> randomSource;
+    
+    /**
+     * The {@link Workspace} of the current thread. If a {@link FixedWidth}
+     * kernel is installed, the arithmetic of {@link FieldElement} pads its
+     * operands and reduces its products in this scratch space, so it only
+     * allocates the result.
+     *
+     * @see FiniteField.FieldElement#multiply
+     */
+    private final ThreadLocal<Workspace> workspace;
+    
+    /**
+     * Mask for the most significant word of a random value, which clears
+     * the bits above the length of p.
+     *
+     * @see #randomMagnitude
+     */
+    private final int randomMask;
+    
+    /**
+     * The factory for random sources used unless
+     * {@link #setRandomSource} is called.
+     */
+    private final static Supplier<RandomSource> DEFAULT_RANDOM_SOURCE =
+            new Supplier<RandomSource>( ) {
+                public RandomSource get( ) {
+                    return new SecureRandomSource( );
+                }
+            };
+    
+    /**
+     * Position of the lowest of the 32 most significant bits of p, or 0
+     * if p has less than 32 bits.
+     *
+     * @see FiniteField.FieldElement#reduceLazy
+     */
+    private final int lazyShift;
+    
+    /**
+     * The bits of p from position {@link #lazyShift} on, plus one if
+     * any bits are cut off. Dividing the same bits of a lazy value by this
+     * divisor underestimates its quotient by p by at most two.
+     *
+     * @see FiniteField.FieldElement#reduceLazy
+     */
+    private final long lazyDivisor;
+    
+    /**
+     * Number of bytes of an encoded element, i.e. the length of p in
+     * bytes.
+     *
+     * @see #getEncodedLength
+     */
+    private final int encodedLength;
+    
+    /**
+     * Representation of elements as plain residues which are reduced by
+     * Barrett reduction.
+     *
+     * @see #FiniteField(String, byte)
+     */
+    public final static byte BARRETT = 0;
+    
+    /**
+     * Representation of elements in Montgomery form, i.e. the value
+     * <code>a</code> is stored as <code>a * R mod p</code>. Values are
+     * converted only when they enter or leave the field, e.g. in
+     * {@link FiniteField.FieldElement#FiniteField.FieldElement(String)} or
+     * {@link FiniteField.FieldElement#toString}.
+     *
+     * @see #FiniteField(String, byte)
+     */
+    public final static byte MONTGOMERY = 1;
+    
+    /**
+     * Representation of elements in Montgomery form like
+     * {@link #MONTGOMERY}, but with the radix
+     * <code>R = 2^(64 ceil(k/2))</code>. The values of
+     * {@link FiniteField.MutableFieldElement}s are stored as 64 bit limbs
+     * and {@link FiniteField.Workspace} computes on them by
+     * {@link Montgomery64}, which needs a quarter of the word products of
+     * the 32 bit code. {@link FiniteField.FieldElement} keeps its 32 bit
+     * magnitudes and converts them for every multiplication.
+     * <p />
+     * Before Java 18 there is no unsigned <code>multiplyHigh</code>, and
+     * the correction of the signed one together with the carries costs
+     * about as much as the saved products. It pays off for long chains of
+     * {@link FiniteField.Workspace} operations on small fields only, so
+     * {@link #MONTGOMERY} remains the recommended representation.
+     *
+     * @see #FiniteField(String, byte)
+     */
+    public final static byte MONTGOMERY64 = 2;
+    
+    /**
+     * Number of words from which on both operands of a multiplication
+     * are split recursively by the Karatsuba method, see <b>HAC</b>,
+     * p. 630. Below this size, i.e. for fields of less than 768 bits, the
+     * additional allocations and additions outweigh the saved word
+     * multiplications and the schoolbook method is faster.
+     *
+     * @see FiniteField.FieldElement#square
+     */
+    private final static int KARATSUBA_THRESHOLD = 24;
+    
+    /**
+     * Minimal number of elements per chunk in the parallel batch
+     * inversion. Smaller batches are inverted sequentially, since the
+     * overhead of the tasks would outweigh the gain.
+     *
+     * @see #invertAll(FiniteField.FieldElement[], FiniteField.FieldElement[],
+     *      ForkJoinPool)
+     */
+    private final static int BATCH_CHUNK_SIZE = 64;
+    
+    /**
+     * Minimal number of elements for which {@link #multiplyAll} uses the
+     * {@link LaneArithmetic} engine. Smaller batches are multiplied one by
+     * one, since the transposition into lanes would outweigh the gain.
+     *
+     * @see #multiplyAll
+     */
+    private final static int LANE_THRESHOLD = 32;
+    
     /**
      * Return value of method {@link FiniteField.FieldElement#compareTo} if
      * this was less than operand.
@@ -100,1120 +330,4000 @@ public class FiniteField {
     /**
      * Constant with value 1.
      */    
-    public final FieldElement ONE  = new FieldElement( 1 );
+    public final FieldElement ONE;
     
     /**
      * Construct a new finite field given a string representation of
      * the prime which should be the order of this field.
      * The string has to be in radix 16. After initializing the field,
      * the constant {@link #barrettConstant} is computed to allow faster
-     * modular reductions.
+     * modular reductions. If the prime is a pseudo-Mersenne or a
+     * generalized Mersenne prime, a {@link FastReduction} is installed
+     * which replaces Barrett reduction.
      *
      * @param value The value which to initialise <tt>this</tt> with in hex.
      */
     public FiniteField ( String prime ) {
         
-        p = new FieldElement ( prime );
-        barrettConstant = p.calculateBarrettConstant( );
+        this( prime, BARRETT );
        
     }
     
-
+    /**
+     * Construct a new finite field given a string representation of
+     * the prime which should be the order of this field and the
+     * representation of its elements.
+     * <p />
+     * If <tt>representation</tt> is {@link #MONTGOMERY}, the constants
+     * <code>-p^-1 mod 2^32</code> and <code>R^2 mod p</code> are computed
+     * in addition to the Barrett constant. For {@link #MONTGOMERY64} the
+     * engine for 64 bit limbs is installed in addition.
+     *
+     * @param   prime The order of the field in hex.
+     * @param   representation either {@link #BARRETT},
+     *          {@link #MONTGOMERY} or {@link #MONTGOMERY64}.
+     *
+     * @throws  IllegalArgumentException <tt>representation</tt> is unknown
+     *          or Montgomery representation is requested for an even
+     *          <tt>prime</tt>.
+     */
+    public FiniteField ( String prime, byte representation )
+           throws IllegalArgumentException {
+        
+        p = new FieldElement ( prime );
+        barrettConstant = p.calculateBarrettConstant( );
+        fastReduction = FastReduction.forPrime( p.magnitude, p.numBits( ),
+                                                p.calculatePowers( ) );
+        inversion = new Inversion( p.magnitude );
+        fixedWidth = FixedWidth.forPrime( p.magnitude );
+        // before the first Workspace is created, which allocates the
+        // scratch for the limbs
+        montgomery64 = ( representation == MONTGOMERY64 &&
+                         (p.magnitude[0] & 1) != 0 ?
+                         new Montgomery64( p.magnitude ) : null );
+        workspace = ThreadLocal.withInitial( new Supplier<Workspace>( ) {
+            public Workspace get( ) {
+                return new Workspace( );
+            }
+        } );
+        randomMask = -1 >>> ((32 - (p.numBits( ) & 31)) & 31);
+        randomSource = ThreadLocal.withInitial( DEFAULT_RANDOM_SOURCE );
+        lazyShift = Math.max( p.numBits( ) - 32, 0 );
+        lazyDivisor = p.topBits( lazyShift ) + ( lazyShift > 0 ? 1 : 0 );
+        encodedLength = ( p.numBits( ) + 7 ) >>> 3;
+        
+        if( representation == MONTGOMERY || representation == MONTGOMERY64 ) {
+            
+            if( (p.magnitude[0] & 1) == 0 )
+                throw new IllegalArgumentException
+                ( "FiniteField.<init>: Montgomery representation needs an odd prime" );
+            
+            // Newton iteration for p^-1 mod 2^32, each step doubles
+            // the number of correct bits
+            int inverse = p.magnitude[0];
+            for( int i = 0; i < 4; i++ )
+                inverse *= 2 - p.magnitude[0] * inverse;
+            montgomeryInverse = -inverse;
+            
+            // R mod p and R^2 mod p are computed with the plain arithmetic,
+            // since the representation is not yet switched
+            int k = p.magnitude.length;
+            int[] mag = new int[k + 1];
+            mag[k] = 0x01;
+            FieldElement r = new FieldElement( mag, (byte)1 ).mod( );
+            
+            // R = 2^(64 ceil(k/2)) needs another factor 2^32 for an odd
+            // number of words
+            if( montgomery64 != null && montgomery64.radixWords( ) != k )
+                r = r.multiply( new FieldElement( new int[]{ 0, 1 },
+                                                  (byte)1 ).mod( ) );
+            
+            montgomerySquare = r.multiply( r ).magnitude;
+            
+            ONE = r;
+        }
+        else if( representation == BARRETT ) {
+            montgomeryInverse = 0;
+            montgomerySquare = null;
+            ONE = new FieldElement( 1 );
+        }
+        else
+            throw new IllegalArgumentException
+            ( "FiniteField.<init>: Unknown representation" );
+        
+        // the lanes multiply in Montgomery form with R = 2^(32 k), which
+        // is corrected by a second multiplication if needed
+        int k = p.magnitude.length;
+        if( (p.magnitude[0] & 1) != 0 ) {
+            laneArithmetic = LaneArithmetic.forPrime( p.magnitude );
+            if( representation == BARRETT ) {
+                int[] mag = new int[k + 1];
+                mag[k] = 0x01;
+                FieldElement r = new FieldElement( mag, (byte)1 ).mod( );
+                laneCorrection = r.multiply( r ).magnitude;
+            }
+            else if( montgomery64 != null &&
+                     montgomery64.radixWords( ) != k ) {
+                int[] mag = new int[k];
+                mag[k - 1] = 0x01;
+                laneCorrection = mag;
+            }
+            else
+                laneCorrection = null;
+        }
+        else {
+            laneArithmetic = null;
+            laneCorrection = null;
+        }
+        
+        this.representation = representation;
+        
+    }
     
+    /**
+     * Returns the representation of the elements of this field.
+     *
+     * @return  {@link #BARRETT}, {@link #MONTGOMERY} or
+     *          {@link #MONTGOMERY64}.
+     */
+    public byte getRepresentation( ) {
+        
+        return representation;
+        
+    }
     
     /**
-     * This class represents an element of arbitrary size over a
-     * finite field of order (and character) p. This means, that all
-     * arithmetic functions provide results within this field. You can not
-     * initialize a <tt>FieldElement</tt> with a value that is greater than
-     * or equal to the order of the underlying field.
+     * Set the source of random words for {@link
+     * FiniteField.FieldElement#FiniteField.FieldElement()} and
+     * {@link #randomElements}. Every thread which generates random elements
+     * gets its own source from the factory, so the sources need not be
+     * thread safe and do not contend.
      *
-     * @see #FiniteField.FieldElement(java.lang.String)
+     * @param   factory creates the source of a thread when it first needs
+     *          one.
+     *
+     * @throws  IllegalArgumentException <tt>factory</tt> is <tt>null</tt>.
+     *
+     * @see SecureRandomSource
      */
-    public class FieldElement {
+    public void setRandomSource( Supplier<? extends RandomSource> factory )
+           throws IllegalArgumentException {
         
-        /**
-         * This bit mask is needed for the conversion of a signed integer
-         * to an unsigned long.
-         */
-        private final static long INT2LONG = 0xFFFFFFFFL;
+        if( factory == null )
+            throw new IllegalArgumentException
+            ( "FiniteField.setRandomSource: No factory given" );
         
-        /**
-         * The signum is 0 for 0 and 1 for positive numbers,
-         * we dont have negative numbers at all, since we provide finite field
-         * arithmetic.
-         */
-        private byte signum;
-
-        /**
-         * The magnitude holds the actual value of our <tt>FieldElement</tt>,
-         * the rightmost bit of magnitude[0] is the least significant bit.
-         */
-        private int[] magnitude;
+        randomSource = ThreadLocal.withInitial( factory );
         
+    }
+    
+    /**
+     * Generate many random <tt>FieldElements</tt> at once. The random
+     * words for all elements are taken from the source of the current
+     * thread in a single call.
+     *
+     * @param   count number of elements.
+     * @return  <tt>count</tt> elements uniformly distributed below p.
+     *
+     * @see #setRandomSource
+     */
+    public FieldElement[] randomElements( int count ) {
         
+        int k = p.magnitude.length;
+        RandomSource source = randomSource.get( );
+        int[] words = new int[count * k];
+        source.nextInts( words, 0, words.length );
         
-        /**
-         * This private constructor is used to generate return
-         * values of arithmetic functions. 
-         * The <tt>FieldElement</tt> given to the constructor is just copied.
-         */
-        private FieldElement( FieldElement value ) {
-            
-            magnitude = new int[value.magnitude.length];
-            for( int i = 0; i < magnitude.length; i++ )
-                magnitude[i] = value.magnitude[i];
-            signum = value.signum;
-            
+        FieldElement[] result = new FieldElement[count];
+        for( int i = 0; i < count; i++ ) {
+            int[] mag = randomMagnitude( words, i * k, source );
+            result[i] = new FieldElement( mag,
+                    (byte)( mag.length == 1 && mag[0] == 0 ? 0 : 1 ) );
         }
+        Arrays.fill( words, 0 );
         
-        /**
-         * This private constructor is used to construct return
-         * values of arithmetic functions.
-         * The magnitude given to the constructor is not copied!
-         */
-        private FieldElement( int[] mag, byte sig ) {
-            
-            magnitude = mag;
-            signum = sig;
-            
-        }
+        return result;
         
-        /**
-         * This private constructor is used to generate
-         * FieldElements with small values for use in functions
-         * like {@link #multiply} or {@link #divide}.
-         *
-         * @throws NumberFormatException <tt>value</tt> < 0.
-         */
-        private FieldElement( int value ) throws NumberFormatException {
-            
-            if ( value < 0 )
-                throw new NumberFormatException
-                ( "FiniteField.FieldElement.<init>: Integer too small" );
-            
-            signum = 1;
+    }
+    
+    /**
+     * Turns k random words into a value below p by rejection sampling.
+     * The bits above the length of p are cleared
+     * and the value is drawn again until it is less than p, which succeeds
+     * with a probability of at least one half each time.
+     * <p />
+     * A uniformly distributed magnitude needs no conversion into
+     * Montgomery form, since the conversion permutes the residues.
+     *
+     * @param   words the random words.
+     * @param   offset index of the first of k words to use.
+     * @param   source the source for further words.
+     * @return  magnitude without leading zeros.
+     */
+    private int[] randomMagnitude( int[] words, int offset,
+                                   RandomSource source ) {
+        
+        final long INT2LONG = 0xFFFFFFFFL;
+        int[] m = p.magnitude;
+        int k = m.length;
+        int[] mag = new int[k];
+        System.arraycopy( words, offset, mag, 0, k );
+        
+        while( true ) {
             
-            if ( value == 0 )
-                signum = 0;
+            mag[k - 1] &= randomMask;
             
-            magnitude = new int[1];
-            magnitude[0] = value;
+            int i = k - 1;
+            while( i > 0 && mag[i] == m[i] )
+                i--;
+            if( (mag[i] & INT2LONG) < (m[i] & INT2LONG) )
+                break;
             
+            source.nextInts( mag, 0, k );
         }
         
-        /**
-         * Construct a new <tt>FieldElement</tt> given a String representation
-         * of the value in radix 16.
-         *
-         * @throws  NumberFormatException <tt>value</tt> has zero length.
-         * @throws  NumberFormatException <tt>value</tt> contains illegal digits.
-         * @throws  NumberFormatException <tt>value</tt> is greater than order
-         *          of this field.
-         */
-        public FieldElement( String value ) throws NumberFormatException {
-            
-            if ( value.length() == 0 )
-                throw new NumberFormatException
-                ( "FiniteField.FieldElement.<init>: Length of value is 0" );
-            
-            // counter for the string
-            int i = 0;
-            
-            // length of string
-            int length = value.length();
-            
-            // number of digits in string (after skipping leading zeros)
-            int numDigits;
-            
-            // skip leading zeros
-            while( i < length && Character.digit( value.charAt(i), 16 ) == 0 )
-                i++;
-            
-            // value is zero, we are done
-            if( i == length ) {
-                magnitude = new int[1];
-                signum = 0;
-                return;
-            }
-            
-            // calculate num digits in string
-            else {
-                signum = 1;
-                numDigits = length - i;
-            }
-            
-            // calculate expected size of magnitude and allocate
-            // memory for it
-            // number of bits needed for each digit: 4
-            int numBits = (numDigits * 4) + 1;
-            int numWords = (numBits + 31) / 32;
+        int length = k;
+        while( length > 1 && mag[length - 1] == 0 )
+            length--;
+        
+        return ( length == k ? mag : Arrays.copyOf( mag, length ) );
+        
+    }
+    
+    /**
+     * Returns the length of the binary encoding of the elements of this
+     * field, which is the length of p in bytes.
+     *
+     * @return  number of bytes per element.
+     *
+     * @see FiniteField.FieldElement#toByteArray
+     */
+    public int getEncodedLength( ) {
+        
+        return encodedLength;
+        
+    }
+    
+    /**
+     * Encode many <tt>FieldElements</tt> into a single array. Element i
+     * occupies the {@link #getEncodedLength} bytes starting at
+     * <code>i * getEncodedLength( )</code>.
+     *
+     * @param   elements the elements to encode.
+     * @param   order the byte order of every single element.
+     * @return  the concatenated encodings.
+     *
+     * @see #decodeAll(byte[],ByteOrder)
+     */
+    public byte[] encodeAll( FieldElement[] elements, ByteOrder order ) {
+        
+        boolean bigEndian = order == ByteOrder.BIG_ENDIAN;
+        byte[] result = new byte[elements.length * encodedLength];
+        
+        for( int i = 0; i < elements.length; i++ )
+            elements[i].encode( result, i * encodedLength, bigEndian );
+        
+        return result;
+        
+    }
+    
+    /**
+     * Encode many <tt>FieldElements</tt> into a buffer at its current
+     * position, in the byte order of the buffer. The position is advanced
+     * by the number of bytes written. A direct buffer is filled by a single
+     * bulk transfer.
+     *
+     * @param   elements the elements to encode.
+     * @param   dst the buffer.
+     *
+     * @throws  BufferOverflowException <tt>dst</tt> has not enough bytes
+     *          remaining, nothing is written.
+     *
+     * @see #decodeAll(ByteBuffer,int)
+     */
+    public void encodeAll( FieldElement[] elements, ByteBuffer dst )
+           throws BufferOverflowException {
+        
+        int length = elements.length * encodedLength;
+        if( dst.remaining( ) < length )
+            throw new BufferOverflowException( );
+        
+        boolean bigEndian = dst.order( ) == ByteOrder.BIG_ENDIAN;
+        
+        if( dst.hasArray( ) ) {
+            int offset = dst.arrayOffset( ) + dst.position( );
+            for( int i = 0; i < elements.length; i++ )
+                elements[i].encode( dst.array( ), offset + i * encodedLength,
+                                    bigEndian );
+            dst.position( dst.position( ) + length );
+        }
+        else {
+            byte[] bytes = encodeAll( elements, dst.order( ) );
+            dst.put( bytes );
+            Arrays.fill( bytes, (byte)0 );
+        }
+        
+    }
+    
+    /**
+     * Decode many <tt>FieldElements</tt> from an array of concatenated
+     * encodings as written by {@link #encodeAll(FieldElement[],ByteOrder)}.
+     *
+     * @param   src the encodings.
+     * @param   order the byte order of every single element.
+     * @return  the decoded elements.
+     *
+     * @throws  NumberFormatException the length of <tt>src</tt> is no
+     *          multiple of {@link #getEncodedLength}.
+     * @throws  NumberFormatException a value is not less than p.
+     */
+    public FieldElement[] decodeAll( byte[] src, ByteOrder order )
+           throws NumberFormatException {
+        
+        if( src.length % encodedLength != 0 )
+            throw new NumberFormatException
+            ( "FiniteField.decodeAll: Length is no multiple of the " +
+              "encoded length" );
+        
+        return decodeAll( src, 0, src.length / encodedLength,
+                          order == ByteOrder.BIG_ENDIAN );
+        
+    }
+    
+    /**
+     * Decode <tt>count</tt> <tt>FieldElements</tt> from a buffer at its
+     * current position, in the byte order of the buffer. The position is
+     * advanced by the number of bytes read. A direct buffer is read by a
+     * single bulk transfer.
+     *
+     * @param   src the buffer.
+     * @param   count number of elements.
+     * @return  the decoded elements.
+     *
+     * @throws  BufferUnderflowException <tt>src</tt> has not enough bytes
+     *          remaining, nothing is read.
+     * @throws  NumberFormatException a value is not less than p, the
+     *          position of <tt>src</tt> is left unchanged.
+     */
+    public FieldElement[] decodeAll( ByteBuffer src, int count )
+           throws BufferUnderflowException, NumberFormatException {
+        
+        int length = count * encodedLength;
+        if( src.remaining( ) < length )
+            throw new BufferUnderflowException( );
+        
+        boolean bigEndian = src.order( ) == ByteOrder.BIG_ENDIAN;
+        FieldElement[] result;
+        
+        if( src.hasArray( ) )
+            result = decodeAll( src.array( ),
+                                src.arrayOffset( ) + src.position( ),
+                                count, bigEndian );
+        else {
+            byte[] bytes = new byte[length];
+            src.duplicate( ).get( bytes );
+            try {
+                result = decodeAll( bytes, 0, count, bigEndian );
+            }
+            finally {
+                Arrays.fill( bytes, (byte)0 );
+            }
+        }
+        
+        src.position( src.position( ) + length );
+        
+        return result;
+        
+    }
+    
+    /**
+     * Decode consecutive encodings of elements.
+     *
+     * @param   src array holding the encodings.
+     * @param   offset index of the first byte of the first encoding.
+     * @param   count number of elements.
+     * @param   bigEndian byte order of every single element.
+     * @return  the decoded elements.
+     *
+     * @throws  NumberFormatException a value is not less than p.
+     */
+    private FieldElement[] decodeAll( byte[] src, int offset, int count,
+                                      boolean bigEndian )
+            throws NumberFormatException {
+        
+        FieldElement[] result = new FieldElement[count];
+        for( int i = 0; i < count; i++ )
+            result[i] = new FieldElement( src, offset + i * encodedLength,
+                                          bigEndian );
+        
+        return result;
+        
+    }
+    
+    /**
+     * Invert many <tt>FieldElements</tt> at once by Montgomery's trick,
+     * see <b>GECC</b>, p. 44. The products of all prefixes are computed,
+     * only their total product is inverted and the single inverses are
+     * recovered from it, which needs one inversion and
+     * <code>3(n - 1)</code> multiplications instead of n inversions.
+     * <p />
+     * Zero has no inverse, zero elements are skipped and their result is
+     * {@link #ZERO}. This allows e.g. normalizing points at infinity
+     * together with other points.
+     *
+     * @param   in the elements to invert.
+     * @param   out array receiving the inverses, it may be the same
+     *          array as <tt>in</tt>.
+     *
+     * @throws  IllegalArgumentException the arrays differ in length.
+     */
+    public void invertAll( FieldElement[] in, FieldElement[] out )
+           throws IllegalArgumentException {
+        
+        if( in.length != out.length )
+            throw new IllegalArgumentException
+            ( "FiniteField.invertAll: Arrays differ in length" );
+        
+        FieldElement[] prefix = new FieldElement[in.length];
+        FieldElement product = accumulate( in, prefix, 0, in.length );
+        distribute( in, out, prefix, 0, in.length, product.invert( ) );
+        
+    }
+    
+    /**
+     * Invert many <tt>FieldElements</tt> at once like
+     * {@link #invertAll(FiniteField.FieldElement[],
+     * FiniteField.FieldElement[])}, but split the work across the threads
+     * of a <tt>ForkJoinPool</tt>.
+     * <p />
+     * The elements are divided into chunks, which form the leaves of a
+     * product tree of depth two. The prefix products of all chunks are
+     * computed in parallel, then the chunk products are inverted by
+     * Montgomery's trick and finally the inverses within every chunk are
+     * recovered in parallel. So this still needs only a single inversion.
+     *
+     * @param   in the elements to invert.
+     * @param   out array receiving the inverses, it may be the same
+     *          array as <tt>in</tt>.
+     * @param   pool the pool which runs the tasks.
+     *
+     * @throws  IllegalArgumentException the arrays differ in length.
+     */
+    public void invertAll( FieldElement[] in, FieldElement[] out,
+                           ForkJoinPool pool )
+           throws IllegalArgumentException {
+        
+        if( in.length != out.length )
+            throw new IllegalArgumentException
+            ( "FiniteField.invertAll: Arrays differ in length" );
+        
+        int chunks = Math.min( pool.getParallelism( ) << 2,
+                               in.length / BATCH_CHUNK_SIZE );
+        if( chunks < 2 ) {
+            invertAll( in, out );
+            return;
+        }
+        
+        BatchInversion task = new BatchInversion( in, out, chunks );
+        pool.invoke( task );
+        
+        invertAll( task.products, task.inverses );
+        
+        task.reinitialize( );
+        pool.invoke( task );
+        
+    }
+    
+    /**
+     * Computes the prefix products of the nonzero elements in a range,
+     * i.e. <code>prefix[i]</code> is the product of all nonzero
+     * <code>in[j]</code> with <code>from &lt;= j &lt;= i</code>.
+     *
+     * @param   in the elements.
+     * @param   prefix array receiving the prefix products.
+     * @param   from first index of the range.
+     * @param   to index after the range.
+     * @return  the product of all nonzero elements in the range or
+     *          {@link #ONE} if there are none.
+     */
+    private FieldElement accumulate( FieldElement[] in, FieldElement[] prefix,
+                                     int from, int to ) {
+        
+        FieldElement product = ONE;
+        
+        for( int i = from; i < to; i++ ) {
+            if( in[i].signum != 0 )
+                product = product.multiply( in[i] );
+            prefix[i] = product;
+        }
+        
+        return product;
+        
+    }
+    
+    /**
+     * Recovers the inverses of the elements in a range from the inverse of
+     * their product, working backwards from the end of the range.
+     *
+     * @param   in the elements.
+     * @param   out array receiving the inverses.
+     * @param   prefix the prefix products computed by {@link #accumulate}.
+     * @param   from first index of the range.
+     * @param   to index after the range.
+     * @param   inverse the inverse of the product of the range.
+     */
+    private void distribute( FieldElement[] in, FieldElement[] out,
+                             FieldElement[] prefix, int from, int to,
+                             FieldElement inverse ) {
+        
+        for( int i = to - 1; i >= from; i-- ) {
+            
+            FieldElement element = in[i];
+            
+            if( element.signum == 0 ) {
+                out[i] = ZERO;
+                continue;
+            }
+            
+            out[i] = ( i > from ? inverse.multiply( prefix[i - 1] ) : inverse );
+            inverse = inverse.multiply( element );
+        }
+        
+    }
+    
+    /**
+     * Compute the square roots of many <tt>FieldElements</tt> at once,
+     * e.g. to decompress points. Unlike {@link FieldElement#sqrt} an
+     * element without a root does not abort the batch, its result is
+     * <tt>null</tt>.
+     * <p />
+     * For <code>p = 3 mod 4</code> and <code>p = 5 mod 8</code> the
+     * candidate roots are computed without the Jacobi symbol, and are
+     * validated afterwards by squaring them with {@link #multiplyAll}. For
+     * <code>p = 1 mod 8</code> every element is handled by
+     * {@link FieldElement#sqrt}.
+     *
+     * @param   in the elements.
+     * @param   out array receiving the roots or <tt>null</tt> for the
+     *          elements which are no squares, it may be the same array as
+     *          <tt>in</tt>.
+     *
+     * @throws  IllegalArgumentException the arrays differ in length.
+     */
+    public void sqrtAll( FieldElement[] in, FieldElement[] out )
+           throws IllegalArgumentException {
+        
+        if( in.length != out.length )
+            throw new IllegalArgumentException
+            ( "FiniteField.sqrtAll: Arrays differ in length" );
+        
+        int n = in.length;
+        if( n == 0 )
+            return;
+        
+        if( (p.magnitude[0] & 1) == 0 ) {
+            for( int i = 0; i < n; i++ )
+                out[i] = in[i].sqrt( );
+            return;
+        }
+        
+        if( (p.magnitude[0] & 7) == 1 ) {
+            for( int i = 0; i < n; i++ )
+                out[i] = ( in[i].jacobi( ) >= 0 ? in[i].sqrt( ) : null );
+            return;
+        }
+        
+        FieldElement[] roots = new FieldElement[n];
+        for( int i = 0; i < n; i++ )
+            roots[i] = in[i].rootCandidate( );
+        
+        FieldElement[] squares = new FieldElement[n];
+        multiplyAll( roots, roots, squares );
+        
+        for( int i = 0; i < n; i++ )
+            out[i] = ( squares[i].equals( in[i] ) ? roots[i] : null );
+        
+    }
+    
+    /**
+     * Multiply many pairs of <tt>FieldElements</tt> at once, i.e.
+     * <code>out[i] = a[i] * b[i]</code>.
+     * <p />
+     * The pairs are multiplied by the {@link LaneArithmetic} engine in
+     * groups of {@link LaneArithmetic#LANES}. With the Vector API engine,
+     * see {@link LaneArithmetic#forPrime}, several pairs are processed by
+     * one SIMD instruction, otherwise by scalar loops which the JIT
+     * compiler may vectorize. For batches of less than
+     * {@link #LANE_THRESHOLD} elements or an even p the pairs are
+     * multiplied one by one.
+     *
+     * @param   a the first factors.
+     * @param   b the second factors.
+     * @param   out array receiving the products, it may be the same array
+     *          as <tt>a</tt> or <tt>b</tt>.
+     *
+     * @throws  IllegalArgumentException the arrays differ in length.
+     */
+    public void multiplyAll( FieldElement[] a, FieldElement[] b,
+                             FieldElement[] out )
+           throws IllegalArgumentException {
+        
+        if( a.length != b.length || a.length != out.length )
+            throw new IllegalArgumentException
+            ( "FiniteField.multiplyAll: Arrays differ in length" );
+        
+        int n = a.length;
+        
+        if( laneArithmetic == null || n < LANE_THRESHOLD ) {
+            for( int i = 0; i < n; i++ )
+                out[i] = a[i].multiply( b[i] );
+            return;
+        }
+        
+        int k = laneArithmetic.k;
+        long[][] x = laneArithmetic.newOperand( );
+        long[][] y = laneArithmetic.newOperand( );
+        long[][] t = laneArithmetic.newResult( );
+        
+        for( int from = 0; from < n; from += LaneArithmetic.LANES ) {
+            
+            int lanes = Math.min( LaneArithmetic.LANES, n - from );
+            
+            toLanes( a, from, lanes, x );
+            toLanes( b, from, lanes, y );
+            laneArithmetic.multiply( x, y, t, lanes );
+            
+            if( laneCorrection != null ) {
+                for( int j = 0; j < k; j++ ) {
+                    System.arraycopy( t[j], 0, x[j], 0, lanes );
+                    long word = ( j < laneCorrection.length ?
+                                  laneCorrection[j] & 0xFFFFFFFFL : 0 );
+                    for( int l = 0; l < lanes; l++ )
+                        y[j][l] = word;
+                }
+                laneArithmetic.multiply( x, y, t, lanes );
+            }
+            
+            fromLanes( t, out, from, lanes );
+        }
+        
+    }
+    
+    /**
+     * Transposes the magnitudes of a range of elements into lanes.
+     *
+     * @param   elements the elements.
+     * @param   from index of the first element, which goes to lane 0.
+     * @param   lanes number of elements.
+     * @param   rows k rows receiving the words of the elements.
+     */
+    private void toLanes( FieldElement[] elements, int from, int lanes,
+                          long[][] rows ) {
+        
+        for( int l = 0; l < lanes; l++ ) {
+            int[] mag = elements[from + l].magnitude;
+            for( int j = 0; j < rows.length; j++ )
+                rows[j][l] = ( j < mag.length ? mag[j] & 0xFFFFFFFFL : 0 );
+        }
+        
+    }
+    
+    /**
+     * Constructs new elements from lanes, the reverse of {@link #toLanes}.
+     *
+     * @param   rows at least k rows holding the words of the elements.
+     * @param   elements array receiving the new elements.
+     * @param   from index of the element taken from lane 0.
+     * @param   lanes number of elements.
+     */
+    private void fromLanes( long[][] rows, FieldElement[] elements, int from,
+                            int lanes ) {
+        
+        int k = laneArithmetic.k;
+        
+        for( int l = 0; l < lanes; l++ ) {
+            
+            int length = k;
+            while( length > 1 && rows[length - 1][l] == 0 )
+                length--;
+            
+            int[] mag = new int[length];
+            for( int j = 0; j < length; j++ )
+                mag[j] = (int)rows[j][l];
+            
+            elements[from + l] = new FieldElement( mag,
+                    (byte)( length == 1 && mag[0] == 0 ? 0 : 1 ) );
+        }
+        
+    }
+    
+    /**
+     * Montgomery multiplication using the Coarsely Integrated Operand
+     * Scanning method, see <b>KAK</b>. Multiplication and reduction are
+     * interleaved word by word, so no double length product is needed.
+     * <p />
+     * The operands have to be less than p but may be shorter than p. If
+     * the representation is {@link #MONTGOMERY64}, the multiplication is
+     * done on the limbs of the {@link Workspace} of the current thread.
+     *
+     * @param   a first factor.
+     * @param   b second factor.
+     * @param   t scratch of at least <code>k + 2</code> words, on return
+     *          the lower k words hold <code>a * b * R^-1 mod p</code>.
+     */
+    private void montgomeryMultiply( int[] a, int[] b, int[] t ) {
+        
+        if( representation == MONTGOMERY64 ) {
+            workspace.get( ).multiply( t, a, b );
+            return;
+        }
+        
+        final long INT2LONG = 0xFFFFFFFFL;
+        int[] m = p.magnitude;
+        int k = m.length;
+        int bLength = b.length;
+        
+        for( int i = 0; i < k + 2; i++ )
+            t[i] = 0;
+        
+        for( int i = 0; i < k; i++ ) {
+            
+            long a_i = ( i < a.length ? a[i] & INT2LONG : 0 );
+            long carry = 0;
+            int j = 0;
+            
+            // t = t + a_i * b
+            for( ; j < bLength; j++ ) {
+                carry += a_i * (b[j] & INT2LONG) + (t[j] & INT2LONG);
+                t[j] = (int)carry;
+                carry >>>= 32;
+            }
+            for( ; j < k; j++ ) {
+                carry += t[j] & INT2LONG;
+                t[j] = (int)carry;
+                carry >>>= 32;
+            }
+            carry += t[k] & INT2LONG;
+            t[k] = (int)carry;
+            t[k + 1] = (int)(carry >>> 32);
+            
+            // t = (t + u * p) / 2^32, the lowest word becomes zero
+            long u = (t[0] * montgomeryInverse) & INT2LONG;
+            carry = (u * (m[0] & INT2LONG) + (t[0] & INT2LONG)) >>> 32;
+            for( j = 1; j < k; j++ ) {
+                carry += u * (m[j] & INT2LONG) + (t[j] & INT2LONG);
+                t[j - 1] = (int)carry;
+                carry >>>= 32;
+            }
+            carry += t[k] & INT2LONG;
+            t[k - 1] = (int)carry;
+            t[k] = t[k + 1] + (int)(carry >>> 32);
+            t[k + 1] = 0;
+        }
+        
+        // the result is less than 2p, one subtraction is enough
+        boolean subtract = ( t[k] != 0 );
+        if( ! subtract ) {
+            subtract = true;
+            for( int i = k - 1; i >= 0; i-- )
+                if( t[i] != m[i] ) {
+                    subtract = ( (t[i] & INT2LONG) > (m[i] & INT2LONG) );
+                    break;
+                }
+        }
+        
+        if( subtract ) {
+            long diff = 0;
+            for( int i = 0; i < k; i++ ) {
+                diff += (t[i] & INT2LONG) - (m[i] & INT2LONG);
+                t[i] = (int)diff;
+                diff >>= 32;
+            }
+            t[k] = 0;
+        }
+        
+    }
+    
+    /**
+     * Montgomery reduction of a double length value using the Separated
+     * Operand Scanning method, see <b>KAK</b>. This is used after a
+     * squaring, which is cheaper than a Montgomery multiplication of an
+     * element by itself.
+     *
+     * @param   t value less than <code>p * R</code> in at least
+     *          <code>2k + 1</code> words, it is destroyed.
+     * @param   result array of k words receiving
+     *          <code>t * R^-1 mod p</code>.
+     */
+    private void montgomeryReduce( int[] t, int[] result ) {
+        
+        final long INT2LONG = 0xFFFFFFFFL;
+        int[] m = p.magnitude;
+        int k = m.length;
+        
+        long overflow = 0;
+        
+        for( int i = 0; i < k; i++ ) {
+            
+            // add u * p * 2^(32 i), which clears word i. The carry out of
+            // word i + k is deferred to the next row.
+            long u = (t[i] * montgomeryInverse) & INT2LONG;
+            long carry = 0;
+            
+            for( int j = 0; j < k; j++ ) {
+                carry += u * (m[j] & INT2LONG) + (t[i + j] & INT2LONG);
+                t[i + j] = (int)carry;
+                carry >>>= 32;
+            }
+            carry += (t[i + k] & INT2LONG) + overflow;
+            t[i + k] = (int)carry;
+            overflow = carry >>> 32;
+        }
+        t[k << 1] += (int)overflow;
+        
+        // the result t / R is less than 2p, one subtraction is enough
+        boolean subtract = ( t[k << 1] != 0 );
+        if( ! subtract ) {
+            subtract = true;
+            for( int i = k - 1; i >= 0; i-- )
+                if( t[k + i] != m[i] ) {
+                    subtract = ( (t[k + i] & INT2LONG) > (m[i] & INT2LONG) );
+                    break;
+                }
+        }
+        
+        long diff = 0;
+        for( int i = 0; i < k; i++ ) {
+            diff += (t[k + i] & INT2LONG) - ( subtract ? m[i] & INT2LONG : 0 );
+            result[i] = (int)diff;
+            diff >>= 32;
+        }
+        
+    }
+    
+    /**
+     * Square a magnitude. The products <code>a_i a_j</code> with
+     * <code>i != j</code> appear twice in a square, so they are only
+     * computed once and doubled by a shift afterwards, see <b>HAC</b>,
+     * p. 597. This saves almost half of the word multiplications of the
+     * schoolbook method.
+     *
+     * @param   a the magnitude to square.
+     * @param   length number of words of <tt>a</tt> to use.
+     * @param   result array of at least <code>2 length</code> words, which
+     *          has to be zero in these words.
+     */
+    private static void squareWords( int[] a, int length, int[] result ) {
+        
+        final long INT2LONG = 0xFFFFFFFFL;
+        
+        // sum of all a_i a_j with i < j
+        for( int i = 0; i < length; i++ ) {
+            
+            long a_i = a[i] & INT2LONG;
+            long value = 0;
+            
+            for( int j = i + 1; j < length; j++ ) {
+                int iPlusj = i + j;
+                value += a_i * (a[j] & INT2LONG) + (result[iPlusj] & INT2LONG);
+                result[iPlusj] = (int)value;
+                value >>>= 32;
+            }
+            
+            result[i + length] = (int)value;
+        }
+        
+        // double the cross products and add the squares a_i^2
+        long carry = 0;
+        int lastBit = 0;
+        
+        for( int i = 0; i < length; i++ ) {
+            
+            long a_i = a[i] & INT2LONG;
+            long square = a_i * a_i;
+            int low = result[i << 1], high = result[(i << 1) + 1];
+            
+            carry += (square & INT2LONG)
+                   + (((low << 1) | lastBit) & INT2LONG);
+            result[i << 1] = (int)carry;
+            carry >>>= 32;
+            
+            carry += (square >>> 32)
+                   + (((high << 1) | (low >>> 31)) & INT2LONG);
+            result[(i << 1) + 1] = (int)carry;
+            carry >>>= 32;
+            
+            lastBit = high >>> 31;
+        }
+        
+    }
+    
+
+    
+    
+    /**
+     * This class represents an element of arbitrary size over a
+     * finite field of order (and character) p. This means, that all
+     * arithmetic functions provide results within this field. You can not
+     * initialize a <tt>FieldElement</tt> with a value that is greater than
+     * or equal to the order of the underlying field.
+     *
+     * @see #FiniteField.FieldElement(java.lang.String)
+     */
+    public class FieldElement {
+        
+        /**
+         * This bit mask is needed for the conversion of a signed integer
+         * to an unsigned long.
+         */
+        private final static long INT2LONG = 0xFFFFFFFFL;
+        
+        /**
+         * The signum is 0 for 0 and 1 for positive numbers,
+         * we dont have negative numbers at all, since we provide finite field
+         * arithmetic.
+         */
+        private byte signum;
+
+        /**
+         * The magnitude holds the actual value of our <tt>FieldElement</tt>,
+         * the rightmost bit of magnitude[0] is the least significant bit.
+         */
+        private int[] magnitude;
+        
+        
+        
+        /**
+         * This private constructor is used to generate return
+         * values of arithmetic functions. 
+         * The <tt>FieldElement</tt> given to the constructor is just copied.
+         */
+        private FieldElement( FieldElement value ) {
+            
+            magnitude = new int[value.magnitude.length];
+            for( int i = 0; i < magnitude.length; i++ )
+                magnitude[i] = value.magnitude[i];
+            signum = value.signum;
+            
+        }
+        
+        /**
+         * This private constructor is used to construct return
+         * values of arithmetic functions.
+         * The magnitude given to the constructor is not copied!
+         */
+        private FieldElement( int[] mag, byte sig ) {
+            
+            magnitude = mag;
+            signum = sig;
+            
+        }
+        
+        /**
+         * This private constructor is used to generate
+         * FieldElements with small values for use in functions
+         * like {@link #multiply} or {@link #divide}.
+         *
+         * @throws NumberFormatException <tt>value</tt> < 0.
+         */
+        private FieldElement( int value ) throws NumberFormatException {
+            
+            if ( value < 0 )
+                throw new NumberFormatException
+                ( "FiniteField.FieldElement.<init>: Integer too small" );
+            
+            signum = 1;
+            
+            if ( value == 0 )
+                signum = 0;
+            
+            magnitude = new int[1];
+            magnitude[0] = value;
+            
+        }
+        
+        /**
+         * Construct a new <tt>FieldElement</tt> given a String representation
+         * of the value in radix 16.
+         *
+         * @throws  NumberFormatException <tt>value</tt> has zero length.
+         * @throws  NumberFormatException <tt>value</tt> contains illegal digits.
+         * @throws  NumberFormatException <tt>value</tt> is greater than order
+         *          of this field.
+         */
+        public FieldElement( String value ) throws NumberFormatException {
+            
+            if ( value.length() == 0 )
+                throw new NumberFormatException
+                ( "FiniteField.FieldElement.<init>: Length of value is 0" );
+            
+            // counter for the string
+            int i = 0;
+            
+            // length of string
+            int length = value.length();
+            
+            // number of digits in string (after skipping leading zeros)
+            int numDigits;
+            
+            // skip leading zeros
+            while( i < length && Character.digit( value.charAt(i), 16 ) == 0 )
+                i++;
+            
+            // value is zero, we are done
+            if( i == length ) {
+                magnitude = new int[1];
+                signum = 0;
+                return;
+            }
+            
+            // calculate num digits in string
+            else {
+                signum = 1;
+                numDigits = length - i;
+            }
+            
+            // calculate expected size of magnitude and allocate
+            // memory for it
+            // number of bits needed for each digit: 4
+            int numBits = (numDigits * 4) + 1;
+            int numWords = (numBits + 31) / 32;
             magnitude = new int[numWords];
             
-            // the length of the first group might be smaller
-            // than 7
-            int lengthFirstDigitGroup = numDigits % 7;
-            if( lengthFirstDigitGroup == 0 )
-                lengthFirstDigitGroup = 7;
+            // the length of the first group might be smaller
+            // than 7
+            int lengthFirstDigitGroup = numDigits % 7;
+            if( lengthFirstDigitGroup == 0 )
+                lengthFirstDigitGroup = 7;
+            
+            // Calculate value of first digit group
+            String group = value.substring( i, i += lengthFirstDigitGroup );
+            magnitude[0] = Integer.parseInt( group, 16 );
+            
+            if( magnitude[0] < 0 )
+                throw new NumberFormatException
+                ( "FiniteField.FieldElement.<init>: Illegal digit in value" );
+            
+            // holds value of current digit group as an integer
+            int valueOfGroupI = 0;
+            
+            // holds value of current digit group as a long
+            long valueOfGroupL;
+            
+            // value of current word in radix 10
+            long radix = 0x10000000 & INT2LONG;
+            
+            while( i < length ) {
+                
+                // get value of current group
+                group = value.substring( i, i += 7 );
+                valueOfGroupI = Integer.parseInt( group, 16 );
+                
+                if( valueOfGroupI < 0 )
+                    throw new NumberFormatException
+                    ( "FiniteField.FieldElement.<init>: Illegal digit in value" );
+                
+                // convert value of group to a long
+                valueOfGroupL = valueOfGroupI & INT2LONG;
+                
+                // weight each word of magnitude with radix 10 while
+                // propagating the carry
+                long product = 0;
+                for( int k = 0; k < numWords; k++ ) {
+                    product = radix * (magnitude[k] & INT2LONG)
+                            + (product >>> 32);
+                    magnitude[k] = (int)product;
+                }
+                
+                // add the value of the current group and propagate
+                // the carry to upper positions
+                long sum = (magnitude[0] & INT2LONG) + valueOfGroupL;
+                magnitude[0] = (int)sum;
+                for( int k = 1; k < numWords; k++ ) {
+                    sum = (magnitude[k] & INT2LONG) + (sum >>> 32);
+                    magnitude[k] = (int)sum;
+                }
+            }
+            
+            magnitude = stripZeros( magnitude );
+            
+            if( p != null ) {
+                if( this.compareMagnitude( p ) >= EQ )
+                    throw new NumberFormatException
+                    ( "FiniteField.FieldElement.<init>:" +
+                            "Value to great for underlying field" );
+                
+                if( representation != BARRETT )
+                    magnitude = toMontgomery( magnitude );
+            }
+
+        }
+        
+        /**
+         * Construct a new <tt>FieldElement</tt> given its binary encoding of
+         * exactly {@link FiniteField#getEncodedLength} bytes.
+         *
+         * @param   value the encoding.
+         * @param   order the byte order of <tt>value</tt>.
+         *
+         * @throws  NumberFormatException <tt>value</tt> has the wrong length.
+         * @throws  NumberFormatException <tt>value</tt> is not less than the
+         *          order of this field.
+         *
+         * @see #toByteArray
+         */
+        public FieldElement( byte[] value, ByteOrder order )
+               throws NumberFormatException {
+            
+            if( value.length != encodedLength )
+                throw new NumberFormatException
+                ( "FiniteField.FieldElement.<init>: Wrong length of value" );
+            
+            decode( value, 0, order == ByteOrder.BIG_ENDIAN );
+            
+        }
+        
+        /**
+         * Construct a new <tt>FieldElement</tt> from the next
+         * {@link FiniteField#getEncodedLength} bytes of a buffer, in the
+         * byte order of the buffer. The position of the buffer is advanced
+         * by the number of bytes read.
+         *
+         * @param   src the buffer.
+         *
+         * @throws  BufferUnderflowException <tt>src</tt> has not enough bytes
+         *          remaining.
+         * @throws  NumberFormatException the value is not less than the
+         *          order of this field, the position of <tt>src</tt> is
+         *          left unchanged.
+         *
+         * @see #encode(ByteBuffer)
+         */
+        public FieldElement( ByteBuffer src )
+               throws BufferUnderflowException, NumberFormatException {
+            
+            if( src.remaining( ) < encodedLength )
+                throw new BufferUnderflowException( );
+            
+            boolean bigEndian = src.order( ) == ByteOrder.BIG_ENDIAN;
+            
+            if( src.hasArray( ) )
+                decode( src.array( ), src.arrayOffset( ) + src.position( ),
+                        bigEndian );
+            else {
+                byte[] bytes = new byte[encodedLength];
+                src.duplicate( ).get( bytes );
+                try {
+                    decode( bytes, 0, bigEndian );
+                }
+                finally {
+                    Arrays.fill( bytes, (byte)0 );
+                }
+            }
+            
+            src.position( src.position( ) + encodedLength );
+            
+        }
+        
+        /**
+         * Construct a new <tt>FieldElement</tt> from an encoding within an
+         * array, used by {@link FiniteField#decodeAll}.
+         *
+         * @throws  NumberFormatException the value is not less than the
+         *          order of this field.
+         */
+        private FieldElement( byte[] src, int offset, boolean bigEndian )
+                throws NumberFormatException {
+            
+            decode( src, offset, bigEndian );
+            
+        }
+        
+        /**
+         * Generate a new <tt>FieldElement</tt> randomly. The value is
+         * uniformly distributed below p and drawn from the
+         * {@link RandomSource} of the current thread.
+         *
+         * @see FiniteField#setRandomSource
+         * @see FiniteField#randomElements
+         */
+        public FieldElement(  ) {
+            
+            RandomSource source = randomSource.get( );
+            int[] words = new int[p.magnitude.length];
+            source.nextInts( words, 0, words.length );
+            
+            magnitude = randomMagnitude( words, 0, source );
+            
+            signum = 0;
+            if( !(magnitude.length == 1 && magnitude[0] == 0) )
+                signum = 1;
+            
+        }
+        
+
+        
+        
+        /**
+         * Add two <tt>FieldElements</tt>.
+         *
+         * @param   operand <tt>FieldElement</tt> which is added to
+         *          <tt>this</tt>.
+         * @return  <code>this + operand (mod p)</code>
+         */
+        public FieldElement add( FieldElement operand ) {
+            
+            int[] mag;
+            byte compare;
+            FieldElement result;
+            
+            if ( this.signum == 0 )
+                return operand;
+            if ( operand.signum == 0 )
+                return this;
+            
+            if( fixedWidth != null ) {
+                Workspace w = workspace.get( );
+                int[] sum = new int[fixedWidth.k];
+                fixedWidth.add( this.words( w.padded1 ),
+                                operand.words( w.padded2 ), sum );
+                return fromWords( sum );
+            }
+            
+            if ( this.magnitude.length > operand.magnitude.length )
+                mag = add ( this.magnitude, operand.magnitude );
+            else
+                mag = add ( operand.magnitude, this.magnitude );
+            
+            result = new FieldElement( mag, (byte)1 );
+
+            compare = result.compareMagnitude( p );
+            
+            // The result is equal to p, we return zero
+            if ( compare == EQ )
+                return new FieldElement( new int[1], (byte)0 );
+            
+            // The result is greater than p, we have to subtract
+            // p, then return
+            else if ( compare == GT ) {
+                result.magnitude = subtract( result.magnitude, p.magnitude );
+            }
+            
+            return result;
+
+        }
+        
+        /**
+         * This method is used to add the magnitudes of two
+         * <tt>FieldElements</tt>. Only to be called if you know which one
+         * of the magnitudes is the longer one.
+         *
+         * @param   bigger The longer summand.
+         * @param   smaller The shorter summand.
+         * @return  <code>bigger + smaller</code>
+         */
+        private int[] add( int[] bigger, int[] smaller ) {
+            
+            long sum = 0;
+            int i = 0;
+            int[] result = new int[bigger.length + 1];
+            boolean carry;
+
+            // add the parts of both numbers which are of the same length
+            while ( i < smaller.length ) {
+                sum = (bigger[i] & INT2LONG) + (smaller[i] & INT2LONG) + sum;
+                result[i] = (int)sum;
+                sum >>>= 32;
+                ++ i;
+            }
+            
+            // copy the part of the longer number into the result
+            // while propagating the carry
+            carry = (sum != 0);
+            while ( i < bigger.length && carry ) {
+                carry = ((result[i] = bigger[i] + 1) == 0);
+                ++ i;
+            }
+            
+            if ( carry )
+                result[bigger.length] = 1;
+            
+            // copy the longer number to the result array, where no carry
+            // propagation is needed
+            while ( i < bigger.length ) {
+                result[i] = bigger[i];
+                ++ i;
+            }
+            
+            return stripZeros ( result );
+        }
+        
+        /**
+         * Subtract two <tt>FieldElements</tt>.
+         *
+         * @param   operand <tt>FieldElement</tt> which is subtracted from
+         *          <tt>this</tt>.
+         * @return  <code>this - operand (mod p)</code>
+         */
+        public FieldElement subtract( FieldElement operand ) {
+            
+            int[] mag;
+            byte compare;
+            
+            if( fixedWidth != null && this != p ) {
+                Workspace w = workspace.get( );
+                int[] difference = new int[fixedWidth.k];
+                fixedWidth.subtract( this.words( w.padded1 ),
+                                     operand.words( w.padded2 ), difference );
+                return fromWords( difference );
+            }
+            
+            compare = this.compareMagnitude( operand );
+            
+            // operands are the same which means the result is zero
+            if( compare == EQ )
+                return new FieldElement( 0 );
+            
+            // this is greater than operand => subtract the magnitudes,
+            // the result is already modulos p
+            else if( compare == GT )
+                mag = subtract( this.magnitude, operand.magnitude );
+            
+            // in this case we subtract this from operand and subtract
+            // the result from p
+            else {
+                mag = subtract( operand.magnitude, this.magnitude );
+                mag = subtract( p.magnitude, mag );
+            }
+                       
+            return new FieldElement ( mag, (byte)1 );
+        }
+        
+        /**
+         * This method is used to subtract the magnitudes of two
+         * <tt>FieldElements</tt>. Only to be called if you know which one
+         * of the magnitudes is the longer one.
+         *
+         * @param   bigger The longer subtrahend.
+         * @param   smaller The shorter subtrahend.
+         * @return  <code>bigger - smaller</code>
+         */
+        private int[] subtract( int[] bigger, int[] smaller ) {
+            
+            long diff = 0;
+            int i = 0;
+            int[] result = new int[bigger.length];
+            boolean borrow;
+
+            // subtract the parts of both numbers which are of the same length
+            while ( i < smaller.length ) {
+                diff = (bigger[i] & INT2LONG) - (smaller[i] & INT2LONG)
+                     + (diff >> 32);
+                result[i] = (int)diff;
+                ++i;
+            }
+            
+            // copy the part of the longer number into the result
+            // while propagating the borrow
+            borrow = (diff >> 32 != 0);
+            while ( borrow && i < bigger.length ) {
+                borrow = ((result[i] = bigger[i] - 1) == -1);
+                ++i;
+            }
+            
+            // copy the longer number to the result array, where no carry
+            // propagation is needed
+            while ( i < bigger.length ) {
+                result[i] = bigger[i];
+                ++i;
+            }
+            
+            return stripZeros ( result );
+        }
+        
+        /**
+         * Multiply two <tt>FieldElements</tt>.
+         *
+         * @param   factor <tt>FieldElement</tt> which to multiply
+         *          <tt>this</tt> with.
+         * @return  <code>this * factor (mod p)</code>
+         */
+        public FieldElement multiply( FieldElement factor ) {
+            
+            if( factor.signum == 0 || this.signum == 0 )
+                return new FieldElement( 0 );
+            if( this.isOne( ) )
+                return factor;
+            if( factor.isOne( ) )
+                return this;
+            
+            if( fixedWidth != null ) {
+                Workspace w = workspace.get( );
+                int[] product = new int[fixedWidth.k];
+                w.multiply( product, this.words( w.padded1 ),
+                            factor.words( w.padded2 ) );
+                return fromWords( product );
+            }
+
+            if( representation != BARRETT ) {
+                int[] t = new int[p.magnitude.length + 2];
+                montgomeryMultiply( this.magnitude, factor.magnitude, t );
+                return new FieldElement( stripZeros( t ), (byte)1 );
+            }
+            
+            int[] result = multiply( this.magnitude, factor.magnitude );
+            
+            return new FieldElement( result, (byte)1 ).mod( );
+            
+        }
+        
+        /**
+         * Square <tt>FieldElement this</tt>. This is cheaper than
+         * <code>this.multiply( this )</code>, since every product of two
+         * different words of <tt>this</tt> is computed only once.
+         *
+         * @return  <code>this^2 (mod p)</code>
+         */
+        public FieldElement square( ) {
+            
+            if( this.signum == 0 )
+                return new FieldElement( 0 );
+            if( this.isOne( ) )
+                return this;
+            
+            if( fixedWidth != null ) {
+                Workspace w = workspace.get( );
+                int[] square = new int[fixedWidth.k];
+                w.square( square, this.words( w.padded1 ) );
+                return fromWords( square );
+            }
+            
+            if( representation == MONTGOMERY64 ) {
+                int[] t = new int[p.magnitude.length];
+                workspace.get( ).square( t, this.magnitude );
+                return new FieldElement( stripZeros( t ), (byte)1 );
+            }
+            
+            if( representation == MONTGOMERY ) {
+                int k = p.magnitude.length;
+                int[] t = new int[(k << 1) + 1];
+                squareWords( this.magnitude, this.magnitude.length, t );
+                int[] result = new int[k];
+                montgomeryReduce( t, result );
+                return new FieldElement( stripZeros( result ), (byte)1 );
+            }
+            
+            int[] result = square( this.magnitude );
+            
+            return new FieldElement( result, (byte)1 ).mod( );
+            
+        }
+        
+        /**
+         * This method is used to multiply the magnitudes of two
+         * <tt>FieldElements</tt>. The size of the operands does not
+         * matter.
+         *
+         * @param   operand1 The first factor.
+         * @param   operand2 The second factor.
+         * @return  <code>operand1 * operand2</code>
+         */
+        private int[] multiply( int[] operand1, int[] operand2 ) {
+            
+            int lengthThis = operand1.length, lengthFactor = operand2.length;
+            
+            if( lengthThis >= KARATSUBA_THRESHOLD &&
+                    lengthFactor >= KARATSUBA_THRESHOLD )
+                return karatsuba( operand1, operand2 );
+            
+            int[] result = new int[lengthThis + lengthFactor];
+            
+            for( int i = 0; i < lengthFactor; i++ ) {
+                
+                long factor_i = (operand2[i] & INT2LONG);
+                long value = 0;
+
+                for( int j = 0; j < lengthThis; j++ ) {
+                    int iPlusj = i + j;
+                    value += factor_i * (operand1[j] & INT2LONG)
+                           + (result[iPlusj] & INT2LONG);
+                    result[iPlusj] = (int)value;
+                    value >>>= 32;
+                }
+
+                result[i + lengthThis] = (int)value;
+            }
+    
+            result = stripZeros( result );
+            
+            return result;
+            
+        }
+        
+        /**
+         * This method is used to square the magnitude of a
+         * <tt>FieldElement</tt>. Large magnitudes are split by the
+         * Karatsuba method, see {@link #karatsubaSquare}.
+         *
+         * @param   operand the magnitude to square.
+         * @return  <code>operand^2</code>
+         */
+        private int[] square( int[] operand ) {
+            
+            int length = operand.length;
+            
+            if( length >= KARATSUBA_THRESHOLD )
+                return karatsubaSquare( operand );
+            
+            int[] result = new int[length << 1];
+            squareWords( operand, length, result );
+            
+            return stripZeros( result );
+            
+        }
+        
+        /**
+         * Multiply two magnitudes by the Karatsuba method, see <b>HAC</b>,
+         * p. 630. Both operands are split into halves
+         * <code>x = x1 b^h + x0</code>, which needs three multiplications
+         * of half the size instead of four:<br />
+         * <code>x y = x1 y1 b^2h + ((x0 + x1)(y0 + y1) - x0 y0 - x1 y1) b^h
+         * + x0 y0</code>
+         *
+         * @param   operand1 The first factor.
+         * @param   operand2 The second factor.
+         * @return  <code>operand1 * operand2</code>
+         */
+        private int[] karatsuba( int[] operand1, int[] operand2 ) {
+            
+            int half = (Math.max( operand1.length, operand2.length ) + 1) >> 1;
+            
+            int[] x0 = lowerWords( operand1, half );
+            int[] x1 = upperWords( operand1, half );
+            int[] y0 = lowerWords( operand2, half );
+            int[] y1 = upperWords( operand2, half );
+            
+            int[] z0 = multiply( x0, y0 );
+            int[] z2 = multiply( x1, y1 );
+            int[] z1 = multiply( sum( x0, x1 ), sum( y0, y1 ) );
+            z1 = subtract( subtract( z1, z0 ), z2 );
+            
+            return combine( z0, z1, z2, half,
+                            operand1.length + operand2.length );
+            
+        }
+        
+        /**
+         * Square a magnitude by the Karatsuba method, see {@link
+         * #karatsuba}. The three partial products are squares as well.
+         *
+         * @param   operand the magnitude to square.
+         * @return  <code>operand^2</code>
+         */
+        private int[] karatsubaSquare( int[] operand ) {
+            
+            int half = (operand.length + 1) >> 1;
+            
+            int[] x0 = lowerWords( operand, half );
+            int[] x1 = upperWords( operand, half );
+            
+            int[] z0 = square( x0 );
+            int[] z2 = square( x1 );
+            int[] z1 = square( sum( x0, x1 ) );
+            z1 = subtract( subtract( z1, z0 ), z2 );
+            
+            return combine( z0, z1, z2, half, operand.length << 1 );
+            
+        }
+        
+        /**
+         * Returns the lower <tt>half</tt> words of a magnitude without
+         * leading zeros.
+         */
+        private int[] lowerWords( int[] operand, int half ) {
+            
+            if( operand.length <= half )
+                return operand;
+            
+            int[] result = new int[half];
+            System.arraycopy( operand, 0, result, 0, half );
+            
+            return stripZeros( result );
+            
+        }
+        
+        /**
+         * Returns the words of a magnitude above position <tt>half</tt>.
+         */
+        private int[] upperWords( int[] operand, int half ) {
+            
+            if( operand.length <= half )
+                return new int[1];
+            
+            int[] result = new int[operand.length - half];
+            System.arraycopy( operand, half, result, 0, result.length );
+            
+            return result;
+            
+        }
+        
+        /**
+         * Adds two magnitudes of arbitrary length.
+         */
+        private int[] sum( int[] operand1, int[] operand2 ) {
+            
+            if( operand1.length >= operand2.length )
+                return add( operand1, operand2 );
+            
+            return add( operand2, operand1 );
+            
+        }
+        
+        /**
+         * Computes <code>z2 b^2h + z1 b^h + z0</code> for the Karatsuba
+         * method.
+         *
+         * @param   length the maximum length of the result in words.
+         */
+        private int[] combine( int[] z0, int[] z1, int[] z2, int half,
+                               int length ) {
+            
+            int[] result = new int[length + 1];
+            System.arraycopy( z0, 0, result, 0, z0.length );
+            
+            addShifted( result, z1, half );
+            addShifted( result, z2, half << 1 );
+            
+            return stripZeros( result );
+            
+        }
+        
+        /**
+         * Adds <code>operand b^shift</code> to <tt>result</tt> in place.
+         */
+        private void addShifted( int[] result, int[] operand, int shift ) {
+            
+            long sum = 0;
+            int i = 0;
+            
+            for( ; i < operand.length; i++ ) {
+                sum += (result[i + shift] & INT2LONG) + (operand[i] & INT2LONG);
+                result[i + shift] = (int)sum;
+                sum >>>= 32;
+            }
+            for( i += shift; sum != 0 && i < result.length; i++ ) {
+                sum += result[i] & INT2LONG;
+                result[i] = (int)sum;
+                sum >>>= 32;
+            }
+            
+        }
+        
+        /**
+         * Multiply <tt>this</tt> by an integer.
+         *
+         * @param   factor <tt>int</tt> which to multiply
+         *          <tt>this</tt> with.
+         * @return  <code>this * factor (mod p)</code>
+         */
+        public FieldElement multiplyByWord( int factor ) {
+            
+            if( this.signum == 0 || factor == 0 )
+                return new FieldElement( 0 );
+            
+            int length = this.magnitude.length;
+            int[] result = new int[length + 1];
+            long carry = 0;
+            
+            for( int i = 0; i < length; i++ ) {
+                carry = ((this.magnitude[i] & INT2LONG) * factor) + carry;
+                result[i] = (int)carry;
+                carry >>>= 32;
+            }
+            if( carry != 0 )
+                result[length] = (int)carry;
+            else
+                result = stripZeros( result );
+            
+            return new FieldElement( result, (byte)1 ).mod( );            
+        }
+        
+        /**
+         * Add two <tt>FieldElements</tt> without reducing the sum.
+         * <p />
+         * The lazy methods allow the point formulas of {@link EllipticCurve}
+         * to accumulate sums and small multiples in the spare bits above p
+         * and to reduce them only once by {@link #reduceLazy} before they
+         * are multiplied, compared or returned. Their results must not be
+         * passed to any other method.
+         *
+         * @param   operand <tt>FieldElement</tt> which is added to
+         *          <tt>this</tt>.
+         * @return  <code>this + operand</code>, not reduced.
+         */
+        FieldElement addLazy( FieldElement operand ) {
+            
+            if( this.magnitude.length > operand.magnitude.length )
+                return new FieldElement( add( this.magnitude,
+                                              operand.magnitude ), (byte)1 );
+            else
+                return new FieldElement( add( operand.magnitude,
+                                              this.magnitude ), (byte)1 );
+            
+        }
+        
+        /**
+         * Multiply <tt>this</tt> by a small integer without reducing the
+         * product, see {@link #addLazy}.
+         *
+         * @param   factor non-negative <tt>int</tt> which to multiply
+         *          <tt>this</tt> with.
+         * @return  <code>this * factor</code>, not reduced.
+         */
+        FieldElement multiplyByWordLazy( int factor ) {
+            
+            int length = this.magnitude.length;
+            int[] result = new int[length + 1];
+            long carry = 0;
+            
+            for( int i = 0; i < length; i++ ) {
+                carry += (this.magnitude[i] & INT2LONG) * factor;
+                result[i] = (int)carry;
+                carry >>>= 32;
+            }
+            result[length] = (int)carry;
+            
+            return new FieldElement( result, (byte)1 );
+            
+        }
+        
+        /**
+         * Divide <tt>this</tt> by 2 modulo p. An odd value is made even by
+         * adding p, so no multiplication by the inverse of 2 is needed.
+         *
+         * @return  <code>this * 2^-1 (mod p)</code>
+         */
+        FieldElement halve( ) {
+            
+            if( (this.magnitude[0] & 1) == 0 )
+                return this.rightShift( );
+            
+            return this.addLazy( p ).rightShift( );
+            
+        }
+        
+        /**
+         * Reduce the result of the lazy methods modulo p.
+         * <p />
+         * The value is only a few bits longer than p, so its quotient by p
+         * fits into a word. The quotient is estimated from the 32 most
+         * significant bits of p, see {@link FiniteField#lazyDivisor}, and
+         * subtracted in a single pass. This replaces the Barrett reduction
+         * of {@link #mod}, which needs two multiplications of k words.
+         *
+         * @return  <code>this mod p</code>
+         *
+         * @see     #addLazy
+         */
+        FieldElement reduceLazy( ) {
+            
+            int[] m = p.magnitude;
+            int[] mag = this.magnitude;
+            
+            int[] result = mag;
+            
+            if( compareLazy( mag ) != LT ) {
+                
+                long q = topBits( lazyShift ) / lazyDivisor;
+                
+                result = new int[mag.length];
+                long carry = 0, borrow = 0;
+                
+                for( int i = 0; i < mag.length; i++ ) {
+                    carry += q * ( i < m.length ? m[i] & INT2LONG : 0 );
+                    borrow += (mag[i] & INT2LONG) - (carry & INT2LONG);
+                    result[i] = (int)borrow;
+                    borrow >>= 32;
+                    carry >>>= 32;
+                }
+                
+                // final subtractions, at most two
+                while( compareLazy( result ) >= EQ ) {
+                    borrow = 0;
+                    for( int i = 0; i < result.length; i++ ) {
+                        borrow += (result[i] & INT2LONG)
+                                - ( i < m.length ? m[i] & INT2LONG : 0 );
+                        result[i] = (int)borrow;
+                        borrow >>= 32;
+                    }
+                }
+            }
+            
+            result = stripZeros( result );
+            
+            return new FieldElement( result,
+                    (byte)( result.length == 1 && result[0] == 0 ? 0 : 1 ) );
+            
+        }
+        
+        /**
+         * Compares a magnitude, which may differ from p in length and have
+         * leading zeros, to p.
+         *
+         * @param   operand the magnitude.
+         * @return  {@link FiniteField#LT LT}, {@link FiniteField#EQ EQ} or
+         *          {@link FiniteField#GT GT}.
+         */
+        private byte compareLazy( int[] operand ) {
+            
+            int[] m = p.magnitude;
+            int length = Math.max( operand.length, m.length );
+            
+            for( int i = length - 1; i >= 0; i-- ) {
+                
+                long w1 = ( i < operand.length ? operand[i] & INT2LONG : 0 );
+                long w2 = ( i < m.length ? m[i] & INT2LONG : 0 );
+                
+                if( w1 != w2 )
+                    return ( w1 > w2 ? GT : LT );
+            }
+            
+            return EQ;
+            
+        }
+        
+        /**
+         * Returns the magnitude of <tt>this</tt> shifted right by
+         * <tt>shift</tt> bits.
+         *
+         * @param   shift number of bits to cut off.
+         * @return  <code>this >> shift</code>, which has to be less than
+         *          <code>2^63</code>.
+         */
+        private long topBits( int shift ) {
+            
+            int index = shift >>> 5;
+            int bits = shift & 31;
+            
+            long result = (word( index ) | (word( index + 1 ) << 32)) >>> bits;
+            if( bits != 0 )
+                result |= word( index + 2 ) << (64 - bits);
+            
+            return result;
+            
+        }
+        
+        /**
+         * Returns word <tt>i</tt> of the magnitude as unsigned value or 0
+         * if the magnitude is shorter.
+         */
+        private long word( int i ) {
+            
+            return ( i < magnitude.length ? magnitude[i] & INT2LONG : 0 );
+            
+        }
+        
+        /**
+         * Divide two <tt>FieldElements</tt>, this operation is only needed
+         * for converting projective to affine coordinates in {@link 
+         * FiniteField.EllipticCurve.Point} or for algorithms like ECDSA.
+         * <p>
+         * Therfor a binary division algorithm is used which can be found
+         * in <b>GECC</b>, p. 41. It is implemented in place by
+         * {@link Inversion}. The algorithm works on the stored values,
+         * so in Montgomery representation the quotient has to be converted
+         * back into Montgomery form.
+         *
+         * @param   divisor <tt>FieldElement</tt> which to divide this
+         *          by.
+         * @return  <code>this * divisor^-1 (mod p)</code>
+         *
+         * @throws  ArithmeticException <tt>divisor</tt> is zero.
+         *
+         * @see FiniteField.EllipticCurve.Point
+         */
+        public FieldElement divide( FieldElement divisor )
+               throws ArithmeticException {
+            
+            if( divisor.signum == 0 )
+                throw new ArithmeticException
+                ( "FiniteField.FieldElement.divide: Division by zero." );
+            else if( divisor.isOne( ) )
+                return new FieldElement( this );
+            
+            if( this.signum == 0 )
+                return new FieldElement( 0 );
+            
+            int[] quotient = new int[p.magnitude.length];
+            inversion.divide( this.magnitude, divisor.magnitude, quotient,
+                              inversion.newScratch( ) );
+            
+            FieldElement result = new FieldElement( stripZeros( quotient ),
+                                                    (byte)1 );
+            
+            if( representation != BARRETT )
+                result.magnitude = toMontgomery( result.magnitude );
+            
+            return result;
+            
+        }
+        
+        /**
+         * Invert <tt>FieldElement this</tt>. This is needed for point addition
+         * in {@link FiniteField.EllipticCurve.Point}.
+         *
+         * The algorithm used is the same as for divsion and can be
+         * found in <b>GECC</b>, p. 41. In Montgomery representation
+         * <code>R^2 / (this R) = this^-1 R</code> is computed, so the
+         * result needs no conversion.
+         *
+         * @return  <code>this^-1 (mod p)</code>
+         *
+         * @throws  ArithmeticException <tt>this</tt> is zero.
+         *
+         * @see     #divide
+         * @see     #invertByExponentiation
+         */
+        public FieldElement invert( ) throws ArithmeticException {
+           
+            if( this.signum == 0 )
+                throw new ArithmeticException
+                ( "FiniteField.FieldElement.invert: Division by zero." );
+            if( this.isOne( ) )
+                return this;
+            
+            int[] numerator = ( representation == BARRETT ?
+                                ONE.magnitude : montgomerySquare );
+            int[] result = new int[p.magnitude.length];
+            inversion.divide( numerator, this.magnitude, result,
+                              inversion.newScratch( ) );
+            
+            return new FieldElement( stripZeros( result ), (byte)1 );
+            
+        }
+        
+        /**
+         * Invert <tt>FieldElement this</tt> by Fermat's little theorem,
+         * i.e. compute <code>this^(p-2)</code> by {@link #pow}.
+         * <p />
+         * This is slower than {@link #invert}, but the sequence of
+         * operations depends on p only and not on the value of
+         * <tt>this</tt>. It works in every representation without
+         * conversion, since Montgomery multiplication preserves the
+         * Montgomery form.
+         *
+         * @return  <code>this^-1 (mod p)</code>
+         *
+         * @throws  ArithmeticException <tt>this</tt> is zero.
+         *
+         * @see     #invert
+         */
+        public FieldElement invertByExponentiation( )
+               throws ArithmeticException {
+            
+            if( this.signum == 0 )
+                throw new ArithmeticException
+                ( "FiniteField.FieldElement.invertByExponentiation: " +
+                  "Division by zero." );
+            
+            return pow( subtract( p.magnitude, new int[]{ 2 } ) );
+            
+        }
+        
+        /**
+         * Raise <tt>this</tt> to the power of <tt>exponent</tt>.
+         *
+         * @param   exponent the exponent, its plain value is used in every
+         *          representation.
+         * @return  <code>this^exponent (mod p)</code>
+         *
+         * @see     #pow(int[])
+         */
+        public FieldElement pow( FieldElement exponent ) {
+            
+            return pow( exponent.value( ) );
+            
+        }
+        
+        /**
+         * Exponentiation by the sliding window method, see <b>HAC</b>,
+         * p. 616. Windows of up to <tt>width</tt> bits, which start and end
+         * with a one, are processed by a single multiplication with one of
+         * the precomputed odd powers <code>this^1, this^3, ...,
+         * this^(2^width - 1)</code>. All other steps are squarings, which
+         * are cheaper than multiplications.
+         *
+         * @param   exponent magnitude of the exponent.
+         * @return  <code>this^exponent (mod p)</code>
+         */
+        private FieldElement pow( int[] exponent ) {
+            
+            int length = exponent.length;
+            while( length > 1 && exponent[length - 1] == 0 )
+                length--;
+            int bits = ((length - 1) << 5) + numBits( exponent[length - 1] );
+            
+            if( bits == 0 )
+                return ONE;
+            
+            // the window width which minimizes precomputation and
+            // multiplications, the squarings are the same for all widths
+            int width = 1;
+            int multiplications = bits / 2;
+            
+            while( width < 6 ) {
+                
+                int multiplications2 = ( 1 << width ) + bits / (width + 2);
+                if( multiplications2 >= multiplications )
+                    break;
+                
+                width ++;
+                multiplications = multiplications2;
+            }
+            
+            FieldElement[] odd = new FieldElement[1 << (width - 1)];
+            odd[0] = this;
+            if( width > 1 ) {
+                FieldElement square = this.square( );
+                for( int i = 1; i < odd.length; i++ )
+                    odd[i] = odd[i - 1].multiply( square );
+            }
+            
+            FieldElement result = null;
+            
+            for( int i = bits - 1; i >= 0; ) {
+                
+                if( ! testBit( exponent, i ) ) {
+                    result = result.square( );
+                    i--;
+                    continue;
+                }
+                
+                // the longest window ending with a one
+                int j = Math.max( i - width + 1, 0 );
+                while( ! testBit( exponent, j ) )
+                    j++;
+                
+                int window = 0;
+                for( int l = i; l >= j; l-- ) {
+                    window = (window << 1) | ( testBit( exponent, l ) ? 1 : 0 );
+                    if( result != null )
+                        result = result.square( );
+                }
+                
+                result = ( result == null ? odd[window >>> 1] :
+                           result.multiply( odd[window >>> 1] ) );
+                i = j - 1;
+            }
+            
+            return result;
+            
+        }
+        
+        /**
+         * Tests bit <tt>n</tt> of a magnitude.
+         */
+        private boolean testBit( int[] operand, int n ) {
+            
+            return ((operand[n >>> 5] >>> (n & 31)) & 1) != 0;
+            
+        }
+        
+        /**
+         * Computes the Legendre symbol of <tt>this</tt> modulo p, which
+         * tells whether <tt>this</tt> is a square.
+         * <p />
+         * A binary variant of the algorithm for the Jacobi symbol in
+         * <b>HAC</b>, p. 73, needs only shifts and subtractions instead of
+         * an exponentiation by <code>(p-1)/2</code>. Factors of two are
+         * removed by the rule <code>(2/n) = -1</code> for
+         * <code>n = 3, 5 mod 8</code>, then the smaller value is subtracted
+         * from the larger one after applying quadratic reciprocity if the
+         * values are swapped.
+         *
+         * @return  1 if <tt>this</tt> is a nonzero square, -1 if it is no
+         *          square and 0 if <tt>this</tt> is zero.
+         *
+         * @see     #sqrt
+         */
+        public int jacobi( ) {
+            
+            int k = p.magnitude.length;
+            int[] a = new int[k], n = new int[k];
+            int[] value = value( );
+            System.arraycopy( value, 0, a, 0, value.length );
+            System.arraycopy( p.magnitude, 0, n, 0, k );
+            
+            int t = 1;
+            
+            while( ! isZero( a ) ) {
+                
+                int zeros = 0;
+                while( a[zeros >>> 5] == 0 )
+                    zeros += 32;
+                zeros += Integer.numberOfTrailingZeros( a[zeros >>> 5] );
+                shiftRight( a, zeros );
+                
+                int r = n[0] & 7;
+                if( (zeros & 1) != 0 && ( r == 3 || r == 5 ) )
+                    t = -t;
+                
+                if( compareTo( a, n ) == LT ) {
+                    int[] swap = a;
+                    a = n;
+                    n = swap;
+                    if( (a[0] & 3) == 3 && (n[0] & 3) == 3 )
+                        t = -t;
+                }
+                
+                // a - n is even
+                long diff = 0;
+                for( int i = 0; i < k; i++ ) {
+                    diff += (a[i] & INT2LONG) - (n[i] & INT2LONG);
+                    a[i] = (int)diff;
+                    diff >>= 32;
+                }
+            }
+            
+            // n is the greatest common divisor of this and p
+            n[0] ^= 1;
+            
+            return ( isZero( n ) ? t : 0 );
+            
+        }
+        
+        /**
+         * Computes a square root of <tt>this</tt> modulo p, the other one
+         * is its negation.
+         * <p />
+         * Depending on p one of the following algorithms is used:
+         * <ul>
+         * <li><code>p = 3 mod 4</code>: the root is
+         *     <code>this^((p+1)/4)</code>.</li>
+         * <li><code>p = 5 mod 8</code>: Atkin's algorithm, which needs one
+         *     exponentiation by <code>(p-5)/8</code>.</li>
+         * <li><code>p = 1 mod 8</code>: the algorithm of Tonelli and Shanks,
+         *     see <b>HAC</b>, p. 100, with an exponentiation by
+         *     <code>(q-1)/2</code> for <code>p - 1 = 2^s q</code>.</li>
+         * </ul>
+         * Whether a root exists is checked by {@link #jacobi} beforehand.
+         *
+         * @return  <code>x</code> with <code>x^2 = this (mod p)</code>
+         *
+         * @throws  ArithmeticException <tt>this</tt> is not a square.
+         */
+        public FieldElement sqrt( ) throws ArithmeticException {
+            
+            if( this.signum == 0 || (p.magnitude[0] & 1) == 0 )
+                return this;
+            
+            if( jacobi( ) != 1 )
+                throw new ArithmeticException
+                ( "FiniteField.FieldElement.sqrt: No square root." );
+            
+            FieldElement root = rootCandidate( );
+            if( root != null )
+                return root;
+            
+            int[] m = p.magnitude;
+            
+            // p - 1 = 2^s q with q odd
+            int[] q = subtract( m, new int[]{ 1 } );
+            int s = 0;
+            while( ! testBit( q, s ) )
+                s++;
+            shiftRight( q, s );
+            
+            // c = z^q for a non-square z has order 2^s
+            FieldElement z = ONE.add( ONE );
+            while( z.jacobi( ) != -1 )
+                z = z.add( ONE );
+            FieldElement c = z.pow( q );
+            
+            // x = this^((q+1)/2) and b = this^q, where b = x^2 / this
+            int[] exponent = q.clone( );
+            shiftRight( exponent, 1 );
+            FieldElement w = this.pow( exponent );
+            FieldElement x = this.multiply( w );
+            FieldElement b = x.multiply( w );
+            
+            // each step keeps x^2 = b this and lowers the order of b
+            while( ! b.isOne( ) ) {
+                
+                int i = 0;
+                for( FieldElement square = b; ! square.isOne( ); i++ )
+                    square = square.square( );
+                
+                FieldElement d = c;
+                for( int j = 0; j < s - i - 1; j++ )
+                    d = d.square( );
+                
+                x = x.multiply( d );
+                c = d.square( );
+                b = b.multiply( c );
+                s = i;
+            }
+            
+            return x;
+            
+        }
+        
+        /**
+         * Computes the square root of <tt>this</tt> by a single
+         * exponentiation, if p allows it, see {@link #sqrt}. The result is
+         * only a root if <tt>this</tt> is a square, which the caller has to
+         * check.
+         *
+         * @return  the candidate root or <tt>null</tt> for
+         *          <code>p = 1 mod 8</code>.
+         */
+        private FieldElement rootCandidate( ) {
+            
+            int[] m = p.magnitude;
+            
+            if( (m[0] & 3) == 3 ) {
+                int[] exponent = m.clone( );
+                shiftRight( exponent, 2 );
+                return pow( add( exponent, new int[]{ 1 } ) );
+            }
+            
+            if( (m[0] & 7) == 5 ) {
+                int[] exponent = m.clone( );
+                shiftRight( exponent, 3 );
+                FieldElement twice = this.add( this );
+                FieldElement b = twice.pow( exponent );
+                FieldElement i = twice.multiply( b.square( ) );
+                return this.multiply( b ).multiply( i.subtract( ONE ) );
+            }
+            
+            return null;
+            
+        }
+        
+        /**
+         * Shifts a magnitude right by <tt>n</tt> bits in place.
+         */
+        private void shiftRight( int[] operand, int n ) {
+            
+            int words = n >>> 5, bits = n & 31;
+            int length = operand.length;
+            
+            for( int i = 0; i < length; i++ ) {
+                long low = ( i + words < length ?
+                             operand[i + words] & INT2LONG : 0 );
+                long high = ( i + words + 1 < length ?
+                              operand[i + words + 1] & INT2LONG : 0 );
+                operand[i] = (int)( (low | (high << 32)) >>> bits );
+            }
+            
+        }
+        
+        /**
+         * Determines wether a magnitude is zero.
+         */
+        private boolean isZero( int[] operand ) {
+            
+            int or = 0;
+            for( int i = 0; i < operand.length; i++ )
+                or |= operand[i];
+            
+            return or == 0;
+            
+        }
+        
+        /**
+         * Negates <tt>FieldElement this</tt> by subtracting it from p. This
+         * is needed if we want to subtract two points on an elliptic curve
+         * from each other.
+         *
+         * @return  <code>p - this</code>
+         * @see     FiniteField.EllipticCurve.Point#subtract
+         */
+        public FieldElement negate( ) {
+            
+            return p.subtract( this );
+            
+        }
+        
+        /**
+         * This method implements a modular reduction algorithm proposed
+         * by Barrett. The algorithm can be found in <b>HAC</b>, p. 604.
+         *
+         * @return  <code>this mod p</code>
+         * @see     FiniteField#barrettConstant
+         * @see     FiniteField.FieldElement#calculateBarrettConstant
+         */
+        private FieldElement mod( ) {
+            
+            int k = p.magnitude.length;
+            int kMinusOne = k - 1;
+            int kPlusOne = k + 1;
+            int xLength = this.magnitude.length;
+            int lengthToCopy, i = 0;
+            
+            if( this.compareMagnitude( p ) == LT )
+                return new FieldElement( this );
+            
+            if( fastReduction != null ) {
+                int[] result = new int[k];
+                fastReduction.reduce( this.magnitude, result,
+                        new int[fastReduction.scratchLength( )] );
+                result = stripZeros( result );
+                return new FieldElement( result,
+                        (byte)( result.length == 1 && result[0] == 0 ? 0 : 1 ) );
+            }
+                        
+            // calculate q1, this is a right shift by k-1 words
+            lengthToCopy = xLength - kMinusOne;
+            int[] q1 = new int[lengthToCopy];
+            for( i = 0; i < lengthToCopy; i++ )
+                q1[i] = this.magnitude[i + kMinusOne];
+
+            // calculate q2
+            int[] q2 = multiply( barrettConstant.magnitude, q1 );
+
+            // calculate q3, we use q1 for the result
+            lengthToCopy = q2.length - kPlusOne;
+            q1 = new int[lengthToCopy];
+            for( i = 0; i < lengthToCopy; i++ )
+                q1[i] = q2[i + kPlusOne];
+
+            // calculate r1, which means keep the k+1 lowest
+            // words of x, we use q2 to store the result
+            lengthToCopy = (kPlusOne > xLength ? xLength : kPlusOne);
+            q2 = new int[lengthToCopy];
+            for( i = 0; i < lengthToCopy; i++ )
+                q2[i] = this.magnitude[i];
+            
+            // calculate r2, the result is stored in q3
+            int[] tmp = multiply( p.magnitude, q1 );
+            lengthToCopy = (kPlusOne > tmp.length ? tmp.length : kPlusOne);
+            int[] q3 = new int[lengthToCopy];
+            for( i = 0; i < lengthToCopy; i++ )
+                q3[i] = tmp[i];
+
+            // calculate r, this includes step 3 of algorithm
+            if( q2.length < q3.length || 
+                    (q2.length == q3.length && compareTo( q2, q3 ) == LT) ) {
+                int[] b = new int[kPlusOne + 1];
+                b[kPlusOne] = 0x01;
+                q2 = add( b, q2 );
+            }
+            
+            q1 = subtract( q2, q3 );
+            
+            // final subtractions, step 4 in algorithm
+            // this has to be done at most twice
+            while( q1.length > p.magnitude.length || (q1.length == p.magnitude.length && compareTo(q1, p.magnitude) >= EQ) )
+                q1 = subtract(q1, p.magnitude);
+
+            if( q1.length == 1 && q1[0] == 0 )
+                return new FieldElement( q1, (byte)0 );
+
+            return new FieldElement( q1, (byte)1 );
+            
+        }
+
+        /**
+         * Divides <tt>FieldElement this</tt> by 2.
+         *
+         * This is a simple right shift and no modular operation. This method
+         * is therfor private.
+         *
+         * @return  <code>this >> 1</code>
+         */
+        private FieldElement rightShift( ) {
+            
+            byte sign = 1;
+            
+            if( this.signum == 0 )
+                return new FieldElement ( new int[1], (byte)0 );
+            if( this.magnitude.length == 1 && 
+                    (this.magnitude[0] & INT2LONG) == 1 )
+                return new FieldElement ( new int[1], (byte)0 );
+        
+            return new FieldElement ( rightShift(this.magnitude), (byte)1 );
+            
+        }
+        
+        /**
+         * Divide a given magnitude by 2.
+         *
+         * This is a simple right shift and no modular operation.
+         *
+         * @param   operand magnitude of <tt>FieldElement</tt> to shift.
+         * @return  <code>operand >> 1</code>
+         */
+        private int[] rightShift( int[] operand ) {
+
+            int carry = 0, i = operand.length;
+            
+            int[] result = new int[i];
+
+            while ( --i >= 0 ) {
+                result[i] = (operand[i] >>> 1) | carry;
+                carry = operand[i] << 31;
+            }
+            
+            return stripZeros ( result );
+            
+        }
+        
+        /**
+         * Multiplies <tt>FieldElement this</tt> by 2.
+         *
+         * This is a simple left shift and no modular operation. This method
+         * is therfor private.
+         *
+         * @return  <code>this << 1</code>
+         */
+        private FieldElement leftShift( ) {
+            
+            if ( this.signum == 0 )
+                return new FieldElement ( new int[1], (byte)0 );
+            
+            return new FieldElement ( leftShift(this.magnitude), (byte)1 );
+            
+        }
+        
+        /**
+         * Multiply a given magnitude by 2.
+         *
+         * This is a simple left shift and no modular operation.
+         *
+         * @param   operand magnitude of <tt>FieldElement</tt> which to shift.
+         * @return  <code>operand << 1</code>
+         */
+        private int[] leftShift( int[] operand ) {
+
+            int length = operand.length, i = length - 1;
+            int[] mag;
+
+            int highBits = operand[length - 1] >>> 31;
+            
+            if ( highBits != 0 ) {
+                mag = new int[length + 1];
+                mag[length] = highBits;
+            }
+            else
+                mag = new int[length];
             
-            // Calculate value of first digit group
-            String group = value.substring( i, i += lengthFirstDigitGroup );
-            magnitude[0] = Integer.parseInt( group, 16 );
+            int j = length - 1;
+            while ( j > 0 )
+                mag[i--] = (operand[j--] << 1) | (operand[j] >>> 31);
+
+            mag[i] = operand[j] << 1;
             
-            if( magnitude[0] < 0 )
-                throw new NumberFormatException
-                ( "FiniteField.FieldElement.<init>: Illegal digit in value" );
+            return mag;
             
-            // holds value of current digit group as an integer
-            int valueOfGroupI = 0;
+        }
+        
+        /**
+         * Counts the number of relevant bits in <tt>FieldElement this</tt>.
+         *
+         * @return number of relevant bits in <tt>this</tt>
+         */
+        public int numBits( ) {
             
-            // holds value of current digit group as a long
-            long valueOfGroupL;
+            int[] mag = value( );
+            int lengthMinusOne = mag.length - 1;
+            int result = (lengthMinusOne) * 32;
             
-            // value of current word in radix 10
-            long radix = 0x10000000 & INT2LONG;
+            result += numBits( mag[lengthMinusOne] );
             
-            while( i < length ) {
-                
-                // get value of current group
-                group = value.substring( i, i += 7 );
-                valueOfGroupI = Integer.parseInt( group, 16 );
-                
-                if( valueOfGroupI < 0 )
-                    throw new NumberFormatException
-                    ( "FiniteField.FieldElement.<init>: Illegal digit in value" );
-                
-                // convert value of group to a long
-                valueOfGroupL = valueOfGroupI & INT2LONG;
-                
-                // weight each word of magnitude with radix 10 while
-                // propagating the carry
-                long product = 0;
-                for( int k = 0; k < numWords; k++ ) {
-                    product = radix * (magnitude[k] & INT2LONG)
-                            + (product >>> 32);
-                    magnitude[k] = (int)product;
+            return result;
+            
+        }
+        
+        /**
+         * Counts the number of relevant bits in <tt>w</tt>.
+         *
+         * @param   w integer to count the bits of.
+         * @return  number of relevant bits in <tt>w</tt>
+         */
+        private int numBits( int w ) {
+            
+            return
+                (w < 1<<15 ?
+                (w < 1<<7 ?
+                (w < 1<<3 ?
+                (w < 1<<1 ? (w < 1<<0 ? (w<0 ? 32 : 0) : 1):(w < 1<<2 ? 2 : 3)):
+                (w < 1<<5 ? (w < 1<<4 ? 4 : 5) : (w < 1<<6 ? 6 : 7))) :
+                (w < 1<<11 ?
+                (w < 1<<9 ? (w < 1<<8 ? 8 : 9) : (w < 1<<10 ? 10 : 11)) :
+                (w < 1<<13 ? (w < 1<<12 ? 12 : 13) : (w < 1<<14 ? 14 : 15)))) :
+                (w < 1<<23 ?
+                (w < 1<<19 ?
+                (w < 1<<17 ? (w < 1<<16 ? 16 : 17) : (w < 1<<18 ? 18 : 19)) :
+                (w < 1<<21 ? (w < 1<<20 ? 20 : 21) : (w < 1<<22 ? 22 : 23))) :
+                (w < 1<<27 ?
+                (w < 1<<25 ? (w < 1<<24 ? 24 : 25) : (w < 1<<26 ? 26 : 27)) :
+                (w < 1<<29 ? (w < 1<<28 ? 28 : 29) : (w < 1<<30 ? 30 : 31)))));
+            
+        }
+        
+        /**
+         * This method is used to calculate the constant
+         * <tt>barrettConstant</tt> which is neccessary for barrett reduction.
+         *
+         * It implements a binary division algorithm and divides
+         * <code>b^2 * p.magnitude.length</code> by <tt>this</tt>.
+         * 
+         * @return  <code>(b^2 * p.magnitude.length) / this</code>
+         * @see     #mod
+         * @see     FiniteField#barrettConstant
+         */
+        private FieldElement calculateBarrettConstant( ) {
+            
+            // initialise the numerator
+            int lengthNumerator = this.magnitude.length << 1;
+            int[] numArray = new int[lengthNumerator + 1];
+            numArray[lengthNumerator] =  0x00000001;
+            FieldElement numerator = new FieldElement( numArray, (byte)1 );
+            
+            // initialise the denominator
+            FieldElement denominator = new FieldElement( this );
+
+            // initialise result
+            FieldElement result = new FieldElement( 0 );
+            
+            int count = 0;
+
+            // actual division
+            while( numerator.compareMagnitude( denominator ) == GT ) {
+                denominator = denominator.leftShift( );
+                count++;
+            }
+            
+            denominator = denominator.rightShift( );
+            count--;
+            
+            while( count != 0 ) {
+                if( numerator.compareMagnitude( denominator ) >= EQ ) {
+                    numerator.magnitude = subtract( numerator.magnitude,
+                                                    denominator.magnitude );
+                    result = result.setBit( count );
                 }
+                denominator = denominator.rightShift( );
+                count--;
+            }
+
+            return result;
+            
+        }
                 
-                // add the value of the current group and propagate
-                // the carry to upper positions
-                long sum = (magnitude[0] & INT2LONG) + valueOfGroupL;
-                magnitude[0] = (int)sum;
-                for( int k = 1; k < numWords; k++ ) {
-                    sum = (magnitude[k] & INT2LONG) + (sum >>> 32);
-                    magnitude[k] = (int)sum;
-                }
+        /**
+         * This method computes the powers <code>2^(32 j) mod this</code> for
+         * <code>k &lt;= j &lt;= 2k</code>, where k is the number of words
+         * of <tt>this</tt>. These are needed to detect primes of special
+         * form, see {@link FastReduction#forPrime}.
+         *
+         * @return  the magnitudes of the powers, starting with j = k.
+         */
+        private int[][] calculatePowers( ) {
+            
+            int k = this.magnitude.length;
+            int[][] result = new int[k + 1][];
+            
+            for( int j = k; j <= (k << 1); j++ ) {
+                int[] mag = new int[j + 1];
+                mag[j] = 0x01;
+                result[j - k] = new FieldElement( mag, (byte)1 ).
+                        mod( ).magnitude;
             }
             
-            magnitude = stripZeros( magnitude );
+            return result;
             
-            if( p != null )
-                if( this.compareTo( p ) >= EQ )
-                    throw new NumberFormatException
-                    ( "FiniteField.FieldElement.<init>:" +
-                            "Value to great for underlying field" );
+        }
+        
+        /**
+         * This method strips leading zeros off the given magnitude.
+         * It is called by almost all function inside <tt>FieldElement</tt>.
+         *
+         * @param   value magnitude which the zeros should be stripped off.
+         * @return  new magnitude without leading zeros.
+         */
+        private int[] stripZeros( int[] value ) {
+            
+            int counter = value.length;
+            for ( ; counter >= 2 && value[counter-1] == 0; counter-- )
+                ;
+
+            if ( counter != value.length ) {
+                int result[] = new int[counter];
+
+                for ( int i = 0; i < counter; i++ ) {
+                    result[i] = value[i];
+                }
+
+                return result;
+            }
 
+            return value;
+            
         }
         
         /**
-         * Generate a new <tt>FieldElement</tt> randomly.
+         * Returns the magnitude of <tt>this</tt> padded to the k words the
+         * {@link FixedWidth} kernels expect. The magnitude itself is
+         * returned if it has this length already, otherwise it is copied
+         * into <tt>pad</tt>.
+         *
+         * @param   pad scratch of k words, see {@link Workspace}.
+         * @return  magnitude of exactly k words.
          */
-        public FieldElement(  ) {
+        private int[] words( int[] pad ) {
             
-            Random random = new Random( );
+            if( magnitude.length == pad.length )
+                return magnitude;
             
-            int numWords = p.magnitude.length;
-            int numWordsMinusOne = numWords - 1;
+            System.arraycopy( magnitude, 0, pad, 0, magnitude.length );
+            for( int i = magnitude.length; i < pad.length; i++ )
+                pad[i] = 0;
             
-            magnitude = new int[numWords];
+            return pad;
             
-            for( int i = 0; i < numWordsMinusOne; i++ ) {
-                magnitude[i] = random.nextInt( );
-            }
+        }
+        
+        /**
+         * Construct a new <tt>FieldElement</tt> from a result of the
+         * {@link FixedWidth} kernels.
+         *
+         * @param   words the result of k words, possibly with leading zeros.
+         * @return  new <tt>FieldElement</tt> with the value of <tt>words</tt>.
+         */
+        private FieldElement fromWords( int[] words ) {
+            
+            int[] mag = stripZeros( words );
+            
+            return new FieldElement( mag,
+                    (byte)( mag.length == 1 && mag[0] == 0 ? 0 : 1 ) );
+            
+        }
+        
+        /**
+         * Compares two <tt>FieldElements</tt>.
+         *
+         * @param   compare <tt>FieldElement</tt> which <tt>this</tt> should
+         *          be compared to.
+         * @return  {@link FiniteField#LT LT} if <tt>this</tt> is less than
+         *          <tt>compare</tt>, {@link FiniteField#EQ EQ} if <tt>this</tt>
+         *          is equal to <tt>compare</tt> and {@link FiniteField#GT GT}
+         *          if <tt>this</tt> is greater than <tt>compare</tt>.
+         */
+        public byte compareTo( FieldElement compare ) {
+            
+            byte result = compareMagnitude( compare );
+            
+            // equal values have equal representations, only the order
+            // has to be determined on the plain values
+            if( result == EQ || representation == BARRETT )
+                return result;
+            
+            int[] operand1 = this.value( );
+            int[] operand2 = compare.value( );
+            
+            if( operand1.length > operand2.length )
+                return GT;
+            else if( operand1.length < operand2.length )
+                return LT;
+            
+            return compareTo( operand1, operand2 );
+            
+        }
+        
+        /**
+         * Compares the stored magnitudes of two <tt>FieldElements</tt>. In
+         * Montgomery representation this is not the order of the values
+         * they represent, but it is all the internal arithmetic needs.
+         *
+         * @param   compare <tt>FieldElement</tt> which <tt>this</tt> should
+         *          be compared to.
+         * @return  {@link FiniteField#LT LT}, {@link FiniteField#EQ EQ} or
+         *          {@link FiniteField#GT GT}.
+         */
+        private byte compareMagnitude( FieldElement compare ) {
+            
+            if( this.magnitude.length > compare.magnitude.length )
+                return GT;
+            else if( this.magnitude.length < compare.magnitude.length )
+                return LT;
+            
+            return compareTo( this.magnitude, compare.magnitude );
+            
+        }
+        
+        /**
+         * Tests wether <tt>this</tt> is the neutral element of
+         * multiplication, taking the representation into account.
+         *
+         * @return  <tt>true</tt> if and only if <tt>this</tt> is one.
+         */
+        private boolean isOne( ) {
+            
+            if( representation != BARRETT )
+                return this.equals( ONE );
+            
+            return magnitude.length == 1 && magnitude[0] == 1;
+            
+        }
+        
+        /**
+         * Returns the plain value of <tt>this</tt>. In Montgomery
+         * representation the stored magnitude is converted back, otherwise
+         * it is returned as is. The order p is never stored in Montgomery
+         * form, since it is not an element of the field.
+         *
+         * @return  magnitude of the value <tt>this</tt> represents.
+         */
+        private int[] value( ) {
             
-            // we have to make sure, that the new FieldElement does
-            // not get larger than p.
-            int highWord = p.magnitude[numWordsMinusOne];
-            if( highWord > 0 ) {
-                magnitude[numWordsMinusOne] = random.nextInt( highWord );
-            }
-            else {
-                magnitude[numWordsMinusOne] = random.nextInt( -highWord );
-                if( random.nextInt(2) > 0 )
-                    magnitude[numWordsMinusOne] |= 0x80000000;
-            }
+            if( representation == BARRETT || this == p || signum == 0 )
+                return magnitude;
             
-            magnitude = stripZeros( magnitude );
+            int[] one = { 1 };
+            int[] t = new int[p.magnitude.length + 2];
+            montgomeryMultiply( magnitude, one, t );
             
-            signum = 0;
-            if( !(magnitude.length == 1 && magnitude[0] == 0) )
-                signum = 1;
+            return stripZeros( t );
             
         }
         
-
-        
-        
         /**
-         * Add two <tt>FieldElements</tt>.
+         * Converts a plain magnitude into Montgomery representation.
          *
-         * @param   operand <tt>FieldElement</tt> which is added to
-         *          <tt>this</tt>.
-         * @return  <code>this + operand (mod p)</code>
+         * @param   operand magnitude less than p.
+         * @return  <code>operand * R mod p</code>
          */
-        public FieldElement add( FieldElement operand ) {
-            
-            int[] mag;
-            byte compare;
-            FieldElement result;
+        private int[] toMontgomery( int[] operand ) {
             
-            if ( this.signum == 0 )
-                return operand;
-            if ( operand.signum == 0 )
-                return this;
+            int[] t = new int[p.magnitude.length + 2];
+            montgomeryMultiply( operand, montgomerySquare, t );
             
-            if ( this.magnitude.length > operand.magnitude.length )
-                mag = add ( this.magnitude, operand.magnitude );
-            else
-                mag = add ( operand.magnitude, this.magnitude );
+            return stripZeros( t );
             
-            result = new FieldElement( mag, (byte)1 );
+        }
+        
+        /**
+         * Compares the magnitudes of two <tt>FieldElements</tt>. Only
+         * to be called if these are the same length.
+         *
+         * @param   operand1 first magnitude.
+         * @param   operand2 second magnitude.
+         * @return  {@link FiniteField#LT LT} if <tt>operand1</tt> is less than
+         *          <tt>operand2</tt>, {@link FiniteField#EQ EQ} if
+         *          <tt>operand1</tt> is equal to <tt>operand2</tt> and
+         *          {@link FiniteField#GT GT} if <tt>operand1</tt> is greater
+         *          than <tt>operand2</tt>.
+         */
+        private byte compareTo( int[] operand1, int[] operand2 ) {
 
-            compare = result.compareTo( p );
+            for( int i = operand1.length - 1; i >= 0 ; i-- )
+                
+                if( operand1[i] != operand2[i] ) {
+                    
+                    if( (operand1[i] & INT2LONG) > (operand2[i] & INT2LONG) )
+                        return GT;
+                    else
+                        return LT;
+                    
+                }
+           
+            return EQ;
             
-            // The result is equal to p, we return zero
-            if ( compare == EQ )
-                return new FieldElement( new int[1], (byte)0 );
+        }
+        
+        /**
+         * Compares two <tt>FieldElements</tt>.
+         *
+         * @param   compare <tt>FieldElement</tt> which <tt>this</tt> should
+         *          be compared to.
+         * @return  true if and only if <tt>this</tt> is equal to
+         *          <tt>compare</tt>, false otherwise.
+         */
+        public boolean equals( FieldElement compare ) {
             
-            // The result is greater than p, we have to subtract
-            // p, then return
-            else if ( compare == GT ) {
-                result.magnitude = subtract( result.magnitude, p.magnitude );
-            }
+            if( this.magnitude.length != compare.magnitude.length )
+                return false;
             
-            return result;
-
-        }
+            return  compareTo( this.magnitude, compare.magnitude ) == EQ
+                    ? true : false;
+            
+        }        
         
         /**
-         * This method is used to add the magnitudes of two
-         * <tt>FieldElements</tt>. Only to be called if you know which one
-         * of the magnitudes is the longer one.
+         * Tests bit n of <tt>FieldElement this</tt>, needed for point
+         * multiplication algorithms in {@link FiniteField.EllipticCurve.Point}.
          *
-         * @param   bigger The longer summand.
-         * @param   smaller The shorter summand.
-         * @return  <code>bigger + smaller</code>
+         * @param   n position of bit to test.
+         * @return  <tt>true</tt> if and only if bit n is set, <tt>false</tt>
+         *          otherwise.
+         *
+         * @see     FiniteField.EllipticCurve.Point#multiply
          */
-        private int[] add( int[] bigger, int[] smaller ) {
+        public boolean testBit( int n ) {
             
-            long sum = 0;
-            int i = 0;
-            int[] result = new int[bigger.length + 1];
-            boolean carry;
-
-            // add the parts of both numbers which are of the same length
-            while ( i < smaller.length ) {
-                sum = (bigger[i] & INT2LONG) + (smaller[i] & INT2LONG) + sum;
-                result[i] = (int)sum;
-                sum >>>= 32;
-                ++ i;
-            }
+            int[] mag = value( );
+            int word = n >> 5;
+            if( word >= 0 && word < mag.length )
+                return ( ( mag[word] >> (n & 0x1F) ) & 1 ) != 0;
             
-            // copy the part of the longer number into the result
-            // while propagating the carry
-            carry = (sum != 0);
-            while ( i < bigger.length && carry ) {
-                carry = ((result[i] = bigger[i] + 1) == 0);
-                ++ i;
-            }
+            return false;
             
-            if ( carry )
-                result[bigger.length] = 1;
+        }
+        
+        /**
+         * Returns the field of <tt>FieldElement this</tt>, which for a
+         * factor of a point is usually not the field of the curve.
+         *
+         * @return  the field this element belongs to.
+         */
+        FiniteField getField( ) {
             
-            // copy the longer number to the result array, where no carry
-            // propagation is needed
-            while ( i < bigger.length ) {
-                result[i] = bigger[i];
-                ++ i;
-            }
+            return FiniteField.this;
             
-            return stripZeros ( result );
         }
         
         /**
-         * Subtract two <tt>FieldElements</tt>.
+         * Selects <tt>FieldElement this</tt> or <tt>other</tt> without
+         * branching on the choice. Both magnitudes are read over the full
+         * width of p, so the choice can be secret, like the bits of the
+         * factor in {@link FiniteField.EllipticCurve.Point#multiplyLadder}.
          *
-         * @param   operand <tt>FieldElement</tt> which is subtracted from
-         *          <tt>this</tt>.
-         * @return  <code>this - operand (mod p)</code>
+         * @param   other the element selected for <code>choice = 1</code>.
+         * @param   choice <code>0</code> or <code>1</code>.
+         * @return  <tt>this</tt> for <code>choice = 0</code>, otherwise
+         *          <tt>other</tt>, as new <tt>FieldElement</tt>.
          */
-        public FieldElement subtract( FieldElement operand ) {
+        FieldElement select( FieldElement other, int choice ) {
             
-            int[] mag;
-            byte compare;
+            int mask = -choice;
+            int k = p.magnitude.length;
+            int[] mag = new int[k];
             
-            compare = this.compareTo( operand );
+            for( int i = 0; i < k; i++ ) {
+                int a = ( i < this.magnitude.length ? this.magnitude[i] : 0 );
+                int b = ( i < other.magnitude.length ? other.magnitude[i] : 0 );
+                mag[i] = a ^ ( (a ^ b) & mask );
+            }
             
-            // operands are the same which means the result is zero
-            if( compare == EQ )
-                return new FieldElement( 0 );
+            byte sig = (byte)( signum ^ ( (signum ^ other.signum) & mask ) );
             
-            // this is greater than operand => subtract the magnitudes,
-            // the result is already modulos p
-            else if( compare == GT )
-                mag = subtract( this.magnitude, operand.magnitude );
+            return new FieldElement( stripZeros( mag ), sig );
             
-            // in this case we subtract this from operand and subtract
-            // the result from p
-            else {
-                mag = subtract( operand.magnitude, this.magnitude );
-                mag = subtract( p.magnitude, mag );
-            }
-                       
-            return new FieldElement ( mag, (byte)1 );
         }
         
         /**
-         * This method is used to subtract the magnitudes of two
-         * <tt>FieldElements</tt>. Only to be called if you know which one
-         * of the magnitudes is the longer one.
+         * Sets bit n of <tt>FieldElement this</tt>.
          *
-         * @param   bigger The longer subtrahend.
-         * @param   smaller The shorter subtrahend.
-         * @return  <code>bigger - smaller</code>
+         * @param   n the position of the bit to set.
+         * @return  new <tt>FieldElement</tt> with n'th bit set to one.
          */
-        private int[] subtract( int[] bigger, int[] smaller ) {
+        private FieldElement setBit( int n ) {
             
-            long diff = 0;
-            int i = 0;
-            int[] result = new int[bigger.length];
-            boolean borrow;
-
-            // subtract the parts of both numbers which are of the same length
-            while ( i < smaller.length ) {
-                diff = (bigger[i] & INT2LONG) - (smaller[i] & INT2LONG)
-                     + (diff >> 32);
-                result[i] = (int)diff;
-                ++i;
-            }
+            int word = n >> 5;
+            int bit = 1 << (n & 0x1F);
             
-            // copy the part of the longer number into the result
-            // while propagating the borrow
-            borrow = (diff >> 32 != 0);
-            while ( borrow && i < bigger.length ) {
-                borrow = ((result[i] = bigger[i] - 1) == -1);
-                ++i;
-            }
+            // if the bit we want to set is out of the range of
+            // the magnitude, we have to make it longer
+            int[] mag = new int[( (word + 1) >= this.magnitude.length ?
+                        (word + 1) : this.magnitude.length )];
+			
+            for( int i = 0; i < this.magnitude.length; i++ )
+                mag[i] = this.magnitude[i];
+
+            mag[word] |= bit;
             
-            // copy the longer number to the result array, where no carry
-            // propagation is needed
-            while ( i < bigger.length ) {
-                result[i] = bigger[i];
-                ++i;
-            }
+            return new FieldElement( mag, (byte)1 );
             
-            return stripZeros ( result );
         }
         
         /**
-         * Multiply two <tt>FieldElements</tt>.
+         * Returns the binary encoding of <tt>FieldElement this</tt>. It has
+         * the fixed length {@link FiniteField#getEncodedLength}, independent
+         * of the value, and holds the plain value also in Montgomery
+         * representation.
          *
-         * @param   factor <tt>FieldElement</tt> which to multiply
-         *          <tt>this</tt> with.
-         * @return  <code>this * factor (mod p)</code>
+         * @param   order the byte order of the encoding.
+         * @return  the encoding.
          */
-        public FieldElement multiply( FieldElement factor ) {
+        public byte[] toByteArray( ByteOrder order ) {
             
-            if( factor.signum == 0 || this.signum == 0 )
-                return new FieldElement( 0 );
-            if( this.magnitude.length == 1 && 
-                    (this.magnitude[0] & INT2LONG) == 1 )
-                return factor;
-            if( factor.magnitude.length == 1 && 
-                    (factor.magnitude[0] & INT2LONG) == 1 )
-                return this;
-
-            int[] result = multiply( this.magnitude, factor.magnitude );
+            byte[] result = new byte[encodedLength];
+            encode( result, 0, order == ByteOrder.BIG_ENDIAN );
             
-            return new FieldElement( result, (byte)1 ).mod( );
+            return result;
             
         }
         
         /**
-         * This method is used to multiply the magnitudes of two
-         * <tt>FieldElements</tt>. The size of the operands does not
-         * matter.
+         * Writes the binary encoding of <tt>FieldElement this</tt> into a
+         * buffer at its current position, in the byte order of the buffer.
+         * The position is advanced by {@link FiniteField#getEncodedLength}.
          *
-         * @param   operand1 The first factor.
-         * @param   operand2 The second factor.
-         * @return  <code>operand1 * operand2</code>
+         * @param   dst the buffer.
+         *
+         * @throws  BufferOverflowException <tt>dst</tt> has not enough bytes
+         *          remaining, nothing is written.
+         *
+         * @see #toByteArray
          */
-        private int[] multiply( int[] operand1, int[] operand2 ) {
+        public void encode( ByteBuffer dst ) throws BufferOverflowException {
             
-            int lengthThis = operand1.length, lengthFactor = operand2.length;
+            if( dst.remaining( ) < encodedLength )
+                throw new BufferOverflowException( );
             
-            int[] result = new int[lengthThis + lengthFactor];
+            boolean bigEndian = dst.order( ) == ByteOrder.BIG_ENDIAN;
             
-            for( int i = 0; i < lengthFactor; i++ ) {
-                
-                long factor_i = (operand2[i] & INT2LONG);
-                long value = 0;
-
-                for( int j = 0; j < lengthThis; j++ ) {
-                    int iPlusj = i + j;
-                    value += factor_i * (operand1[j] & INT2LONG)
-                           + (result[iPlusj] & INT2LONG);
-                    result[iPlusj] = (int)value;
-                    value >>>= 32;
-                }
-
-                result[i + lengthThis] = (int)value;
+            if( dst.hasArray( ) ) {
+                encode( dst.array( ), dst.arrayOffset( ) + dst.position( ),
+                        bigEndian );
+                dst.position( dst.position( ) + encodedLength );
             }
-    
-            result = stripZeros( result );
+            else {
+                byte[] bytes = new byte[encodedLength];
+                encode( bytes, 0, bigEndian );
+                dst.put( bytes );
+                Arrays.fill( bytes, (byte)0 );
+            }
+            
+        }
+        
+        /**
+         * Writes the binary encoding of the plain value into an array. Byte
+         * i of the value is bits <code>8i</code> to <code>8i + 7</code>,
+         * bytes beyond the magnitude are zero.
+         *
+         * @param   dst the array.
+         * @param   offset index of the first byte to write.
+         * @param   bigEndian <tt>true</tt> if the most significant byte is
+         *          written first.
+         */
+        private void encode( byte[] dst, int offset, boolean bigEndian ) {
             
-            return result;
+            int[] mag = value( );
+            int length = Math.min( encodedLength, mag.length << 2 );
+            int last = offset + encodedLength - 1;
+            
+            for( int i = 0; i < length; i++ ) {
+                byte b = (byte)( mag[i >>> 2] >>> ((i & 3) << 3) );
+                dst[bigEndian ? last - i : offset + i] = b;
+            }
+            for( int i = length; i < encodedLength; i++ )
+                dst[bigEndian ? last - i : offset + i] = 0;
             
         }
         
         /**
-         * Multiply <tt>this</tt> by an integer.
+         * Sets the magnitude and the signum of <tt>this</tt> from a binary
+         * encoding, converting it into the representation of the field.
          *
-         * @param   factor <tt>int</tt> which to multiply
-         *          <tt>this</tt> with.
-         * @return  <code>this * factor (mod p)</code>
+         * @param   src the array.
+         * @param   offset index of the first byte of the encoding.
+         * @param   bigEndian <tt>true</tt> if the most significant byte is
+         *          stored first.
+         *
+         * @throws  NumberFormatException the value is not less than p.
          */
-        public FieldElement multiplyByWord( int factor ) {
+        private void decode( byte[] src, int offset, boolean bigEndian )
+                throws NumberFormatException {
             
-            int length = this.magnitude.length;
-            int[] result = new int[length + 1];
-            long carry = 0;
+            int last = offset + encodedLength - 1;
+            int[] mag = new int[(encodedLength + 3) >>> 2];
             
-            for( int i = 0; i < length; i++ ) {
-                carry = ((this.magnitude[i] & INT2LONG) * factor) + carry;
-                result[i] = (int)carry;
-                carry >>>= 32;
+            for( int i = 0; i < encodedLength; i++ ) {
+                int b = src[bigEndian ? last - i : offset + i] & 0xFF;
+                mag[i >>> 2] |= b << ((i & 3) << 3);
             }
-            if( carry != 0 )
-                result[length] = (int)carry;
-            else
-                result = stripZeros( result );
             
-            return new FieldElement( result, (byte)1 ).mod( );            
+            magnitude = stripZeros( mag );
+            signum = (byte)( magnitude.length == 1 && magnitude[0] == 0 ?
+                             0 : 1 );
+            
+            if( compareMagnitude( p ) >= EQ )
+                throw new NumberFormatException
+                ( "FiniteField.FieldElement.<init>: " +
+                  "Value to great for underlying field" );
+            
+            if( representation != BARRETT && signum != 0 )
+                magnitude = toMontgomery( magnitude );
+            
         }
         
         /**
-         * Divide two <tt>FieldElements</tt>, this operation is only needed
-         * for converting projective to affine coordinates in {@link 
-         * FiniteField.EllipticCurve.Point} or for algorithms like ECDSA.
-         * <p>
-         * Therfor a binary division algorithm is used which can be found
-         * in <b>GECC</b>, p. 41.
+         * Provides a string representation of <tt>FieldElement this</tt>
+         * in radix 16.
          *
-         * @param   divisor <tt>FieldElement</tt> which to divide this
-         *          by.
-         * @return  <code>this * divisor^-1 (mod p)</code>
+         * @return String representing <tt>FieldElement this</tt>.
+         */
+        public String toString( ) {
+            
+            if ( this.signum == 0 )
+                return "0";
+
+            String s = new String();
+            String h;
+            int[] mag = value( );
+
+            for ( int i = mag.length - 1; i >= 0 ; i-- ) {
+                h = "0000000" + Long.toString
+                                ( mag[i] & INT2LONG, 16 );
+                h = h.substring( h.length() - 8 );
+                s = s + h;
+            }
+            
+            // cut off leading zeros
+            int k = 0;
+            while( s.substring( k, k + 1 ).equals( "0" ) )
+                k++;
+
+            return s.substring( k, s.length() );
+            
+        }
+        
+        /**
+         * Returns a <tt>byte[]</tt> containing the width <tt>w</tt> NAF
+         * representation of <tt>FieldElement this</tt>. For details on NAF
+         * please refer to <b>GECC</b>, p. 98 f.
+         * <p />
+         * The NAF representation is used for point multiplication in
+         * {@link FiniteField.EllipticCurve.Point}.
+         * <p />
+         * This implementation only allows the width to be between 2 and 6,
+         * otherwise we would have to return a <tt>short[]</tt> which would
+         * be too large (e.g. 2560bit for a <tt>FieldElement</tt> of 160bit).
          *
-         * @throws  ArithmeticException <tt>divisor</tt> is zero.
+         * @param   w window width to use.
          *
-         * @see FiniteField.EllipticCurve.Point
+         * @return  <code>NAF_w(k)</code>
+         *
+         * @throws  IllegalArgumentException <tt>w</tt> is out of range.
+         *
+         * @see     FiniteField.EllipticCurve.Point#multiply(
+         *          FiniteField.FieldElement,FiniteField.EllipticCurve.Point[],
+         *          byte)
          */
-        public FieldElement divide( FieldElement divisor )
-               throws ArithmeticException {
+        public byte[] toNAF( byte w ) throws IllegalArgumentException {
             
-            FieldElement u = new FieldElement( divisor );
-            FieldElement v = new FieldElement( p );
-            FieldElement x1 = new FieldElement( this );
-            FieldElement x2 = new FieldElement( 0 );
+            int width = 1 << w;
+            int widthTimesTwo = width << 1;
             
-            if( divisor.signum == 0 )
-                throw new ArithmeticException
-                ( "FiniteField.FieldElement.divide: Division by zero." );
-            else if( divisor.magnitude.length == 1 && 
-                    (divisor.magnitude[0] & INT2LONG) == 1 )
-                return new FieldElement( this );
+            if( width > Byte.MAX_VALUE || w < 2 )
+                throw new IllegalArgumentException
+                ( "FiniteField.FieldElement.toNAF:" +
+                        "Width has to be beetwen 2 and 6" );
             
-            if( this.signum == 0 )
-                return new FieldElement( 0 );
+            int bitLength = this.numBits( );
+            byte[] naf = new byte[bitLength + 1];
+            
+            FieldElement k = new FieldElement( value( ), signum );
+            
+            int i = 0;
             
-            while( !(u.magnitude.length == 1 && 
-                    (u.magnitude[0] & INT2LONG) == 1)
-                && !(v.magnitude.length == 1 && 
-                    (v.magnitude[0] & INT2LONG) == 1)
-                ) {
+            while( ! (k.magnitude.length == 1 && k.magnitude[0] == 0) ) {
                 
-                while( (u.magnitude[0] & 1) == 0 ) {
-                    u.magnitude = rightShift( u.magnitude );
-                    if( (x1.magnitude[0] & 1) == 0 )
-                        x1.magnitude = rightShift( x1.magnitude );
-                    else {
-                        x1.magnitude = add( p.magnitude, x1.magnitude );
-                        x1.magnitude = rightShift( x1.magnitude );
+                if( (k.magnitude[0] & 1) == 1 ) {
+                    
+                    naf[i] = (byte)((k.magnitude[0]) & (widthTimesTwo - 1));
+                    
+                    if( (naf[i] & width) != 0 ) {
+                        naf[i] -= widthTimesTwo;
+                    }
+                    
+                    if( naf[i] < 0 ) {
+                        int[] tmp = { -naf[i] };
+                        k.magnitude = add( k.magnitude, tmp );
                     }
-                }
-                
-                while( (v.magnitude[0] & 1) == 0 ) {
-                    v.magnitude = rightShift( v.magnitude );
-                    if( (x2.magnitude[0] & 1) == 0 )
-                        x2.magnitude = rightShift( x2.magnitude );
                     else {
-                        x2.magnitude = add( p.magnitude, x2.magnitude );
-                        x2.magnitude = rightShift( x2.magnitude );
+                        int[] tmp = { naf[i] };
+                        k.magnitude = subtract( k.magnitude, tmp );
                     }
+                    
                 }
+                else
+                    naf[i] = 0;
+                
+                i++;
+                k.magnitude = rightShift( k.magnitude );
                 
-                if( u.compareTo( v ) >= EQ ) {
-                    u.magnitude = subtract( u.magnitude, v.magnitude );
-                    x1 = x1.subtract( x2 );
-                }
-                else {
-                    v.magnitude = subtract( v.magnitude, u.magnitude );
-                    x2 = x2.subtract( x1 );
-                }
             }
             
-            if( u.magnitude.length == 1 && (u.magnitude[0] & INT2LONG) == 1 )
-                return x1;
-            
-            return x2;
+            while( i < bitLength )
+                naf[i++] = 0;
             
+            return naf;
+        
         }
         
+    }
+    
+    
+    
+    
+    /**
+     * This task runs the two parallel phases of {@link
+     * FiniteField#invertAll(FiniteField.FieldElement[],
+     * FiniteField.FieldElement[], ForkJoinPool)} for a range of chunks. It
+     * splits the range in halves until a single chunk is left. On the
+     * first invocation the prefix products of the chunks are computed.
+     * Once {@link #inverses} holds the inverses of the chunk products, the
+     * task is reinitialised and invoked again to recover the inverses of
+     * the elements.
+     */
+    private class BatchInversion extends RecursiveAction {
+        
+        private static final long serialVersionUID = 1L;
+        
         /**
-         * Invert <tt>FieldElement this</tt>. This is needed for point addition
-         * in {@link FiniteField.EllipticCurve.Point}.
-         *
-         * The algorithm used is the same as for divsion and can be
-         * found in <b>GECC</b>, p. 41.
+         * The elements to invert.
+         */
+        private final FieldElement[] in;
+        
+        /**
+         * The array receiving the inverses.
+         */
+        private final FieldElement[] out;
+        
+        /**
+         * The prefix products within every chunk.
+         */
+        private final FieldElement[] prefix;
+        
+        /**
+         * The start index of every chunk and the length of <tt>in</tt>.
+         */
+        private final int[] bounds;
+        
+        /**
+         * The product of every chunk.
+         */
+        private final FieldElement[] products;
+        
+        /**
+         * The inverse of every chunk product.
+         */
+        private final FieldElement[] inverses;
+        
+        /**
+         * The range of chunks of this task.
+         */
+        private final int first, last;
+        
+        
+        
+        /**
+         * Construct the root task for a batch inversion.
          *
-         * @return  <code>this^-1 (mod p)</code>
-         * @see     #divide
-         * @see     FiniteField.EllipticCurve#inverseOfTwo
+         * @param   in the elements to invert.
+         * @param   out array receiving the inverses.
+         * @param   chunks number of chunks.
          */
-        public FieldElement invert( ) {
-           
-            // The multiplicative inverse is 1/this (mod p)
-            return ONE.divide( this );
+        private BatchInversion( FieldElement[] in, FieldElement[] out,
+                                int chunks ) {
+            
+            this.in = in;
+            this.out = out;
+            prefix = new FieldElement[in.length];
+            products = new FieldElement[chunks];
+            inverses = new FieldElement[chunks];
+            first = 0;
+            last = chunks;
+            
+            bounds = new int[chunks + 1];
+            for( int i = 0; i <= chunks; i++ )
+                bounds[i] = (int)( (long)in.length * i / chunks );
             
         }
         
         /**
-         * Negates <tt>FieldElement this</tt> by subtracting it from p. This
-         * is needed if we want to subtract two points on an elliptic curve
-         * from each other.
-         *
-         * @return  <code>p - this</code>
-         * @see     FiniteField.EllipticCurve.Point#subtract
+         * Construct a task for a part of the chunks of its parent.
          */
-        public FieldElement negate( ) {
+        private BatchInversion( BatchInversion parent, int first, int last ) {
             
-            return p.subtract( this );
+            in = parent.in;
+            out = parent.out;
+            prefix = parent.prefix;
+            bounds = parent.bounds;
+            products = parent.products;
+            inverses = parent.inverses;
+            this.first = first;
+            this.last = last;
             
         }
         
+        
+        
+        
         /**
-         * This method implements a modular reduction algorithm proposed
-         * by Barrett. The algorithm can be found in <b>HAC</b>, p. 604.
-         *
-         * @return  <code>this mod p</code>
-         * @see     FiniteField#barrettConstant
-         * @see     FiniteField.FieldElement#calculateBarrettConstant
+         * Process the chunks of this task.
          */
-        private FieldElement mod( ) {
+        protected void compute( ) {
             
-            int k = p.magnitude.length;
-            int kMinusOne = k - 1;
-            int kPlusOne = k + 1;
-            int xLength = this.magnitude.length;
-            int lengthToCopy, i = 0;
+            if( last - first > 1 ) {
+                int middle = (first + last) >>> 1;
+                invokeAll( new BatchInversion( this, first, middle ),
+                           new BatchInversion( this, middle, last ) );
+                return;
+            }
             
-            if( this.compareTo( p ) == LT )
-                return new FieldElement( this );
-                        
-            // calculate q1, this is a right shift by k-1 words
-            lengthToCopy = xLength - kMinusOne;
-            int[] q1 = new int[lengthToCopy];
-            for( i = 0; i < lengthToCopy; i++ )
-                q1[i] = this.magnitude[i + kMinusOne];
-
-            // calculate q2
-            int[] q2 = multiply( barrettConstant.magnitude, q1 );
-
-            // calculate q3, we use q1 for the result
-            lengthToCopy = q2.length - kPlusOne;
-            q1 = new int[lengthToCopy];
-            for( i = 0; i < lengthToCopy; i++ )
-                q1[i] = q2[i + kPlusOne];
-
-            // calculate r1, which means keep the k+1 lowest
-            // words of x, we use q2 to store the result
-            lengthToCopy = (kPlusOne > xLength ? xLength : kPlusOne);
-            q2 = new int[lengthToCopy];
-            for( i = 0; i < lengthToCopy; i++ )
-                q2[i] = this.magnitude[i];
+            int from = bounds[first], to = bounds[first + 1];
             
-            // calculate r2, the result is stored in q3
-            int[] tmp = multiply( p.magnitude, q1 );
-            lengthToCopy = (kPlusOne > tmp.length ? tmp.length : kPlusOne);
-            int[] q3 = new int[lengthToCopy];
-            for( i = 0; i < lengthToCopy; i++ )
-                q3[i] = tmp[i];
-
-            // calculate r, this includes step 3 of algorithm
-            if( q2.length < q3.length || 
-                    (q2.length == q3.length && compareTo( q2, q3 ) == LT) ) {
-                int[] b = new int[kPlusOne];
-                b[k] = 0x01;
-                q2 = add( b, q2 );
+            if( inverses[first] == null )
+                products[first] = accumulate( in, prefix, from, to );
+            else
+                distribute( in, out, prefix, from, to, inverses[first] );
+            
+        }
+        
+    }
+    
+    
+    
+    
+    /**
+     * This class represents a mutable element of fixed width over this
+     * finite field. In contrast to {@link FiniteField.FieldElement} its value
+     * is stored in exactly as many words as the order p needs and it can be
+     * overwritten by the in-place operations of {@link
+     * FiniteField.Workspace}. This allows point arithmetic to run without
+     * allocating new objects for every intermediate result.
+     * <p />
+     * The value of a <tt>MutableFieldElement</tt> is always reduced modulo p,
+     * so converting it back via {@link #toFieldElement} yields exactly the
+     * same <tt>FieldElement</tt> the immutable API would have computed.
+     * <p />
+     * In representation {@link FiniteField#MONTGOMERY64} the value is
+     * stored in 64 bit limbs instead of 32 bit words.
+     *
+     * @see FiniteField.Workspace
+     */
+    public class MutableFieldElement {
+        
+        /**
+         * The words of this element, the rightmost bit of words[0] is the
+         * least significant bit. The length is always
+         * <code>p.magnitude.length</code>. In representation
+         * {@link FiniteField#MONTGOMERY64} it is <tt>null</tt>.
+         */
+        private final int[] words;
+        
+        /**
+         * The 64 bit limbs of this element in representation
+         * {@link FiniteField#MONTGOMERY64}, least significant limb first,
+         * otherwise <tt>null</tt>.
+         *
+         * @see Montgomery64
+         */
+        private final long[] limbs;
+        
+        
+        
+        /**
+         * Construct a new <tt>MutableFieldElement</tt> with value zero.
+         */
+        public MutableFieldElement( ) {
+            
+            if( representation == MONTGOMERY64 ) {
+                words = null;
+                limbs = new long[montgomery64.n];
+            }
+            else {
+                words = new int[p.magnitude.length];
+                limbs = null;
             }
             
-            q1 = subtract( q2, q3 );
+        }
+        
+        /**
+         * Construct a new <tt>MutableFieldElement</tt> holding the value of
+         * the given <tt>FieldElement</tt>.
+         *
+         * @param   value <tt>FieldElement</tt> to copy.
+         */
+        public MutableFieldElement( FieldElement value ) {
             
-            // final subtractions, step 4 in algorithm
-            // this has to be done at most twice
-            while( q1.length > p.magnitude.length || (q1.length == p.magnitude.length && compareTo(q1, p.magnitude) >= EQ) )
-                q1 = subtract(q1, p.magnitude);
-
-            return new FieldElement( q1, (byte)1 );
+            this( );
+            set( value );
             
         }
-
+        
+        
+        
+        
         /**
-         * Divides <tt>FieldElement this</tt> by 2.
-         *
-         * This is a simple right shift and no modular operation. This method
-         * is therfor private.
+         * Overwrite <tt>this</tt> with the value of a <tt>FieldElement</tt>.
          *
-         * @return  <code>this >> 1</code>
+         * @param   value <tt>FieldElement</tt> to copy.
+         * @return  <tt>this</tt>
          */
-        private FieldElement rightShift( ) {
+        public MutableFieldElement set( FieldElement value ) {
             
-            byte sign = 1;
+            if( limbs != null ) {
+                montgomery64.toLimbs( value.magnitude, limbs );
+                return this;
+            }
             
-            if( this.signum == 0 )
-                return new FieldElement ( new int[1], (byte)0 );
-            if( this.magnitude.length == 1 && 
-                    (this.magnitude[0] & INT2LONG) == 1 )
-                return new FieldElement ( new int[1], (byte)0 );
-        
-            return new FieldElement ( rightShift(this.magnitude), (byte)1 );
+            int[] mag = value.magnitude;
+            int i = 0;
+            
+            for( ; i < mag.length; i++ )
+                words[i] = mag[i];
+            for( ; i < words.length; i++ )
+                words[i] = 0;
+            
+            return this;
             
         }
         
         /**
-         * Divide a given magnitude by 2.
+         * Overwrite <tt>this</tt> with the value of another
+         * <tt>MutableFieldElement</tt>.
          *
-         * This is a simple right shift and no modular operation.
-         *
-         * @param   operand magnitude of <tt>FieldElement</tt> to shift.
-         * @return  <code>operand >> 1</code>
+         * @param   value <tt>MutableFieldElement</tt> to copy.
+         * @return  <tt>this</tt>
          */
-        private int[] rightShift( int[] operand ) {
-
-            int carry = 0, i = operand.length;
+        public MutableFieldElement set( MutableFieldElement value ) {
             
-            int[] result = new int[i];
-
-            while ( --i >= 0 ) {
-                result[i] = (operand[i] >>> 1) | carry;
-                carry = operand[i] << 31;
-            }
+            if( limbs != null )
+                System.arraycopy( value.limbs, 0, limbs, 0, limbs.length );
+            else
+                System.arraycopy( value.words, 0, words, 0, words.length );
             
-            return stripZeros ( result );
+            return this;
             
         }
         
         /**
-         * Multiplies <tt>FieldElement this</tt> by 2.
+         * Convert <tt>this</tt> to an immutable <tt>FieldElement</tt>.
          *
-         * This is a simple left shift and no modular operation. This method
-         * is therfor private.
-         *
-         * @return  <code>this << 1</code>
+         * @return  new <tt>FieldElement</tt> holding the value of
+         *          <tt>this</tt>.
          */
-        private FieldElement leftShift( ) {
+        public FieldElement toFieldElement( ) {
             
-            if ( this.signum == 0 )
-                return new FieldElement ( new int[1], (byte)0 );
+            int[] words = this.words;
+            if( limbs != null ) {
+                words = new int[p.magnitude.length];
+                montgomery64.toWords( limbs, words );
+            }
             
-            return new FieldElement ( leftShift(this.magnitude), (byte)1 );
+            int counter = words.length;
+            while( counter >= 2 && words[counter - 1] == 0 )
+                counter--;
+            
+            int[] mag = new int[counter];
+            System.arraycopy( words, 0, mag, 0, counter );
+            
+            return new FieldElement( mag,
+                    (byte)( counter == 1 && mag[0] == 0 ? 0 : 1 ) );
             
         }
         
         /**
-         * Multiply a given magnitude by 2.
-         *
-         * This is a simple left shift and no modular operation.
+         * Determines wether <tt>this</tt> is zero.
          *
-         * @param   operand magnitude of <tt>FieldElement</tt> which to shift.
-         * @return  <code>operand << 1</code>
+         * @return  <tt>true</tt> if and only if <tt>this</tt> is zero.
          */
-        private int[] leftShift( int[] operand ) {
-
-            int length = operand.length, i = length - 1;
-            int[] mag;
-
-            int highBits = operand[length - 1] >>> 31;
+        public boolean isZero( ) {
             
-            if ( highBits != 0 ) {
-                mag = new int[length + 1];
-                mag[length] = highBits;
+            if( limbs != null ) {
+                long or = 0;
+                for( int i = 0; i < limbs.length; i++ )
+                    or |= limbs[i];
+                return or == 0;
             }
-            else
-                mag = new int[length];
             
-            int j = length - 1;
-            while ( j > 0 )
-                mag[i--] = (operand[j--] << 1) | (operand[j] >>> 31);
-
-            mag[i] = operand[j] << 1;
+            int or = 0;
+            for( int i = 0; i < words.length; i++ )
+                or |= words[i];
             
-            return mag;
+            return or == 0;
             
         }
         
         /**
-         * Counts the number of relevant bits in <tt>FieldElement this</tt>.
+         * Compares two <tt>MutableFieldElements</tt>.
          *
-         * @return number of relevant bits in <tt>this</tt>
+         * @param   compare <tt>MutableFieldElement</tt> which <tt>this</tt>
+         *          should be compared to.
+         * @return  true if and only if <tt>this</tt> is equal to
+         *          <tt>compare</tt>, false otherwise.
          */
-        public int numBits( ) {
+        public boolean equals( MutableFieldElement compare ) {
             
-            int lengthMinusOne = this.magnitude.length - 1;
-            int result = (lengthMinusOne) * 32;
+            if( limbs != null ) {
+                for( int i = 0; i < limbs.length; i++ )
+                    if( limbs[i] != compare.limbs[i] )
+                        return false;
+                return true;
+            }
             
-            result += numBits( this.magnitude[lengthMinusOne] );
+            for( int i = 0; i < words.length; i++ )
+                if( words[i] != compare.words[i] )
+                    return false;
             
-            return result;
+            return true;
             
         }
         
         /**
-         * Counts the number of relevant bits in <tt>w</tt>.
+         * Provides a string representation of <tt>this</tt> in radix 16.
          *
-         * @param   w integer to count the bits of.
-         * @return  number of relevant bits in <tt>w</tt>
+         * @return String representing <tt>MutableFieldElement this</tt>.
          */
-        private int numBits( int w ) {
+        public String toString( ) {
             
-            return
-                (w < 1<<15 ?
-                (w < 1<<7 ?
-                (w < 1<<3 ?
-                (w < 1<<1 ? (w < 1<<0 ? (w<0 ? 32 : 0) : 1):(w < 1<<2 ? 2 : 3)):
-                (w < 1<<5 ? (w < 1<<4 ? 4 : 5) : (w < 1<<6 ? 6 : 7))) :
-                (w < 1<<11 ?
-                (w < 1<<9 ? (w < 1<<8 ? 8 : 9) : (w < 1<<10 ? 10 : 11)) :
-                (w < 1<<13 ? (w < 1<<12 ? 12 : 13) : (w < 1<<14 ? 14 : 15)))) :
-                (w < 1<<23 ?
-                (w < 1<<19 ?
-                (w < 1<<17 ? (w < 1<<16 ? 16 : 17) : (w < 1<<18 ? 18 : 19)) :
-                (w < 1<<21 ? (w < 1<<20 ? 20 : 21) : (w < 1<<22 ? 22 : 23))) :
-                (w < 1<<27 ?
-                (w < 1<<25 ? (w < 1<<24 ? 24 : 25) : (w < 1<<26 ? 26 : 27)) :
-                (w < 1<<29 ? (w < 1<<28 ? 28 : 29) : (w < 1<<30 ? 30 : 31)))));
+            return toFieldElement( ).toString( );
             
         }
         
+    }
+    
+    
+    
+    
+    /**
+     * This class provides in-place arithmetic on {@link
+     * FiniteField.MutableFieldElement}s. All scratch space needed for
+     * multiplication and Barrett reduction is allocated once when the
+     * <tt>Workspace</tt> is created, so none of the operations allocates
+     * memory. The syntax is:<br />
+     * <code>
+     * FiniteField.Workspace W = F.new Workspace( );<br />
+     * W.mulTo( dst, a, b );<br />
+     * </code>
+     * <p />
+     * The destination of every operation may be the same object as one of
+     * its operands. A <tt>Workspace</tt> must not be shared between threads,
+     * use one instance per thread instead.
+     * <p />
+     * If the field uses {@link FiniteField#MONTGOMERY} representation,
+     * the elements stay in Montgomery form and {@link #mulTo} uses Montgomery multiplication
+     * instead of Barrett reduction. With {@link FiniteField#MONTGOMERY64}
+     * addition, subtraction, negation and multiplication work on the 64 bit
+     * limbs of the elements, see {@link Montgomery64}.
+     *
+     * @see FiniteField.MutableFieldElement
+     */
+    public class Workspace {
+        
         /**
-         * This method is used to calculate the constant
-         * <tt>barrettConstant</tt> which is neccessary for barrett reduction.
+         * This bit mask is needed for the conversion of a signed integer
+         * to an unsigned long.
+         */
+        private final static long INT2LONG = 0xFFFFFFFFL;
+        
+        /**
+         * Number of words of the order p.
+         */
+        private final int k;
+        
+        /**
+         * Holds the double length product of a multiplication.
+         */
+        private final int[] product;
+        
+        /**
+         * Holds <code>q2 = q1 * barrettConstant</code> during reduction.
+         */
+        private final int[] q2;
+        
+        /**
+         * Holds the intermediate remainder (k+1 words) during reduction.
+         */
+        private final int[] r;
+        
+        /**
+         * The Barrett constant padded to k+1 words.
+         */
+        private final int[] mu;
+        
+        /**
+         * Scratch for Montgomery multiplication.
          *
-         * It implements a binary division algorithm and divides
-         * <code>b^2 * p.magnitude.length</code> by <tt>this</tt>.
-         * 
-         * @return  <code>(b^2 * p.magnitude.length) / this</code>
-         * @see     #mod
-         * @see     FiniteField#barrettConstant
+         * @see FiniteField#montgomeryMultiply
          */
-        private FieldElement calculateBarrettConstant( ) {
+        private final int[] t;
+        
+        /**
+         * Double length scratch for Montgomery reduction of squares.
+         *
+         * @see FiniteField#montgomeryReduce
+         */
+        private final int[] montgomeryProduct;
+        
+        /**
+         * Scratch for the reduction of primes of special form.
+         *
+         * @see FiniteField#fastReduction
+         */
+        private final int[] fastScratch;
+        
+        /**
+         * Scratch for inversion.
+         *
+         * @see FiniteField#inversion
+         */
+        private final int[][] inversionScratch;
+        
+        /**
+         * Operands of {@link FieldElement} padded to k words.
+         *
+         * @see FiniteField#workspace
+         */
+        private final int[] padded1, padded2;
+        
+        /**
+         * Factors and scratch for the multiplication of 32 bit words on
+         * 64 bit limbs or <tt>null</tt>, if no {@link Montgomery64} engine
+         * is installed.
+         *
+         * @see #multiply
+         */
+        private final long[] limbs1, limbs2, limbScratch;
+        
+        
+        
+        /**
+         * Construct a new <tt>Workspace</tt> and allocate its scratch space.
+         */
+        public Workspace( ) {
+            
+            k = p.magnitude.length;
+            product = new int[k << 1];
+            q2 = new int[(k + 1) << 1];
+            r = new int[k + 1];
+            t = new int[k + 2];
+            montgomeryProduct = new int[(k << 1) + 1];
+            fastScratch = new int[fastReduction == null ?
+                                  0 : fastReduction.scratchLength( )];
+            inversionScratch = inversion.newScratch( );
+            padded1 = new int[k];
+            padded2 = new int[k];
+            
+            if( montgomery64 != null ) {
+                limbs1 = new long[montgomery64.n];
+                limbs2 = new long[montgomery64.n];
+                limbScratch = new long[montgomery64.n + 1];
+            }
+            else {
+                limbs1 = null;
+                limbs2 = null;
+                limbScratch = null;
+            }
             
-            // initialise the numerator
-            int lengthNumerator = this.magnitude.length << 1;
-            int[] numArray = new int[lengthNumerator + 1];
-            numArray[lengthNumerator] =  0x00000001;
-            FieldElement numerator = new FieldElement( numArray, (byte)1 );
+            mu = new int[k + 1];
+            System.arraycopy( barrettConstant.magnitude, 0, mu, 0,
+                    barrettConstant.magnitude.length );
             
-            // initialise the denominator
-            FieldElement denominator = new FieldElement( this );
-
-            // initialise result
-            FieldElement result = new FieldElement( 0 );
+        }
+        
+        
+        
+        
+        /**
+         * Add two <tt>MutableFieldElements</tt>.
+         *
+         * @param   dst receives <code>a + b (mod p)</code>.
+         * @param   a first summand.
+         * @param   b second summand.
+         */
+        public void addTo( MutableFieldElement dst, MutableFieldElement a,
+                           MutableFieldElement b ) {
             
-            int count = 0;
-
-            // actual division
-            while( numerator.compareTo( denominator ) == GT ) {
-                denominator = denominator.leftShift( );
-                count++;
+            if( representation == MONTGOMERY64 ) {
+                montgomery64.add( a.limbs, b.limbs, dst.limbs );
+                return;
             }
             
-            denominator = denominator.rightShift( );
-            count--;
+            if( fixedWidth != null ) {
+                fixedWidth.add( a.words, b.words, dst.words );
+                return;
+            }
             
-            while( count != 0 ) {
-                if( numerator.compareTo( denominator ) >= EQ ) {
-                    numerator.magnitude = subtract( numerator.magnitude,
-                                                    denominator.magnitude );
-                    result = result.setBit( count );
-                }
-                denominator = denominator.rightShift( );
-                count--;
+            int[] d = dst.words, x = a.words, y = b.words;
+            long sum = 0;
+            
+            for( int i = 0; i < k; i++ ) {
+                sum += (x[i] & INT2LONG) + (y[i] & INT2LONG);
+                d[i] = (int)sum;
+                sum >>>= 32;
             }
-
-            return result;
+            
+            if( sum != 0 || compareWords( d, p.magnitude ) >= EQ )
+                subtractWords( d, p.magnitude );
             
         }
-                
+        
         /**
-         * This method strips leading zeros off the given magnitude.
-         * It is called by almost all function inside <tt>FieldElement</tt>.
+         * Subtract two <tt>MutableFieldElements</tt>.
          *
-         * @param   value magnitude which the zeros should be stripped off.
-         * @return  new magnitude without leading zeros.
+         * @param   dst receives <code>a - b (mod p)</code>.
+         * @param   a minuend.
+         * @param   b subtrahend.
          */
-        private int[] stripZeros( int[] value ) {
+        public void subTo( MutableFieldElement dst, MutableFieldElement a,
+                           MutableFieldElement b ) {
             
-            int counter = value.length;
-            for ( ; counter >= 2 && value[counter-1] == 0; counter-- )
-                ;
-
-            if ( counter != value.length ) {
-                int result[] = new int[counter];
-
-                for ( int i = 0; i < counter; i++ ) {
-                    result[i] = value[i];
-                }
-
-                return result;
+            if( representation == MONTGOMERY64 ) {
+                montgomery64.subtract( a.limbs, b.limbs, dst.limbs );
+                return;
+            }
+            
+            if( fixedWidth != null ) {
+                fixedWidth.subtract( a.words, b.words, dst.words );
+                return;
+            }
+            
+            int[] d = dst.words, x = a.words, y = b.words;
+            long diff = 0;
+            
+            for( int i = 0; i < k; i++ ) {
+                diff += (x[i] & INT2LONG) - (y[i] & INT2LONG);
+                d[i] = (int)diff;
+                diff >>= 32;
             }
-
-            return value;
+            
+            if( diff != 0 )
+                addWords( d, p.magnitude );
             
         }
         
         /**
-         * Compares two <tt>FieldElements</tt>.
+         * Negate a <tt>MutableFieldElement</tt>.
          *
-         * @param   compare <tt>FieldElement</tt> which <tt>this</tt> should
-         *          be compared to.
-         * @return  {@link FiniteField#LT LT} if <tt>this</tt> is less than
-         *          <tt>compare</tt>, {@link FiniteField#EQ EQ} if <tt>this</tt>
-         *          is equal to <tt>compare</tt> and {@link FiniteField#GT GT}
-         *          if <tt>this</tt> is greater than <tt>compare</tt>.
+         * @param   dst receives <code>p - a (mod p)</code>.
+         * @param   a the element to negate.
          */
-        public byte compareTo( FieldElement compare ) {
+        public void negTo( MutableFieldElement dst, MutableFieldElement a ) {
             
-            if( this.magnitude.length > compare.magnitude.length )
-                return GT;
-            else if( this.magnitude.length < compare.magnitude.length )
-                return LT;
+            if( representation == MONTGOMERY64 ) {
+                montgomery64.negate( a.limbs, dst.limbs );
+                return;
+            }
             
-            return compareTo( this.magnitude, compare.magnitude );
+            if( a.isZero( ) ) {
+                dst.set( a );
+                return;
+            }
+            
+            int[] d = dst.words, x = a.words, m = p.magnitude;
+            long diff = 0;
+            
+            for( int i = 0; i < k; i++ ) {
+                diff += (m[i] & INT2LONG) - (x[i] & INT2LONG);
+                d[i] = (int)diff;
+                diff >>= 32;
+            }
             
         }
         
         /**
-         * Compares the magnitudes of two <tt>FieldElements</tt>. Only
-         * to be called if these are the same length.
+         * Multiply two <tt>MutableFieldElements</tt>.
          *
-         * @param   operand1 first magnitude.
-         * @param   operand2 second magnitude.
-         * @return  {@link FiniteField#LT LT} if <tt>operand1</tt> is less than
-         *          <tt>operand2</tt>, {@link FiniteField#EQ EQ} if
-         *          <tt>operand1</tt> is equal to <tt>operand2</tt> and
-         *          {@link FiniteField#GT GT} if <tt>operand1</tt> is greater
-         *          than <tt>operand2</tt>.
+         * @param   dst receives <code>a * b (mod p)</code>.
+         * @param   a first factor.
+         * @param   b second factor.
          */
-        private byte compareTo( int[] operand1, int[] operand2 ) {
-
-            for( int i = operand1.length - 1; i >= 0 ; i-- )
-                
-                if( operand1[i] != operand2[i] ) {
-                    
-                    if( (operand1[i] & INT2LONG) > (operand2[i] & INT2LONG) )
-                        return GT;
-                    else
-                        return LT;
-                    
-                }
-           
-            return EQ;
+        public void mulTo( MutableFieldElement dst, MutableFieldElement a,
+                           MutableFieldElement b ) {
+            
+            if( representation == MONTGOMERY64 ) {
+                montgomery64.multiply( a.limbs, b.limbs, dst.limbs,
+                                       limbScratch );
+                return;
+            }
+            
+            multiply( dst.words, a.words, b.words );
             
         }
         
         /**
-         * Compares two <tt>FieldElements</tt>.
+         * Square a <tt>MutableFieldElement</tt>.
          *
-         * @param   compare <tt>FieldElement</tt> which <tt>this</tt> should
-         *          be compared to.
-         * @return  true if and only if <tt>this</tt> is equal to
-         *          <tt>compare</tt>, false otherwise.
+         * @param   dst receives <code>a^2 (mod p)</code>.
+         * @param   a the element to square.
          */
-        public boolean equals( FieldElement compare ) {
+        public void sqrTo( MutableFieldElement dst, MutableFieldElement a ) {
             
-            if( this.magnitude.length != compare.magnitude.length )
-                return false;
+            if( representation == MONTGOMERY64 ) {
+                montgomery64.multiply( a.limbs, a.limbs, dst.limbs,
+                                       limbScratch );
+                return;
+            }
             
-            return  compareTo( this.magnitude, compare.magnitude ) == EQ
-                    ? true : false;
+            square( dst.words, a.words );
             
-        }        
+        }
         
         /**
-         * Tests bit n of <tt>FieldElement this</tt>, needed for point
-         * multiplication algorithms in {@link FiniteField.EllipticCurve.Point}.
-         *
-         * @param   n position of bit to test.
-         * @return  <tt>true</tt> if and only if bit n is set, <tt>false</tt>
-         *          otherwise.
+         * Multiply two elements of k words, see {@link #mulTo}.
          *
-         * @see     FiniteField.EllipticCurve.Point#multiply
+         * @param   d receives <code>x * y (mod p)</code>.
+         * @param   x first factor.
+         * @param   y second factor.
          */
-        public boolean testBit( int n ) {
+        private void multiply( int[] d, int[] x, int[] y ) {
             
-            int word = n >> 5;
-            if( word >= 0 && word < magnitude.length )
-                return ( ( magnitude[word] >> (n & 0x1F) ) & 1 ) != 0;
+            if( representation == MONTGOMERY64 ) {
+                montgomery64.toLimbs( x, limbs1 );
+                montgomery64.toLimbs( y, limbs2 );
+                montgomery64.multiply( limbs1, limbs2, limbs1, limbScratch );
+                montgomery64.toWords( limbs1, d );
+                return;
+            }
             
-            return false;
+            if( representation == MONTGOMERY ) {
+                montgomeryMultiply( x, y, t );
+                System.arraycopy( t, 0, d, 0, k );
+                return;
+            }
+            
+            if( fixedWidth != null ) {
+                fixedWidth.multiply( x, y, product );
+                reduce( d );
+                return;
+            }
+            
+            for( int i = 0; i < product.length; i++ )
+                product[i] = 0;
+            
+            for( int i = 0; i < k; i++ ) {
+                
+                long factor_i = (y[i] & INT2LONG);
+                long value = 0;
+                
+                for( int j = 0; j < k; j++ ) {
+                    int iPlusj = i + j;
+                    value += factor_i * (x[j] & INT2LONG)
+                           + (product[iPlusj] & INT2LONG);
+                    product[iPlusj] = (int)value;
+                    value >>>= 32;
+                }
+                
+                product[i + k] = (int)value;
+            }
+            
+            reduce( d );
             
         }
         
         /**
-         * Sets bit n of <tt>FieldElement this</tt>.
+         * Square an element of k words, see {@link #sqrTo}.
          *
-         * @param   n the position of the bit to set.
-         * @return  new <tt>FieldElement</tt> with n'th bit set to one.
+         * @param   d receives <code>a^2 (mod p)</code>.
+         * @param   a the element to square.
          */
-        private FieldElement setBit( int n ) {
+        private void square( int[] d, int[] a ) {
             
-            int word = n >> 5;
-            int bit = 1 << (n & 0x1F);
+            if( representation == MONTGOMERY64 ) {
+                montgomery64.toLimbs( a, limbs1 );
+                montgomery64.multiply( limbs1, limbs1, limbs1, limbScratch );
+                montgomery64.toWords( limbs1, d );
+                return;
+            }
             
-            // if the bit we want to set is out of the range of
-            // the magnitude, we have to make it longer
-            int[] mag = new int[( (word + 1) >= this.magnitude.length ?
-                        (word + 1) : this.magnitude.length )];
-			
-            for( int i = 0; i < this.magnitude.length; i++ )
-                mag[i] = this.magnitude[i];
-
-            mag[word] |= bit;
+            if( representation == MONTGOMERY ) {
+                if( fixedWidth != null ) {
+                    fixedWidth.square( a, montgomeryProduct );
+                    montgomeryProduct[k << 1] = 0;
+                }
+                else {
+                    for( int i = 0; i < montgomeryProduct.length; i++ )
+                        montgomeryProduct[i] = 0;
+                    squareWords( a, k, montgomeryProduct );
+                }
+                montgomeryReduce( montgomeryProduct, d );
+                return;
+            }
             
-            return new FieldElement( mag, (byte)1 );
+            if( fixedWidth != null )
+                fixedWidth.square( a, product );
+            else {
+                for( int i = 0; i < product.length; i++ )
+                    product[i] = 0;
+                squareWords( a, k, product );
+            }
+            
+            reduce( d );
             
         }
         
         /**
-         * Provides a string representation of <tt>FieldElement this</tt>
-         * in radix 16.
+         * Multiply a <tt>MutableFieldElement</tt> by a non-negative integer.
          *
-         * @return String representing <tt>FieldElement this</tt>.
+         * @param   dst receives <code>a * factor (mod p)</code>.
+         * @param   a the element to multiply.
+         * @param   factor the <tt>int</tt> to multiply <tt>a</tt> with.
          */
-        public String toString( ) {
+        public void mulByWordTo( MutableFieldElement dst, MutableFieldElement a,
+                                 int factor ) {
             
-            if ( this.signum == 0 )
-                return "0";
-
-            String s = new String();
-            String h;
-
-            for ( int i = this.magnitude.length - 1; i >= 0 ; i-- ) {
-                h = "0000000" + Long.toString
-                                ( this.magnitude[i] & INT2LONG, 16 );
-                h = h.substring( h.length() - 8 );
-                s = s + h;
+            int[] x = a.words;
+            if( x == null ) {
+                x = padded1;
+                montgomery64.toWords( a.limbs, x );
             }
+            long f = factor & INT2LONG;
+            long carry = 0;
             
-            // cut off leading zeros
-            int k = 0;
-            while( s.substring( k, k + 1 ).equals( "0" ) )
-                k++;
-
-            return s.substring( k, s.length() );
+            for( int i = 0; i < k; i++ ) {
+                carry += (x[i] & INT2LONG) * f;
+                product[i] = (int)carry;
+                carry >>>= 32;
+            }
+            product[k] = (int)carry;
+            for( int i = k + 1; i < product.length; i++ )
+                product[i] = 0;
+            
+            if( dst.limbs != null ) {
+                reduce( padded2 );
+                montgomery64.toLimbs( padded2, dst.limbs );
+            }
+            else
+                reduce( dst.words );
             
         }
         
         /**
-         * Returns a <tt>byte[]</tt> containing the width <tt>w</tt> NAF
-         * representation of <tt>FieldElement this</tt>. For details on NAF
-         * please refer to <b>GECC</b>, p. 98 f.
-         * <p />
-         * The NAF representation is used for point multiplication in
-         * {@link FiniteField.EllipticCurve.Point}.
-         * <p />
-         * This implementation only allows the width to be between 2 and 6,
-         * otherwise we would have to return a <tt>short[]</tt> which would
-         * be too large (e.g. 2560bit for a <tt>FieldElement</tt> of 160bit).
+         * Invert a <tt>MutableFieldElement</tt>, see
+         * {@link FiniteField.FieldElement#invert}.
          *
-         * @param   w window width to use.
-         *
-         * @return  <code>NAF_w(k)</code>
+         * @param   dst receives <code>a^-1 (mod p)</code>.
+         * @param   a the element to invert.
          *
-         * @throws  IllegalArgumentException <tt>w</tt> is out of range.
+         * @throws  ArithmeticException <tt>a</tt> is zero.
+         */
+        public void invTo( MutableFieldElement dst, MutableFieldElement a )
+               throws ArithmeticException {
+            
+            if( a.isZero( ) )
+                throw new ArithmeticException
+                ( "FiniteField.Workspace.invTo: Division by zero." );
+            
+            int[] numerator = ( representation == BARRETT ?
+                                ONE.magnitude : montgomerySquare );
+            
+            if( representation == MONTGOMERY64 ) {
+                montgomery64.toWords( a.limbs, padded1 );
+                inversion.divide( numerator, padded1, padded2,
+                                  inversionScratch );
+                montgomery64.toLimbs( padded2, dst.limbs );
+                return;
+            }
+            
+            inversion.divide( numerator, a.words, dst.words,
+                              inversionScratch );
+            
+        }
+        
+        /**
+         * Reduce the double length value in {@link #product} modulo p by
+         * Barrett reduction. The algorithm is the same as in {@link
+         * FiniteField.FieldElement#mod}, see <b>HAC</b>, p. 604, but works
+         * on fixed length arrays only. For primes of special form the
+         * installed {@link FastReduction} is used instead.
          *
-         * @see     FiniteField.EllipticCurve.Point#multiply(
-         *          FiniteField.FieldElement,FiniteField.EllipticCurve.Point[],
-         *          byte)
+         * @param   result array of k words receiving the result.
          */
-        public byte[] toNAF( byte w ) throws IllegalArgumentException {
+        private void reduce( int[] result ) {
             
-            int width = 1 << w;
-            int widthTimesTwo = width << 1;
+            if( fastReduction != null ) {
+                fastReduction.reduce( product, result, fastScratch );
+                return;
+            }
             
-            if( width > Byte.MAX_VALUE || w < 2 )
-                throw new IllegalArgumentException
-                ( "FiniteField.FieldElement.toNAF:" +
-                        "Width has to be beetwen 2 and 6" );
+            int kPlusOne = k + 1;
+            int kMinusOne = k - 1;
+            int[] m = p.magnitude;
             
-            int bitLength = this.numBits( );
-            byte[] naf = new byte[bitLength + 1];
+            // q2 = q1 * mu, where q1 are the upper k+1 words of the
+            // product, i.e. a right shift by k-1 words
+            for( int i = 0; i < q2.length; i++ )
+                q2[i] = 0;
             
-            FieldElement k = new FieldElement( this );
+            for( int i = 0; i < kPlusOne; i++ ) {
+                
+                long factor_i = mu[i] & INT2LONG;
+                long value = 0;
+                
+                for( int j = 0; j < kPlusOne; j++ ) {
+                    int index = i + j;
+                    value += factor_i * (product[j + kMinusOne] & INT2LONG)
+                           + (q2[index] & INT2LONG);
+                    q2[index] = (int)value;
+                    value >>>= 32;
+                }
+                
+                q2[i + kPlusOne] = (int)value;
+            }
             
-            int i = 0;
+            // q3 are the words of q2 starting at position k+1. compute
+            // r = r1 - r2 = x - q3 * p (mod b^(k+1)), we only need the
+            // lower k+1 words of q3 * p.
+            for( int i = 0; i < kPlusOne; i++ )
+                r[i] = product[i];
             
-            while( ! (k.magnitude.length == 1 && k.magnitude[0] == 0) ) {
+            for( int i = 0; i < kPlusOne; i++ ) {
                 
-                if( (k.magnitude[0] & 1) == 1 ) {
-                    
-                    naf[i] = (byte)((k.magnitude[0]) & (widthTimesTwo - 1));
-                    
-                    if( (naf[i] & width) != 0 ) {
-                        naf[i] -= widthTimesTwo;
-                    }
-                    
-                    if( naf[i] < 0 ) {
-                        int[] tmp = { -naf[i] };
-                        k.magnitude = add( k.magnitude, tmp );
-                    }
-                    else {
-                        int[] tmp = { naf[i] };
-                        k.magnitude = subtract( k.magnitude, tmp );
-                    }
-                    
+                long q3_i = q2[i + kPlusOne] & INT2LONG;
+                if( q3_i == 0 )
+                    continue;
+                
+                long value = 0;
+                long borrow = 0;
+                
+                for( int j = 0; i + j < kPlusOne; j++ ) {
+                    int index = i + j;
+                    value += q3_i * ( j < k ? m[j] & INT2LONG : 0 );
+                    borrow += (r[index] & INT2LONG) - (value & INT2LONG);
+                    r[index] = (int)borrow;
+                    borrow >>= 32;
+                    value >>>= 32;
                 }
-                else
-                    naf[i] = 0;
+            }
+            
+            // final subtractions, step 4 in algorithm
+            while( r[k] != 0 || compareWords( r, m ) >= EQ )
+                subtractWords( r, m );
+            
+            System.arraycopy( r, 0, result, 0, k );
+            
+        }
+        
+        /**
+         * Compare the lower k words of <tt>operand1</tt> to
+         * <tt>operand2</tt>, which might be shorter.
+         */
+        private byte compareWords( int[] operand1, int[] operand2 ) {
+            
+            for( int i = k - 1; i >= 0; i-- ) {
                 
-                i++;
-                k.magnitude = rightShift( k.magnitude );
+                long w1 = operand1[i] & INT2LONG;
+                long w2 = ( i < operand2.length ? operand2[i] & INT2LONG : 0 );
                 
+                if( w1 != w2 )
+                    return ( w1 > w2 ? GT : LT );
             }
             
-            while( i < bitLength )
-                naf[i++] = 0;
+            return EQ;
             
-            return naf;
+        }
+        
+        /**
+         * Subtract <tt>operand2</tt> from <tt>operand1</tt> in place,
+         * ignoring the final borrow.
+         */
+        private void subtractWords( int[] operand1, int[] operand2 ) {
+            
+            long diff = 0;
+            
+            for( int i = 0; i < operand1.length; i++ ) {
+                diff += (operand1[i] & INT2LONG)
+                      - ( i < operand2.length ? operand2[i] & INT2LONG : 0 );
+                operand1[i] = (int)diff;
+                diff >>= 32;
+            }
+            
+        }
         
+        /**
+         * Add <tt>operand2</tt> to <tt>operand1</tt> in place, ignoring
+         * the final carry.
+         */
+        private void addWords( int[] operand1, int[] operand2 ) {
+            
+            long sum = 0;
+            
+            for( int i = 0; i < operand1.length; i++ ) {
+                sum += (operand1[i] & INT2LONG)
+                     + ( i < operand2.length ? operand2[i] & INT2LONG : 0 );
+                operand1[i] = (int)sum;
+                sum >>>= 32;
+            }
+            
         }
         
     }
     
-    
-    
-    
-
-    
 }
@@ -0,0 +1,326 @@
+/*
+ * FixedBaseComb.java
+ */
+
+
+
+
+package de.rub.nds.ec.math;
+
+
+
+
+import java.nio.ByteOrder;
+
+
+
+
+/**
+ * This class implements the fixed-base comb method for point
+ * multiplication with several tables, see <b>GECC</b>, p. 106 f., and
+ * C. H. Lim and P. J. Lee, "More Flexible Exponentiation with
+ * Precomputation", CRYPTO '94.
+ * <p />
+ * The t bits of the factor are split into <code>w v</code> blocks of
+ * <code>d = ceil( t / (w v) )</code> bits, where w is the number of teeth
+ * and v the number of tables. Table j holds all sums of the points
+ * <code>2^((l v + j) d) P</code> for <code>l = 0, ..., w - 1</code>. A
+ * multiplication then needs only <code>d - 1</code> doublings and at most
+ * <code>d v</code> additions, instead of about t doublings for
+ * {@link EllipticCurve.Point#multiply}. The tables hold
+ * <code>v (2^w - 1)</code> points, which are stored in affine coordinates,
+ * so every addition is a mixed addition.
+ * <p />
+ * This pays off for a base point which is multiplied very often, like the
+ * generator of a signature scheme. On curves with the point engine
+ * {@link EllipticCurve#COMPLETE} the loop uses the complete formulas.
+ * <p />
+ * Instances are immutable and can be shared between threads.
+ *
+ * @see EllipticCurve.Point#precomputeNAFPoints
+ */
+public final class FixedBaseComb {
+
+    /**
+     * Largest supported number of teeth.
+     */
+    public final static int MAX_TEETH = 8;
+
+    /**
+     * Largest number of tables considered by {@link #forBudget}.
+     */
+    private final static int MAX_TABLES = 8;
+
+    /**
+     * The curve of the base point.
+     */
+    private final EllipticCurve curve;
+
+    /**
+     * Number of teeth w.
+     */
+    private final int teeth;
+
+    /**
+     * Number of tables v.
+     */
+    private final int tables;
+
+    /**
+     * Number of bits d per block, i.e. the spacing of the teeth.
+     */
+    private final int spacing;
+
+    /**
+     * The precomputed points, <code>table[j][i]</code> is the sum of the
+     * points of table j selected by the bits of i. Entry 0 is the point at
+     * infinity.
+     */
+    private final EllipticCurve.Point[][] table;
+
+    /**
+     * The same points in homogeneous projective coordinates, only for the
+     * point engine {@link EllipticCurve#COMPLETE}, <tt>null</tt> otherwise.
+     */
+    private final EllipticCurve.ProjectivePoint[][] projective;
+
+
+
+
+    /**
+     * Precompute the comb tables for a base point.
+     *
+     * @param   base the point to multiply.
+     * @param   teeth number of teeth w, between 1 and {@link #MAX_TEETH}.
+     * @param   tables number of tables v, at least 1.
+     *
+     * @throws  IllegalArgumentException <tt>teeth</tt> or <tt>tables</tt>
+     *          is out of range.
+     */
+    public FixedBaseComb( EllipticCurve.Point base, int teeth, int tables )
+           throws IllegalArgumentException {
+
+        if( teeth < 1 || teeth > MAX_TEETH )
+            throw new IllegalArgumentException
+            ( "FixedBaseComb.<init>: Number of teeth out of range" );
+        if( tables < 1 )
+            throw new IllegalArgumentException
+            ( "FixedBaseComb.<init>: Number of tables out of range" );
+
+        this.curve = base.curve( );
+        this.teeth = teeth;
+        this.tables = tables;
+
+        int bits = curve.field.p.numBits( );
+        int blocks = teeth * tables;
+        spacing = ( bits + blocks - 1 ) / blocks;
+
+        // the first point of every block, 2^(m d) P
+        EllipticCurve.Point[] blockBase = new EllipticCurve.Point[blocks];
+        blockBase[0] = base;
+        for( int m = 1; m < blocks; m++ ) {
+            EllipticCurve.Point point = blockBase[m - 1];
+            for( int i = 0; i < spacing; i++ )
+                point = point.twice( );
+            blockBase[m] = point;
+        }
+
+        // every entry is an entry with fewer teeth plus the block of its
+        // highest tooth
+        int size = 1 << teeth;
+        EllipticCurve.Point[] all = new EllipticCurve.Point[tables * size];
+
+        for( int j = 0; j < tables; j++ ) {
+            int offset = j * size;
+            all[offset] = curve.new Point( );
+            for( int i = 1; i < size; i++ ) {
+                int high = 31 - Integer.numberOfLeadingZeros( i );
+                EllipticCurve.Point point = blockBase[high * tables + j];
+                int rest = i ^ (1 << high);
+                all[offset + i] = ( rest == 0 ? point :
+                                    all[offset + rest].add( point ) );
+            }
+        }
+
+        curve.toAffine( all );
+
+        table = new EllipticCurve.Point[tables][size];
+        for( int j = 0; j < tables; j++ )
+            System.arraycopy( all, j * size, table[j], 0, size );
+
+        if( curve.getEngine( ) == EllipticCurve.COMPLETE ) {
+            projective = new EllipticCurve.ProjectivePoint[tables][size];
+            for( int j = 0; j < tables; j++ )
+                for( int i = 0; i < size; i++ )
+                    projective[j][i] = table[j][i].toProjective( );
+        }
+        else
+            projective = null;
+
+    }
+
+    /**
+     * Precompute the comb tables for a base point, choosing the number of
+     * teeth and tables which needs the fewest point operations per
+     * multiplication within a memory budget.
+     *
+     * @param   base the point to multiply.
+     * @param   budget memory for the precomputed points in KiB. Less than
+     *          needed for the smallest configuration still yields a single
+     *          table with one tooth.
+     * @return  the precomputed comb.
+     *
+     * @see     #estimateSize
+     */
+    public static FixedBaseComb forBudget( EllipticCurve.Point base,
+                                           int budget ) {
+
+        EllipticCurve curve = base.curve( );
+        int bits = curve.field.p.numBits( );
+        long bytes = (long)budget << 10;
+
+        int bestTeeth = 1, bestTables = 1;
+        double bestCost = Double.MAX_VALUE;
+
+        for( int w = 1; w <= MAX_TEETH; w++ )
+            for( int v = 1; v <= MAX_TABLES; v++ ) {
+
+                if( estimateSize( curve, w, v ) > bytes )
+                    continue;
+
+                // a mixed addition costs about as much as a doubling, the
+                // expected number of additions excludes empty columns
+                int d = ( bits + w * v - 1 ) / (w * v);
+                double cost = ( d - 1 ) +
+                        d * v * ( 1.0 - Math.pow( 2, -w ) );
+
+                if( cost < bestCost ) {
+                    bestCost = cost;
+                    bestTeeth = w;
+                    bestTables = v;
+                }
+            }
+
+        return new FixedBaseComb( base, bestTeeth, bestTables );
+
+    }
+
+    /**
+     * Estimates the memory needed by the precomputed points of a comb.
+     *
+     * @param   curve the curve of the base point.
+     * @param   teeth number of teeth.
+     * @param   tables number of tables.
+     * @return  the size in bytes.
+     */
+    public static long estimateSize( EllipticCurve curve, int teeth,
+                                     int tables ) {
+
+        return curve.estimatePointSize( ) * tables * ( (1L << teeth) - 1 );
+
+    }
+
+
+
+
+    /**
+     * Returns the number of teeth.
+     *
+     * @return  number of teeth w.
+     */
+    public int getTeeth( ) {
+
+        return teeth;
+
+    }
+
+    /**
+     * Returns the number of tables.
+     *
+     * @return  number of tables v.
+     */
+    public int getTables( ) {
+
+        return tables;
+
+    }
+
+    /**
+     * Multiply the base point by a scalar.
+     *
+     * @param   factor the <tt>FieldElement</tt> by which to multiply the
+     *          base point.
+     * @return  <code>factor * P</code>
+     */
+    public EllipticCurve.Point multiply( FiniteField.FieldElement factor ) {
+
+        byte[] k = factor.toByteArray( ByteOrder.LITTLE_ENDIAN );
+
+        if( projective != null )
+            return multiplyComplete( k );
+
+        EllipticCurve.Point result = curve.new Point( );
+
+        for( int c = spacing - 1; c >= 0; c-- ) {
+
+            result = result.twice( );
+
+            for( int j = 0; j < tables; j++ ) {
+                int index = index( k, j, c );
+                if( index != 0 )
+                    result = result.add( table[j][index] );
+            }
+        }
+
+        return result;
+
+    }
+
+    /**
+     * The loop of {@link #multiply} with complete formulas. The point at
+     * infinity is added for an empty column, so there is no branch on the
+     * factor.
+     *
+     * @param   k the factor in little endian order.
+     * @return  <code>k * P</code>
+     */
+    private EllipticCurve.Point multiplyComplete( byte[] k ) {
+
+        EllipticCurve.ProjectivePoint result = projective[0][0];
+
+        for( int c = spacing - 1; c >= 0; c-- ) {
+
+            result = result.twice( );
+
+            for( int j = 0; j < tables; j++ )
+                result = result.add( projective[j][index( k, j, c )] );
+        }
+
+        return result.toPoint( );
+
+    }
+
+    /**
+     * Returns the index into table j for column c, i.e. the bits
+     * <code>(l v + j) d + c</code> of the factor for all teeth l.
+     *
+     * @param   k the factor in little endian order.
+     * @param   j the table.
+     * @param   c the column.
+     */
+    private int index( byte[] k, int j, int c ) {
+
+        int index = 0;
+
+        for( int l = 0; l < teeth; l++ ) {
+            int n = (l * tables + j) * spacing + c;
+            int i = n >>> 3;
+            if( i < k.length )
+                index |= ( (k[i] >>> (n & 7)) & 1 ) << l;
+        }
+
+        return index;
+
+    }
+
+}
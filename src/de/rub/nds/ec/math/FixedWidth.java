@@ -0,0 +1,1516 @@
+/*
+ * FixedWidth.java
+ */
+
+
+
+
+package de.rub.nds.ec.math;
+
+
+
+
+/**
+ * This class provides arithmetic kernels for primes of a fixed number of
+ * words. The general code in {@link FiniteField.FieldElement} loops over
+ * arrays of variable length, which keeps the JIT compiler from unrolling
+ * the loops and from holding the words in registers. For the common field
+ * sizes of 128 to 256 bits, i.e. 4 to 8 words, the subclasses of this
+ * class spell out every word operation instead. They are chosen by {@link
+ * #forPrime} when a {@link FiniteField} is constructed, for all other
+ * sizes the general code remains in use.
+ * <p />
+ * All operands and results are exactly k words long, the least
+ * significant word first, and the results are written without stripping
+ * leading zeros. Instances are immutable and can be shared between
+ * threads.
+ * <p />
+ * {@link FiniteField.Workspace} keeps its elements at k words throughout.
+ * The immutable {@link FiniteField.FieldElement} still strips leading zeros
+ * off its magnitudes, since its comparisons and conversions rely on that.
+ * Its arithmetic pads shorter operands and reduces products in the
+ * scratch of a per-thread <tt>Workspace</tt>, so apart from the rare
+ * stripping it allocates only the result.
+ *
+ * @see FiniteField
+ */
+abstract class FixedWidth {
+
+    /**
+     * This bit mask is needed for the conversion of a signed integer
+     * to an unsigned long.
+     */
+    final static long INT2LONG = 0xFFFFFFFFL;
+
+    /**
+     * Number of words of the prime.
+     */
+    final int k;
+
+
+
+
+    /**
+     * Initialise the fields common to all kernels.
+     */
+    private FixedWidth( int[] p ) {
+
+        this.k = p.length;
+
+    }
+
+    /**
+     * Find the kernels for the given prime.
+     *
+     * @param   p magnitude of the prime without leading zero words.
+     * @return  the kernels for the length of <tt>p</tt> or <tt>null</tt>,
+     *          if the general code has to be used.
+     */
+    static FixedWidth forPrime( int[] p ) {
+
+        switch( p.length ) {
+            case 4:  return new Words4( p );
+            case 5:  return new Words5( p );
+            case 6:  return new Words6( p );
+            case 7:  return new Words7( p );
+            case 8:  return new Words8( p );
+            default: return null;
+        }
+
+    }
+
+
+
+
+    /**
+     * Multiply two values.
+     *
+     * @param   a first factor of k words.
+     * @param   b second factor of k words.
+     * @param   product array of at least 2k words receiving
+     *          <code>a * b</code> in its lower 2k words.
+     */
+    abstract void multiply( int[] a, int[] b, int[] product );
+
+    /**
+     * Square a value, every product of two different words is computed
+     * only once.
+     *
+     * @param   a the value of k words.
+     * @param   product array of at least 2k words receiving
+     *          <code>a^2</code> in its lower 2k words.
+     */
+    abstract void square( int[] a, int[] product );
+
+    /**
+     * Add two residues modulo p.
+     *
+     * @param   a first summand less than p.
+     * @param   b second summand less than p.
+     * @param   result array receiving <code>a + b mod p</code> in its lower
+     *          k words, it may be the same array as one of the summands.
+     */
+    abstract void add( int[] a, int[] b, int[] result );
+
+    /**
+     * Subtract two residues modulo p.
+     *
+     * @param   a minuend less than p.
+     * @param   b subtrahend less than p.
+     * @param   result array receiving <code>a - b mod p</code> in its lower
+     *          k words, it may be the same array as one of the operands.
+     */
+    abstract void subtract( int[] a, int[] b, int[] result );
+
+
+
+
+    /**
+     * Kernels for 4 words, i.e. fields of up to 128 bits.
+     */
+    private final static class Words4 extends FixedWidth {
+
+        /**
+         * The words of p as unsigned values.
+         */
+        private final long p0, p1, p2, p3;
+
+
+
+        /**
+         * Construct the kernels for a prime of 4 words.
+         */
+        private Words4( int[] p ) {
+
+            super( p );
+            p0 = p[0] & INT2LONG;
+            p1 = p[1] & INT2LONG;
+            p2 = p[2] & INT2LONG;
+            p3 = p[3] & INT2LONG;
+
+        }
+
+
+
+        void multiply( int[] a, int[] b, int[] product ) {
+
+            long a0 = a[0] & INT2LONG, a1 = a[1] & INT2LONG,
+                 a2 = a[2] & INT2LONG, a3 = a[3] & INT2LONG;
+            long b0 = b[0] & INT2LONG, b1 = b[1] & INT2LONG,
+                 b2 = b[2] & INT2LONG, b3 = b[3] & INT2LONG;
+            long c, r0, r1, r2, r3, r4, r5, r6, r7;
+
+            c = a0 * b0; r0 = c & INT2LONG; c >>>= 32;
+            c += a0 * b1; r1 = c & INT2LONG; c >>>= 32;
+            c += a0 * b2; r2 = c & INT2LONG; c >>>= 32;
+            c += a0 * b3; r3 = c & INT2LONG; c >>>= 32;
+            r4 = c;
+
+            c = a1 * b0 + r1; r1 = c & INT2LONG; c >>>= 32;
+            c += a1 * b1 + r2; r2 = c & INT2LONG; c >>>= 32;
+            c += a1 * b2 + r3; r3 = c & INT2LONG; c >>>= 32;
+            c += a1 * b3 + r4; r4 = c & INT2LONG; c >>>= 32;
+            r5 = c;
+
+            c = a2 * b0 + r2; r2 = c & INT2LONG; c >>>= 32;
+            c += a2 * b1 + r3; r3 = c & INT2LONG; c >>>= 32;
+            c += a2 * b2 + r4; r4 = c & INT2LONG; c >>>= 32;
+            c += a2 * b3 + r5; r5 = c & INT2LONG; c >>>= 32;
+            r6 = c;
+
+            c = a3 * b0 + r3; r3 = c & INT2LONG; c >>>= 32;
+            c += a3 * b1 + r4; r4 = c & INT2LONG; c >>>= 32;
+            c += a3 * b2 + r5; r5 = c & INT2LONG; c >>>= 32;
+            c += a3 * b3 + r6; r6 = c & INT2LONG; c >>>= 32;
+            r7 = c;
+
+            product[0] = (int)r0;
+            product[1] = (int)r1;
+            product[2] = (int)r2;
+            product[3] = (int)r3;
+            product[4] = (int)r4;
+            product[5] = (int)r5;
+            product[6] = (int)r6;
+            product[7] = (int)r7;
+
+        }
+
+        void square( int[] a, int[] product ) {
+
+            long a0 = a[0] & INT2LONG, a1 = a[1] & INT2LONG,
+                 a2 = a[2] & INT2LONG, a3 = a[3] & INT2LONG;
+            long c, s, r0, r1, r2, r3, r4, r5, r6, r7;
+
+            // products a_i a_j with i < j
+            c = a0 * a1; r1 = c & INT2LONG; c >>>= 32;
+            c += a0 * a2; r2 = c & INT2LONG; c >>>= 32;
+            c += a0 * a3; r3 = c & INT2LONG; c >>>= 32;
+            r4 = c;
+
+            c = a1 * a2 + r3; r3 = c & INT2LONG; c >>>= 32;
+            c += a1 * a3 + r4; r4 = c & INT2LONG; c >>>= 32;
+            r5 = c;
+
+            c = a2 * a3 + r5; r5 = c & INT2LONG; c >>>= 32;
+            r6 = c;
+
+            // double them and add the squares a_i^2
+            r7 = r6 >>> 31;
+            r6 = ((r6 << 1) | (r5 >>> 31)) & INT2LONG;
+            r5 = ((r5 << 1) | (r4 >>> 31)) & INT2LONG;
+            r4 = ((r4 << 1) | (r3 >>> 31)) & INT2LONG;
+            r3 = ((r3 << 1) | (r2 >>> 31)) & INT2LONG;
+            r2 = ((r2 << 1) | (r1 >>> 31)) & INT2LONG;
+            r1 = (r1 << 1) & INT2LONG;
+            s = a0 * a0;
+            r0 = s & INT2LONG;
+            c = r1 + (s >>> 32); r1 = c & INT2LONG; c >>>= 32;
+            s = a1 * a1;
+            c += r2 + (s & INT2LONG); r2 = c & INT2LONG; c >>>= 32;
+            c += r3 + (s >>> 32); r3 = c & INT2LONG; c >>>= 32;
+            s = a2 * a2;
+            c += r4 + (s & INT2LONG); r4 = c & INT2LONG; c >>>= 32;
+            c += r5 + (s >>> 32); r5 = c & INT2LONG; c >>>= 32;
+            s = a3 * a3;
+            c += r6 + (s & INT2LONG); r6 = c & INT2LONG; c >>>= 32;
+            r7 = (c + r7 + (s >>> 32)) & INT2LONG;
+
+            product[0] = (int)r0;
+            product[1] = (int)r1;
+            product[2] = (int)r2;
+            product[3] = (int)r3;
+            product[4] = (int)r4;
+            product[5] = (int)r5;
+            product[6] = (int)r6;
+            product[7] = (int)r7;
+
+        }
+
+        void add( int[] a, int[] b, int[] result ) {
+
+            long c = (a[0] & INT2LONG) + (b[0] & INT2LONG);
+            int s0 = (int)c;
+            c = (c >>> 32) + (a[1] & INT2LONG) + (b[1] & INT2LONG);
+            int s1 = (int)c;
+            c = (c >>> 32) + (a[2] & INT2LONG) + (b[2] & INT2LONG);
+            int s2 = (int)c;
+            c = (c >>> 32) + (a[3] & INT2LONG) + (b[3] & INT2LONG);
+            int s3 = (int)c;
+
+            // subtract p if there was a carry or the sum is not less than p
+            long d = (s0 & INT2LONG) - p0;
+            int t0 = (int)d;
+            d = (d >> 32) + (s1 & INT2LONG) - p1;
+            int t1 = (int)d;
+            d = (d >> 32) + (s2 & INT2LONG) - p2;
+            int t2 = (int)d;
+            d = (d >> 32) + (s3 & INT2LONG) - p3;
+            int t3 = (int)d;
+
+            if( (c >>> 32) != 0 || d >= 0 ) {
+                result[0] = t0;
+                result[1] = t1;
+                result[2] = t2;
+                result[3] = t3;
+            }
+            else {
+                result[0] = s0;
+                result[1] = s1;
+                result[2] = s2;
+                result[3] = s3;
+            }
+
+        }
+
+        void subtract( int[] a, int[] b, int[] result ) {
+
+            long d = (a[0] & INT2LONG) - (b[0] & INT2LONG);
+            int s0 = (int)d;
+            d = (d >> 32) + (a[1] & INT2LONG) - (b[1] & INT2LONG);
+            int s1 = (int)d;
+            d = (d >> 32) + (a[2] & INT2LONG) - (b[2] & INT2LONG);
+            int s2 = (int)d;
+            d = (d >> 32) + (a[3] & INT2LONG) - (b[3] & INT2LONG);
+            int s3 = (int)d;
+
+            // add p if there was a borrow
+            if( d < 0 ) {
+                long c = (s0 & INT2LONG) + p0;
+                s0 = (int)c;
+                c = (c >>> 32) + (s1 & INT2LONG) + p1;
+                s1 = (int)c;
+                c = (c >>> 32) + (s2 & INT2LONG) + p2;
+                s2 = (int)c;
+                c = (c >>> 32) + (s3 & INT2LONG) + p3;
+                s3 = (int)c;
+            }
+
+            result[0] = s0;
+            result[1] = s1;
+            result[2] = s2;
+            result[3] = s3;
+
+        }
+
+    }
+
+
+
+
+    /**
+     * Kernels for 5 words, i.e. fields of up to 160 bits.
+     */
+    private final static class Words5 extends FixedWidth {
+
+        /**
+         * The words of p as unsigned values.
+         */
+        private final long p0, p1, p2, p3, p4;
+
+
+
+        /**
+         * Construct the kernels for a prime of 5 words.
+         */
+        private Words5( int[] p ) {
+
+            super( p );
+            p0 = p[0] & INT2LONG;
+            p1 = p[1] & INT2LONG;
+            p2 = p[2] & INT2LONG;
+            p3 = p[3] & INT2LONG;
+            p4 = p[4] & INT2LONG;
+
+        }
+
+
+
+        void multiply( int[] a, int[] b, int[] product ) {
+
+            long a0 = a[0] & INT2LONG, a1 = a[1] & INT2LONG,
+                 a2 = a[2] & INT2LONG, a3 = a[3] & INT2LONG,
+                 a4 = a[4] & INT2LONG;
+            long b0 = b[0] & INT2LONG, b1 = b[1] & INT2LONG,
+                 b2 = b[2] & INT2LONG, b3 = b[3] & INT2LONG,
+                 b4 = b[4] & INT2LONG;
+            long c, r0, r1, r2, r3, r4, r5, r6, r7, r8, r9;
+
+            c = a0 * b0; r0 = c & INT2LONG; c >>>= 32;
+            c += a0 * b1; r1 = c & INT2LONG; c >>>= 32;
+            c += a0 * b2; r2 = c & INT2LONG; c >>>= 32;
+            c += a0 * b3; r3 = c & INT2LONG; c >>>= 32;
+            c += a0 * b4; r4 = c & INT2LONG; c >>>= 32;
+            r5 = c;
+
+            c = a1 * b0 + r1; r1 = c & INT2LONG; c >>>= 32;
+            c += a1 * b1 + r2; r2 = c & INT2LONG; c >>>= 32;
+            c += a1 * b2 + r3; r3 = c & INT2LONG; c >>>= 32;
+            c += a1 * b3 + r4; r4 = c & INT2LONG; c >>>= 32;
+            c += a1 * b4 + r5; r5 = c & INT2LONG; c >>>= 32;
+            r6 = c;
+
+            c = a2 * b0 + r2; r2 = c & INT2LONG; c >>>= 32;
+            c += a2 * b1 + r3; r3 = c & INT2LONG; c >>>= 32;
+            c += a2 * b2 + r4; r4 = c & INT2LONG; c >>>= 32;
+            c += a2 * b3 + r5; r5 = c & INT2LONG; c >>>= 32;
+            c += a2 * b4 + r6; r6 = c & INT2LONG; c >>>= 32;
+            r7 = c;
+
+            c = a3 * b0 + r3; r3 = c & INT2LONG; c >>>= 32;
+            c += a3 * b1 + r4; r4 = c & INT2LONG; c >>>= 32;
+            c += a3 * b2 + r5; r5 = c & INT2LONG; c >>>= 32;
+            c += a3 * b3 + r6; r6 = c & INT2LONG; c >>>= 32;
+            c += a3 * b4 + r7; r7 = c & INT2LONG; c >>>= 32;
+            r8 = c;
+
+            c = a4 * b0 + r4; r4 = c & INT2LONG; c >>>= 32;
+            c += a4 * b1 + r5; r5 = c & INT2LONG; c >>>= 32;
+            c += a4 * b2 + r6; r6 = c & INT2LONG; c >>>= 32;
+            c += a4 * b3 + r7; r7 = c & INT2LONG; c >>>= 32;
+            c += a4 * b4 + r8; r8 = c & INT2LONG; c >>>= 32;
+            r9 = c;
+
+            product[0] = (int)r0;
+            product[1] = (int)r1;
+            product[2] = (int)r2;
+            product[3] = (int)r3;
+            product[4] = (int)r4;
+            product[5] = (int)r5;
+            product[6] = (int)r6;
+            product[7] = (int)r7;
+            product[8] = (int)r8;
+            product[9] = (int)r9;
+
+        }
+
+        void square( int[] a, int[] product ) {
+
+            long a0 = a[0] & INT2LONG, a1 = a[1] & INT2LONG,
+                 a2 = a[2] & INT2LONG, a3 = a[3] & INT2LONG,
+                 a4 = a[4] & INT2LONG;
+            long c, s, r0, r1, r2, r3, r4, r5, r6, r7, r8, r9;
+
+            // products a_i a_j with i < j
+            c = a0 * a1; r1 = c & INT2LONG; c >>>= 32;
+            c += a0 * a2; r2 = c & INT2LONG; c >>>= 32;
+            c += a0 * a3; r3 = c & INT2LONG; c >>>= 32;
+            c += a0 * a4; r4 = c & INT2LONG; c >>>= 32;
+            r5 = c;
+
+            c = a1 * a2 + r3; r3 = c & INT2LONG; c >>>= 32;
+            c += a1 * a3 + r4; r4 = c & INT2LONG; c >>>= 32;
+            c += a1 * a4 + r5; r5 = c & INT2LONG; c >>>= 32;
+            r6 = c;
+
+            c = a2 * a3 + r5; r5 = c & INT2LONG; c >>>= 32;
+            c += a2 * a4 + r6; r6 = c & INT2LONG; c >>>= 32;
+            r7 = c;
+
+            c = a3 * a4 + r7; r7 = c & INT2LONG; c >>>= 32;
+            r8 = c;
+
+            // double them and add the squares a_i^2
+            r9 = r8 >>> 31;
+            r8 = ((r8 << 1) | (r7 >>> 31)) & INT2LONG;
+            r7 = ((r7 << 1) | (r6 >>> 31)) & INT2LONG;
+            r6 = ((r6 << 1) | (r5 >>> 31)) & INT2LONG;
+            r5 = ((r5 << 1) | (r4 >>> 31)) & INT2LONG;
+            r4 = ((r4 << 1) | (r3 >>> 31)) & INT2LONG;
+            r3 = ((r3 << 1) | (r2 >>> 31)) & INT2LONG;
+            r2 = ((r2 << 1) | (r1 >>> 31)) & INT2LONG;
+            r1 = (r1 << 1) & INT2LONG;
+            s = a0 * a0;
+            r0 = s & INT2LONG;
+            c = r1 + (s >>> 32); r1 = c & INT2LONG; c >>>= 32;
+            s = a1 * a1;
+            c += r2 + (s & INT2LONG); r2 = c & INT2LONG; c >>>= 32;
+            c += r3 + (s >>> 32); r3 = c & INT2LONG; c >>>= 32;
+            s = a2 * a2;
+            c += r4 + (s & INT2LONG); r4 = c & INT2LONG; c >>>= 32;
+            c += r5 + (s >>> 32); r5 = c & INT2LONG; c >>>= 32;
+            s = a3 * a3;
+            c += r6 + (s & INT2LONG); r6 = c & INT2LONG; c >>>= 32;
+            c += r7 + (s >>> 32); r7 = c & INT2LONG; c >>>= 32;
+            s = a4 * a4;
+            c += r8 + (s & INT2LONG); r8 = c & INT2LONG; c >>>= 32;
+            r9 = (c + r9 + (s >>> 32)) & INT2LONG;
+
+            product[0] = (int)r0;
+            product[1] = (int)r1;
+            product[2] = (int)r2;
+            product[3] = (int)r3;
+            product[4] = (int)r4;
+            product[5] = (int)r5;
+            product[6] = (int)r6;
+            product[7] = (int)r7;
+            product[8] = (int)r8;
+            product[9] = (int)r9;
+
+        }
+
+        void add( int[] a, int[] b, int[] result ) {
+
+            long c = (a[0] & INT2LONG) + (b[0] & INT2LONG);
+            int s0 = (int)c;
+            c = (c >>> 32) + (a[1] & INT2LONG) + (b[1] & INT2LONG);
+            int s1 = (int)c;
+            c = (c >>> 32) + (a[2] & INT2LONG) + (b[2] & INT2LONG);
+            int s2 = (int)c;
+            c = (c >>> 32) + (a[3] & INT2LONG) + (b[3] & INT2LONG);
+            int s3 = (int)c;
+            c = (c >>> 32) + (a[4] & INT2LONG) + (b[4] & INT2LONG);
+            int s4 = (int)c;
+
+            // subtract p if there was a carry or the sum is not less than p
+            long d = (s0 & INT2LONG) - p0;
+            int t0 = (int)d;
+            d = (d >> 32) + (s1 & INT2LONG) - p1;
+            int t1 = (int)d;
+            d = (d >> 32) + (s2 & INT2LONG) - p2;
+            int t2 = (int)d;
+            d = (d >> 32) + (s3 & INT2LONG) - p3;
+            int t3 = (int)d;
+            d = (d >> 32) + (s4 & INT2LONG) - p4;
+            int t4 = (int)d;
+
+            if( (c >>> 32) != 0 || d >= 0 ) {
+                result[0] = t0;
+                result[1] = t1;
+                result[2] = t2;
+                result[3] = t3;
+                result[4] = t4;
+            }
+            else {
+                result[0] = s0;
+                result[1] = s1;
+                result[2] = s2;
+                result[3] = s3;
+                result[4] = s4;
+            }
+
+        }
+
+        void subtract( int[] a, int[] b, int[] result ) {
+
+            long d = (a[0] & INT2LONG) - (b[0] & INT2LONG);
+            int s0 = (int)d;
+            d = (d >> 32) + (a[1] & INT2LONG) - (b[1] & INT2LONG);
+            int s1 = (int)d;
+            d = (d >> 32) + (a[2] & INT2LONG) - (b[2] & INT2LONG);
+            int s2 = (int)d;
+            d = (d >> 32) + (a[3] & INT2LONG) - (b[3] & INT2LONG);
+            int s3 = (int)d;
+            d = (d >> 32) + (a[4] & INT2LONG) - (b[4] & INT2LONG);
+            int s4 = (int)d;
+
+            // add p if there was a borrow
+            if( d < 0 ) {
+                long c = (s0 & INT2LONG) + p0;
+                s0 = (int)c;
+                c = (c >>> 32) + (s1 & INT2LONG) + p1;
+                s1 = (int)c;
+                c = (c >>> 32) + (s2 & INT2LONG) + p2;
+                s2 = (int)c;
+                c = (c >>> 32) + (s3 & INT2LONG) + p3;
+                s3 = (int)c;
+                c = (c >>> 32) + (s4 & INT2LONG) + p4;
+                s4 = (int)c;
+            }
+
+            result[0] = s0;
+            result[1] = s1;
+            result[2] = s2;
+            result[3] = s3;
+            result[4] = s4;
+
+        }
+
+    }
+
+
+
+
+    /**
+     * Kernels for 6 words, i.e. fields of up to 192 bits.
+     */
+    private final static class Words6 extends FixedWidth {
+
+        /**
+         * The words of p as unsigned values.
+         */
+        private final long p0, p1, p2, p3, p4, p5;
+
+
+
+        /**
+         * Construct the kernels for a prime of 6 words.
+         */
+        private Words6( int[] p ) {
+
+            super( p );
+            p0 = p[0] & INT2LONG;
+            p1 = p[1] & INT2LONG;
+            p2 = p[2] & INT2LONG;
+            p3 = p[3] & INT2LONG;
+            p4 = p[4] & INT2LONG;
+            p5 = p[5] & INT2LONG;
+
+        }
+
+
+
+        void multiply( int[] a, int[] b, int[] product ) {
+
+            long a0 = a[0] & INT2LONG, a1 = a[1] & INT2LONG,
+                 a2 = a[2] & INT2LONG, a3 = a[3] & INT2LONG,
+                 a4 = a[4] & INT2LONG, a5 = a[5] & INT2LONG;
+            long b0 = b[0] & INT2LONG, b1 = b[1] & INT2LONG,
+                 b2 = b[2] & INT2LONG, b3 = b[3] & INT2LONG,
+                 b4 = b[4] & INT2LONG, b5 = b[5] & INT2LONG;
+            long c, r0, r1, r2, r3, r4, r5, r6, r7, r8, r9, r10, r11;
+
+            c = a0 * b0; r0 = c & INT2LONG; c >>>= 32;
+            c += a0 * b1; r1 = c & INT2LONG; c >>>= 32;
+            c += a0 * b2; r2 = c & INT2LONG; c >>>= 32;
+            c += a0 * b3; r3 = c & INT2LONG; c >>>= 32;
+            c += a0 * b4; r4 = c & INT2LONG; c >>>= 32;
+            c += a0 * b5; r5 = c & INT2LONG; c >>>= 32;
+            r6 = c;
+
+            c = a1 * b0 + r1; r1 = c & INT2LONG; c >>>= 32;
+            c += a1 * b1 + r2; r2 = c & INT2LONG; c >>>= 32;
+            c += a1 * b2 + r3; r3 = c & INT2LONG; c >>>= 32;
+            c += a1 * b3 + r4; r4 = c & INT2LONG; c >>>= 32;
+            c += a1 * b4 + r5; r5 = c & INT2LONG; c >>>= 32;
+            c += a1 * b5 + r6; r6 = c & INT2LONG; c >>>= 32;
+            r7 = c;
+
+            c = a2 * b0 + r2; r2 = c & INT2LONG; c >>>= 32;
+            c += a2 * b1 + r3; r3 = c & INT2LONG; c >>>= 32;
+            c += a2 * b2 + r4; r4 = c & INT2LONG; c >>>= 32;
+            c += a2 * b3 + r5; r5 = c & INT2LONG; c >>>= 32;
+            c += a2 * b4 + r6; r6 = c & INT2LONG; c >>>= 32;
+            c += a2 * b5 + r7; r7 = c & INT2LONG; c >>>= 32;
+            r8 = c;
+
+            c = a3 * b0 + r3; r3 = c & INT2LONG; c >>>= 32;
+            c += a3 * b1 + r4; r4 = c & INT2LONG; c >>>= 32;
+            c += a3 * b2 + r5; r5 = c & INT2LONG; c >>>= 32;
+            c += a3 * b3 + r6; r6 = c & INT2LONG; c >>>= 32;
+            c += a3 * b4 + r7; r7 = c & INT2LONG; c >>>= 32;
+            c += a3 * b5 + r8; r8 = c & INT2LONG; c >>>= 32;
+            r9 = c;
+
+            c = a4 * b0 + r4; r4 = c & INT2LONG; c >>>= 32;
+            c += a4 * b1 + r5; r5 = c & INT2LONG; c >>>= 32;
+            c += a4 * b2 + r6; r6 = c & INT2LONG; c >>>= 32;
+            c += a4 * b3 + r7; r7 = c & INT2LONG; c >>>= 32;
+            c += a4 * b4 + r8; r8 = c & INT2LONG; c >>>= 32;
+            c += a4 * b5 + r9; r9 = c & INT2LONG; c >>>= 32;
+            r10 = c;
+
+            c = a5 * b0 + r5; r5 = c & INT2LONG; c >>>= 32;
+            c += a5 * b1 + r6; r6 = c & INT2LONG; c >>>= 32;
+            c += a5 * b2 + r7; r7 = c & INT2LONG; c >>>= 32;
+            c += a5 * b3 + r8; r8 = c & INT2LONG; c >>>= 32;
+            c += a5 * b4 + r9; r9 = c & INT2LONG; c >>>= 32;
+            c += a5 * b5 + r10; r10 = c & INT2LONG; c >>>= 32;
+            r11 = c;
+
+            product[0] = (int)r0;
+            product[1] = (int)r1;
+            product[2] = (int)r2;
+            product[3] = (int)r3;
+            product[4] = (int)r4;
+            product[5] = (int)r5;
+            product[6] = (int)r6;
+            product[7] = (int)r7;
+            product[8] = (int)r8;
+            product[9] = (int)r9;
+            product[10] = (int)r10;
+            product[11] = (int)r11;
+
+        }
+
+        void square( int[] a, int[] product ) {
+
+            long a0 = a[0] & INT2LONG, a1 = a[1] & INT2LONG,
+                 a2 = a[2] & INT2LONG, a3 = a[3] & INT2LONG,
+                 a4 = a[4] & INT2LONG, a5 = a[5] & INT2LONG;
+            long c, s, r0, r1, r2, r3, r4, r5, r6, r7, r8, r9, r10, r11;
+
+            // products a_i a_j with i < j
+            c = a0 * a1; r1 = c & INT2LONG; c >>>= 32;
+            c += a0 * a2; r2 = c & INT2LONG; c >>>= 32;
+            c += a0 * a3; r3 = c & INT2LONG; c >>>= 32;
+            c += a0 * a4; r4 = c & INT2LONG; c >>>= 32;
+            c += a0 * a5; r5 = c & INT2LONG; c >>>= 32;
+            r6 = c;
+
+            c = a1 * a2 + r3; r3 = c & INT2LONG; c >>>= 32;
+            c += a1 * a3 + r4; r4 = c & INT2LONG; c >>>= 32;
+            c += a1 * a4 + r5; r5 = c & INT2LONG; c >>>= 32;
+            c += a1 * a5 + r6; r6 = c & INT2LONG; c >>>= 32;
+            r7 = c;
+
+            c = a2 * a3 + r5; r5 = c & INT2LONG; c >>>= 32;
+            c += a2 * a4 + r6; r6 = c & INT2LONG; c >>>= 32;
+            c += a2 * a5 + r7; r7 = c & INT2LONG; c >>>= 32;
+            r8 = c;
+
+            c = a3 * a4 + r7; r7 = c & INT2LONG; c >>>= 32;
+            c += a3 * a5 + r8; r8 = c & INT2LONG; c >>>= 32;
+            r9 = c;
+
+            c = a4 * a5 + r9; r9 = c & INT2LONG; c >>>= 32;
+            r10 = c;
+
+            // double them and add the squares a_i^2
+            r11 = r10 >>> 31;
+            r10 = ((r10 << 1) | (r9 >>> 31)) & INT2LONG;
+            r9 = ((r9 << 1) | (r8 >>> 31)) & INT2LONG;
+            r8 = ((r8 << 1) | (r7 >>> 31)) & INT2LONG;
+            r7 = ((r7 << 1) | (r6 >>> 31)) & INT2LONG;
+            r6 = ((r6 << 1) | (r5 >>> 31)) & INT2LONG;
+            r5 = ((r5 << 1) | (r4 >>> 31)) & INT2LONG;
+            r4 = ((r4 << 1) | (r3 >>> 31)) & INT2LONG;
+            r3 = ((r3 << 1) | (r2 >>> 31)) & INT2LONG;
+            r2 = ((r2 << 1) | (r1 >>> 31)) & INT2LONG;
+            r1 = (r1 << 1) & INT2LONG;
+            s = a0 * a0;
+            r0 = s & INT2LONG;
+            c = r1 + (s >>> 32); r1 = c & INT2LONG; c >>>= 32;
+            s = a1 * a1;
+            c += r2 + (s & INT2LONG); r2 = c & INT2LONG; c >>>= 32;
+            c += r3 + (s >>> 32); r3 = c & INT2LONG; c >>>= 32;
+            s = a2 * a2;
+            c += r4 + (s & INT2LONG); r4 = c & INT2LONG; c >>>= 32;
+            c += r5 + (s >>> 32); r5 = c & INT2LONG; c >>>= 32;
+            s = a3 * a3;
+            c += r6 + (s & INT2LONG); r6 = c & INT2LONG; c >>>= 32;
+            c += r7 + (s >>> 32); r7 = c & INT2LONG; c >>>= 32;
+            s = a4 * a4;
+            c += r8 + (s & INT2LONG); r8 = c & INT2LONG; c >>>= 32;
+            c += r9 + (s >>> 32); r9 = c & INT2LONG; c >>>= 32;
+            s = a5 * a5;
+            c += r10 + (s & INT2LONG); r10 = c & INT2LONG; c >>>= 32;
+            r11 = (c + r11 + (s >>> 32)) & INT2LONG;
+
+            product[0] = (int)r0;
+            product[1] = (int)r1;
+            product[2] = (int)r2;
+            product[3] = (int)r3;
+            product[4] = (int)r4;
+            product[5] = (int)r5;
+            product[6] = (int)r6;
+            product[7] = (int)r7;
+            product[8] = (int)r8;
+            product[9] = (int)r9;
+            product[10] = (int)r10;
+            product[11] = (int)r11;
+
+        }
+
+        void add( int[] a, int[] b, int[] result ) {
+
+            long c = (a[0] & INT2LONG) + (b[0] & INT2LONG);
+            int s0 = (int)c;
+            c = (c >>> 32) + (a[1] & INT2LONG) + (b[1] & INT2LONG);
+            int s1 = (int)c;
+            c = (c >>> 32) + (a[2] & INT2LONG) + (b[2] & INT2LONG);
+            int s2 = (int)c;
+            c = (c >>> 32) + (a[3] & INT2LONG) + (b[3] & INT2LONG);
+            int s3 = (int)c;
+            c = (c >>> 32) + (a[4] & INT2LONG) + (b[4] & INT2LONG);
+            int s4 = (int)c;
+            c = (c >>> 32) + (a[5] & INT2LONG) + (b[5] & INT2LONG);
+            int s5 = (int)c;
+
+            // subtract p if there was a carry or the sum is not less than p
+            long d = (s0 & INT2LONG) - p0;
+            int t0 = (int)d;
+            d = (d >> 32) + (s1 & INT2LONG) - p1;
+            int t1 = (int)d;
+            d = (d >> 32) + (s2 & INT2LONG) - p2;
+            int t2 = (int)d;
+            d = (d >> 32) + (s3 & INT2LONG) - p3;
+            int t3 = (int)d;
+            d = (d >> 32) + (s4 & INT2LONG) - p4;
+            int t4 = (int)d;
+            d = (d >> 32) + (s5 & INT2LONG) - p5;
+            int t5 = (int)d;
+
+            if( (c >>> 32) != 0 || d >= 0 ) {
+                result[0] = t0;
+                result[1] = t1;
+                result[2] = t2;
+                result[3] = t3;
+                result[4] = t4;
+                result[5] = t5;
+            }
+            else {
+                result[0] = s0;
+                result[1] = s1;
+                result[2] = s2;
+                result[3] = s3;
+                result[4] = s4;
+                result[5] = s5;
+            }
+
+        }
+
+        void subtract( int[] a, int[] b, int[] result ) {
+
+            long d = (a[0] & INT2LONG) - (b[0] & INT2LONG);
+            int s0 = (int)d;
+            d = (d >> 32) + (a[1] & INT2LONG) - (b[1] & INT2LONG);
+            int s1 = (int)d;
+            d = (d >> 32) + (a[2] & INT2LONG) - (b[2] & INT2LONG);
+            int s2 = (int)d;
+            d = (d >> 32) + (a[3] & INT2LONG) - (b[3] & INT2LONG);
+            int s3 = (int)d;
+            d = (d >> 32) + (a[4] & INT2LONG) - (b[4] & INT2LONG);
+            int s4 = (int)d;
+            d = (d >> 32) + (a[5] & INT2LONG) - (b[5] & INT2LONG);
+            int s5 = (int)d;
+
+            // add p if there was a borrow
+            if( d < 0 ) {
+                long c = (s0 & INT2LONG) + p0;
+                s0 = (int)c;
+                c = (c >>> 32) + (s1 & INT2LONG) + p1;
+                s1 = (int)c;
+                c = (c >>> 32) + (s2 & INT2LONG) + p2;
+                s2 = (int)c;
+                c = (c >>> 32) + (s3 & INT2LONG) + p3;
+                s3 = (int)c;
+                c = (c >>> 32) + (s4 & INT2LONG) + p4;
+                s4 = (int)c;
+                c = (c >>> 32) + (s5 & INT2LONG) + p5;
+                s5 = (int)c;
+            }
+
+            result[0] = s0;
+            result[1] = s1;
+            result[2] = s2;
+            result[3] = s3;
+            result[4] = s4;
+            result[5] = s5;
+
+        }
+
+    }
+
+
+
+
+    /**
+     * Kernels for 7 words, i.e. fields of up to 224 bits.
+     */
+    private final static class Words7 extends FixedWidth {
+
+        /**
+         * The words of p as unsigned values.
+         */
+        private final long p0, p1, p2, p3, p4, p5, p6;
+
+
+
+        /**
+         * Construct the kernels for a prime of 7 words.
+         */
+        private Words7( int[] p ) {
+
+            super( p );
+            p0 = p[0] & INT2LONG;
+            p1 = p[1] & INT2LONG;
+            p2 = p[2] & INT2LONG;
+            p3 = p[3] & INT2LONG;
+            p4 = p[4] & INT2LONG;
+            p5 = p[5] & INT2LONG;
+            p6 = p[6] & INT2LONG;
+
+        }
+
+
+
+        void multiply( int[] a, int[] b, int[] product ) {
+
+            long a0 = a[0] & INT2LONG, a1 = a[1] & INT2LONG,
+                 a2 = a[2] & INT2LONG, a3 = a[3] & INT2LONG,
+                 a4 = a[4] & INT2LONG, a5 = a[5] & INT2LONG,
+                 a6 = a[6] & INT2LONG;
+            long b0 = b[0] & INT2LONG, b1 = b[1] & INT2LONG,
+                 b2 = b[2] & INT2LONG, b3 = b[3] & INT2LONG,
+                 b4 = b[4] & INT2LONG, b5 = b[5] & INT2LONG,
+                 b6 = b[6] & INT2LONG;
+            long c, r0, r1, r2, r3, r4, r5, r6, r7, r8, r9, r10, r11, r12, r13;
+
+            c = a0 * b0; r0 = c & INT2LONG; c >>>= 32;
+            c += a0 * b1; r1 = c & INT2LONG; c >>>= 32;
+            c += a0 * b2; r2 = c & INT2LONG; c >>>= 32;
+            c += a0 * b3; r3 = c & INT2LONG; c >>>= 32;
+            c += a0 * b4; r4 = c & INT2LONG; c >>>= 32;
+            c += a0 * b5; r5 = c & INT2LONG; c >>>= 32;
+            c += a0 * b6; r6 = c & INT2LONG; c >>>= 32;
+            r7 = c;
+
+            c = a1 * b0 + r1; r1 = c & INT2LONG; c >>>= 32;
+            c += a1 * b1 + r2; r2 = c & INT2LONG; c >>>= 32;
+            c += a1 * b2 + r3; r3 = c & INT2LONG; c >>>= 32;
+            c += a1 * b3 + r4; r4 = c & INT2LONG; c >>>= 32;
+            c += a1 * b4 + r5; r5 = c & INT2LONG; c >>>= 32;
+            c += a1 * b5 + r6; r6 = c & INT2LONG; c >>>= 32;
+            c += a1 * b6 + r7; r7 = c & INT2LONG; c >>>= 32;
+            r8 = c;
+
+            c = a2 * b0 + r2; r2 = c & INT2LONG; c >>>= 32;
+            c += a2 * b1 + r3; r3 = c & INT2LONG; c >>>= 32;
+            c += a2 * b2 + r4; r4 = c & INT2LONG; c >>>= 32;
+            c += a2 * b3 + r5; r5 = c & INT2LONG; c >>>= 32;
+            c += a2 * b4 + r6; r6 = c & INT2LONG; c >>>= 32;
+            c += a2 * b5 + r7; r7 = c & INT2LONG; c >>>= 32;
+            c += a2 * b6 + r8; r8 = c & INT2LONG; c >>>= 32;
+            r9 = c;
+
+            c = a3 * b0 + r3; r3 = c & INT2LONG; c >>>= 32;
+            c += a3 * b1 + r4; r4 = c & INT2LONG; c >>>= 32;
+            c += a3 * b2 + r5; r5 = c & INT2LONG; c >>>= 32;
+            c += a3 * b3 + r6; r6 = c & INT2LONG; c >>>= 32;
+            c += a3 * b4 + r7; r7 = c & INT2LONG; c >>>= 32;
+            c += a3 * b5 + r8; r8 = c & INT2LONG; c >>>= 32;
+            c += a3 * b6 + r9; r9 = c & INT2LONG; c >>>= 32;
+            r10 = c;
+
+            c = a4 * b0 + r4; r4 = c & INT2LONG; c >>>= 32;
+            c += a4 * b1 + r5; r5 = c & INT2LONG; c >>>= 32;
+            c += a4 * b2 + r6; r6 = c & INT2LONG; c >>>= 32;
+            c += a4 * b3 + r7; r7 = c & INT2LONG; c >>>= 32;
+            c += a4 * b4 + r8; r8 = c & INT2LONG; c >>>= 32;
+            c += a4 * b5 + r9; r9 = c & INT2LONG; c >>>= 32;
+            c += a4 * b6 + r10; r10 = c & INT2LONG; c >>>= 32;
+            r11 = c;
+
+            c = a5 * b0 + r5; r5 = c & INT2LONG; c >>>= 32;
+            c += a5 * b1 + r6; r6 = c & INT2LONG; c >>>= 32;
+            c += a5 * b2 + r7; r7 = c & INT2LONG; c >>>= 32;
+            c += a5 * b3 + r8; r8 = c & INT2LONG; c >>>= 32;
+            c += a5 * b4 + r9; r9 = c & INT2LONG; c >>>= 32;
+            c += a5 * b5 + r10; r10 = c & INT2LONG; c >>>= 32;
+            c += a5 * b6 + r11; r11 = c & INT2LONG; c >>>= 32;
+            r12 = c;
+
+            c = a6 * b0 + r6; r6 = c & INT2LONG; c >>>= 32;
+            c += a6 * b1 + r7; r7 = c & INT2LONG; c >>>= 32;
+            c += a6 * b2 + r8; r8 = c & INT2LONG; c >>>= 32;
+            c += a6 * b3 + r9; r9 = c & INT2LONG; c >>>= 32;
+            c += a6 * b4 + r10; r10 = c & INT2LONG; c >>>= 32;
+            c += a6 * b5 + r11; r11 = c & INT2LONG; c >>>= 32;
+            c += a6 * b6 + r12; r12 = c & INT2LONG; c >>>= 32;
+            r13 = c;
+
+            product[0] = (int)r0;
+            product[1] = (int)r1;
+            product[2] = (int)r2;
+            product[3] = (int)r3;
+            product[4] = (int)r4;
+            product[5] = (int)r5;
+            product[6] = (int)r6;
+            product[7] = (int)r7;
+            product[8] = (int)r8;
+            product[9] = (int)r9;
+            product[10] = (int)r10;
+            product[11] = (int)r11;
+            product[12] = (int)r12;
+            product[13] = (int)r13;
+
+        }
+
+        void square( int[] a, int[] product ) {
+
+            long a0 = a[0] & INT2LONG, a1 = a[1] & INT2LONG,
+                 a2 = a[2] & INT2LONG, a3 = a[3] & INT2LONG,
+                 a4 = a[4] & INT2LONG, a5 = a[5] & INT2LONG,
+                 a6 = a[6] & INT2LONG;
+            long c, s, r0, r1, r2, r3, r4, r5, r6, r7, r8, r9, r10, r11, r12,
+                 r13;
+
+            // products a_i a_j with i < j
+            c = a0 * a1; r1 = c & INT2LONG; c >>>= 32;
+            c += a0 * a2; r2 = c & INT2LONG; c >>>= 32;
+            c += a0 * a3; r3 = c & INT2LONG; c >>>= 32;
+            c += a0 * a4; r4 = c & INT2LONG; c >>>= 32;
+            c += a0 * a5; r5 = c & INT2LONG; c >>>= 32;
+            c += a0 * a6; r6 = c & INT2LONG; c >>>= 32;
+            r7 = c;
+
+            c = a1 * a2 + r3; r3 = c & INT2LONG; c >>>= 32;
+            c += a1 * a3 + r4; r4 = c & INT2LONG; c >>>= 32;
+            c += a1 * a4 + r5; r5 = c & INT2LONG; c >>>= 32;
+            c += a1 * a5 + r6; r6 = c & INT2LONG; c >>>= 32;
+            c += a1 * a6 + r7; r7 = c & INT2LONG; c >>>= 32;
+            r8 = c;
+
+            c = a2 * a3 + r5; r5 = c & INT2LONG; c >>>= 32;
+            c += a2 * a4 + r6; r6 = c & INT2LONG; c >>>= 32;
+            c += a2 * a5 + r7; r7 = c & INT2LONG; c >>>= 32;
+            c += a2 * a6 + r8; r8 = c & INT2LONG; c >>>= 32;
+            r9 = c;
+
+            c = a3 * a4 + r7; r7 = c & INT2LONG; c >>>= 32;
+            c += a3 * a5 + r8; r8 = c & INT2LONG; c >>>= 32;
+            c += a3 * a6 + r9; r9 = c & INT2LONG; c >>>= 32;
+            r10 = c;
+
+            c = a4 * a5 + r9; r9 = c & INT2LONG; c >>>= 32;
+            c += a4 * a6 + r10; r10 = c & INT2LONG; c >>>= 32;
+            r11 = c;
+
+            c = a5 * a6 + r11; r11 = c & INT2LONG; c >>>= 32;
+            r12 = c;
+
+            // double them and add the squares a_i^2
+            r13 = r12 >>> 31;
+            r12 = ((r12 << 1) | (r11 >>> 31)) & INT2LONG;
+            r11 = ((r11 << 1) | (r10 >>> 31)) & INT2LONG;
+            r10 = ((r10 << 1) | (r9 >>> 31)) & INT2LONG;
+            r9 = ((r9 << 1) | (r8 >>> 31)) & INT2LONG;
+            r8 = ((r8 << 1) | (r7 >>> 31)) & INT2LONG;
+            r7 = ((r7 << 1) | (r6 >>> 31)) & INT2LONG;
+            r6 = ((r6 << 1) | (r5 >>> 31)) & INT2LONG;
+            r5 = ((r5 << 1) | (r4 >>> 31)) & INT2LONG;
+            r4 = ((r4 << 1) | (r3 >>> 31)) & INT2LONG;
+            r3 = ((r3 << 1) | (r2 >>> 31)) & INT2LONG;
+            r2 = ((r2 << 1) | (r1 >>> 31)) & INT2LONG;
+            r1 = (r1 << 1) & INT2LONG;
+            s = a0 * a0;
+            r0 = s & INT2LONG;
+            c = r1 + (s >>> 32); r1 = c & INT2LONG; c >>>= 32;
+            s = a1 * a1;
+            c += r2 + (s & INT2LONG); r2 = c & INT2LONG; c >>>= 32;
+            c += r3 + (s >>> 32); r3 = c & INT2LONG; c >>>= 32;
+            s = a2 * a2;
+            c += r4 + (s & INT2LONG); r4 = c & INT2LONG; c >>>= 32;
+            c += r5 + (s >>> 32); r5 = c & INT2LONG; c >>>= 32;
+            s = a3 * a3;
+            c += r6 + (s & INT2LONG); r6 = c & INT2LONG; c >>>= 32;
+            c += r7 + (s >>> 32); r7 = c & INT2LONG; c >>>= 32;
+            s = a4 * a4;
+            c += r8 + (s & INT2LONG); r8 = c & INT2LONG; c >>>= 32;
+            c += r9 + (s >>> 32); r9 = c & INT2LONG; c >>>= 32;
+            s = a5 * a5;
+            c += r10 + (s & INT2LONG); r10 = c & INT2LONG; c >>>= 32;
+            c += r11 + (s >>> 32); r11 = c & INT2LONG; c >>>= 32;
+            s = a6 * a6;
+            c += r12 + (s & INT2LONG); r12 = c & INT2LONG; c >>>= 32;
+            r13 = (c + r13 + (s >>> 32)) & INT2LONG;
+
+            product[0] = (int)r0;
+            product[1] = (int)r1;
+            product[2] = (int)r2;
+            product[3] = (int)r3;
+            product[4] = (int)r4;
+            product[5] = (int)r5;
+            product[6] = (int)r6;
+            product[7] = (int)r7;
+            product[8] = (int)r8;
+            product[9] = (int)r9;
+            product[10] = (int)r10;
+            product[11] = (int)r11;
+            product[12] = (int)r12;
+            product[13] = (int)r13;
+
+        }
+
+        void add( int[] a, int[] b, int[] result ) {
+
+            long c = (a[0] & INT2LONG) + (b[0] & INT2LONG);
+            int s0 = (int)c;
+            c = (c >>> 32) + (a[1] & INT2LONG) + (b[1] & INT2LONG);
+            int s1 = (int)c;
+            c = (c >>> 32) + (a[2] & INT2LONG) + (b[2] & INT2LONG);
+            int s2 = (int)c;
+            c = (c >>> 32) + (a[3] & INT2LONG) + (b[3] & INT2LONG);
+            int s3 = (int)c;
+            c = (c >>> 32) + (a[4] & INT2LONG) + (b[4] & INT2LONG);
+            int s4 = (int)c;
+            c = (c >>> 32) + (a[5] & INT2LONG) + (b[5] & INT2LONG);
+            int s5 = (int)c;
+            c = (c >>> 32) + (a[6] & INT2LONG) + (b[6] & INT2LONG);
+            int s6 = (int)c;
+
+            // subtract p if there was a carry or the sum is not less than p
+            long d = (s0 & INT2LONG) - p0;
+            int t0 = (int)d;
+            d = (d >> 32) + (s1 & INT2LONG) - p1;
+            int t1 = (int)d;
+            d = (d >> 32) + (s2 & INT2LONG) - p2;
+            int t2 = (int)d;
+            d = (d >> 32) + (s3 & INT2LONG) - p3;
+            int t3 = (int)d;
+            d = (d >> 32) + (s4 & INT2LONG) - p4;
+            int t4 = (int)d;
+            d = (d >> 32) + (s5 & INT2LONG) - p5;
+            int t5 = (int)d;
+            d = (d >> 32) + (s6 & INT2LONG) - p6;
+            int t6 = (int)d;
+
+            if( (c >>> 32) != 0 || d >= 0 ) {
+                result[0] = t0;
+                result[1] = t1;
+                result[2] = t2;
+                result[3] = t3;
+                result[4] = t4;
+                result[5] = t5;
+                result[6] = t6;
+            }
+            else {
+                result[0] = s0;
+                result[1] = s1;
+                result[2] = s2;
+                result[3] = s3;
+                result[4] = s4;
+                result[5] = s5;
+                result[6] = s6;
+            }
+
+        }
+
+        void subtract( int[] a, int[] b, int[] result ) {
+
+            long d = (a[0] & INT2LONG) - (b[0] & INT2LONG);
+            int s0 = (int)d;
+            d = (d >> 32) + (a[1] & INT2LONG) - (b[1] & INT2LONG);
+            int s1 = (int)d;
+            d = (d >> 32) + (a[2] & INT2LONG) - (b[2] & INT2LONG);
+            int s2 = (int)d;
+            d = (d >> 32) + (a[3] & INT2LONG) - (b[3] & INT2LONG);
+            int s3 = (int)d;
+            d = (d >> 32) + (a[4] & INT2LONG) - (b[4] & INT2LONG);
+            int s4 = (int)d;
+            d = (d >> 32) + (a[5] & INT2LONG) - (b[5] & INT2LONG);
+            int s5 = (int)d;
+            d = (d >> 32) + (a[6] & INT2LONG) - (b[6] & INT2LONG);
+            int s6 = (int)d;
+
+            // add p if there was a borrow
+            if( d < 0 ) {
+                long c = (s0 & INT2LONG) + p0;
+                s0 = (int)c;
+                c = (c >>> 32) + (s1 & INT2LONG) + p1;
+                s1 = (int)c;
+                c = (c >>> 32) + (s2 & INT2LONG) + p2;
+                s2 = (int)c;
+                c = (c >>> 32) + (s3 & INT2LONG) + p3;
+                s3 = (int)c;
+                c = (c >>> 32) + (s4 & INT2LONG) + p4;
+                s4 = (int)c;
+                c = (c >>> 32) + (s5 & INT2LONG) + p5;
+                s5 = (int)c;
+                c = (c >>> 32) + (s6 & INT2LONG) + p6;
+                s6 = (int)c;
+            }
+
+            result[0] = s0;
+            result[1] = s1;
+            result[2] = s2;
+            result[3] = s3;
+            result[4] = s4;
+            result[5] = s5;
+            result[6] = s6;
+
+        }
+
+    }
+
+
+
+
+    /**
+     * Kernels for 8 words, i.e. fields of up to 256 bits.
+     */
+    private final static class Words8 extends FixedWidth {
+
+        /**
+         * The words of p as unsigned values.
+         */
+        private final long p0, p1, p2, p3, p4, p5, p6, p7;
+
+
+
+        /**
+         * Construct the kernels for a prime of 8 words.
+         */
+        private Words8( int[] p ) {
+
+            super( p );
+            p0 = p[0] & INT2LONG;
+            p1 = p[1] & INT2LONG;
+            p2 = p[2] & INT2LONG;
+            p3 = p[3] & INT2LONG;
+            p4 = p[4] & INT2LONG;
+            p5 = p[5] & INT2LONG;
+            p6 = p[6] & INT2LONG;
+            p7 = p[7] & INT2LONG;
+
+        }
+
+
+
+        void multiply( int[] a, int[] b, int[] product ) {
+
+            long a0 = a[0] & INT2LONG, a1 = a[1] & INT2LONG,
+                 a2 = a[2] & INT2LONG, a3 = a[3] & INT2LONG,
+                 a4 = a[4] & INT2LONG, a5 = a[5] & INT2LONG,
+                 a6 = a[6] & INT2LONG, a7 = a[7] & INT2LONG;
+            long b0 = b[0] & INT2LONG, b1 = b[1] & INT2LONG,
+                 b2 = b[2] & INT2LONG, b3 = b[3] & INT2LONG,
+                 b4 = b[4] & INT2LONG, b5 = b[5] & INT2LONG,
+                 b6 = b[6] & INT2LONG, b7 = b[7] & INT2LONG;
+            long c, r0, r1, r2, r3, r4, r5, r6, r7, r8, r9, r10, r11, r12, r13,
+                 r14, r15;
+
+            c = a0 * b0; r0 = c & INT2LONG; c >>>= 32;
+            c += a0 * b1; r1 = c & INT2LONG; c >>>= 32;
+            c += a0 * b2; r2 = c & INT2LONG; c >>>= 32;
+            c += a0 * b3; r3 = c & INT2LONG; c >>>= 32;
+            c += a0 * b4; r4 = c & INT2LONG; c >>>= 32;
+            c += a0 * b5; r5 = c & INT2LONG; c >>>= 32;
+            c += a0 * b6; r6 = c & INT2LONG; c >>>= 32;
+            c += a0 * b7; r7 = c & INT2LONG; c >>>= 32;
+            r8 = c;
+
+            c = a1 * b0 + r1; r1 = c & INT2LONG; c >>>= 32;
+            c += a1 * b1 + r2; r2 = c & INT2LONG; c >>>= 32;
+            c += a1 * b2 + r3; r3 = c & INT2LONG; c >>>= 32;
+            c += a1 * b3 + r4; r4 = c & INT2LONG; c >>>= 32;
+            c += a1 * b4 + r5; r5 = c & INT2LONG; c >>>= 32;
+            c += a1 * b5 + r6; r6 = c & INT2LONG; c >>>= 32;
+            c += a1 * b6 + r7; r7 = c & INT2LONG; c >>>= 32;
+            c += a1 * b7 + r8; r8 = c & INT2LONG; c >>>= 32;
+            r9 = c;
+
+            c = a2 * b0 + r2; r2 = c & INT2LONG; c >>>= 32;
+            c += a2 * b1 + r3; r3 = c & INT2LONG; c >>>= 32;
+            c += a2 * b2 + r4; r4 = c & INT2LONG; c >>>= 32;
+            c += a2 * b3 + r5; r5 = c & INT2LONG; c >>>= 32;
+            c += a2 * b4 + r6; r6 = c & INT2LONG; c >>>= 32;
+            c += a2 * b5 + r7; r7 = c & INT2LONG; c >>>= 32;
+            c += a2 * b6 + r8; r8 = c & INT2LONG; c >>>= 32;
+            c += a2 * b7 + r9; r9 = c & INT2LONG; c >>>= 32;
+            r10 = c;
+
+            c = a3 * b0 + r3; r3 = c & INT2LONG; c >>>= 32;
+            c += a3 * b1 + r4; r4 = c & INT2LONG; c >>>= 32;
+            c += a3 * b2 + r5; r5 = c & INT2LONG; c >>>= 32;
+            c += a3 * b3 + r6; r6 = c & INT2LONG; c >>>= 32;
+            c += a3 * b4 + r7; r7 = c & INT2LONG; c >>>= 32;
+            c += a3 * b5 + r8; r8 = c & INT2LONG; c >>>= 32;
+            c += a3 * b6 + r9; r9 = c & INT2LONG; c >>>= 32;
+            c += a3 * b7 + r10; r10 = c & INT2LONG; c >>>= 32;
+            r11 = c;
+
+            c = a4 * b0 + r4; r4 = c & INT2LONG; c >>>= 32;
+            c += a4 * b1 + r5; r5 = c & INT2LONG; c >>>= 32;
+            c += a4 * b2 + r6; r6 = c & INT2LONG; c >>>= 32;
+            c += a4 * b3 + r7; r7 = c & INT2LONG; c >>>= 32;
+            c += a4 * b4 + r8; r8 = c & INT2LONG; c >>>= 32;
+            c += a4 * b5 + r9; r9 = c & INT2LONG; c >>>= 32;
+            c += a4 * b6 + r10; r10 = c & INT2LONG; c >>>= 32;
+            c += a4 * b7 + r11; r11 = c & INT2LONG; c >>>= 32;
+            r12 = c;
+
+            c = a5 * b0 + r5; r5 = c & INT2LONG; c >>>= 32;
+            c += a5 * b1 + r6; r6 = c & INT2LONG; c >>>= 32;
+            c += a5 * b2 + r7; r7 = c & INT2LONG; c >>>= 32;
+            c += a5 * b3 + r8; r8 = c & INT2LONG; c >>>= 32;
+            c += a5 * b4 + r9; r9 = c & INT2LONG; c >>>= 32;
+            c += a5 * b5 + r10; r10 = c & INT2LONG; c >>>= 32;
+            c += a5 * b6 + r11; r11 = c & INT2LONG; c >>>= 32;
+            c += a5 * b7 + r12; r12 = c & INT2LONG; c >>>= 32;
+            r13 = c;
+
+            c = a6 * b0 + r6; r6 = c & INT2LONG; c >>>= 32;
+            c += a6 * b1 + r7; r7 = c & INT2LONG; c >>>= 32;
+            c += a6 * b2 + r8; r8 = c & INT2LONG; c >>>= 32;
+            c += a6 * b3 + r9; r9 = c & INT2LONG; c >>>= 32;
+            c += a6 * b4 + r10; r10 = c & INT2LONG; c >>>= 32;
+            c += a6 * b5 + r11; r11 = c & INT2LONG; c >>>= 32;
+            c += a6 * b6 + r12; r12 = c & INT2LONG; c >>>= 32;
+            c += a6 * b7 + r13; r13 = c & INT2LONG; c >>>= 32;
+            r14 = c;
+
+            c = a7 * b0 + r7; r7 = c & INT2LONG; c >>>= 32;
+            c += a7 * b1 + r8; r8 = c & INT2LONG; c >>>= 32;
+            c += a7 * b2 + r9; r9 = c & INT2LONG; c >>>= 32;
+            c += a7 * b3 + r10; r10 = c & INT2LONG; c >>>= 32;
+            c += a7 * b4 + r11; r11 = c & INT2LONG; c >>>= 32;
+            c += a7 * b5 + r12; r12 = c & INT2LONG; c >>>= 32;
+            c += a7 * b6 + r13; r13 = c & INT2LONG; c >>>= 32;
+            c += a7 * b7 + r14; r14 = c & INT2LONG; c >>>= 32;
+            r15 = c;
+
+            product[0] = (int)r0;
+            product[1] = (int)r1;
+            product[2] = (int)r2;
+            product[3] = (int)r3;
+            product[4] = (int)r4;
+            product[5] = (int)r5;
+            product[6] = (int)r6;
+            product[7] = (int)r7;
+            product[8] = (int)r8;
+            product[9] = (int)r9;
+            product[10] = (int)r10;
+            product[11] = (int)r11;
+            product[12] = (int)r12;
+            product[13] = (int)r13;
+            product[14] = (int)r14;
+            product[15] = (int)r15;
+
+        }
+
+        void square( int[] a, int[] product ) {
+
+            long a0 = a[0] & INT2LONG, a1 = a[1] & INT2LONG,
+                 a2 = a[2] & INT2LONG, a3 = a[3] & INT2LONG,
+                 a4 = a[4] & INT2LONG, a5 = a[5] & INT2LONG,
+                 a6 = a[6] & INT2LONG, a7 = a[7] & INT2LONG;
+            long c, s, r0, r1, r2, r3, r4, r5, r6, r7, r8, r9, r10, r11, r12,
+                 r13, r14, r15;
+
+            // products a_i a_j with i < j
+            c = a0 * a1; r1 = c & INT2LONG; c >>>= 32;
+            c += a0 * a2; r2 = c & INT2LONG; c >>>= 32;
+            c += a0 * a3; r3 = c & INT2LONG; c >>>= 32;
+            c += a0 * a4; r4 = c & INT2LONG; c >>>= 32;
+            c += a0 * a5; r5 = c & INT2LONG; c >>>= 32;
+            c += a0 * a6; r6 = c & INT2LONG; c >>>= 32;
+            c += a0 * a7; r7 = c & INT2LONG; c >>>= 32;
+            r8 = c;
+
+            c = a1 * a2 + r3; r3 = c & INT2LONG; c >>>= 32;
+            c += a1 * a3 + r4; r4 = c & INT2LONG; c >>>= 32;
+            c += a1 * a4 + r5; r5 = c & INT2LONG; c >>>= 32;
+            c += a1 * a5 + r6; r6 = c & INT2LONG; c >>>= 32;
+            c += a1 * a6 + r7; r7 = c & INT2LONG; c >>>= 32;
+            c += a1 * a7 + r8; r8 = c & INT2LONG; c >>>= 32;
+            r9 = c;
+
+            c = a2 * a3 + r5; r5 = c & INT2LONG; c >>>= 32;
+            c += a2 * a4 + r6; r6 = c & INT2LONG; c >>>= 32;
+            c += a2 * a5 + r7; r7 = c & INT2LONG; c >>>= 32;
+            c += a2 * a6 + r8; r8 = c & INT2LONG; c >>>= 32;
+            c += a2 * a7 + r9; r9 = c & INT2LONG; c >>>= 32;
+            r10 = c;
+
+            c = a3 * a4 + r7; r7 = c & INT2LONG; c >>>= 32;
+            c += a3 * a5 + r8; r8 = c & INT2LONG; c >>>= 32;
+            c += a3 * a6 + r9; r9 = c & INT2LONG; c >>>= 32;
+            c += a3 * a7 + r10; r10 = c & INT2LONG; c >>>= 32;
+            r11 = c;
+
+            c = a4 * a5 + r9; r9 = c & INT2LONG; c >>>= 32;
+            c += a4 * a6 + r10; r10 = c & INT2LONG; c >>>= 32;
+            c += a4 * a7 + r11; r11 = c & INT2LONG; c >>>= 32;
+            r12 = c;
+
+            c = a5 * a6 + r11; r11 = c & INT2LONG; c >>>= 32;
+            c += a5 * a7 + r12; r12 = c & INT2LONG; c >>>= 32;
+            r13 = c;
+
+            c = a6 * a7 + r13; r13 = c & INT2LONG; c >>>= 32;
+            r14 = c;
+
+            // double them and add the squares a_i^2
+            r15 = r14 >>> 31;
+            r14 = ((r14 << 1) | (r13 >>> 31)) & INT2LONG;
+            r13 = ((r13 << 1) | (r12 >>> 31)) & INT2LONG;
+            r12 = ((r12 << 1) | (r11 >>> 31)) & INT2LONG;
+            r11 = ((r11 << 1) | (r10 >>> 31)) & INT2LONG;
+            r10 = ((r10 << 1) | (r9 >>> 31)) & INT2LONG;
+            r9 = ((r9 << 1) | (r8 >>> 31)) & INT2LONG;
+            r8 = ((r8 << 1) | (r7 >>> 31)) & INT2LONG;
+            r7 = ((r7 << 1) | (r6 >>> 31)) & INT2LONG;
+            r6 = ((r6 << 1) | (r5 >>> 31)) & INT2LONG;
+            r5 = ((r5 << 1) | (r4 >>> 31)) & INT2LONG;
+            r4 = ((r4 << 1) | (r3 >>> 31)) & INT2LONG;
+            r3 = ((r3 << 1) | (r2 >>> 31)) & INT2LONG;
+            r2 = ((r2 << 1) | (r1 >>> 31)) & INT2LONG;
+            r1 = (r1 << 1) & INT2LONG;
+            s = a0 * a0;
+            r0 = s & INT2LONG;
+            c = r1 + (s >>> 32); r1 = c & INT2LONG; c >>>= 32;
+            s = a1 * a1;
+            c += r2 + (s & INT2LONG); r2 = c & INT2LONG; c >>>= 32;
+            c += r3 + (s >>> 32); r3 = c & INT2LONG; c >>>= 32;
+            s = a2 * a2;
+            c += r4 + (s & INT2LONG); r4 = c & INT2LONG; c >>>= 32;
+            c += r5 + (s >>> 32); r5 = c & INT2LONG; c >>>= 32;
+            s = a3 * a3;
+            c += r6 + (s & INT2LONG); r6 = c & INT2LONG; c >>>= 32;
+            c += r7 + (s >>> 32); r7 = c & INT2LONG; c >>>= 32;
+            s = a4 * a4;
+            c += r8 + (s & INT2LONG); r8 = c & INT2LONG; c >>>= 32;
+            c += r9 + (s >>> 32); r9 = c & INT2LONG; c >>>= 32;
+            s = a5 * a5;
+            c += r10 + (s & INT2LONG); r10 = c & INT2LONG; c >>>= 32;
+            c += r11 + (s >>> 32); r11 = c & INT2LONG; c >>>= 32;
+            s = a6 * a6;
+            c += r12 + (s & INT2LONG); r12 = c & INT2LONG; c >>>= 32;
+            c += r13 + (s >>> 32); r13 = c & INT2LONG; c >>>= 32;
+            s = a7 * a7;
+            c += r14 + (s & INT2LONG); r14 = c & INT2LONG; c >>>= 32;
+            r15 = (c + r15 + (s >>> 32)) & INT2LONG;
+
+            product[0] = (int)r0;
+            product[1] = (int)r1;
+            product[2] = (int)r2;
+            product[3] = (int)r3;
+            product[4] = (int)r4;
+            product[5] = (int)r5;
+            product[6] = (int)r6;
+            product[7] = (int)r7;
+            product[8] = (int)r8;
+            product[9] = (int)r9;
+            product[10] = (int)r10;
+            product[11] = (int)r11;
+            product[12] = (int)r12;
+            product[13] = (int)r13;
+            product[14] = (int)r14;
+            product[15] = (int)r15;
+
+        }
+
+        void add( int[] a, int[] b, int[] result ) {
+
+            long c = (a[0] & INT2LONG) + (b[0] & INT2LONG);
+            int s0 = (int)c;
+            c = (c >>> 32) + (a[1] & INT2LONG) + (b[1] & INT2LONG);
+            int s1 = (int)c;
+            c = (c >>> 32) + (a[2] & INT2LONG) + (b[2] & INT2LONG);
+            int s2 = (int)c;
+            c = (c >>> 32) + (a[3] & INT2LONG) + (b[3] & INT2LONG);
+            int s3 = (int)c;
+            c = (c >>> 32) + (a[4] & INT2LONG) + (b[4] & INT2LONG);
+            int s4 = (int)c;
+            c = (c >>> 32) + (a[5] & INT2LONG) + (b[5] & INT2LONG);
+            int s5 = (int)c;
+            c = (c >>> 32) + (a[6] & INT2LONG) + (b[6] & INT2LONG);
+            int s6 = (int)c;
+            c = (c >>> 32) + (a[7] & INT2LONG) + (b[7] & INT2LONG);
+            int s7 = (int)c;
+
+            // subtract p if there was a carry or the sum is not less than p
+            long d = (s0 & INT2LONG) - p0;
+            int t0 = (int)d;
+            d = (d >> 32) + (s1 & INT2LONG) - p1;
+            int t1 = (int)d;
+            d = (d >> 32) + (s2 & INT2LONG) - p2;
+            int t2 = (int)d;
+            d = (d >> 32) + (s3 & INT2LONG) - p3;
+            int t3 = (int)d;
+            d = (d >> 32) + (s4 & INT2LONG) - p4;
+            int t4 = (int)d;
+            d = (d >> 32) + (s5 & INT2LONG) - p5;
+            int t5 = (int)d;
+            d = (d >> 32) + (s6 & INT2LONG) - p6;
+            int t6 = (int)d;
+            d = (d >> 32) + (s7 & INT2LONG) - p7;
+            int t7 = (int)d;
+
+            if( (c >>> 32) != 0 || d >= 0 ) {
+                result[0] = t0;
+                result[1] = t1;
+                result[2] = t2;
+                result[3] = t3;
+                result[4] = t4;
+                result[5] = t5;
+                result[6] = t6;
+                result[7] = t7;
+            }
+            else {
+                result[0] = s0;
+                result[1] = s1;
+                result[2] = s2;
+                result[3] = s3;
+                result[4] = s4;
+                result[5] = s5;
+                result[6] = s6;
+                result[7] = s7;
+            }
+
+        }
+
+        void subtract( int[] a, int[] b, int[] result ) {
+
+            long d = (a[0] & INT2LONG) - (b[0] & INT2LONG);
+            int s0 = (int)d;
+            d = (d >> 32) + (a[1] & INT2LONG) - (b[1] & INT2LONG);
+            int s1 = (int)d;
+            d = (d >> 32) + (a[2] & INT2LONG) - (b[2] & INT2LONG);
+            int s2 = (int)d;
+            d = (d >> 32) + (a[3] & INT2LONG) - (b[3] & INT2LONG);
+            int s3 = (int)d;
+            d = (d >> 32) + (a[4] & INT2LONG) - (b[4] & INT2LONG);
+            int s4 = (int)d;
+            d = (d >> 32) + (a[5] & INT2LONG) - (b[5] & INT2LONG);
+            int s5 = (int)d;
+            d = (d >> 32) + (a[6] & INT2LONG) - (b[6] & INT2LONG);
+            int s6 = (int)d;
+            d = (d >> 32) + (a[7] & INT2LONG) - (b[7] & INT2LONG);
+            int s7 = (int)d;
+
+            // add p if there was a borrow
+            if( d < 0 ) {
+                long c = (s0 & INT2LONG) + p0;
+                s0 = (int)c;
+                c = (c >>> 32) + (s1 & INT2LONG) + p1;
+                s1 = (int)c;
+                c = (c >>> 32) + (s2 & INT2LONG) + p2;
+                s2 = (int)c;
+                c = (c >>> 32) + (s3 & INT2LONG) + p3;
+                s3 = (int)c;
+                c = (c >>> 32) + (s4 & INT2LONG) + p4;
+                s4 = (int)c;
+                c = (c >>> 32) + (s5 & INT2LONG) + p5;
+                s5 = (int)c;
+                c = (c >>> 32) + (s6 & INT2LONG) + p6;
+                s6 = (int)c;
+                c = (c >>> 32) + (s7 & INT2LONG) + p7;
+                s7 = (int)c;
+            }
+
+            result[0] = s0;
+            result[1] = s1;
+            result[2] = s2;
+            result[3] = s3;
+            result[4] = s4;
+            result[5] = s5;
+            result[6] = s6;
+            result[7] = s7;
+
+        }
+
+    }
+
+}
@@ -0,0 +1,392 @@
+/*
+ * Inversion.java
+ */
+
+
+
+
+package de.rub.nds.ec.math;
+
+
+
+
+/**
+ * This class implements modular division by the optimized binary GCD of
+ * T. Pornin, "Optimized Binary GCD for Modular Inversion", IACR ePrint
+ * 2020/972. It replaces the binary algorithm of <b>GECC</b>, p. 41, in
+ * {@link FiniteField.FieldElement#divide}, which allocated new magnitudes
+ * in every step.
+ * <p />
+ * The binary algorithm needs up to two steps per bit of p, and every step
+ * works on the full length values. Here 31 steps are done at once on 64
+ * bit approximations of the values, which consist of their 31 least and
+ * 33 most significant bits. The steps are recorded in a matrix of small
+ * signed factors, which is then applied to the full length values in a
+ * single pass. The coefficients are divided by <code>2^31</code> modulo p
+ * in the manner of Montgomery reduction, see <b>HAC</b>, p. 601, so no
+ * correction is needed at the end.
+ * <p />
+ * All methods work on magnitudes as used by
+ * {@link FiniteField.FieldElement}, i.e. the least significant word first.
+ * Instances are immutable and can be shared between threads, all scratch
+ * space is passed in by the caller.
+ *
+ * @see FiniteField
+ */
+final class Inversion {
+
+    /**
+     * This bit mask is needed for the conversion of a signed integer
+     * to an unsigned long.
+     */
+    private final static long INT2LONG = 0xFFFFFFFFL;
+
+    /**
+     * Number of steps of the binary algorithm done on the approximations.
+     */
+    private final static int STEPS = 31;
+
+    /**
+     * The magnitude of the prime, exactly k words long.
+     */
+    private final int[] p;
+
+    /**
+     * Number of words of the prime.
+     */
+    private final int k;
+
+    /**
+     * The constant <code>p^-1 mod 2^32</code>.
+     */
+    private final int inverse;
+
+
+
+
+    /**
+     * Construct a new engine for the given prime.
+     *
+     * @param   p magnitude of an odd prime without leading zero words.
+     */
+    Inversion( int[] p ) {
+
+        this.p = p;
+        this.k = p.length;
+
+        // Newton iteration for p^-1 mod 2^32, each step doubles the
+        // number of correct bits
+        int x = p[0];
+        for( int i = 0; i < 4; i++ )
+            x *= 2 - p[0] * x;
+        inverse = x;
+
+    }
+
+
+
+
+    /**
+     * Allocates the scratch space {@link #divide} needs.
+     *
+     * @return  four arrays of k words and two of <code>k + 1</code> words.
+     */
+    int[][] newScratch( ) {
+
+        return new int[][]{ new int[k], new int[k], new int[k], new int[k],
+                            new int[k + 1], new int[k + 1] };
+
+    }
+
+    /**
+     * Divide two residues modulo p.
+     * <p />
+     * Starting with <code>a = y</code>, <code>b = p</code>,
+     * <code>u = x</code> and <code>v = 0</code>, the algorithm keeps
+     * <code>a x = u y</code> and <code>b x = v y</code> modulo p, while a
+     * and b converge to 0 and <code>gcd( y, p ) = 1</code>. Then v is the
+     * quotient.
+     *
+     * @param   x dividend less than p, at most k words.
+     * @param   y divisor less than p and not zero, at most k words.
+     * @param   result array of k words receiving
+     *          <code>x * y^-1 mod p</code>. It may be the same array as
+     *          one of the operands.
+     * @param   scratch arrays allocated by {@link #newScratch}.
+     */
+    void divide( int[] x, int[] y, int[] result, int[][] scratch ) {
+
+        int[] a = scratch[0], b = scratch[1], u = scratch[2], v = scratch[3];
+        int[] t0 = scratch[4], t1 = scratch[5];
+
+        copy( y, a );
+        copy( p, b );
+        copy( x, u );
+        for( int i = 0; i < k; i++ )
+            v[i] = 0;
+
+        while( ! isZero( a ) ) {
+
+            // approximations of a and b on the same scale, exact if both
+            // fit into 64 bits
+            int n = Math.max( Math.max( bitLength( a ), bitLength( b ) ), 64 );
+            long approxA = approximate( a, n );
+            long approxB = approximate( b, n );
+
+            // steps of the binary algorithm on the approximations, b stays
+            // odd. The matrix (f0 g0, f1 g1) maps a and b to 2^31 times
+            // the new values.
+            long f0 = 1, g0 = 0, f1 = 0, g1 = 1;
+
+            for( int j = 0; j < STEPS; j++ ) {
+
+                if( (approxA & 1) != 0 ) {
+                    if( Long.compareUnsigned( approxA, approxB ) < 0 ) {
+                        long swap = approxA;
+                        approxA = approxB;
+                        approxB = swap;
+                        swap = f0;
+                        f0 = f1;
+                        f1 = swap;
+                        swap = g0;
+                        g0 = g1;
+                        g1 = swap;
+                    }
+                    approxA -= approxB;
+                    f0 -= f1;
+                    g0 -= g1;
+                }
+
+                approxA >>>= 1;
+                f1 <<= 1;
+                g1 <<= 1;
+            }
+
+            // apply the matrix to a and b, a negative result is negated
+            // together with its row of the matrix
+            if( transform( a, b, f0, g0, t0 ) ) {
+                f0 = -f0;
+                g0 = -g0;
+            }
+            if( transform( a, b, f1, g1, t1 ) ) {
+                f1 = -f1;
+                g1 = -g1;
+            }
+            System.arraycopy( t0, 0, a, 0, k );
+            System.arraycopy( t1, 0, b, 0, k );
+
+            // apply the same matrix to u and v modulo p
+            combine( u, v, f0, g0, t0 );
+            combine( u, v, f1, g1, t1 );
+            reduce( t0, u );
+            reduce( t1, v );
+        }
+
+        System.arraycopy( v, 0, result, 0, k );
+
+    }
+
+
+
+
+    /**
+     * Compute <code>|(a f + b g) / 2^31|</code>, where the division is
+     * exact.
+     *
+     * @param   a first value in k words.
+     * @param   b second value in k words.
+     * @param   f factor of <tt>a</tt>, <code>|f| + |g| &lt;= 2^31</code>.
+     * @param   g factor of <tt>b</tt>.
+     * @param   result array receiving the absolute value in k words.
+     * @return  <tt>true</tt> if the value was negative.
+     */
+    private boolean transform( int[] a, int[] b, long f, long g,
+                               int[] result ) {
+
+        long carry = 0;
+        int previous = 0;
+
+        for( int i = 0; i < k; i++ ) {
+            carry += (a[i] & INT2LONG) * f + (b[i] & INT2LONG) * g;
+            int word = (int)carry;
+            carry >>= 32;
+            if( i > 0 )
+                result[i - 1] = (previous >>> 31) | (word << 1);
+            previous = word;
+        }
+        result[k - 1] = (previous >>> 31) | ((int)carry << 1);
+
+        if( carry >= 0 )
+            return false;
+
+        // two's complement
+        long sum = 1;
+        for( int i = 0; i < k; i++ ) {
+            sum += ~result[i] & INT2LONG;
+            result[i] = (int)sum;
+            sum >>>= 32;
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Compute <code>u f + v g</code> as a signed value.
+     *
+     * @param   u first value less than p in k words.
+     * @param   v second value less than p in k words.
+     * @param   f factor of <tt>u</tt>, <code>|f| + |g| &lt;= 2^31</code>.
+     * @param   g factor of <tt>v</tt>.
+     * @param   result array receiving the value in two's complement in
+     *          <code>k + 1</code> words.
+     */
+    private void combine( int[] u, int[] v, long f, long g, int[] result ) {
+
+        long carry = 0;
+
+        for( int i = 0; i < k; i++ ) {
+            carry += (u[i] & INT2LONG) * f + (v[i] & INT2LONG) * g;
+            result[i] = (int)carry;
+            carry >>= 32;
+        }
+        result[k] = (int)carry;
+
+    }
+
+    /**
+     * Divide a signed value by <code>2^31</code> modulo p. The multiple
+     * <code>c p</code> with <code>c = -t p^-1 mod 2^31</code> makes the
+     * value divisible by <code>2^31</code>. The quotient lies between
+     * <code>-p</code> and <code>2p</code> and is corrected by a single
+     * addition or subtraction of p.
+     *
+     * @param   t value of at most <code>2^31 p</code> in absolute value as
+     *          written by {@link #combine}.
+     * @param   result array of k words receiving the residue.
+     */
+    private void reduce( int[] t, int[] result ) {
+
+        long c = ( -t[0] * inverse ) & 0x7FFFFFFF;
+        long carry = 0;
+        int previous = 0;
+
+        for( int i = 0; i < k; i++ ) {
+            carry += c * (p[i] & INT2LONG) + (t[i] & INT2LONG);
+            int word = (int)carry;
+            carry >>>= 32;
+            if( i > 0 )
+                result[i - 1] = (previous >>> 31) | (word << 1);
+            previous = word;
+        }
+        long top = t[k] + carry;
+        result[k - 1] = (previous >>> 31) | ((int)top << 1);
+        top >>= 31;
+
+        if( top < 0 ) {
+            long sum = 0;
+            for( int i = 0; i < k; i++ ) {
+                sum += (result[i] & INT2LONG) + (p[i] & INT2LONG);
+                result[i] = (int)sum;
+                sum >>>= 32;
+            }
+        }
+        else if( top > 0 || compare( result ) >= FiniteField.EQ ) {
+            long diff = 0;
+            for( int i = 0; i < k; i++ ) {
+                diff += (result[i] & INT2LONG) - (p[i] & INT2LONG);
+                result[i] = (int)diff;
+                diff >>= 32;
+            }
+        }
+
+    }
+
+    /**
+     * Returns the 31 least and the 33 most significant bits of the n bit
+     * scale of <tt>x</tt> in a <tt>long</tt>.
+     *
+     * @param   x value of at most n bits in k words.
+     * @param   n number of bits, at least 64.
+     */
+    private long approximate( int[] x, int n ) {
+
+        int position = n - 33;
+        int index = position >>> 5, shift = position & 31;
+
+        long high = (word( x, index ) | (word( x, index + 1 ) << 32)) >>> shift;
+        if( shift != 0 )
+            high |= word( x, index + 2 ) << (64 - shift);
+
+        return (x[0] & 0x7FFFFFFFL) | ((high & 0x1FFFFFFFFL) << 31);
+
+    }
+
+    /**
+     * Returns word <tt>i</tt> of <tt>x</tt> as unsigned value or 0 if
+     * <tt>i</tt> is not less than k.
+     */
+    private long word( int[] x, int i ) {
+
+        return ( i < k ? x[i] & INT2LONG : 0 );
+
+    }
+
+    /**
+     * Returns the number of bits of <tt>x</tt>.
+     */
+    private int bitLength( int[] x ) {
+
+        for( int i = k - 1; i >= 0; i-- )
+            if( x[i] != 0 )
+                return (i << 5) + 32 - Integer.numberOfLeadingZeros( x[i] );
+
+        return 0;
+
+    }
+
+    /**
+     * Determines wether <tt>x</tt> is zero.
+     */
+    private boolean isZero( int[] x ) {
+
+        int or = 0;
+        for( int i = 0; i < k; i++ )
+            or |= x[i];
+
+        return or == 0;
+
+    }
+
+    /**
+     * Compare a value of k words to p.
+     *
+     * @return  {@link FiniteField#LT LT}, {@link FiniteField#EQ EQ} or
+     *          {@link FiniteField#GT GT}.
+     */
+    private byte compare( int[] x ) {
+
+        for( int i = k - 1; i >= 0; i-- )
+            if( x[i] != p[i] )
+                return ( (x[i] & INT2LONG) > (p[i] & INT2LONG) ?
+                         FiniteField.GT : FiniteField.LT );
+
+        return FiniteField.EQ;
+
+    }
+
+    /**
+     * Copy a magnitude of at most k words into an array of k words.
+     */
+    private void copy( int[] source, int[] destination ) {
+
+        int i = 0;
+
+        for( ; i < source.length; i++ )
+            destination[i] = source[i];
+        for( ; i < k; i++ )
+            destination[i] = 0;
+
+    }
+
+}
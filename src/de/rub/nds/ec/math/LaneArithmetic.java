@@ -0,0 +1,255 @@
+/*
+ * LaneArithmetic.java
+ */
+
+
+
+
+package de.rub.nds.ec.math;
+
+
+
+
+/**
+ * This class implements Montgomery multiplication of many independent
+ * operand pairs at once. It is used by {@link FiniteField#multiplyAll}.
+ * <p />
+ * The operands are stored as structure of arrays: row j holds word j of
+ * all operands, one lane per operand. Every word operation of the
+ * Coarsely Integrated Operand Scanning method, see <b>KAK</b>, becomes a
+ * loop over the lanes, which does the same arithmetic on consecutive
+ * elements without any data dependent branch. This class runs them as
+ * scalar loops, which HotSpot may or may not vectorize.
+ * <p />
+ * The subclass <tt>VectorLaneArithmetic</tt> in the source directory
+ * <tt>src-vector</tt> does the same loops with explicit SIMD instructions
+ * of the <tt>jdk.incubator.vector</tt> module. It is kept out of
+ * <tt>src</tt>, since the incubating module has to be enabled by
+ * <code>--add-modules jdk.incubator.vector</code> for compiling and
+ * running it. {@link #forPrime} loads it reflectively and falls back to
+ * this class, if it is not on the class path or the module is not
+ * enabled.
+ * <p />
+ * Every word is held in a <tt>long</tt>, so the products of two words and
+ * the carries can be computed in the same lane. The final subtraction is
+ * done on all lanes and the result is selected by a mask.
+ * <p />
+ * Instances are immutable and can be shared between threads, all scratch
+ * space is allocated by the caller through {@link #newOperand} and
+ * {@link #newResult}.
+ *
+ * @see FiniteField#multiplyAll
+ */
+class LaneArithmetic {
+
+    /**
+     * This bit mask is needed for the conversion of a signed integer
+     * to an unsigned long.
+     */
+    private final static long INT2LONG = 0xFFFFFFFFL;
+
+    /**
+     * Number of lanes processed by one call of {@link #multiply}.
+     */
+    final static int LANES = 128;
+
+    /**
+     * The class name of the engine on the Vector API.
+     */
+    private final static String VECTOR_ENGINE =
+            "de.rub.nds.ec.math.VectorLaneArithmetic";
+
+    /**
+     * The words of the prime as unsigned values.
+     */
+    final long[] m;
+
+    /**
+     * Number of words of the prime.
+     */
+    final int k;
+
+    /**
+     * The constant <code>-p^-1 mod 2^32</code>.
+     */
+    final long inverse;
+
+
+
+
+    /**
+     * Construct a new engine for the given prime.
+     *
+     * @param   p magnitude of an odd prime without leading zero words.
+     */
+    LaneArithmetic( int[] p ) {
+
+        k = p.length;
+        m = new long[k];
+        for( int i = 0; i < k; i++ )
+            m[i] = p[i] & INT2LONG;
+
+        // Newton iteration for p^-1 mod 2^32, each step doubles the
+        // number of correct bits
+        int x = p[0];
+        for( int i = 0; i < 4; i++ )
+            x *= 2 - p[0] * x;
+        inverse = -x & INT2LONG;
+
+    }
+
+    /**
+     * Find the engine for the given prime, the one on the Vector API if
+     * it is available, otherwise the scalar one.
+     *
+     * @param   p magnitude of an odd prime without leading zero words.
+     * @return  the engine.
+     */
+    static LaneArithmetic forPrime( int[] p ) {
+
+        try {
+            Class<?> engine = Class.forName( VECTOR_ENGINE );
+            return (LaneArithmetic)engine.
+                    getDeclaredConstructor( int[].class ).
+                    newInstance( (Object)p );
+        }
+        catch( ReflectiveOperationException e ) {
+            // not on the class path
+        }
+        catch( LinkageError e ) {
+            // the module jdk.incubator.vector is not enabled
+        }
+
+        return new LaneArithmetic( p );
+
+    }
+
+
+
+
+    /**
+     * Allocates the rows of an operand.
+     *
+     * @return  k rows of {@link #LANES} words.
+     */
+    long[][] newOperand( ) {
+
+        return new long[k][LANES];
+
+    }
+
+    /**
+     * Allocates the rows of a result including scratch rows.
+     *
+     * @return  <code>k + 4</code> rows of {@link #LANES} words.
+     */
+    long[][] newResult( ) {
+
+        return new long[k + 4][LANES];
+
+    }
+
+    /**
+     * Montgomery multiplication on all lanes.
+     *
+     * @param   x first factors, word j of lane l in <code>x[j][l]</code>,
+     *          less than p.
+     * @param   y second factors, less than p.
+     * @param   t result rows allocated by {@link #newResult}, on return
+     *          the first k rows hold <code>x * y * R^-1 mod p</code> with
+     *          <code>R = 2^(32 k)</code>.
+     * @param   lanes number of used lanes.
+     */
+    void multiply( long[][] x, long[][] y, long[][] t, int lanes ) {
+
+        long[] carry = t[k + 2], u = t[k + 3];
+        long[] high = t[k], higher = t[k + 1];
+
+        for( int j = 0; j < k + 2; j++ )
+            for( int l = 0; l < lanes; l++ )
+                t[j][l] = 0;
+
+        for( int i = 0; i < k; i++ ) {
+
+            // t = t + x_i * y
+            long[] x_i = x[i];
+            for( int l = 0; l < lanes; l++ )
+                carry[l] = 0;
+
+            for( int j = 0; j < k; j++ ) {
+                long[] y_j = y[j], t_j = t[j];
+                for( int l = 0; l < lanes; l++ ) {
+                    long value = carry[l] + x_i[l] * y_j[l] + t_j[l];
+                    t_j[l] = value & INT2LONG;
+                    carry[l] = value >>> 32;
+                }
+            }
+            for( int l = 0; l < lanes; l++ ) {
+                long value = high[l] + carry[l];
+                high[l] = value & INT2LONG;
+                higher[l] = value >>> 32;
+            }
+
+            // t = (t + u * p) / 2^32, the lowest word becomes zero
+            long[] t_0 = t[0];
+            long m_0 = m[0];
+            for( int l = 0; l < lanes; l++ ) {
+                long u_l = (t_0[l] * inverse) & INT2LONG;
+                u[l] = u_l;
+                carry[l] = (u_l * m_0 + t_0[l]) >>> 32;
+            }
+
+            for( int j = 1; j < k; j++ ) {
+                long[] t_j = t[j], t_previous = t[j - 1];
+                long m_j = m[j];
+                for( int l = 0; l < lanes; l++ ) {
+                    long value = carry[l] + u[l] * m_j + t_j[l];
+                    t_previous[l] = value & INT2LONG;
+                    carry[l] = value >>> 32;
+                }
+            }
+
+            long[] t_last = t[k - 1];
+            for( int l = 0; l < lanes; l++ ) {
+                long value = high[l] + carry[l];
+                t_last[l] = value & INT2LONG;
+                high[l] = higher[l] + (value >>> 32);
+            }
+        }
+
+        // the results are less than 2p, the borrow of t - p on all lanes
+        // decides where p is subtracted
+        long[] borrow = carry;
+        for( int l = 0; l < lanes; l++ )
+            borrow[l] = 0;
+
+        for( int j = 0; j < k; j++ ) {
+            long[] t_j = t[j];
+            long m_j = m[j];
+            for( int l = 0; l < lanes; l++ ) {
+                long value = t_j[l] - m_j + borrow[l];
+                borrow[l] = value >> 32;
+            }
+        }
+
+        // mask is -1 where t is kept, i.e. t < p
+        long[] mask = u;
+        for( int l = 0; l < lanes; l++ )
+            mask[l] = ((high[l] - 1) >> 63) & borrow[l];
+
+        for( int l = 0; l < lanes; l++ )
+            borrow[l] = 0;
+
+        for( int j = 0; j < k; j++ ) {
+            long[] t_j = t[j];
+            long m_j = m[j];
+            for( int l = 0; l < lanes; l++ ) {
+                long value = t_j[l] - m_j + borrow[l];
+                borrow[l] = value >> 32;
+                t_j[l] = (t_j[l] & mask[l]) | (value & INT2LONG & ~mask[l]);
+            }
+        }
+
+    }
+
+}
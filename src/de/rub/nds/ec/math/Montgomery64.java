@@ -0,0 +1,356 @@
+/*
+ * Montgomery64.java
+ */
+
+
+
+
+package de.rub.nds.ec.math;
+
+
+
+
+/**
+ * This class implements the arithmetic of the representation
+ * {@link FiniteField#MONTGOMERY64} on elements stored as 64 bit limbs,
+ * the least significant limb first. It is used by
+ * {@link FiniteField.Workspace} on the limbs of
+ * {@link FiniteField.MutableFieldElement}s, which are held in this form
+ * throughout, so a chain of operations never converts between words and
+ * limbs. The 32 bit word code of {@link FiniteField#MONTGOMERY} remains
+ * the portable fallback.
+ * <p />
+ * A multiplication of two limbs yields a 128 bit product, whose upper
+ * half is computed by <code>Math.multiplyHigh</code>. Modern JVMs compile
+ * it to a single instruction, so an element of k words needs only a
+ * quarter of the limb products of the 32 bit code. Java 17 has no
+ * unsigned variant, so the signed result is corrected, see
+ * {@link #multiplyHigh}.
+ * <p />
+ * The Montgomery radix is <code>R = 2^(64 n)</code> for n limbs, which
+ * differs from the radix of {@link FiniteField#MONTGOMERY} if p has an odd
+ * number of words. All operands and results are exactly n limbs long and
+ * less than p.
+ * <p />
+ * Instances are immutable and can be shared between threads, all scratch
+ * space is passed in by the caller.
+ *
+ * @see FiniteField#MONTGOMERY64
+ */
+final class Montgomery64 {
+
+    /**
+     * This bit mask is needed for the conversion of a signed integer
+     * to an unsigned long.
+     */
+    private final static long INT2LONG = 0xFFFFFFFFL;
+
+    /**
+     * The limbs of the prime.
+     */
+    private final long[] m;
+
+    /**
+     * Number of limbs of the prime.
+     */
+    final int n;
+
+    /**
+     * The constant <code>-p^-1 mod 2^64</code>.
+     */
+    private final long inverse;
+
+
+
+
+    /**
+     * Construct a new engine for the given prime.
+     *
+     * @param   p magnitude of an odd prime without leading zero words.
+     */
+    Montgomery64( int[] p ) {
+
+        n = (p.length + 1) >> 1;
+        m = new long[n];
+        toLimbs( p, m );
+
+        // Newton iteration for p^-1 mod 2^64, each step doubles the
+        // number of correct bits
+        long x = m[0];
+        for( int i = 0; i < 5; i++ )
+            x *= 2 - m[0] * x;
+        inverse = -x;
+
+    }
+
+
+
+
+    /**
+     * Returns the number of 32 bit words of the radix <code>R</code>.
+     *
+     * @return  <code>2 n</code>
+     */
+    int radixWords( ) {
+
+        return n << 1;
+
+    }
+
+    /**
+     * Montgomery multiplication using the Finely Integrated Operand
+     * Scanning method, see <b>KAK</b>, on 64 bit limbs. The product
+     * <code>x_i * y</code> and the reduction by <code>u * p</code> are
+     * added in the same pass over the limbs, each with its own carry.
+     *
+     * @param   x first factor.
+     * @param   y second factor.
+     * @param   result receives <code>x * y * R^-1 mod p</code>, it may be
+     *          the same array as one of the factors.
+     * @param   t scratch of <code>n + 1</code> limbs.
+     */
+    void multiply( long[] x, long[] y, long[] result, long[] t ) {
+
+        long[] m = this.m;
+        int n = this.n;
+
+        for( int i = 0; i <= n; i++ )
+            t[i] = 0;
+
+        for( int i = 0; i < n; i++ ) {
+
+            long x_i = x[i];
+
+            // the lowest limb of t + x_i * y decides u, the lowest limb
+            // of t + x_i * y + u * p is zero
+            long low = x_i * y[0];
+            long sum = low + t[0];
+            long carry = multiplyHigh( x_i, y[0] ) + carry( low, sum );
+            long u = sum * inverse;
+            low = u * m[0];
+            long reduction = multiplyHigh( u, m[0] ) +
+                             carry( low, low + sum );
+
+            for( int j = 1; j < n; j++ ) {
+
+                // t_j + x_i * y_j + carry
+                low = x_i * y[j];
+                long high = multiplyHigh( x_i, y[j] );
+                sum = low + t[j];
+                high += carry( low, sum );
+                low = sum + carry;
+                carry = high + carry( sum, low );
+
+                // + u * p_j + reduction, shifted down by one limb
+                sum = u * m[j];
+                high = multiplyHigh( u, m[j] );
+                long value = sum + low;
+                high += carry( sum, value );
+                sum = value + reduction;
+                reduction = high + carry( value, sum );
+                t[j - 1] = sum;
+            }
+
+            sum = t[n] + carry;
+            long top = carry( carry, sum );
+            long value = sum + reduction;
+            t[n - 1] = value;
+            t[n] = top + carry( sum, value );
+        }
+
+        // the result is less than 2p, one subtraction is enough
+        if( t[n] != 0 || compare( t, m ) >= 0 )
+            subtractLimbs( t, m, t );
+
+        System.arraycopy( t, 0, result, 0, n );
+
+    }
+
+    /**
+     * Modular addition.
+     *
+     * @param   x first summand.
+     * @param   y second summand.
+     * @param   result receives <code>x + y mod p</code>, it may be the same
+     *          array as one of the summands.
+     */
+    void add( long[] x, long[] y, long[] result ) {
+
+        long carry = 0;
+
+        for( int i = 0; i < n; i++ ) {
+            long a = x[i], b = y[i];
+            long sum = a + b + carry;
+            carry = ((a & b) | ((a | b) & ~sum)) >>> 63;
+            result[i] = sum;
+        }
+
+        if( carry != 0 || compare( result, m ) >= 0 )
+            subtractLimbs( result, m, result );
+
+    }
+
+    /**
+     * Modular subtraction.
+     *
+     * @param   x minuend.
+     * @param   y subtrahend.
+     * @param   result receives <code>x - y mod p</code>, it may be the same
+     *          array as one of the operands.
+     */
+    void subtract( long[] x, long[] y, long[] result ) {
+
+        if( subtractLimbs( x, y, result ) != 0 ) {
+            long carry = 0;
+            for( int i = 0; i < n; i++ ) {
+                long a = result[i], b = m[i];
+                long sum = a + b + carry;
+                carry = ((a & b) | ((a | b) & ~sum)) >>> 63;
+                result[i] = sum;
+            }
+        }
+
+    }
+
+    /**
+     * Modular negation.
+     *
+     * @param   x the element to negate.
+     * @param   result receives <code>p - x</code>, or zero if <tt>x</tt> is
+     *          zero. It may be the same array as <tt>x</tt>.
+     */
+    void negate( long[] x, long[] result ) {
+
+        long or = 0;
+        for( int i = 0; i < n; i++ )
+            or |= x[i];
+
+        if( or == 0 ) {
+            System.arraycopy( x, 0, result, 0, n );
+            return;
+        }
+
+        subtractLimbs( m, x, result );
+
+    }
+
+    /**
+     * Converts a magnitude of 32 bit words into limbs. Limbs not covered
+     * by the magnitude are set to zero.
+     *
+     * @param   words the magnitude, at most <code>2 n</code> words.
+     * @param   limbs array of n limbs receiving the value.
+     */
+    void toLimbs( int[] words, long[] limbs ) {
+
+        int length = words.length;
+
+        for( int i = 0; i < n; i++ ) {
+            int low = i << 1;
+            long limb = ( low < length ? words[low] & INT2LONG : 0 );
+            if( low + 1 < length )
+                limb |= (long)words[low + 1] << 32;
+            limbs[i] = limb;
+        }
+
+    }
+
+    /**
+     * Converts limbs into 32 bit words, the reverse of {@link #toLimbs}.
+     * Words above the limbs are set to zero, words of the limbs beyond
+     * the length of <tt>words</tt> are dropped.
+     *
+     * @param   limbs n limbs.
+     * @param   words array receiving the value.
+     */
+    void toWords( long[] limbs, int[] words ) {
+
+        int length = Math.min( words.length, n << 1 );
+
+        for( int i = 0; i < length; i++ ) {
+            long limb = limbs[i >> 1];
+            words[i] = (int)( (i & 1) == 0 ? limb : limb >>> 32 );
+        }
+        for( int i = length; i < words.length; i++ )
+            words[i] = 0;
+
+    }
+
+
+
+
+    /**
+     * Subtracts two values of n limbs without reduction.
+     *
+     * @param   x minuend.
+     * @param   y subtrahend.
+     * @param   result receives <code>x - y mod 2^(64 n)</code>.
+     * @return  the final borrow, 1 if <tt>x</tt> is less than <tt>y</tt>,
+     *          0 otherwise.
+     */
+    private long subtractLimbs( long[] x, long[] y, long[] result ) {
+
+        long borrow = 0;
+
+        for( int i = 0; i < n; i++ ) {
+            long a = x[i], b = y[i];
+            long diff = a - b - borrow;
+            borrow = ((~a & b) | (~(a ^ b) & diff)) >>> 63;
+            result[i] = diff;
+        }
+
+        return borrow;
+
+    }
+
+    /**
+     * Compares the lower n limbs of two values as unsigned integers.
+     *
+     * @param   x first value.
+     * @param   y second value.
+     * @return  a negative number, zero or a positive number as <tt>x</tt>
+     *          is less than, equal to or greater than <tt>y</tt>.
+     */
+    private int compare( long[] x, long[] y ) {
+
+        for( int i = n - 1; i >= 0; i-- )
+            if( x[i] != y[i] )
+                return Long.compareUnsigned( x[i], y[i] );
+
+        return 0;
+
+    }
+
+    /**
+     * Returns the upper 64 bits of the unsigned 128 bit product of two
+     * limbs. <code>Math.multiplyHigh</code> treats its arguments as signed,
+     * i.e. a negative factor stands for <code>a - 2^64</code>. This is
+     * corrected by adding the other factor for every negative one.
+     *
+     * @param   a first factor.
+     * @param   b second factor.
+     * @return  <code>floor( a * b / 2^64 )</code> for unsigned a and b.
+     */
+    private static long multiplyHigh( long a, long b ) {
+
+        return Math.multiplyHigh( a, b ) + ((a >> 63) & b) + ((b >> 63) & a);
+
+    }
+
+    /**
+     * Returns the carry of an addition without a branch, which would be
+     * mispredicted about every second time for random operands.
+     *
+     * @param   summand one of the summands.
+     * @param   sum the sum of <tt>summand</tt> and another value modulo
+     *          <code>2^64</code>.
+     * @return  1 if the addition wrapped around, i.e. <tt>sum</tt> is
+     *          unsigned less than <tt>summand</tt>, 0 otherwise.
+     */
+    private static long carry( long summand, long sum ) {
+
+        return ( sum + Long.MIN_VALUE < summand + Long.MIN_VALUE ? 1 : 0 );
+
+    }
+
+}
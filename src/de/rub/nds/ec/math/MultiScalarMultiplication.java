@@ -0,0 +1,499 @@
+/*
+ * MultiScalarMultiplication.java
+ */
+
+
+
+
+package de.rub.nds.ec.math;
+
+
+
+
+import java.nio.ByteOrder;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+
+
+/**
+ * This class computes a sum of multiples
+ * <code>k_1 P_1 + ... + k_n P_n</code> for
+ * {@link EllipticCurve#multiScalarMultiply}. One of two methods is chosen
+ * by the number of points and the length of the factors:
+ * <ul>
+ * <li>Straus' method, see <b>GECC</b>, p. 109 ff., generalizes
+ * {@link EllipticCurve#multiplyAdd} to n points. The width-w NAFs of all
+ * factors are processed with a single chain of doublings, which needs
+ * about t doublings and <code>n t / (w + 2)</code> additions for the
+ * digits of {@link FiniteField.FieldElement#toNAF}. This is best for few
+ * points.</li>
+ * <li>Pippenger's bucket method, see D. J. Bernstein et al., "Faster
+ * batch forgery identification", INDOCRYPT 2012, section 4. The factors
+ * are split into signed c-bit digits. For every window the points are
+ * sorted into <code>2^(c-1)</code> buckets by their digit, which needs
+ * one addition per point, and the buckets are summed with their
+ * multiplicities by about <code>2^c</code> further additions. The
+ * additions per point fall with the window width, so the width grows
+ * with n.</li>
+ * </ul>
+ * All points are normalized to affine coordinates first, so the additions
+ * of the points are mixed additions. The computation depends on the
+ * factors and should only be used for public ones, like in batch
+ * verification.
+ * <p />
+ * With a <tt>ForkJoinPool</tt> the bucket method processes the windows,
+ * and for wide pools also chunks of the points, as separate tasks.
+ *
+ * @see EllipticCurve#multiScalarMultiply
+ */
+final class MultiScalarMultiplication {
+
+    /**
+     * Largest window width of the bucket method, so the signed digits fit
+     * into a <tt>short</tt>.
+     */
+    private final static int MAX_WINDOW = 15;
+
+    /**
+     * Least number of points per chunk in parallel mode.
+     */
+    private final static int CHUNK_SIZE = 256;
+
+    /**
+     * The curve of the points.
+     */
+    private final EllipticCurve curve;
+
+    /**
+     * The points, replaced by their affine equivalents before the bucket
+     * method starts.
+     */
+    private final EllipticCurve.Point[] points;
+
+    /**
+     * The factors of the points.
+     */
+    private final FiniteField.FieldElement[] factors;
+
+    /**
+     * Length of the longest factor in bits.
+     */
+    private final int bits;
+
+    /**
+     * Window width c of the bucket method.
+     */
+    private int window;
+
+    /**
+     * Number of windows of the bucket method.
+     */
+    private int windows;
+
+    /**
+     * The digits of the bucket method, the digit of factor i in window j
+     * is <code>digits[i * windows + j]</code>.
+     */
+    private short[] digits;
+
+    /**
+     * Start index of every part normalized and recoded by one task and
+     * the number of points.
+     */
+    private int[] parts;
+
+    /**
+     * Start index of every chunk summed by one task per window and the
+     * number of points.
+     */
+    private int[] chunks;
+
+    /**
+     * The sum of every window and chunk, the sum of chunk l in window j
+     * is <code>sums[j * (chunks.length - 1) + l]</code>.
+     */
+    private EllipticCurve.Point[] sums;
+
+    /**
+     * Are the points normalized and the factors recoded?
+     */
+    private boolean recoded;
+
+
+
+
+    /**
+     * Prepare the computation of a sum of multiples.
+     *
+     * @param   curve the curve of the points.
+     * @param   points the points, which are not modified.
+     * @param   factors the factors of the points.
+     */
+    MultiScalarMultiplication( EllipticCurve curve,
+                               EllipticCurve.Point[] points,
+                               FiniteField.FieldElement[] factors ) {
+
+        this.curve = curve;
+        this.points = points.clone( );
+        this.factors = factors;
+
+        int bits = 0;
+        for( FiniteField.FieldElement factor : factors )
+            bits = Math.max( bits, factor.numBits( ) );
+        this.bits = bits;
+
+    }
+
+
+
+
+    /**
+     * Compute the sum of multiples.
+     *
+     * @param   pool the pool which runs the tasks of the bucket method or
+     *          <tt>null</tt> to compute everything in the calling thread.
+     * @return  <code>k_1 P_1 + ... + k_n P_n</code>
+     */
+    EllipticCurve.Point compute( ForkJoinPool pool ) {
+
+        int n = points.length;
+
+        if( n == 0 || bits == 0 )
+            return curve.new Point( );
+
+        byte width = strausWidth( bits );
+        window = bucketWindow( n, bits );
+
+        double straus = bits + n * ( (1 << (width - 1)) +
+                                     (double)bits / (width + 2) );
+        double bucket = (double)( bits / window + 1 ) *
+                        ( window + n + (1 << window) );
+
+        if( straus <= bucket )
+            return straus( width );
+
+        // in parallel mode the windows are split into chunks only if there
+        // are too few of them for the pool, then the window width is
+        // chosen for the size of a chunk
+        int parallelism = ( pool == null ? 1 : pool.getParallelism( ) );
+        windows = bits / window + 1;
+        int count = Math.max( 1, Math.min( n / CHUNK_SIZE,
+                ( 2 * parallelism + windows - 1 ) / windows ) );
+        if( count > 1 )
+            window = bucketWindow( (n + count - 1) / count, bits );
+
+        windows = bits / window + 1;
+        digits = new short[n * windows];
+        parts = bounds( n, Math.max( 1, Math.min( n / CHUNK_SIZE,
+                                                  4 * parallelism ) ) );
+        chunks = bounds( n, count );
+        sums = new EllipticCurve.Point[windows * count];
+
+        if( pool == null || parallelism == 1 ) {
+            for( int l = 0; l < parts.length - 1; l++ )
+                leaf( l );
+            recoded = true;
+            for( int l = 0; l < sums.length; l++ )
+                leaf( l );
+        }
+        else {
+            pool.invoke( new Task( 0, parts.length - 1 ) );
+            recoded = true;
+            pool.invoke( new Task( 0, sums.length ) );
+        }
+
+        EllipticCurve.Point result = curve.new Point( );
+
+        for( int j = windows - 1; j >= 0; j-- ) {
+            for( int i = 0; i < window; i++ )
+                result = result.twice( );
+            for( int l = 0; l < count; l++ )
+                result = result.add( sums[j * count + l] );
+        }
+
+        return result;
+
+    }
+
+
+
+
+    /**
+     * Straus' method.
+     *
+     * @param   width the window width of the NAFs.
+     * @return  <code>k_1 P_1 + ... + k_n P_n</code>
+     */
+    private EllipticCurve.Point straus( byte width ) {
+
+        int n = points.length;
+        int size = 1 << (width - 1);
+
+        // the odd multiples of all points, normalized together
+        EllipticCurve.Point[] table = new EllipticCurve.Point[n * size];
+        byte[][] naf = new byte[n][];
+        int length = 0;
+
+        for( int i = 0; i < n; i++ ) {
+
+            EllipticCurve.Point point = points[i];
+            naf[i] = factors[i].toNAF( width );
+            length = Math.max( length, naf[i].length );
+
+            table[i * size] = point;
+            EllipticCurve.Point twice = point.twice( );
+            for( int j = 1; j < size; j++ )
+                table[i * size + j] = table[i * size + j - 1].add( twice );
+        }
+
+        curve.toAffine( table );
+
+        EllipticCurve.Point result = curve.new Point( );
+
+        for( int j = length - 1; j >= 0; j-- ) {
+            result = result.twice( );
+            for( int i = 0; i < n; i++ ) {
+                int digit = ( j < naf[i].length ? naf[i][j] : 0 );
+                if( digit > 0 )
+                    result = result.add(
+                            table[i * size + ((digit - 1) >> 1)] );
+                else if( digit < 0 )
+                    result = result.subtract(
+                            table[i * size + ((-digit - 1) >> 1)] );
+            }
+        }
+
+        return result;
+
+    }
+
+    /**
+     * Do a single step of the bucket method, depending on
+     * {@link #recoded} either normalize and recode a part or sum a chunk
+     * in a window.
+     *
+     * @param   l number of the part or index of the sum.
+     */
+    private void leaf( int l ) {
+
+        if( ! recoded ) {
+            recode( parts[l], parts[l + 1] );
+            return;
+        }
+
+        int count = chunks.length - 1;
+        sums[l] = sum( l / count, chunks[l % count],
+                       chunks[l % count + 1] );
+
+    }
+
+    /**
+     * Normalize a range of points and split their factors into signed
+     * digits <code>-2^(c-1) &lt; d &lt;= 2^(c-1)</code>. A digit above the
+     * range is lowered by <code>2^c</code> and carries into the next
+     * window, the extra window takes the last carry.
+     *
+     * @param   from first index of the range.
+     * @param   to index after the range.
+     */
+    private void recode( int from, int to ) {
+
+        EllipticCurve.Point[] range = new EllipticCurve.Point[to - from];
+        System.arraycopy( points, from, range, 0, range.length );
+        System.arraycopy( curve.normalizeAll( range ), 0, points, from,
+                          range.length );
+
+        int half = 1 << (window - 1);
+
+        for( int i = from; i < to; i++ ) {
+
+            byte[] k = factors[i].toByteArray( ByteOrder.LITTLE_ENDIAN );
+            int carry = 0;
+
+            for( int j = 0; j < windows; j++ ) {
+                int digit = bits( k, j * window, window ) + carry;
+                carry = ( digit > half ? 1 : 0 );
+                digits[i * windows + j] = (short)( digit - (carry << window) );
+            }
+        }
+
+    }
+
+    /**
+     * Compute the sum of a range of points in a window of the bucket
+     * method, i.e. <code>d_1 P_1 + ... + d_m P_m</code> for their digits
+     * d in this window. Bucket b collects the points with digit
+     * <code>+-(b + 1)</code>, the buckets are then summed from the highest
+     * one with a running sum, so bucket b is added <code>b + 1</code>
+     * times.
+     *
+     * @param   j the window.
+     * @param   from first index of the range.
+     * @param   to index after the range.
+     * @return  the sum of the range in the window.
+     */
+    private EllipticCurve.Point sum( int j, int from, int to ) {
+
+        // empty buckets are null, which saves the additions of the point
+        // at infinity
+        EllipticCurve.Point[] buckets =
+                new EllipticCurve.Point[1 << (window - 1)];
+
+        for( int i = from; i < to; i++ ) {
+
+            int digit = digits[i * windows + j];
+            EllipticCurve.Point point = points[i];
+
+            if( digit == 0 || point.isInfinity( ) )
+                continue;
+
+            int b = Math.abs( digit ) - 1;
+            if( buckets[b] == null )
+                buckets[b] = ( digit > 0 ? point : point.negate( ) );
+            else if( digit > 0 )
+                buckets[b] = buckets[b].add( point );
+            else
+                buckets[b] = buckets[b].subtract( point );
+        }
+
+        EllipticCurve.Point running = null, result = null;
+
+        for( int b = buckets.length - 1; b >= 0; b-- ) {
+            if( buckets[b] != null )
+                running = ( running == null ? buckets[b] :
+                            running.add( buckets[b] ) );
+            if( running != null )
+                result = ( result == null ? running : result.add( running ) );
+        }
+
+        return ( result == null ? curve.new Point( ) : result );
+
+    }
+
+    /**
+     * Returns <tt>count</tt> bits of a factor.
+     *
+     * @param   k the factor in little endian order.
+     * @param   from the lowest bit.
+     * @param   count number of bits, at most 24.
+     */
+    private static int bits( byte[] k, int from, int count ) {
+
+        int index = from >>> 3;
+        int word = 0;
+
+        for( int i = 0; i < 4 && index + i < k.length; i++ )
+            word |= ( k[index + i] & 0xFF ) << (i << 3);
+
+        return ( word >>> (from & 7) ) & ( (1 << count) - 1 );
+
+    }
+
+    /**
+     * Returns the window width of Straus' method, which minimizes the
+     * precomputed points plus the additions per point.
+     *
+     * @param   bits length of the factors.
+     * @return  the width between 2 and 6.
+     */
+    private static byte strausWidth( int bits ) {
+
+        byte width = 2;
+
+        for( byte w = 3; w <= 6; w++ )
+            if( (1 << (w - 1)) + bits / (w + 2) <
+                (1 << (width - 1)) + bits / (width + 2) )
+                width = w;
+
+        return width;
+
+    }
+
+    /**
+     * Returns the window width of the bucket method, which minimizes the
+     * additions for all windows.
+     *
+     * @param   n number of points.
+     * @param   bits length of the factors.
+     * @return  the width between 1 and {@link #MAX_WINDOW}.
+     */
+    private static int bucketWindow( int n, int bits ) {
+
+        int window = 1;
+        long best = Long.MAX_VALUE;
+
+        for( int c = 1; c <= MAX_WINDOW; c++ ) {
+            long cost = (long)( bits / c + 1 ) * ( c + n + (1L << c) );
+            if( cost < best ) {
+                best = cost;
+                window = c;
+            }
+        }
+
+        return window;
+
+    }
+
+    /**
+     * Split a range into parts of almost equal size.
+     *
+     * @param   n length of the range.
+     * @param   count number of parts.
+     * @return  the start index of every part and n.
+     */
+    private static int[] bounds( int n, int count ) {
+
+        int[] bounds = new int[count + 1];
+        for( int i = 0; i <= count; i++ )
+            bounds[i] = (int)( (long)n * i / count );
+
+        return bounds;
+
+    }
+
+
+
+
+    /**
+     * A task which runs a range of steps of the bucket method.
+     */
+    private class Task extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The range of steps of this task.
+         */
+        private final int first, last;
+
+        /**
+         * Construct a task for a range of steps.
+         */
+        private Task( int first, int last ) {
+
+            this.first = first;
+            this.last = last;
+
+        }
+
+        /**
+         * Run the steps of this task.
+         */
+        protected void compute( ) {
+
+            if( last - first > 1 ) {
+                int middle = (first + last) >>> 1;
+                invokeAll( new Task( first, middle ),
+                           new Task( middle, last ) );
+                return;
+            }
+
+            leaf( first );
+
+        }
+
+    }
+
+}
@@ -0,0 +1,319 @@
+/*
+ * PrecomputationCache.java
+ */
+
+
+
+
+package de.rub.nds.ec.math;
+
+
+
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+
+
+/**
+ * This class caches the NAF points precomputed by
+ * {@link EllipticCurve.Point#precomputeNAFPoints} for the points of a
+ * curve, so that repeated multiplications of the same point, e.g. of a
+ * long-lived public key, skip the precomputation. Every curve owns one
+ * cache, see {@link EllipticCurve#getPrecomputationCache}, which is used
+ * by {@link EllipticCurve.Point#multiply(FiniteField.FieldElement)} and
+ * {@link EllipticCurve#multiplyAdd}.
+ * <p />
+ * Points are identified by their coordinates as stored, i.e. two
+ * different representations of the same point have separate entries.
+ * The tables of points which are multiplied more than {@link #HOT_HITS}
+ * times are rebuilt with the widest window, which saves further additions.
+ * The memory of all tables is estimated and bounded by the capacity, the
+ * least recently used tables are evicted first.
+ * <p />
+ * Instances are thread safe. The tables are computed outside of the lock,
+ * so threads which miss the same point at once may compute it twice.
+ *
+ * @see EllipticCurve#getPrecomputationCache
+ */
+public final class PrecomputationCache {
+
+    /**
+     * Capacity of a new cache in KiB.
+     */
+    public final static int DEFAULT_CAPACITY = 256;
+
+    /**
+     * Number of hits after which the table of a point is rebuilt with
+     * {@link #MAX_WIDTH}.
+     */
+    public final static int HOT_HITS = 8;
+
+    /**
+     * The widest window supported by
+     * {@link FiniteField.FieldElement#toNAF}.
+     */
+    private final static byte MAX_WIDTH = 6;
+
+    /**
+     * The curve of the cached points.
+     */
+    private final EllipticCurve curve;
+
+    /**
+     * The tables by the encoded coordinates of their point, in the order
+     * of their last use.
+     */
+    private final LinkedHashMap<ByteBuffer, Table> tables =
+            new LinkedHashMap<ByteBuffer, Table>( 16, 0.75f, true );
+
+    /**
+     * Capacity in bytes.
+     */
+    private long capacity;
+
+    /**
+     * Estimated memory of all tables in bytes.
+     */
+    private long size;
+
+    /**
+     * Number of multiplications which found a table.
+     */
+    private long hits;
+
+    /**
+     * Number of multiplications which had to compute a table.
+     */
+    private long misses;
+
+
+
+
+    /**
+     * A table of precomputed points and its window width.
+     */
+    static final class Table {
+
+        /**
+         * The points computed by
+         * {@link EllipticCurve.Point#precomputeNAFPoints}.
+         */
+        final EllipticCurve.Point[] points;
+
+        /**
+         * The window width of {@link #points}.
+         */
+        final byte width;
+
+        /**
+         * Estimated memory in bytes.
+         */
+        private final long size;
+
+        /**
+         * Number of hits of this table.
+         */
+        private int hits;
+
+        /**
+         * Create a new table.
+         */
+        private Table( EllipticCurve.Point[] points, byte width,
+                       long size ) {
+
+            this.points = points;
+            this.width = width;
+            this.size = size;
+
+        }
+
+    }
+
+
+
+
+    /**
+     * Create a new cache.
+     *
+     * @param   curve the curve of the cached points.
+     */
+    PrecomputationCache( EllipticCurve curve ) {
+
+        this.curve = curve;
+        this.capacity = (long)DEFAULT_CAPACITY << 10;
+
+    }
+
+
+
+
+    /**
+     * Set the capacity of the cache. The least recently used tables are
+     * evicted until the remaining ones fit.
+     *
+     * @param   capacity the capacity in KiB, 0 disables the cache.
+     *
+     * @throws  IllegalArgumentException <tt>capacity</tt> is negative.
+     */
+    public synchronized void setCapacity( int capacity )
+           throws IllegalArgumentException {
+
+        if( capacity < 0 )
+            throw new IllegalArgumentException
+            ( "PrecomputationCache.setCapacity: Negative capacity" );
+
+        this.capacity = (long)capacity << 10;
+        evict( );
+
+    }
+
+    /**
+     * Returns the capacity of the cache.
+     *
+     * @return  the capacity in KiB.
+     */
+    public synchronized int getCapacity( ) {
+
+        return (int)( capacity >>> 10 );
+
+    }
+
+    /**
+     * Returns the estimated memory of all cached tables.
+     *
+     * @return  the size in bytes.
+     */
+    public synchronized long getSize( ) {
+
+        return size;
+
+    }
+
+    /**
+     * Returns the number of multiplications which found the table of
+     * their point.
+     *
+     * @return  number of hits.
+     */
+    public synchronized long getHits( ) {
+
+        return hits;
+
+    }
+
+    /**
+     * Returns the number of multiplications which had to compute the
+     * table of their point.
+     *
+     * @return  number of misses.
+     */
+    public synchronized long getMisses( ) {
+
+        return misses;
+
+    }
+
+    /**
+     * Removes all tables and resets the counters.
+     */
+    public synchronized void clear( ) {
+
+        tables.clear( );
+        size = 0;
+        hits = 0;
+        misses = 0;
+
+    }
+
+
+
+
+    /**
+     * Returns the table of a point, computing and caching it if needed.
+     *
+     * @param   point the point.
+     * @param   width window width for a new table.
+     * @return  the table, which is evicted at once if it does not fit.
+     */
+    Table get( EllipticCurve.Point point, byte width ) {
+
+        if( point.isInfinity( ) )
+            return compute( point, width );
+
+        ByteBuffer key = key( point );
+
+        synchronized( this ) {
+
+            Table table = tables.get( key );
+
+            if( table != null ) {
+                hits++;
+                table.hits++;
+                if( table.width == MAX_WIDTH || table.hits != HOT_HITS )
+                    return table;
+                width = MAX_WIDTH;
+            }
+            else
+                misses++;
+        }
+
+        Table table = compute( point, width );
+
+        synchronized( this ) {
+            Table previous = tables.put( key, table );
+            size += table.size;
+            if( previous != null )
+                size -= previous.size;
+            evict( );
+        }
+
+        return table;
+
+    }
+
+    /**
+     * Compute the table of a point.
+     */
+    private Table compute( EllipticCurve.Point point, byte width ) {
+
+        EllipticCurve.Point[] points = point.precomputeNAFPoints( width );
+
+        return new Table( points, width,
+                          points.length * curve.estimatePointSize( ) );
+
+    }
+
+    /**
+     * Returns the key of a point, its encoded coordinates.
+     */
+    private ByteBuffer key( EllipticCurve.Point point ) {
+
+        FiniteField.FieldElement[] coordinates = point.coordinates( );
+
+        return ByteBuffer.wrap( curve.field.encodeAll( coordinates,
+                                                       ByteOrder.BIG_ENDIAN ) );
+
+    }
+
+    /**
+     * Evicts the least recently used tables until the size does not
+     * exceed the capacity.
+     */
+    private void evict( ) {
+
+        Iterator<Map.Entry<ByteBuffer, Table>> iterator =
+                tables.entrySet( ).iterator( );
+
+        while( size > capacity && iterator.hasNext( ) ) {
+            size -= iterator.next( ).getValue( ).size;
+            iterator.remove( );
+        }
+
+    }
+
+}
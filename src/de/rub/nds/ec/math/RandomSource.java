@@ -0,0 +1,35 @@
+/*
+ * RandomSource.java
+ */
+
+
+
+
+package de.rub.nds.ec.math;
+
+
+
+
+/**
+ * A source of random words for the generation of random
+ * {@link FiniteField.FieldElement}s. The field turns the words into
+ * elements below p by rejection sampling, so an implementation only has to
+ * deliver uniformly distributed bits.
+ * <p />
+ * {@link FiniteField} creates one instance per thread, so implementations
+ * need not be thread safe. The default is {@link SecureRandomSource}.
+ *
+ * @see FiniteField#setRandomSource
+ */
+public interface RandomSource {
+
+    /**
+     * Fill a range of an array with random words.
+     *
+     * @param   words the array to fill.
+     * @param   offset index of the first word to fill.
+     * @param   length number of words to fill.
+     */
+    void nextInts( int[] words, int offset, int length );
+
+}
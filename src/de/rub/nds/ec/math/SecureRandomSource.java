@@ -0,0 +1,204 @@
+/*
+ * SecureRandomSource.java
+ */
+
+
+
+
+package de.rub.nds.ec.math;
+
+
+
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+
+
+
+/**
+ * This class implements a {@link RandomSource} backed by a
+ * <tt>SecureRandom</tt>.
+ * <p />
+ * The words are served from a buffer, so a random element costs an array
+ * copy instead of a call into the <tt>SecureRandom</tt>. While the buffer
+ * is consumed, a second one is filled in the background by a pool with one
+ * thread per processor, which is shared by all instances. If that refill
+ * is still pending when the buffer runs empty, the calling thread fills
+ * the buffer itself instead of waiting behind the refills of other
+ * instances. Consumed words are overwritten with zeros.
+ * <p />
+ * Instances are not thread safe, {@link FiniteField} creates one per
+ * thread.
+ *
+ * @see FiniteField#setRandomSource
+ */
+public class SecureRandomSource implements RandomSource {
+
+    /**
+     * Number of words per buffer.
+     */
+    private final static int BUFFER_SIZE = 1024;
+
+    /**
+     * The threads which refill the buffers of all instances, one per
+     * processor. They are daemon threads, so they do not keep the JVM
+     * alive.
+     */
+    private final static ExecutorService REFILL =
+            Executors.newFixedThreadPool(
+                    Runtime.getRuntime( ).availableProcessors( ),
+                    new ThreadFactory( ) {
+                        public Thread newThread( Runnable task ) {
+                            Thread thread = new Thread( task,
+                                    "SecureRandomSource refill" );
+                            thread.setDaemon( true );
+                            return thread;
+                        }
+                    } );
+
+    /**
+     * The generator all words are taken from.
+     */
+    private final SecureRandom random;
+
+    /**
+     * The buffer the words are currently taken from.
+     */
+    private int[] buffer;
+
+    /**
+     * Index of the next unused word in {@link #buffer}.
+     */
+    private int position;
+
+    /**
+     * The buffer which is being filled in the background.
+     */
+    private Future<int[]> next;
+
+
+
+
+    /**
+     * Construct a new source with a new <tt>SecureRandom</tt>.
+     */
+    public SecureRandomSource( ) {
+
+        this( new SecureRandom( ) );
+
+    }
+
+    /**
+     * Construct a new source which takes its words from the given
+     * generator.
+     *
+     * @param   random the generator, it is used by the background threads
+     *          from now on, concurrently with the calling thread if a
+     *          refill is pending.
+     */
+    public SecureRandomSource( SecureRandom random ) {
+
+        this.random = random;
+        buffer = fill( new int[BUFFER_SIZE] );
+        next = REFILL.submit( refill( new int[BUFFER_SIZE] ) );
+
+    }
+
+
+
+
+    /**
+     * Fill a range of an array with random words.
+     *
+     * @param   words the array to fill.
+     * @param   offset index of the first word to fill.
+     * @param   length number of words to fill.
+     */
+    public void nextInts( int[] words, int offset, int length ) {
+
+        while( length > 0 ) {
+
+            if( position == buffer.length )
+                swap( );
+
+            int count = Math.min( length, buffer.length - position );
+            System.arraycopy( buffer, position, words, offset, count );
+            Arrays.fill( buffer, position, position + count, 0 );
+
+            position += count;
+            offset += count;
+            length -= count;
+        }
+
+    }
+
+
+
+
+    /**
+     * Replace the consumed buffer by the one filled in the background and
+     * schedule the refill of the consumed one. If the background refill
+     * is not done yet, the consumed buffer is filled by the calling thread
+     * and the refill stays pending, so this never waits for the pool. If
+     * the background refill failed, a new buffer is filled by the calling
+     * thread.
+     */
+    private void swap( ) {
+
+        int[] consumed = buffer;
+        position = 0;
+
+        if( ! next.isDone( ) ) {
+            buffer = fill( consumed );
+            return;
+        }
+
+        try {
+            buffer = next.get( );
+        }
+        catch( Exception e ) {
+            buffer = fill( new int[BUFFER_SIZE] );
+        }
+
+        next = REFILL.submit( refill( consumed ) );
+
+    }
+
+    /**
+     * Returns the task which fills a buffer in the background.
+     */
+    private Callable<int[]> refill( final int[] words ) {
+
+        return new Callable<int[]>( ) {
+            public int[] call( ) {
+                return fill( words );
+            }
+        };
+
+    }
+
+    /**
+     * Fill a buffer with words from {@link #random}.
+     *
+     * @param   words the buffer.
+     * @return  <tt>words</tt>
+     */
+    private int[] fill( int[] words ) {
+
+        byte[] bytes = new byte[words.length << 2];
+        random.nextBytes( bytes );
+        ByteBuffer.wrap( bytes ).asIntBuffer( ).get( words );
+        Arrays.fill( bytes, (byte)0 );
+
+        return words;
+
+    }
+
+}